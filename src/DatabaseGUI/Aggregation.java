@@ -0,0 +1,796 @@
+package DatabaseGUI;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Groups a result that is already in memory and works out count, sum, avg, min and max of each
+ * group, or pivots it, without asking the database again. So regrouping a result by another
+ * column costs one pass over the rows in memory instead of another query.
+ *
+ * The rows are read straight from the typed arrays of the ColumnarPages: a group key is a few
+ * longs (the value of an INT, LONG, DATE or DECIMAL column, the bits of a DOUBLE or REAL, or the
+ * position of a TEXT value among the column's distinct values), and the groups are found in an open
+ * addressing hash table, so grouping a row allocates nothing. Results of more than
+ * ResultView.PARALLEL_THRESHOLD rows are split into slices that are grouped on the fork/join pool,
+ * and the slices' groups are merged two at a time. There are only a few slices per processor:
+ * with many distinct groups, merging costs about as much as grouping, so more slices than can run
+ * at once would only add merging.
+ *
+ * The groups come out sorted by their key, nulls first, like the sort of ResultView. Nothing here
+ * touches JavaFX, so it can be used from any thread.
+ */
+public class Aggregation {
+
+  // the most distinct values a pivot column may have, each becomes a column
+  public static final int MAX_PIVOT_COLUMNS =
+      Integer.getInteger("databasegui.aggregate.maxPivotColumns", 200);
+
+  private static final int MIN_SLICE_ROWS = 16384;
+  private static final int SLICES_PER_THREAD = 4;
+  private static final Comparator<String> TEXT_ORDER =
+      String.CASE_INSENSITIVE_ORDER.thenComparing(Comparator.naturalOrder());
+
+  /**
+   * What is worked out for each group.
+   */
+  public enum Function {
+    COUNT, SUM, AVG, MIN, MAX;
+
+    /**
+     * @return true if the function can be worked out over a column of the type. Sums and averages
+     *     need numbers, the others work on anything.
+     */
+    public boolean appliesTo(ColumnType type) {
+      return this == COUNT || this == MIN || this == MAX || type.isNumeric();
+    }
+
+    @Override
+    public String toString() {
+      return name().toLowerCase(Locale.ROOT);
+    }
+  }
+
+  /**
+   * A function over one column, or COUNT over every row.
+   */
+  public static final class Measure {
+
+    private final Function function;
+    private final int column;
+
+    /**
+     * @param column the column the function is over, -1 for COUNT of every row
+     */
+    public Measure(Function function, int column) {
+      if (column < 0 && function != Function.COUNT) {
+        throw new IllegalArgumentException("Only count can go without a column");
+      }
+      this.function = function;
+      this.column = column;
+    }
+
+    public Function getFunction() {
+      return function;
+    }
+
+    public int getColumn() {
+      return column;
+    }
+  }// end of Measure class
+
+  /**
+   * The groups, as pages that can be shown like any other result.
+   */
+  public static final class Result {
+
+    private final List<String> columnNames;
+    private final ColumnType[] columnTypes;
+    private final List<ColumnarPage> pages;
+    private final int groupCount;
+    private final long nanos;
+
+    Result(List<String> columnNames, ColumnType[] columnTypes, List<ColumnarPage> pages,
+        int groupCount, long nanos) {
+      this.columnNames = Collections.unmodifiableList(columnNames);
+      this.columnTypes = columnTypes;
+      this.pages = Collections.unmodifiableList(pages);
+      this.groupCount = groupCount;
+      this.nanos = nanos;
+    }
+
+    public List<String> getColumnNames() {
+      return columnNames;
+    }
+
+    public ColumnType[] getColumnTypes() {
+      return columnTypes.clone();
+    }
+
+    /**
+     * @return the groups in pages of PagedResultList.DEFAULT_PAGE_SIZE rows.
+     */
+    public List<ColumnarPage> getPages() {
+      return pages;
+    }
+
+    public int getGroupCount() {
+      return groupCount;
+    }
+
+    /**
+     * @return how long grouping took, from the first row read to the pages being made.
+     */
+    public long getNanos() {
+      return nanos;
+    }
+  }// end of Result class
+
+  private final List<String> columnNames;
+  private final ColumnType[] columnTypes;
+  private final int[] scales;
+  private final ColumnarPage[] pages;
+  private final int pageSize;
+  private final int[] rows; // the row numbers to group, or null for every row
+  private final int rowCount;
+  private final int sliceRows;
+
+  // for each TEXT column that is used: the distinct values in order, and the position of every
+  // page's dictionary codes among them. Filled in before the rows are grouped.
+  private final String[][] textValues;
+  private final int[][][] textIds;
+
+  /**
+   * @param pages every page of the result, in order. All but the last must hold pageSize rows.
+   * @param rows the row numbers to group, e.g. the rows a filter left, or null for all of them
+   */
+  public Aggregation(List<String> columnNames, ColumnType[] columnTypes, int pageSize,
+      List<ColumnarPage> pages, int[] rows) {
+    this.columnNames = new ArrayList<>(columnNames);
+    this.columnTypes = columnTypes.clone();
+    this.pages = pages.toArray(new ColumnarPage[0]);
+    this.pageSize = Math.max(1, pageSize);
+    this.rows = rows;
+    int count = 0;
+    for (ColumnarPage page : this.pages) {
+      count += page.getRowCount();
+    }
+    this.rowCount = rows != null ? rows.length : count;
+    this.sliceRows = Math.max(MIN_SLICE_ROWS,
+        rowCount / (SLICES_PER_THREAD * ForkJoinPool.getCommonPoolParallelism()));
+    this.scales = new int[columnTypes.length];
+    if (!pages.isEmpty()) {
+      for (int column = 0; column < scales.length; column++) {
+        scales[column] = pages.get(0).getScale(column);
+      }
+    }
+    this.textValues = new String[columnTypes.length][];
+    this.textIds = new int[columnTypes.length][][];
+  }
+
+  /**
+   * Makes one row per distinct combination of the group columns, with the group columns first and
+   * a column per measure after them. With no group columns there is one row, for every row.
+   */
+  public Result groupBy(int[] groupColumns, List<Measure> measures) {
+    long start = System.nanoTime();
+    Groups groups = group(groupColumns, measures);
+    Integer[] order = groups.sortedOrder(groupColumns);
+
+    List<String> names = new ArrayList<>();
+    List<ColumnType> types = new ArrayList<>();
+    List<Integer> outScales = new ArrayList<>();
+    for (int column : groupColumns) {
+      names.add(columnNames.get(column));
+      types.add(columnTypes[column]);
+      outScales.add(scales[column]);
+    }
+    for (Measure measure : measures) {
+      names.add(measure.function + "(" + (measure.column < 0 ? "*"
+          : columnNames.get(measure.column)) + ")");
+      types.add(outputType(measure));
+      outScales.add(measure.column < 0 ? 0 : scales[measure.column]);
+    }
+
+    List<Object[]> out = new ArrayList<>(order.length);
+    for (int group : order) {
+      Object[] values = new Object[names.size()];
+      for (int key = 0; key < groupColumns.length; key++) {
+        values[key] = groups.isNull(group, key) ? null
+            : valueOf(groupColumns[key], groups.key(group, key));
+      }
+      for (int measure = 0; measure < measures.size(); measure++) {
+        values[groupColumns.length + measure] = groups.states[measure].result(group);
+      }
+      out.add(values);
+    }
+    if (groupColumns.length == 0 && out.isEmpty()) {
+      Object[] values = new Object[names.size()]; // no rows at all: counts are 0, the rest null
+      for (int measure = 0; measure < measures.size(); measure++) {
+        values[measure] = measures.get(measure).function == Function.COUNT ? 0L : null;
+      }
+      out.add(values);
+    }
+    return result(names, types, outScales, out, start);
+  }// end of groupBy method
+
+  /**
+   * Makes one row per distinct combination of the row columns, and one column per distinct value
+   * of the pivot column, holding the measure of the rows with that value.
+   *
+   * @throws IllegalArgumentException if the pivot column has more than MAX_PIVOT_COLUMNS values
+   */
+  public Result pivot(int[] rowColumns, int pivotColumn, Measure measure) {
+    long start = System.nanoTime();
+    int[] keyColumns = Arrays.copyOf(rowColumns, rowColumns.length + 1);
+    keyColumns[rowColumns.length] = pivotColumn;
+    Groups groups = group(keyColumns, Collections.singletonList(measure));
+
+    // the pivot values, in order, each one a column
+    Groups pivotValues = new Groups(1, new Measure[0]);
+    long[] key = new long[2];
+    int[] pivotOf = new int[groups.size];
+    for (int group = 0; group < groups.size; group++) {
+      groups.copyKey(group, rowColumns.length, key);
+      pivotOf[group] = pivotValues.find(key);
+      if (pivotValues.size > MAX_PIVOT_COLUMNS) {
+        throw new IllegalArgumentException(columnNames.get(pivotColumn) + " has more than "
+            + MAX_PIVOT_COLUMNS + " distinct values, too many columns to pivot by");
+      }
+    }
+    Integer[] pivotOrder = pivotValues.sortedOrder(new int[] {pivotColumn});
+    int[] columnOf = new int[pivotValues.size];
+    for (int i = 0; i < pivotOrder.length; i++) {
+      columnOf[pivotOrder[i]] = i;
+    }
+
+    // the row keys, and which group goes in each cell
+    Groups rowKeys = new Groups(rowColumns.length, new Measure[0]);
+    long[] rowKey = new long[rowColumns.length + 1];
+    List<int[]> cells = new ArrayList<>();
+    for (int group = 0; group < groups.size; group++) {
+      groups.copyKeys(group, rowColumns.length, rowKey);
+      int row = rowKeys.find(rowKey);
+      if (row == cells.size()) {
+        int[] empty = new int[pivotOrder.length];
+        Arrays.fill(empty, -1);
+        cells.add(empty);
+      }
+      cells.get(row)[columnOf[pivotOf[group]]] = group;
+    }
+    Integer[] rowOrder = rowKeys.sortedOrder(rowColumns);
+
+    List<String> names = new ArrayList<>();
+    List<ColumnType> types = new ArrayList<>();
+    List<Integer> outScales = new ArrayList<>();
+    for (int column : rowColumns) {
+      names.add(columnNames.get(column));
+      types.add(columnTypes[column]);
+      outScales.add(scales[column]);
+    }
+    for (int pivot : pivotOrder) {
+      Object value = pivotValues.isNull(pivot, 0) ? null
+          : valueOf(pivotColumn, pivotValues.key(pivot, 0));
+      names.add(value == null ? "null" : value instanceof BigDecimal
+          ? ((BigDecimal) value).toPlainString() : value instanceof Double
+          ? columnTypes[pivotColumn].format((Double) value) : value.toString());
+      types.add(outputType(measure));
+      outScales.add(measure.column < 0 ? 0 : scales[measure.column]);
+    }
+
+    List<Object[]> out = new ArrayList<>(rowOrder.length);
+    for (int row : rowOrder) {
+      Object[] values = new Object[names.size()];
+      for (int column = 0; column < rowColumns.length; column++) {
+        values[column] = rowKeys.isNull(row, column) ? null
+            : valueOf(rowColumns[column], rowKeys.key(row, column));
+      }
+      int[] cellGroups = cells.get(row);
+      for (int column = 0; column < cellGroups.length; column++) {
+        int group = cellGroups[column];
+        values[rowColumns.length + column] = group >= 0 ? groups.states[0].result(group)
+            : measure.function == Function.COUNT ? 0L : null;
+      }
+      out.add(values);
+    }
+    return result(names, types, outScales, out, start);
+  }// end of pivot method
+
+  /**
+   * Groups the rows, in parallel if there are enough of them.
+   */
+  private Groups group(int[] keyColumns, List<Measure> measures) {
+    if (keyColumns.length > 62) {
+      throw new IllegalArgumentException("Too many columns to group by");
+    }
+    Measure[] measureArray = measures.toArray(new Measure[0]);
+    for (Measure measure : measureArray) {
+      if (measure.column >= 0 && !measure.function.appliesTo(columnTypes[measure.column])) {
+        throw new IllegalArgumentException("Can't work out the " + measure.function + " of "
+            + columnNames.get(measure.column) + ", it isn't a number column");
+      }
+      if (measure.column >= 0 && columnTypes[measure.column] == ColumnType.TEXT) {
+        prepareText(measure.column);
+      }
+    }
+    for (int column : keyColumns) {
+      if (columnTypes[column] == ColumnType.TEXT) {
+        prepareText(column);
+      }
+    }
+    SliceTask all = new SliceTask(keyColumns, measureArray, 0, rowCount);
+    return rowCount >= ResultView.PARALLEL_THRESHOLD ? ForkJoinPool.commonPool().invoke(all)
+        : all.compute();
+  }
+
+  /**
+   * Groups the rows from..to of the result, splitting them in two while there are more than
+   * sliceRows.
+   */
+  private final class SliceTask extends RecursiveTask<Groups> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int[] keyColumns;
+    private final Measure[] measures;
+    private final int from;
+    private final int to;
+
+    SliceTask(int[] keyColumns, Measure[] measures, int from, int to) {
+      this.keyColumns = keyColumns;
+      this.measures = measures;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected Groups compute() {
+      if (to - from <= sliceRows || rowCount < ResultView.PARALLEL_THRESHOLD) {
+        return groupSlice(keyColumns, measures, from, to);
+      }
+      int middle = (from + to) >>> 1;
+      SliceTask left = new SliceTask(keyColumns, measures, from, middle);
+      left.fork();
+      Groups right = new SliceTask(keyColumns, measures, middle, to).compute();
+      Groups leftGroups = left.join();
+      // the smaller table goes into the bigger one
+      if (leftGroups.size >= right.size) {
+        leftGroups.absorb(right);
+        return leftGroups;
+      }
+      right.absorb(leftGroups);
+      return right;
+    }
+  }// end of SliceTask class
+
+  /**
+   * Groups the rows from..to, on this thread.
+   */
+  private Groups groupSlice(int[] keyColumns, Measure[] measures, int from, int to) {
+    Groups groups = new Groups(keyColumns.length, measures);
+    long[] key = new long[keyColumns.length + 1];
+    for (int index = from; index < to; index++) {
+      int row = rows != null ? rows[index] : index;
+      int pageIndex = row / pageSize;
+      ColumnarPage page = pages[pageIndex];
+      int inPage = row - pageIndex * pageSize;
+      long nullMask = 0;
+      for (int i = 0; i < keyColumns.length; i++) {
+        int column = keyColumns[i];
+        if (page.isNull(column, inPage)) {
+          nullMask |= 1L << i;
+          key[i] = 0;
+        } else {
+          key[i] = keyOf(column, pageIndex, page, inPage);
+        }
+      }
+      key[keyColumns.length] = nullMask;
+      int group = groups.find(key);
+      for (State state : groups.states) {
+        state.add(group, pageIndex, page, inPage);
+      }
+    }
+    return groups;
+  }// end of groupSlice method
+
+  /**
+   * @return the value of a cell as a long that is equal for equal values and sorts the same way
+   *     (DOUBLE bits only sort the same way once turned back into a double).
+   */
+  private long keyOf(int column, int pageIndex, ColumnarPage page, int row) {
+    switch (columnTypes[column]) {
+      case DOUBLE:
+      case REAL:
+        double value = page.getDouble(column, row);
+        return Double.doubleToLongBits(value == 0 ? 0.0 : value); // -0.0 is the same as 0.0
+      case TEXT:
+        return textIds[column][pageIndex][page.getTextCode(column, row)];
+      default:
+        return page.getLong(column, row);
+    }
+  }
+
+  /**
+   * Turns a key back into the value getValue would give.
+   */
+  private Object valueOf(int column, long key) {
+    switch (columnTypes[column]) {
+      case INT:
+        return (int) key;
+      case LONG:
+        return key;
+      case DOUBLE:
+      case REAL:
+        return Double.longBitsToDouble(key);
+      case DECIMAL:
+        return BigDecimal.valueOf(key, scales[column]);
+      case DATE:
+        return LocalDate.ofEpochDay(key);
+      default:
+        return textValues[column][(int) key];
+    }
+  }
+
+  private ColumnType outputType(Measure measure) {
+    switch (measure.function) {
+      case COUNT:
+        return ColumnType.LONG;
+      case AVG:
+        return ColumnType.DOUBLE;
+      case SUM:
+        ColumnType type = columnTypes[measure.column];
+        return type == ColumnType.INT ? ColumnType.LONG : type;
+      default:
+        return columnTypes[measure.column];
+    }
+  }
+
+  /**
+   * Puts the distinct values of a TEXT column in order, once, and maps every page's dictionary
+   * codes to their position, so a text cell's key is one array lookup.
+   */
+  private synchronized void prepareText(int column) {
+    if (textValues[column] != null) {
+      return;
+    }
+    Set<String> distinct = new HashSet<>();
+    for (ColumnarPage page : pages) {
+      for (int code = 0; code < page.getDictionarySize(column); code++) {
+        distinct.add(page.getDictionaryValue(column, code));
+      }
+    }
+    String[] values = distinct.toArray(new String[0]);
+    Arrays.sort(values, TEXT_ORDER);
+    Map<String, Integer> positions = new HashMap<>(values.length * 2);
+    for (int i = 0; i < values.length; i++) {
+      positions.put(values[i], i);
+    }
+    int[][] ids = new int[pages.length][];
+    for (int pageIndex = 0; pageIndex < pages.length; pageIndex++) {
+      ids[pageIndex] = new int[pages[pageIndex].getDictionarySize(column)];
+      for (int code = 0; code < ids[pageIndex].length; code++) {
+        ids[pageIndex][code] = positions.get(pages[pageIndex].getDictionaryValue(column, code));
+      }
+    }
+    textIds[column] = ids;
+    textValues[column] = values;
+  }// end of prepareText method
+
+  private static Result result(List<String> names, List<ColumnType> types,
+      List<Integer> outScales, List<Object[]> out, long start) {
+    ColumnType[] typeArray = types.toArray(new ColumnType[0]);
+    int[] scaleArray = new int[outScales.size()];
+    for (int i = 0; i < scaleArray.length; i++) {
+      scaleArray[i] = outScales.get(i);
+    }
+    int pageSize = PagedResultList.DEFAULT_PAGE_SIZE;
+    List<ColumnarPage> outPages = new ArrayList<>();
+    for (int from = 0; from < out.size(); from += pageSize) {
+      outPages.add(ColumnarPage.of(typeArray, scaleArray,
+          out.subList(from, Math.min(out.size(), from + pageSize))));
+    }
+    return new Result(names, typeArray, outPages, out.size(), System.nanoTime() - start);
+  }
+
+  /**
+   * The groups found in some of the rows: an open addressing hash table of keys, and the state of
+   * every measure of every group in arrays indexed by group number.
+   */
+  private final class Groups {
+
+    private final int width; // the key columns, and a mask of which of them are null
+    private final State[] states;
+    private long[] keys;
+    private int[] table; // group number + 1 in each slot, 0 when empty
+    private int size = 0;
+
+    Groups(int keyColumns, Measure[] measures) {
+      this.width = keyColumns + 1;
+      this.keys = new long[16 * width];
+      this.table = new int[32];
+      this.states = new State[measures.length];
+      for (int i = 0; i < measures.length; i++) {
+        states[i] = new State(measures[i], 16);
+      }
+    }
+
+    /**
+     * @return the group number of the key, adding a group if it is new
+     */
+    int find(long[] key) {
+      int mask = table.length - 1;
+      int slot = hash(key) & mask;
+      while (true) {
+        int group = table[slot] - 1;
+        if (group < 0) {
+          return add(key, slot);
+        }
+        if (sameKey(group, key)) {
+          return group;
+        }
+        slot = (slot + 1) & mask;
+      }
+    }
+
+    private int add(long[] key, int slot) {
+      if (size * width == keys.length) {
+        int capacity = size * 2;
+        keys = Arrays.copyOf(keys, capacity * width);
+        for (State state : states) {
+          state.grow(capacity);
+        }
+      }
+      System.arraycopy(key, 0, keys, size * width, width);
+      table[slot] = size + 1;
+      size++;
+      if (size * 2 > table.length) {
+        rehash();
+      }
+      return size - 1;
+    }
+
+    private void rehash() {
+      table = new int[table.length * 2];
+      int mask = table.length - 1;
+      long[] key = new long[width];
+      for (int group = 0; group < size; group++) {
+        System.arraycopy(keys, group * width, key, 0, width);
+        int slot = hash(key) & mask;
+        while (table[slot] != 0) {
+          slot = (slot + 1) & mask;
+        }
+        table[slot] = group + 1;
+      }
+    }
+
+    private boolean sameKey(int group, long[] key) {
+      int at = group * width;
+      for (int i = 0; i < width; i++) {
+        if (keys[at + i] != key[i]) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    private int hash(long[] key) {
+      long hash = 0x9E3779B97F4A7C15L;
+      for (int i = 0; i < width; i++) {
+        hash = (hash ^ key[i]) * 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 32;
+      }
+      return (int) hash;
+    }
+
+    long key(int group, int column) {
+      return keys[group * width + column];
+    }
+
+    boolean isNull(int group, int column) {
+      return (keys[group * width + width - 1] & (1L << column)) != 0;
+    }
+
+    /**
+     * Copies one key column, and whether it is null, into a key of one column.
+     */
+    void copyKey(int group, int column, long[] key) {
+      key[0] = key(group, column);
+      key[1] = isNull(group, column) ? 1 : 0;
+    }
+
+    /**
+     * Copies the first columns of the key, and which of them are null, into a shorter key.
+     */
+    void copyKeys(int group, int columns, long[] key) {
+      System.arraycopy(keys, group * width, key, 0, columns);
+      key[columns] = keys[group * width + width - 1] & ((1L << columns) - 1);
+    }
+
+    /**
+     * Adds the groups of another table to this one, combining the states of equal keys.
+     */
+    void absorb(Groups other) {
+      long[] key = new long[width];
+      for (int group = 0; group < other.size; group++) {
+        System.arraycopy(other.keys, group * width, key, 0, width);
+        int into = find(key);
+        for (int i = 0; i < states.length; i++) {
+          states[i].merge(into, other.states[i], group);
+        }
+      }
+    }
+
+    /**
+     * @param columns the result column of each key column, for its type
+     * @return the group numbers sorted by key, nulls first
+     */
+    Integer[] sortedOrder(int[] columns) {
+      Integer[] order = new Integer[size];
+      for (int group = 0; group < size; group++) {
+        order[group] = group;
+      }
+      Arrays.sort(order, (a, b) -> {
+        for (int i = 0; i < columns.length; i++) {
+          boolean aNull = isNull(a, i);
+          boolean bNull = isNull(b, i);
+          if (aNull || bNull) {
+            if (aNull != bNull) {
+              return aNull ? -1 : 1;
+            }
+            continue;
+          }
+          int compared = columnTypes[columns[i]].isFloating()
+              ? Double.compare(Double.longBitsToDouble(key(a, i)),
+                  Double.longBitsToDouble(key(b, i)))
+              : Long.compare(key(a, i), key(b, i));
+          if (compared != 0) {
+            return compared;
+          }
+        }
+        return 0;
+      });
+      return order;
+    }
+  }// end of Groups class
+
+  /**
+   * The running count, sum, min or max of one measure, for every group. A DOUBLE or REAL column is
+   * added up in doubles, the others in longs (a DECIMAL as its unscaled value, so sums are exact).
+   */
+  private final class State {
+
+    private final Measure measure;
+    private final boolean floating;
+    private long[] counts; // values seen, or rows for COUNT(*)
+    private long[] longs;
+    private double[] doubles;
+
+    State(Measure measure, int capacity) {
+      this.measure = measure;
+      this.floating = measure.column >= 0 && columnTypes[measure.column].isFloating();
+      counts = new long[capacity];
+      if (measure.function != Function.COUNT) {
+        if (floating) {
+          doubles = new double[capacity];
+        } else {
+          longs = new long[capacity];
+        }
+      }
+    }
+
+    void grow(int capacity) {
+      counts = Arrays.copyOf(counts, capacity);
+      if (longs != null) {
+        longs = Arrays.copyOf(longs, capacity);
+      }
+      if (doubles != null) {
+        doubles = Arrays.copyOf(doubles, capacity);
+      }
+    }
+
+    void add(int group, int pageIndex, ColumnarPage page, int row) {
+      int column = measure.column;
+      if (column >= 0 && page.isNull(column, row)) {
+        return; // like SQL, nulls are left out
+      }
+      boolean first = counts[group]++ == 0;
+      switch (measure.function) {
+        case COUNT:
+          break;
+        case SUM:
+        case AVG:
+          if (floating) {
+            doubles[group] += page.getDouble(column, row);
+          } else {
+            longs[group] += page.getLong(column, row);
+          }
+          break;
+        default:
+          boolean min = measure.function == Function.MIN;
+          if (floating) {
+            double value = page.getDouble(column, row);
+            if (first || (min ? value < doubles[group] : value > doubles[group])) {
+              doubles[group] = value;
+            }
+          } else {
+            long value = keyOf(column, pageIndex, page, row);
+            if (first || (min ? value < longs[group] : value > longs[group])) {
+              longs[group] = value;
+            }
+          }
+      }
+    }// end of add method
+
+    void merge(int group, State other, int otherGroup) {
+      long otherCount = other.counts[otherGroup];
+      if (otherCount == 0) {
+        return;
+      }
+      boolean first = counts[group] == 0;
+      counts[group] += otherCount;
+      switch (measure.function) {
+        case COUNT:
+          break;
+        case SUM:
+        case AVG:
+          if (floating) {
+            doubles[group] += other.doubles[otherGroup];
+          } else {
+            longs[group] += other.longs[otherGroup];
+          }
+          break;
+        default:
+          boolean min = measure.function == Function.MIN;
+          if (floating) {
+            double value = other.doubles[otherGroup];
+            if (first || (min ? value < doubles[group] : value > doubles[group])) {
+              doubles[group] = value;
+            }
+          } else {
+            long value = other.longs[otherGroup];
+            if (first || (min ? value < longs[group] : value > longs[group])) {
+              longs[group] = value;
+            }
+          }
+      }
+    }// end of merge method
+
+    /**
+     * @return the value of the measure for the group, null if the group had no values (except
+     *     for COUNT, which is 0 then).
+     */
+    Object result(int group) {
+      long count = counts[group];
+      if (measure.function == Function.COUNT) {
+        return count;
+      }
+      if (count == 0) {
+        return null;
+      }
+      int column = measure.column;
+      switch (measure.function) {
+        case SUM:
+          return floating ? (Object) doubles[group] : columnTypes[column] == ColumnType.DECIMAL
+              ? BigDecimal.valueOf(longs[group], scales[column]) : (Object) longs[group];
+        case AVG:
+          double sum = floating ? doubles[group] : columnTypes[column] == ColumnType.DECIMAL
+              ? BigDecimal.valueOf(longs[group], scales[column]).doubleValue() : longs[group];
+          return sum / count;
+        default:
+          return floating ? doubles[group] : valueOf(column, longs[group]);
+      }
+    }
+  }// end of State class
+}// end of Aggregation class
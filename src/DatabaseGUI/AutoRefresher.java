@@ -0,0 +1,226 @@
+package DatabaseGUI;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import javafx.application.Platform;
+
+/**
+ * Runs a query again every few seconds and works out what changed since the last run (see
+ * RowDiff), so a dashboard tab only has to touch the rows that did. Every row is read each time,
+ * up to MAX_ROWS, and only the diff and the new pages are handed to the FX thread. A run that
+ * changed nothing hands over an empty diff, which costs the window next to nothing.
+ *
+ * The runs of every refreshing tab take turns on one "refresh-worker" thread, and the next run of
+ * a query is only scheduled once its last one has finished, so a slow query can't pile up runs.
+ *
+ * Rows are matched by the primary key of the table the query reads, if it reads just one and
+ * returns all of that table's primary key columns. Otherwise rows are matched by their content.
+ */
+public class AutoRefresher {
+
+  // the most rows a refreshed query may return. Bigger results stop refreshing.
+  public static final int MAX_ROWS = Integer.getInteger("databasegui.refresh.maxRows", 100000);
+
+  private static final ScheduledExecutorService worker =
+      Executors.newSingleThreadScheduledExecutor(QueryExecutor.workerThreads("refresh-worker"));
+
+  /**
+   * Receives the result of every run, on the JavaFX application thread.
+   */
+  public interface Listener {
+
+    /**
+     * @param diff the changes since the last run, or null for the first run (and a run whose
+     *     columns aren't the same as the last one's). The whole result is new then.
+     * @param nanos how long the run took, from execute to the diff being worked out
+     */
+    void refreshed(List<String> columnNames, ColumnType[] columnTypes, List<ColumnarPage> pages,
+        RowDiff diff, long nanos);
+
+    /**
+     * The run failed, or the result got too big. Refreshing stops.
+     */
+    void refreshFailed(SQLException sqlEx);
+  }
+
+  private final String sqlQuery;
+  private final SqlText.Parameters parameters;
+  private final List<String> values;
+  private final int seconds;
+  private final int queryTimeout;
+  private final Listener listener;
+  private volatile boolean stopped = false;
+  private ScheduledFuture<?> next;
+
+  // refresh-worker only
+  private List<String> columnNames;
+  private ColumnType[] columnTypes;
+  private volatile int[] keyColumns;
+  private RowDiff.Snapshot last;
+
+  /**
+   * @param parameterValues the text typed for each ? or :name parameter, by name
+   * @param seconds the time from the end of one run to the start of the next
+   * @param queryTimeout how long Derby may spend on each run, 0 for no limit
+   */
+  public AutoRefresher(String sqlQuery, Map<String, String> parameterValues, int seconds,
+      int queryTimeout, Listener listener) {
+    this.sqlQuery = sqlQuery;
+    this.parameters = SqlText.parameters(sqlQuery);
+    this.values = ParameterBinder.valuesOf(parameters, parameterValues);
+    this.seconds = Math.max(1, seconds);
+    this.queryTimeout = queryTimeout;
+    this.listener = listener;
+  }
+
+  /**
+   * Runs the query straight away, and then every few seconds until stop is called.
+   */
+  public synchronized void start() {
+    schedule(0);
+  }
+
+  /**
+   * Stops refreshing. A run that is under way finishes, but its result isn't handed over.
+   */
+  public synchronized void stop() {
+    stopped = true;
+    if (next != null) {
+      next.cancel(false);
+    }
+  }
+
+  public String getSql() {
+    return sqlQuery;
+  }
+
+  public int getSeconds() {
+    return seconds;
+  }
+
+  /**
+   * @return true if rows are matched by primary key, false if by content. Only known after the
+   *     first run.
+   */
+  public boolean isKeyed() {
+    int[] keys = keyColumns;
+    return keys != null && keys.length > 0;
+  }
+
+  private synchronized void schedule(long delaySeconds) {
+    if (stopped) {
+      return;
+    }
+    try {
+      next = worker.schedule(this::run, delaySeconds, TimeUnit.SECONDS);
+    } catch (RejectedExecutionException shutDown) {
+      // the window is closing
+    }
+  }
+
+  /**
+   * One run: reads every row, and diffs it against the run before. refresh-worker.
+   */
+  private void run() {
+    if (stopped) {
+      return;
+    }
+    long start = System.nanoTime();
+    try (Connection connection = DatabaseConnect.connect();
+        PreparedStatement statement = connection.prepareStatement(parameters.getSql(),
+            ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+      statement.setQueryTimeout(queryTimeout);
+      statement.setFetchSize(PagedResultList.DEFAULT_PAGE_SIZE);
+      ParameterBinder.bind(statement, parameters.getNames(), values);
+      List<ColumnarPage> pages = new ArrayList<>();
+      List<String> names;
+      ColumnType[] types;
+      try (ResultSet rs = statement.executeQuery()) {
+        names = columnNamesOf(rs.getMetaData());
+        types = ColumnarPage.typesOf(rs);
+        int[] scales = ColumnarPage.scalesOf(rs);
+        int rows = 0;
+        while (true) {
+          ColumnarPage page = ColumnarPage.read(rs, types, scales,
+              PagedResultList.DEFAULT_PAGE_SIZE, () -> stopped);
+          if (page.getRowCount() > 0) {
+            pages.add(page);
+            rows += page.getRowCount();
+          }
+          if (rows > MAX_ROWS) {
+            throw new SQLException("The result has more than " + MAX_ROWS
+                + " rows, too many to refresh");
+          }
+          if (page.getRowCount() < PagedResultList.DEFAULT_PAGE_SIZE) {
+            break;
+          }
+        }
+      }
+
+      boolean sameColumns = names.equals(columnNames) && Arrays.equals(types, columnTypes);
+      if (!sameColumns) {
+        columnNames = names; // a first run, or the table was changed under the query
+        columnTypes = types;
+        keyColumns = ResultEditor.primaryKeyColumns(connection.getMetaData(), sqlQuery, names);
+      }
+      WorkloadRecorder.record(WorkloadRecorder.REFRESH, sqlQuery, values,
+          System.nanoTime() - start, rowCount(pages), null);
+      RowDiff.Snapshot snapshot = RowDiff.snapshot(pages, keyColumns);
+      RowDiff diff = last != null && sameColumns ? RowDiff.compute(last, snapshot) : null;
+      last = snapshot;
+      long nanos = System.nanoTime() - start;
+      deliver(() -> listener.refreshed(names, types, pages, diff, nanos));
+      schedule(seconds);
+    } catch (SQLException sqlEx) {
+      WorkloadRecorder.record(WorkloadRecorder.REFRESH, sqlQuery, values,
+          System.nanoTime() - start, 0, sqlEx.getMessage());
+      if (!stopped) {
+        stopped = true;
+        Platform.runLater(() -> listener.refreshFailed(sqlEx));
+      }
+    }
+  }// end of run method
+
+  private static List<String> columnNamesOf(ResultSetMetaData rsmd) throws SQLException {
+    List<String> names = new ArrayList<>(rsmd.getColumnCount());
+    for (int column = 1; column <= rsmd.getColumnCount(); column++) {
+      names.add(rsmd.getColumnName(column));
+    }
+    return names;
+  }
+
+  private static long rowCount(List<ColumnarPage> pages) {
+    long rows = 0;
+    for (ColumnarPage page : pages) {
+      rows += page.getRowCount();
+    }
+    return rows;
+  }
+
+
+  /**
+   * Runs a callback on the FX thread, unless refreshing has been stopped since.
+   */
+  private void deliver(Runnable callback) {
+    Platform.runLater(() -> {
+      if (!stopped) {
+        callback.run();
+      }
+    });
+  }
+}// end of AutoRefresher class
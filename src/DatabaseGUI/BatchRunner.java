@@ -0,0 +1,400 @@
+package DatabaseGUI;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs SQL against salesDB without a window, for scheduled jobs and for timing queries on
+ * machines that have no display. The statements come from a file, from -e, or from stdin, and
+ * every query's rows are written out as they are read: one row is held in memory at a time, no
+ * matter how big the result is.
+ *
+ * java -cp out:lib/derby.jar DatabaseGUI.BatchRunner [options] [script.sql]
+ *
+ * Run with --help for the options. Timing goes to stderr so it never mixes with the rows.
+ */
+public class BatchRunner {
+
+  // the same default as the window's page size, without loading anything from JavaFX
+  private static final int DEFAULT_FETCH_SIZE = Integer.getInteger("databasegui.pageSize", 500);
+
+  private static final String USAGE = String.join(System.lineSeparator(),
+      "Usage: BatchRunner [options] [script.sql]",
+      "Runs every statement of the script (or of stdin when no script is given).",
+      "  -e, --execute SQL     run SQL instead of reading a script",
+      "  --format csv|jsonl    how query rows are written (default csv)",
+      "  --out FILE            write rows to FILE instead of stdout",
+      "  --fetch-size N        rows Derby hands over per fetch (default "
+          + DEFAULT_FETCH_SIZE + ")",
+      "  --limit N             stop each query after N rows (default no limit)",
+      "  --param NAME=VALUE    value for a ? (by position: 1=VALUE) or :NAME parameter",
+      "  --timing              print rows, time and rows/s of each statement to stderr,",
+      "                        then the latency of each stage (see QueryMetrics)",
+      "  --continue            keep going after a statement fails",
+      "  --help                show this message");
+
+  private enum Format {
+    CSV, JSONL
+  }
+
+  private Format format = Format.CSV;
+  private int fetchSize = DEFAULT_FETCH_SIZE;
+  private long limit = 0; // 0 means no limit
+  private boolean timing = false;
+  private boolean keepGoing = false;
+  private final Map<String, String> parameterValues = new HashMap<>();
+
+  /**
+   * @param args see USAGE
+   */
+  public static void main(String[] args) {
+    int exitCode;
+    try {
+      exitCode = run(args);
+    } catch (IllegalArgumentException badOption) {
+      System.err.println(badOption.getMessage());
+      System.err.println(USAGE);
+      exitCode = 2;
+    } finally {
+      QueryMetrics.dumpIfRequested();
+      DatabaseConnect.shutdown();
+    }
+    System.exit(exitCode);
+  }
+
+  /**
+   * Reads the options, runs the statements and returns the process exit code: 0 when everything
+   * ran, 1 when a statement failed or the output couldn't be written.
+   */
+  private static int run(String[] args) {
+    BatchRunner runner = new BatchRunner();
+    String script = null;
+    String scriptFile = null;
+    String outFile = null;
+
+    for (int i = 0; i < args.length; i++) {
+      String arg = args[i];
+      switch (arg) {
+        case "-e":
+        case "--execute":
+          script = value(args, ++i, arg);
+          break;
+        case "--format":
+          try {
+            runner.format = Format.valueOf(value(args, ++i, arg).toUpperCase());
+          } catch (IllegalArgumentException badFormat) {
+            throw new IllegalArgumentException("Unknown format: " + args[i]);
+          }
+          break;
+        case "--out":
+          outFile = value(args, ++i, arg);
+          break;
+        case "--fetch-size":
+          runner.fetchSize = Math.max(1, number(value(args, ++i, arg), arg));
+          break;
+        case "--limit":
+          runner.limit = Math.max(0, number(value(args, ++i, arg), arg));
+          break;
+        case "--param":
+          String parameter = value(args, ++i, arg);
+          int equals = parameter.indexOf('=');
+          if (equals <= 0) {
+            throw new IllegalArgumentException("--param needs NAME=VALUE, got: " + parameter);
+          }
+          String name = parameter.substring(0, equals);
+          runner.parameterValues.put(name.startsWith(":") ? name.substring(1) : name,
+              parameter.substring(equals + 1));
+          break;
+        case "--timing":
+          runner.timing = true;
+          break;
+        case "--continue":
+          runner.keepGoing = true;
+          break;
+        case "--help":
+          System.out.println(USAGE);
+          return 0;
+        default:
+          if (arg.startsWith("-") || scriptFile != null) {
+            throw new IllegalArgumentException("Unexpected argument: " + arg);
+          }
+          scriptFile = arg;
+      }
+    }// end of for loop
+
+    try {
+      if (script == null) {
+        script = scriptFile == null ? readAll(System.in) : readAll(new FileInputStream(scriptFile));
+      }
+      Writer out = new BufferedWriter(new OutputStreamWriter(outFile == null ? System.out
+          : new FileOutputStream(outFile), StandardCharsets.UTF_8), 1 << 16);
+      try {
+        return runner.runScript(script, out);
+      } finally {
+        out.flush();
+        if (outFile != null) {
+          out.close();
+        }
+      }
+    } catch (IOException ioEx) {
+      System.err.println("Issue reading the script or writing the output: " + ioEx.getMessage());
+      return 1;
+    }
+  }// end of run method
+
+  /**
+   * Runs every statement of the script in order, all on one pooled connection.
+   */
+  private int runScript(String script, Writer out) throws IOException {
+    List<String> statements = SqlText.splitStatements(script);
+    int failures = 0;
+    long totalRows = 0;
+    long connectStart = System.nanoTime();
+
+    QueryMetrics.Span connect = QueryMetrics.start();
+    try (Connection connection = DatabaseConnect.connect()) {
+      connect.end(QueryMetrics.Stage.CONNECT, null, 0);
+      long scriptStart = System.nanoTime();
+      if (timing) {
+        report("(connect)", 0, scriptStart - connectStart); // includes booting Derby
+      }
+      for (String sql : statements) {
+        long start = System.nanoTime();
+        try {
+          long rows = runStatement(connection, sql, out);
+          long nanos = System.nanoTime() - start;
+          WorkloadRecorder.record(WorkloadRecorder.BATCH, sql, parameterValues,
+              System.currentTimeMillis() - nanos / 1000000, nanos, rows, null);
+          totalRows += Math.max(0, rows);
+          if (timing) {
+            report(sql, rows, System.nanoTime() - start);
+          }
+        } catch (SQLException sqlEx) {
+          long nanos = System.nanoTime() - start;
+          WorkloadRecorder.record(WorkloadRecorder.BATCH, sql, parameterValues,
+              System.currentTimeMillis() - nanos / 1000000, nanos, 0, sqlEx.getMessage());
+          failures++;
+          System.err.println("Issue with SQL statement: " + oneLine(sql));
+          System.err.println("  " + sqlEx.getMessage());
+          if (!keepGoing) {
+            break;
+          }
+        }
+      }
+      if (timing && statements.size() > 1) {
+        report(statements.size() + " statements", totalRows, System.nanoTime() - scriptStart);
+      }
+      if (timing) {
+        System.err.print(QueryMetrics.report());
+      }
+    } catch (SQLException sqlEx) {
+      System.err.println("Unable to connect to the database: " + sqlEx.getMessage());
+      return 1;
+    }
+
+    return failures == 0 ? 0 : 1;
+  }// end of runScript method
+
+  /**
+   * Runs one statement. A query's rows are written straight from the ResultSet to the output.
+   *
+   * @return the number of rows written, or the update count of a statement that isn't a query.
+   */
+  private long runStatement(Connection connection, String sql, Writer out)
+      throws SQLException, IOException {
+    SqlText.Parameters parameters = SqlText.parameters(sql);
+    List<String> values = ParameterBinder.valuesOf(parameters, parameterValues);
+
+    QueryMetrics.Span stage = QueryMetrics.start();
+    try (PreparedStatement statement = connection.prepareStatement(parameters.getSql(),
+        ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+      statement.setFetchSize(fetchSize);
+      if (limit > 0 && limit <= Integer.MAX_VALUE) {
+        statement.setMaxRows((int) limit); // lets Derby stop early too
+      }
+      ParameterBinder.bind(statement, parameters.getNames(), values);
+      stage.end(QueryMetrics.Stage.PREPARE, sql, 0);
+
+      stage = QueryMetrics.start();
+      boolean query = statement.execute();
+      stage.end(QueryMetrics.Stage.EXECUTE, sql, 0);
+      if (!query) {
+        return statement.getUpdateCount();
+      }
+      stage = QueryMetrics.start();
+      try (ResultSet rs = statement.getResultSet()) {
+        long rows = writeRows(rs, out);
+        stage.end(QueryMetrics.Stage.FETCH, sql, rows); // includes writing the rows out
+        return rows;
+      }
+    }
+  }
+
+  private long writeRows(ResultSet rs, Writer out) throws SQLException, IOException {
+    ResultSetMetaData rsmd = rs.getMetaData();
+    int columnCount = rsmd.getColumnCount();
+    String[] names = new String[columnCount];
+    boolean[] numeric = new boolean[columnCount];
+    for (int column = 0; column < columnCount; column++) {
+      names[column] = rsmd.getColumnName(column + 1);
+      numeric[column] = ColumnType.of(rsmd, column + 1).isNumeric();
+    }
+
+    if (format == Format.CSV) {
+      for (int column = 0; column < columnCount; column++) {
+        if (column > 0) {
+          out.write(',');
+        }
+        writeCsv(out, names[column]);
+      }
+      out.write('\n');
+    }
+
+    long rows = 0;
+    while ((limit == 0 || rows < limit) && rs.next()) {
+      if (format == Format.CSV) {
+        for (int column = 0; column < columnCount; column++) {
+          if (column > 0) {
+            out.write(',');
+          }
+          String value = rs.getString(column + 1);
+          if (value != null) {
+            writeCsv(out, value); // NULL is an empty field
+          }
+        }
+      } else {
+        out.write('{');
+        for (int column = 0; column < columnCount; column++) {
+          if (column > 0) {
+            out.write(',');
+          }
+          writeJsonString(out, names[column]);
+          out.write(':');
+          String value = rs.getString(column + 1);
+          if (value == null) {
+            out.write("null");
+          } else if (numeric[column] && isJsonNumber(value)) {
+            out.write(value);
+          } else {
+            writeJsonString(out, value);
+          }
+        }
+        out.write('}');
+      }
+      out.write('\n');
+      rows++;
+    }
+    return rows;
+  }// end of writeRows method
+
+  /**
+   * Writes a CSV field, quoted only when it has to be (RFC 4180).
+   */
+  private static void writeCsv(Writer out, String value) throws IOException {
+    boolean quote = false;
+    for (int i = 0; i < value.length() && !quote; i++) {
+      char c = value.charAt(i);
+      quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+    }
+    if (!quote) {
+      out.write(value);
+      return;
+    }
+    out.write('"');
+    out.write(value.replace("\"", "\"\""));
+    out.write('"');
+  }
+
+  private static void writeJsonString(Writer out, String value) throws IOException {
+    out.write('"');
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      switch (c) {
+        case '"':
+          out.write("\\\"");
+          break;
+        case '\\':
+          out.write("\\\\");
+          break;
+        case '\n':
+          out.write("\\n");
+          break;
+        case '\r':
+          out.write("\\r");
+          break;
+        case '\t':
+          out.write("\\t");
+          break;
+        default:
+          if (c < 0x20) {
+            out.write(String.format("\\u%04x", (int) c));
+          } else {
+            out.write(c);
+          }
+      }
+    }
+    out.write('"');
+  }
+
+  /**
+   * Derby writes doubles like "NaN" or "Infinity" that JSON has no number for.
+   */
+  private static boolean isJsonNumber(String value) {
+    char first = value.charAt(0);
+    return (Character.isDigit(first) || first == '-') && !value.endsWith("Infinity");
+  }
+
+  private static void report(String what, long rows, long nanos) {
+    double ms = nanos / 1e6;
+    double perSecond = nanos == 0 ? 0 : rows * 1e9 / nanos;
+    System.err.println(String.format("%-50s %10d rows %10.1f ms %12.0f rows/s", oneLine(what),
+        rows, ms, perSecond));
+  }
+
+  private static String oneLine(String sql) {
+    String line = sql.replaceAll("\\s+", " ");
+    return line.length() > 50 ? line.substring(0, 47) + "..." : line;
+  }
+
+  private static String value(String[] args, int index, String option) {
+    if (index >= args.length) {
+      throw new IllegalArgumentException(option + " needs a value");
+    }
+    return args[index];
+  }
+
+  private static int number(String value, String option) {
+    try {
+      return Integer.parseInt(value.trim());
+    } catch (NumberFormatException notNumber) {
+      throw new IllegalArgumentException(option + " needs a whole number, got: " + value);
+    }
+  }
+
+  private static String readAll(InputStream in) throws IOException {
+    try (InputStream input = in) {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      byte[] buffer = new byte[8192];
+      int read;
+      while ((read = input.read(buffer)) > 0) {
+        bytes.write(buffer, 0, read);
+      }
+      return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+    }
+  }
+}
@@ -0,0 +1,648 @@
+package DatabaseGUI;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.JDBCType;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Loads a CSV file into an existing table, far faster than typing INSERTs. Three kinds of thread
+ * share the work:
+ *
+ * a reader splits the file into chunks of whole records (a quoted field may span lines),
+ * parser threads turn each chunk's fields into values of the table's column types, and
+ * the calling thread inserts the parsed rows with addBatch, committing every commitSize rows.
+ *
+ * The parsers can finish chunks in any order, so the inserting thread holds a chunk back until
+ * every chunk before it has been inserted, and the rows go in in the order of the file.
+ *
+ * Only a few chunks are ever in flight, so a file of any size is imported in constant memory.
+ * Parse errors name the line they were found on. Rows committed before an error stay committed.
+ *
+ * useSystemImport hands the whole file to Derby's own SYSCS_UTIL.SYSCS_IMPORT_TABLE_BULK instead.
+ * That is faster still, but all or nothing, with less helpful errors, and it matches columns by
+ * position rather than by header name.
+ *
+ * It can also be run on its own: java DatabaseGUI.BulkImporter --help
+ */
+public class BulkImporter {
+
+  private static final int CHUNK_RECORDS = 5000;
+
+  private static final String USAGE = String.join(System.lineSeparator(),
+      "Usage: BulkImporter [options] TABLE FILE.csv",
+      "  --batch N         rows per executeBatch (default 1000)",
+      "  --commit N        rows per commit (default 20000)",
+      "  --threads N       parser threads (default one less than the processor count)",
+      "  --no-header       the file has no header line, columns are matched by position",
+      "  --system-import   use Derby's SYSCS_IMPORT_TABLE_BULK instead",
+      "  --help            show this message");
+
+  /**
+   * Told about progress after every commit, on the importing thread.
+   */
+  public interface ProgressListener {
+
+    void rowsImported(long rows, long elapsedNanos);
+  }
+
+  private int batchSize = Integer.getInteger("databasegui.import.batch", 1000);
+  private int commitSize = Integer.getInteger("databasegui.import.commit", 20000);
+  private int threads = Integer.getInteger("databasegui.import.threads",
+      Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
+  private boolean header = true;
+  private boolean useSystemImport = Boolean.getBoolean("databasegui.import.system");
+  private final AtomicBoolean cancelled = new AtomicBoolean(false);
+  private volatile String tableName;
+
+  public BulkImporter setBatchSize(int batchSize) {
+    this.batchSize = Math.max(1, batchSize);
+    return this;
+  }
+
+  public BulkImporter setCommitSize(int commitSize) {
+    this.commitSize = Math.max(1, commitSize);
+    return this;
+  }
+
+  public BulkImporter setThreads(int threads) {
+    this.threads = Math.max(1, threads);
+    return this;
+  }
+
+  /**
+   * @param header true if the first line names the columns (matched to the table's columns by
+   *     name, in any order), false if the fields are in the table's column order
+   */
+  public BulkImporter setHeader(boolean header) {
+    this.header = header;
+    return this;
+  }
+
+  public BulkImporter setUseSystemImport(boolean useSystemImport) {
+    this.useSystemImport = useSystemImport;
+    return this;
+  }
+
+  /**
+   * Stops the import after the chunk of rows it's on. Whatever was committed so far stays.
+   */
+  public void cancel() {
+    cancelled.set(true);
+  }
+
+  public boolean isCancelled() {
+    return cancelled.get();
+  }
+
+  /**
+   * @return the name of the table the last import went into as the catalog has it (e.g. ORDERS,
+   *     or Orders if it was typed in quotes), without the schema. Null if the table wasn't found.
+   */
+  public String getTableName() {
+    return tableName;
+  }
+
+  /**
+   * Imports the file into the table.
+   *
+   * @param table the table name, optionally with its schema ("ORDERS" or "TWITTWER.ORDERS")
+   * @param progress told about every commit, may be null
+   * @return the number of rows imported
+   * @throws IOException if the file can't be read or a field doesn't fit its column
+   */
+  public long importCsv(String table, Path file, ProgressListener progress)
+      throws SQLException, IOException {
+    cancelled.set(false);
+    tableName = null;
+    long start = System.nanoTime();
+    try (Connection connection = DatabaseConnect.connect()) {
+      Target target = Target.find(connection, table);
+      tableName = target.table;
+      long rows = useSystemImport ? systemImport(connection, target, file)
+          : batchImport(connection, target, file, start, progress);
+      if (progress != null) {
+        progress.rowsImported(rows, System.nanoTime() - start);
+      }
+      return rows;
+    }
+  }
+
+  /**
+   * The parallel parse and batched insert described above.
+   */
+  private long batchImport(Connection connection, Target target, Path file, long start,
+      ProgressListener progress) throws SQLException, IOException {
+    if (header) {
+      // the header decides which columns the INSERT has, so it's read before anything else
+      target.useHeader(splitRecord(firstRecord(file)));
+    }
+    ExecutorService parsers = Executors.newFixedThreadPool(threads, runnable -> {
+      Thread thread = new Thread(runnable, "csv-parser");
+      thread.setDaemon(true);
+      return thread;
+    });
+    // parsed chunks waiting to be inserted, and a cap on chunks being read, parsed or waiting
+    BlockingQueue<Chunk> parsed = new ArrayBlockingQueue<>(threads * 2 + 1);
+    Semaphore inFlight = new Semaphore(threads * 2);
+    ChunkReader reader = new ChunkReader(file, target, header, parsers, parsed, inFlight);
+    Thread readerThread = new Thread(reader, "csv-reader");
+    readerThread.setDaemon(true);
+
+    long rows = 0;
+    boolean autoCommit = connection.getAutoCommit();
+    connection.setAutoCommit(false);
+    try (PreparedStatement insert = connection.prepareStatement(target.insertSql())) {
+      readerThread.start();
+      int batched = 0;
+      long uncommitted = 0;
+      int inserted = 0; // chunks, and so also the sequence number of the next one to insert
+      // chunks that were parsed before one that comes earlier in the file. They keep their
+      // inFlight permit, so there are never more than threads * 2 of them.
+      Map<Integer, Chunk> early = new HashMap<>();
+      while (!cancelled.get()) {
+        if (reader.finished && inserted == reader.submitted.get()) {
+          break;
+        }
+        Chunk chunk = early.remove(inserted);
+        if (chunk == null) {
+          chunk = parsed.poll(100, TimeUnit.MILLISECONDS);
+          if (chunk == null) {
+            continue; // check again whether the reader is done
+          }
+          if (chunk.sequence != inserted) {
+            early.put(chunk.sequence, chunk);
+            continue;
+          }
+        }
+        inserted++;
+        inFlight.release();
+        if (chunk.error != null) {
+          throw chunk.error;
+        }
+
+        for (Object[] row : chunk.rows) {
+          for (int column = 0; column < row.length; column++) {
+            if (row[column] == null) {
+              insert.setNull(column + 1, target.types[column]);
+            } else {
+              insert.setObject(column + 1, row[column]);
+            }
+          }
+          insert.addBatch();
+          if (++batched == batchSize) {
+            insert.executeBatch();
+            batched = 0;
+          }
+          rows++;
+          if (++uncommitted >= commitSize) {
+            insert.executeBatch();
+            batched = 0;
+            connection.commit();
+            uncommitted = 0;
+            if (progress != null) {
+              progress.rowsImported(rows, System.nanoTime() - start);
+            }
+          }
+        }
+      }// end of while loop
+      if (reader.error != null) {
+        throw reader.error;
+      }
+      if (batched > 0) {
+        insert.executeBatch();
+      }
+      connection.commit();
+    } catch (InterruptedException interrupted) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while importing", interrupted);
+    } finally {
+      reader.stop.set(true);
+      readerThread.interrupt();
+      parsers.shutdownNow();
+      if (!connection.getAutoCommit()) {
+        connection.rollback(); // only anything after the last commit, i.e. after a failure
+      }
+      connection.setAutoCommit(autoCommit);
+    }
+    return rows;
+  }// end of batchImport method
+
+  private long systemImport(Connection connection, Target target, Path file)
+      throws SQLException {
+    try (CallableStatement call = connection.prepareCall(
+        "CALL SYSCS_UTIL.SYSCS_IMPORT_TABLE_BULK(?, ?, ?, ',', '\"', 'UTF-8', 0, ?)")) {
+      call.setString(1, target.schema);
+      call.setString(2, target.table);
+      call.setString(3, file.toAbsolutePath().toString());
+      call.setInt(4, header ? 1 : 0); // lines to skip
+      call.execute();
+    }
+    // the procedure doesn't say how many rows it loaded, so count the data lines instead
+    try (BufferedReader lines = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+      long records = 0;
+      String line;
+      StringBuilder record = new StringBuilder();
+      while ((line = lines.readLine()) != null) {
+        record.append(line);
+        if (isComplete(record)) {
+          records++;
+          record.setLength(0);
+        } else {
+          record.append('\n');
+        }
+      }
+      return Math.max(0, records - (header ? 1 : 0));
+    } catch (IOException ioEx) {
+      return -1; // imported, but the count isn't known
+    }
+  }
+
+  /**
+   * @return the first record of the file, usually its first line.
+   */
+  private static String firstRecord(Path file) throws IOException {
+    try (BufferedReader lines = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+      StringBuilder record = new StringBuilder();
+      String line;
+      while ((line = lines.readLine()) != null) {
+        record.append(line);
+        if (isComplete(record)) {
+          break;
+        }
+        record.append('\n');
+      }
+      return record.toString();
+    }
+  }
+
+  /**
+   * @return true if the text has an even number of quotes, i.e. it doesn't end inside a quoted
+   *     field.
+   */
+  private static boolean isComplete(CharSequence record) {
+    int quotes = 0;
+    for (int i = 0; i < record.length(); i++) {
+      if (record.charAt(i) == '"') {
+        quotes++;
+      }
+    }
+    return quotes % 2 == 0;
+  }
+
+  /**
+   * Splits one CSV record into its fields (RFC 4180). An empty unquoted field is null, a quoted
+   * one ("") is an empty string.
+   */
+  static List<String> splitRecord(String record) {
+    List<String> fields = new ArrayList<>();
+    StringBuilder field = new StringBuilder();
+    boolean quoted = false;
+    boolean wasQuoted = false;
+    for (int i = 0; i < record.length(); i++) {
+      char c = record.charAt(i);
+      if (quoted) {
+        if (c == '"') {
+          if (i + 1 < record.length() && record.charAt(i + 1) == '"') {
+            field.append('"');
+            i++;
+          } else {
+            quoted = false;
+          }
+        } else {
+          field.append(c);
+        }
+      } else if (c == '"') {
+        quoted = true;
+        wasQuoted = true;
+      } else if (c == ',') {
+        fields.add(field.length() == 0 && !wasQuoted ? null : field.toString());
+        field.setLength(0);
+        wasQuoted = false;
+      } else if (c != '\r') {
+        field.append(c);
+      }
+    }
+    fields.add(field.length() == 0 && !wasQuoted ? null : field.toString());
+    return fields;
+  }// end of splitRecord method
+
+  /**
+   * The table being imported into, and which CSV field goes into which of its columns.
+   */
+  private static class Target {
+
+    private String schema;
+    private String table;
+    private final List<String> columns = new ArrayList<>();
+    private int[] types;    // java.sql.Types of each column
+    private int[] fieldFor; // which CSV field each column is read from, -1 for none
+
+    static Target find(Connection connection, String name) throws SQLException {
+      Target target = new Target();
+      int dot = name.indexOf('.');
+      // unquoted names are stored in upper case, so look for that unless it was typed in quotes.
+      // getSchema already gives the name as it is stored.
+      target.schema = dot < 0 ? connection.getSchema() : unquote(name.substring(0, dot).trim());
+      target.table = unquote(name.substring(dot + 1).trim());
+
+      List<Integer> types = new ArrayList<>();
+      DatabaseMetaData meta = connection.getMetaData();
+      try (ResultSet rs = meta.getColumns(null, target.schema, target.table, null)) {
+        while (rs.next()) {
+          target.columns.add(rs.getString("COLUMN_NAME"));
+          types.add(rs.getInt("DATA_TYPE"));
+        }
+      }
+      if (target.columns.isEmpty()) {
+        throw new SQLException("Table " + target.schema + "." + target.table + " not found",
+            "42X05");
+      }
+      target.types = types.stream().mapToInt(Integer::intValue).toArray();
+      target.fieldFor = new int[target.columns.size()];
+      for (int column = 0; column < target.fieldFor.length; column++) {
+        target.fieldFor[column] = column; // by position until a header says otherwise
+      }
+      return target;
+    }
+
+    private static String unquote(String name) {
+      return name.startsWith("\"") && name.endsWith("\"") && name.length() > 1
+          ? name.substring(1, name.length() - 1) : name.toUpperCase(Locale.ROOT);
+    }
+
+    /**
+     * Matches the header's field names to the table's columns. Columns the file doesn't have are
+     * left out of the INSERT, so they get their default.
+     */
+    void useHeader(List<String> names) throws IOException {
+      boolean[] matched = new boolean[names.size()];
+      for (int column = 0; column < columns.size(); column++) {
+        fieldFor[column] = -1;
+        for (int field = 0; field < names.size(); field++) {
+          String name = names.get(field);
+          if (name != null && name.trim().equalsIgnoreCase(columns.get(column))) {
+            fieldFor[column] = field;
+            matched[field] = true;
+          }
+        }
+      }
+      for (int field = 0; field < names.size(); field++) {
+        if (!matched[field]) {
+          throw new IOException("Line 1: " + table + " has no column named " + names.get(field));
+        }
+      }
+      // drop the columns the file doesn't have
+      List<String> kept = new ArrayList<>();
+      List<Integer> keptTypes = new ArrayList<>();
+      List<Integer> keptFields = new ArrayList<>();
+      for (int column = 0; column < columns.size(); column++) {
+        if (fieldFor[column] >= 0) {
+          kept.add(columns.get(column));
+          keptTypes.add(types[column]);
+          keptFields.add(fieldFor[column]);
+        }
+      }
+      columns.clear();
+      columns.addAll(kept);
+      types = keptTypes.stream().mapToInt(Integer::intValue).toArray();
+      fieldFor = keptFields.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    String insertSql() {
+      StringBuilder sql = new StringBuilder("INSERT INTO \"").append(schema).append("\".\"")
+          .append(table).append("\" (");
+      StringBuilder values = new StringBuilder();
+      for (int column = 0; column < columns.size(); column++) {
+        sql.append(column == 0 ? "\"" : ", \"").append(columns.get(column)).append('"');
+        values.append(column == 0 ? "?" : ", ?");
+      }
+      return sql.append(") VALUES (").append(values).append(')').toString();
+    }
+
+    /**
+     * Turns one record into the values of a row.
+     */
+    Object[] parse(String record, long line) throws IOException {
+      List<String> fields = splitRecord(record);
+      Object[] row = new Object[columns.size()];
+      for (int column = 0; column < row.length; column++) {
+        String field = fieldFor[column] < fields.size() ? fields.get(fieldFor[column]) : null;
+        if (field == null) {
+          continue;
+        }
+        try {
+          row[column] = ParameterBinder.convert(types[column], field);
+        } catch (IllegalArgumentException badValue) {
+          throw new IOException("Line " + line + ": '" + field + "' is not a valid "
+              + JDBCType.valueOf(types[column]).getName() + " for " + columns.get(column));
+        }
+      }
+      return row;
+    }
+  }// end of Target class
+
+  /**
+   * A group of records from the file, and once parsed, their rows (or what went wrong).
+   */
+  private static class Chunk {
+
+    private final int sequence; // 0 for the first chunk of the file, 1 for the next...
+    private final long firstLine;
+    private final List<String> records;
+    private final List<Object[]> rows = new ArrayList<>();
+    private IOException error;
+
+    Chunk(int sequence, long firstLine, List<String> records) {
+      this.sequence = sequence;
+      this.firstLine = firstLine;
+      this.records = records;
+    }
+  }
+
+  /**
+   * Reads the file into chunks of whole records and hands each to a parser thread. Waits for a
+   * permit before every chunk, so it can't run ahead of the inserting thread.
+   */
+  private static class ChunkReader implements Runnable {
+
+    private final Path file;
+    private final Target target;
+    private final boolean skipHeader;
+    private final ExecutorService parsers;
+    private final BlockingQueue<Chunk> parsed;
+    private final Semaphore inFlight;
+    private final AtomicInteger submitted = new AtomicInteger();
+    private final AtomicBoolean stop = new AtomicBoolean(false);
+    private volatile boolean finished = false;
+    private volatile IOException error;
+
+    ChunkReader(Path file, Target target, boolean skipHeader, ExecutorService parsers,
+        BlockingQueue<Chunk> parsed, Semaphore inFlight) {
+      this.file = file;
+      this.target = target;
+      this.skipHeader = skipHeader;
+      this.parsers = parsers;
+      this.parsed = parsed;
+      this.inFlight = inFlight;
+    }
+
+    @Override
+    public void run() {
+      try (BufferedReader lines = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+        List<String> records = new ArrayList<>(CHUNK_RECORDS);
+        StringBuilder record = new StringBuilder();
+        long lineNumber = 0;
+        long recordLine = 1;
+        long chunkLine = 1;
+        boolean first = true;
+        String line;
+        while (!stop.get() && (line = lines.readLine()) != null) {
+          lineNumber++;
+          record.append(line);
+          if (!isComplete(record)) {
+            record.append('\n'); // a quoted field goes on to the next line
+            continue;
+          }
+          if (first && skipHeader) {
+            // already read by batchImport
+          } else if (record.length() > 0) {
+            if (records.isEmpty()) {
+              chunkLine = recordLine;
+            }
+            records.add(record.toString());
+            if (records.size() == CHUNK_RECORDS) {
+              submit(chunkLine, records);
+              records = new ArrayList<>(CHUNK_RECORDS);
+            }
+          }
+          first = false;
+          record.setLength(0);
+          recordLine = lineNumber + 1;
+        }
+        if (record.length() > 0) {
+          throw new IOException("Line " + recordLine + ": a quoted field is never closed");
+        }
+        if (!records.isEmpty()) {
+          submit(chunkLine, records);
+        }
+      } catch (IOException ioEx) {
+        error = ioEx;
+      } catch (InterruptedException interrupted) {
+        // the import was stopped
+      } finally {
+        finished = true;
+      }
+    }// end of run method
+
+    private void submit(long firstLine, List<String> records) throws InterruptedException {
+      inFlight.acquire();
+      Chunk chunk = new Chunk(submitted.getAndIncrement(), firstLine, records);
+      parsers.execute(() -> {
+        long line = chunk.firstLine;
+        try {
+          for (String record : chunk.records) {
+            chunk.rows.add(target.parse(record, line));
+            line += countLines(record);
+          }
+        } catch (IOException ioEx) {
+          chunk.error = ioEx;
+        }
+        try {
+          parsed.put(chunk);
+        } catch (InterruptedException interrupted) {
+          Thread.currentThread().interrupt();
+        }
+      });
+    }
+  }// end of ChunkReader class
+
+  private static int countLines(String record) {
+    int lines = 1;
+    for (int i = 0; i < record.length(); i++) {
+      if (record.charAt(i) == '\n') {
+        lines++;
+      }
+    }
+    return lines;
+  }
+
+  /**
+   * Runs an import from the command line and prints the rows per second.
+   */
+  public static void main(String[] args) {
+    BulkImporter importer = new BulkImporter();
+    List<String> positional = new ArrayList<>();
+    int exitCode = 0;
+    try {
+      for (int i = 0; i < args.length; i++) {
+        switch (args[i]) {
+          case "--batch":
+            importer.setBatchSize(Integer.parseInt(args[++i]));
+            break;
+          case "--commit":
+            importer.setCommitSize(Integer.parseInt(args[++i]));
+            break;
+          case "--threads":
+            importer.setThreads(Integer.parseInt(args[++i]));
+            break;
+          case "--no-header":
+            importer.setHeader(false);
+            break;
+          case "--system-import":
+            importer.setUseSystemImport(true);
+            break;
+          case "--help":
+            System.out.println(USAGE);
+            return;
+          default:
+            positional.add(args[i]);
+        }
+      }
+      if (positional.size() != 2) {
+        System.err.println(USAGE);
+        System.exit(2);
+      }
+      long rows = importer.importCsv(positional.get(0), Paths.get(positional.get(1)),
+          (soFar, nanos) -> System.err.println(describe(soFar, nanos)));
+      System.out.println("Imported " + rows + " rows");
+    } catch (SQLException | IOException | RuntimeException ex) {
+      System.err.println("Import failed: " + ex.getMessage());
+      exitCode = 1;
+    } finally {
+      DatabaseConnect.shutdown();
+    }
+    System.exit(exitCode);
+  }// end of main method
+
+  /**
+   * @return e.g. "120000 rows in 3.2 s (37500 rows/s)"
+   */
+  public static String describe(long rows, long elapsedNanos) {
+    double seconds = elapsedNanos / 1e9;
+    return String.format("%d rows in %.1f s (%.0f rows/s)", rows, seconds,
+        rows / Math.max(seconds, 1e-9));
+  }
+}
@@ -0,0 +1,75 @@
+package DatabaseGUI;
+
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+
+/**
+ * How a result column is stored in a ColumnarPage. Number and date columns are kept in primitive
+ * arrays, everything else is read with getString and kept as text.
+ */
+public enum ColumnType {
+  INT,     // INTEGER, SMALLINT, TINYINT
+  LONG,    // BIGINT
+  DOUBLE,  // DOUBLE, FLOAT
+  DECIMAL, // DECIMAL and NUMERIC, stored as an unscaled long (up to 18 digits)
+  DATE,    // DATE, stored as days since 1970-01-01
+  TEXT,    // everything else
+  REAL;    // REAL, stored as a double like DOUBLE but shown as a float. Last since the ordinal is
+           // written to spill and COLUMNAR files.
+
+  // the most digits an unscaled DECIMAL value can have and still fit in a long
+  private static final int MAX_LONG_DIGITS = 18;
+
+  /**
+   * Picks the storage for a column from the ResultSet's metadata.
+   *
+   * @param rsmd the metadata of the ResultSet
+   * @param column the column number, starting at 1 like JDBC
+   */
+  public static ColumnType of(ResultSetMetaData rsmd, int column) throws SQLException {
+    switch (rsmd.getColumnType(column)) {
+      case Types.INTEGER:
+      case Types.SMALLINT:
+      case Types.TINYINT:
+        return INT;
+      case Types.BIGINT:
+        return LONG;
+      case Types.DOUBLE:
+      case Types.FLOAT:
+        return DOUBLE;
+      case Types.REAL:
+        return REAL;
+      case Types.DECIMAL:
+      case Types.NUMERIC:
+        // a DECIMAL(31) value won't fit in a long, so it's kept as text instead
+        return rsmd.getPrecision(column) <= MAX_LONG_DIGITS ? DECIMAL : TEXT;
+      case Types.DATE:
+        return DATE;
+      default:
+        return TEXT;
+    }
+  }
+
+  /**
+   * @return true for the types that are shown right-aligned and sorted by value.
+   */
+  public boolean isNumeric() {
+    return this == INT || this == LONG || this == DOUBLE || this == DECIMAL || this == REAL;
+  }
+
+  /**
+   * @return true for the types kept as doubles, DOUBLE and REAL.
+   */
+  public boolean isFloating() {
+    return this == DOUBLE || this == REAL;
+  }
+
+  /**
+   * Turns the value of a DOUBLE or REAL column into text. A REAL only has the precision of a
+   * float, so it's shown as one: 1.1 rather than the 1.100000023841858 of the widened double.
+   */
+  public String format(double value) {
+    return this == REAL ? Float.toString((float) value) : Double.toString(value);
+  }
+}
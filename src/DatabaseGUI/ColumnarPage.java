@@ -0,0 +1,671 @@
+package DatabaseGUI;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+
+/**
+ * One page of a query result, stored column by column. Number and date columns go straight into
+ * primitive arrays (no String, no boxing), and text columns are dictionary encoded: every distinct
+ * value is kept once and the rows only hold an int code pointing at it.
+ *
+ * Values are only turned into Strings when a cell is actually drawn, see format.
+ */
+public class ColumnarPage {
+
+  private final ColumnType[] types;
+  private final int[] scales; // decimal places of each DECIMAL column
+  private final Column[] columns;
+  private final ResultRow[] rows;
+  private final int rowCount;
+
+  private ColumnarPage(ColumnType[] types, int[] scales, Column[] columns, int rowCount) {
+    this.types = types;
+    this.scales = scales;
+    this.columns = columns;
+    this.rowCount = rowCount;
+    this.rows = new ResultRow[rowCount];
+    for (int row = 0; row < rowCount; row++) {
+      rows[row] = new ResultRow(this, row);
+    }
+  }
+
+  /**
+   * Reads up to maxRows rows from where the ResultSet's cursor is.
+   *
+   * @param rs the open ResultSet
+   * @param types how each column is stored, see ColumnType.of
+   * @param scales the decimal places of each column (only used for DECIMAL columns)
+   * @param maxRows the most rows to read
+   * @param stop checked before every row, reading stops early when it returns true
+   * @return the page. It holds fewer than maxRows rows if the ResultSet ran out (or stop said so).
+   */
+  public static ColumnarPage read(ResultSet rs, ColumnType[] types, int[] scales, int maxRows,
+      BooleanSupplier stop) throws SQLException {
+    Column[] columns = new Column[types.length];
+    for (int column = 0; column < types.length; column++) {
+      columns[column] = Column.create(types[column], scales[column], maxRows);
+    }
+
+    int rowCount = 0;
+    while (rowCount < maxRows && !stop.getAsBoolean() && rs.next()) {
+      for (int column = 0; column < columns.length; column++) {
+        columns[column].read(rs, column + 1, rowCount);
+      }
+      rowCount++;
+    }
+
+    for (Column column : columns) {
+      column.trim(rowCount);
+    }
+    return new ColumnarPage(types, scales, columns, rowCount);
+  }
+
+  /**
+   * Makes a page of values worked out in memory rather than read from a ResultSet, e.g. the
+   * groups of an Aggregation.
+   *
+   * @param rows the values of each row, each of the class getValue gives for the column's type
+   *     (Integer for INT, BigDecimal for DECIMAL and so on), or null
+   */
+  public static ColumnarPage of(ColumnType[] types, int[] scales, List<Object[]> rows) {
+    Column[] columns = new Column[types.length];
+    for (int column = 0; column < types.length; column++) {
+      columns[column] = Column.create(types[column], scales[column], rows.size());
+      for (int row = 0; row < rows.size(); row++) {
+        Object value = rows.get(row)[column];
+        if (value == null) {
+          columns[column].nulls.set(row);
+        } else {
+          columns[column].set(row, value);
+        }
+      }
+      columns[column].trim(rows.size());
+    }
+    return new ColumnarPage(types.clone(), scales.clone(), columns, rows.size());
+  }
+
+  /**
+   * Works out the storage type and scale of every column of a ResultSet.
+   */
+  public static ColumnType[] typesOf(ResultSet rs) throws SQLException {
+    ColumnType[] types = new ColumnType[rs.getMetaData().getColumnCount()];
+    for (int column = 0; column < types.length; column++) {
+      types[column] = ColumnType.of(rs.getMetaData(), column + 1);
+    }
+    return types;
+  }
+
+  public static int[] scalesOf(ResultSet rs) throws SQLException {
+    int[] scales = new int[rs.getMetaData().getColumnCount()];
+    for (int column = 0; column < scales.length; column++) {
+      scales[column] = Math.max(0, rs.getMetaData().getScale(column + 1));
+    }
+    return scales;
+  }
+
+  public int getRowCount() {
+    return rowCount;
+  }
+
+  public int getColumnCount() {
+    return columns.length;
+  }
+
+  public ColumnType getType(int column) {
+    return types[column];
+  }
+
+  /**
+   * @return the row object the TableView shows for a row of this page.
+   */
+  public ResultRow getRow(int row) {
+    return rows[row];
+  }
+
+  public boolean isNull(int column, int row) {
+    return columns[column].nulls.get(row);
+  }
+
+  /**
+   * @return the value of an INT, LONG or DATE column (days since 1970 for DATE), or the unscaled
+   *     value of a DECIMAL column.
+   */
+  public long getLong(int column, int row) {
+    return columns[column].getLong(row);
+  }
+
+  /**
+   * @return the value of any number column as a double.
+   */
+  public double getDouble(int column, int row) {
+    return columns[column].getDouble(row);
+  }
+
+  /**
+   * @return the value of a TEXT column, or null.
+   */
+  public String getText(int column, int row) {
+    return ((TextColumn) columns[column]).getText(row);
+  }
+
+  /**
+   * @return the dictionary code of a TEXT value: rows with equal text have equal codes. Only
+   *     meaningful within this page, and not for nulls.
+   */
+  public int getTextCode(int column, int row) {
+    return ((TextColumn) columns[column]).codes[row];
+  }
+
+  /**
+   * @return how many distinct values a TEXT column has in this page.
+   */
+  public int getDictionarySize(int column) {
+    return ((TextColumn) columns[column]).dictionary.size();
+  }
+
+  /**
+   * @return the text a dictionary code stands for, see getTextCode.
+   */
+  public String getDictionaryValue(int column, int code) {
+    return ((TextColumn) columns[column]).dictionary.get(code);
+  }
+
+  /**
+   * @return the decimal places of a DECIMAL column.
+   */
+  public int getScale(int column) {
+    return scales[column];
+  }
+
+  /**
+   * @return the value as the matching Java object (Integer, Long, Double, BigDecimal, LocalDate or
+   *     String), or null.
+   */
+  public Object getValue(int column, int row) {
+    if (isNull(column, row)) {
+      return null;
+    }
+    switch (types[column]) {
+      case INT:
+        return (int) getLong(column, row);
+      case LONG:
+        return getLong(column, row);
+      case DOUBLE:
+      case REAL:
+        return getDouble(column, row);
+      case DECIMAL:
+        return BigDecimal.valueOf(getLong(column, row), scales[column]);
+      case DATE:
+        return LocalDate.ofEpochDay(getLong(column, row));
+      default:
+        return getText(column, row);
+    }
+  }
+
+  /**
+   * Turns a value into the text shown in its cell, the same text rs.getString would have given.
+   */
+  public String format(int column, int row) {
+    if (isNull(column, row)) {
+      return "null";
+    }
+    switch (types[column]) {
+      case INT:
+      case LONG:
+        return Long.toString(getLong(column, row));
+      case DOUBLE:
+      case REAL:
+        return types[column].format(getDouble(column, row));
+      case DECIMAL:
+        return BigDecimal.valueOf(getLong(column, row), scales[column]).toPlainString();
+      case DATE:
+        return LocalDate.ofEpochDay(getLong(column, row)).toString();
+      default:
+        return getText(column, row);
+    }
+  }
+
+  /**
+   * @return a rough count of the bytes the page takes up on the heap.
+   */
+  public long estimateBytes() {
+    long bytes = 64 + rowCount * 24L; // the page and its ResultRow objects
+    for (Column column : columns) {
+      bytes += column.estimateBytes();
+    }
+    return bytes;
+  }
+
+  /**
+   * @return how many bytes writeTo will write.
+   */
+  public int serializedSize() {
+    int bytes = 8;
+    for (Column column : columns) {
+      bytes += 5 + 4 + column.nulls.toLongArray().length * 8 + column.serializedSize();
+    }
+    return bytes;
+  }
+
+  /**
+   * Writes the page to the buffer as it is in memory: the primitive arrays as they are, and each
+   * distinct text once. Used to spill pages to disk, see SpillFile.
+   */
+  public void writeTo(ByteBuffer out) {
+    out.putInt(rowCount);
+    out.putInt(columns.length);
+    for (int column = 0; column < columns.length; column++) {
+      out.put((byte) types[column].ordinal());
+      out.putInt(scales[column]);
+      long[] nullWords = columns[column].nulls.toLongArray();
+      out.putInt(nullWords.length);
+      out.asLongBuffer().put(nullWords);
+      out.position(out.position() + nullWords.length * 8);
+      columns[column].writeValues(out);
+    }
+  }
+
+  /**
+   * Reads a page written by writeTo.
+   */
+  public static ColumnarPage readFrom(ByteBuffer in) {
+    int rowCount = in.getInt();
+    int columnCount = in.getInt();
+    ColumnType[] types = new ColumnType[columnCount];
+    int[] scales = new int[columnCount];
+    Column[] columns = new Column[columnCount];
+    for (int column = 0; column < columnCount; column++) {
+      types[column] = ColumnType.values()[in.get()];
+      scales[column] = in.getInt();
+      long[] nullWords = new long[in.getInt()];
+      in.asLongBuffer().get(nullWords);
+      in.position(in.position() + nullWords.length * 8);
+      columns[column] = Column.create(types[column], scales[column], 0);
+      columns[column].nulls.or(BitSet.valueOf(nullWords));
+      columns[column].readValues(in, rowCount);
+    }
+    return new ColumnarPage(types, scales, columns, rowCount);
+  }// end of readFrom method
+
+  /**
+   * The values of one column of the page. The subclasses differ only in the array they keep.
+   */
+  private abstract static class Column {
+
+    final BitSet nulls = new BitSet();
+
+    static Column create(ColumnType type, int scale, int capacity) {
+      switch (type) {
+        case INT:
+        case DATE:
+          return new IntColumn(type, capacity);
+        case LONG:
+        case DECIMAL:
+          return new LongColumn(type, scale, capacity);
+        case DOUBLE:
+        case REAL:
+          return new DoubleColumn(capacity);
+        default:
+          return new TextColumn(capacity);
+      }
+    }
+
+    abstract void read(ResultSet rs, int jdbcColumn, int row) throws SQLException;
+
+    abstract void set(int row, Object value);
+
+    abstract void trim(int rowCount);
+
+    abstract long getLong(int row);
+
+    abstract double getDouble(int row);
+
+    abstract long estimateBytes();
+
+    abstract int serializedSize();
+
+    abstract void writeValues(ByteBuffer out);
+
+    abstract void readValues(ByteBuffer in, int rowCount);
+  }
+
+  private static class IntColumn extends Column {
+
+    private final boolean date;
+    private int[] values;
+
+    IntColumn(ColumnType type, int capacity) {
+      date = type == ColumnType.DATE;
+      values = new int[capacity];
+    }
+
+    @Override
+    void read(ResultSet rs, int jdbcColumn, int row) throws SQLException {
+      if (date) {
+        Date value = rs.getDate(jdbcColumn);
+        if (value == null) {
+          nulls.set(row);
+        } else {
+          values[row] = (int) value.toLocalDate().toEpochDay();
+        }
+      } else {
+        values[row] = rs.getInt(jdbcColumn);
+        if (rs.wasNull()) {
+          nulls.set(row);
+        }
+      }
+    }
+
+    @Override
+    void set(int row, Object value) {
+      values[row] = date ? (int) ((LocalDate) value).toEpochDay() : ((Number) value).intValue();
+    }
+
+    @Override
+    void trim(int rowCount) {
+      if (rowCount < values.length) {
+        values = Arrays.copyOf(values, rowCount);
+      }
+    }
+
+    @Override
+    long getLong(int row) {
+      return values[row];
+    }
+
+    @Override
+    double getDouble(int row) {
+      return values[row];
+    }
+
+    @Override
+    long estimateBytes() {
+      return 16 + values.length * 4L;
+    }
+
+    @Override
+    int serializedSize() {
+      return values.length * 4;
+    }
+
+    @Override
+    void writeValues(ByteBuffer out) {
+      out.asIntBuffer().put(values);
+      out.position(out.position() + values.length * 4);
+    }
+
+    @Override
+    void readValues(ByteBuffer in, int rowCount) {
+      values = new int[rowCount];
+      in.asIntBuffer().get(values);
+      in.position(in.position() + rowCount * 4);
+    }
+  }
+
+  private static class LongColumn extends Column {
+
+    private final boolean decimal;
+    private final int scale;
+    private long[] values;
+
+    LongColumn(ColumnType type, int scale, int capacity) {
+      this.decimal = type == ColumnType.DECIMAL;
+      this.scale = scale;
+      values = new long[capacity];
+    }
+
+    @Override
+    void read(ResultSet rs, int jdbcColumn, int row) throws SQLException {
+      if (decimal) {
+        BigDecimal value = rs.getBigDecimal(jdbcColumn);
+        if (value == null) {
+          nulls.set(row);
+        } else {
+          values[row] = value.setScale(scale, RoundingMode.HALF_UP).unscaledValue()
+              .longValue();
+        }
+      } else {
+        values[row] = rs.getLong(jdbcColumn);
+        if (rs.wasNull()) {
+          nulls.set(row);
+        }
+      }
+    }
+
+    @Override
+    void set(int row, Object value) {
+      values[row] = decimal ? ((BigDecimal) value).setScale(scale, RoundingMode.HALF_UP)
+          .unscaledValue().longValue() : ((Number) value).longValue();
+    }
+
+    @Override
+    void trim(int rowCount) {
+      if (rowCount < values.length) {
+        values = Arrays.copyOf(values, rowCount);
+      }
+    }
+
+    @Override
+    long getLong(int row) {
+      return values[row];
+    }
+
+    @Override
+    double getDouble(int row) {
+      return decimal ? BigDecimal.valueOf(values[row], scale).doubleValue() : values[row];
+    }
+
+    @Override
+    long estimateBytes() {
+      return 16 + values.length * 8L;
+    }
+
+    @Override
+    int serializedSize() {
+      return values.length * 8;
+    }
+
+    @Override
+    void writeValues(ByteBuffer out) {
+      out.asLongBuffer().put(values);
+      out.position(out.position() + values.length * 8);
+    }
+
+    @Override
+    void readValues(ByteBuffer in, int rowCount) {
+      values = new long[rowCount];
+      in.asLongBuffer().get(values);
+      in.position(in.position() + rowCount * 8);
+    }
+  }
+
+  private static class DoubleColumn extends Column {
+
+    private double[] values;
+
+    DoubleColumn(int capacity) {
+      values = new double[capacity];
+    }
+
+    @Override
+    void read(ResultSet rs, int jdbcColumn, int row) throws SQLException {
+      values[row] = rs.getDouble(jdbcColumn);
+      if (rs.wasNull()) {
+        nulls.set(row);
+      }
+    }
+
+    @Override
+    void set(int row, Object value) {
+      values[row] = ((Number) value).doubleValue();
+    }
+
+    @Override
+    void trim(int rowCount) {
+      if (rowCount < values.length) {
+        values = Arrays.copyOf(values, rowCount);
+      }
+    }
+
+    @Override
+    long getLong(int row) {
+      return (long) values[row];
+    }
+
+    @Override
+    double getDouble(int row) {
+      return values[row];
+    }
+
+    @Override
+    long estimateBytes() {
+      return 16 + values.length * 8L;
+    }
+
+    @Override
+    int serializedSize() {
+      return values.length * 8;
+    }
+
+    @Override
+    void writeValues(ByteBuffer out) {
+      out.asDoubleBuffer().put(values);
+      out.position(out.position() + values.length * 8);
+    }
+
+    @Override
+    void readValues(ByteBuffer in, int rowCount) {
+      values = new double[rowCount];
+      in.asDoubleBuffer().get(values);
+      in.position(in.position() + rowCount * 8);
+    }
+  }
+
+  /**
+   * Text values, dictionary encoded. A column like customers.lastName has far fewer distinct
+   * values than rows, so each distinct String is kept once and shared by every row that has it.
+   */
+  private static class TextColumn extends Column {
+
+    private int[] codes;
+    private final List<String> dictionary = new ArrayList<>();
+    private Map<String, Integer> lookup = new HashMap<>(); // only needed while reading
+
+    TextColumn(int capacity) {
+      codes = new int[capacity];
+    }
+
+    @Override
+    void set(int row, Object value) {
+      String text = value.toString();
+      Integer code = lookup.get(text);
+      if (code == null) {
+        code = dictionary.size();
+        dictionary.add(text);
+        lookup.put(text, code);
+      }
+      codes[row] = code;
+    }
+
+    @Override
+    void read(ResultSet rs, int jdbcColumn, int row) throws SQLException {
+      String value = rs.getString(jdbcColumn);
+      if (value == null) {
+        nulls.set(row);
+        return;
+      }
+      Integer code = lookup.get(value);
+      if (code == null) {
+        code = dictionary.size();
+        dictionary.add(value);
+        lookup.put(value, code);
+      }
+      codes[row] = code;
+    }
+
+    @Override
+    void trim(int rowCount) {
+      if (rowCount < codes.length) {
+        codes = Arrays.copyOf(codes, rowCount);
+      }
+      lookup = null;
+    }
+
+    String getText(int row) {
+      return nulls.get(row) ? null : dictionary.get(codes[row]);
+    }
+
+    @Override
+    long getLong(int row) {
+      return Long.parseLong(getText(row));
+    }
+
+    @Override
+    double getDouble(int row) {
+      return Double.parseDouble(getText(row));
+    }
+
+    @Override
+    long estimateBytes() {
+      long bytes = 16 + codes.length * 4L + 16 + dictionary.size() * 8L;
+      for (String value : dictionary) {
+        bytes += 40 + value.length() * 2L;
+      }
+      return bytes;
+    }
+
+    @Override
+    int serializedSize() {
+      int bytes = 4 + codes.length * 4;
+      for (String value : dictionary) {
+        bytes += 4 + value.length() * 2;
+      }
+      return bytes;
+    }
+
+    @Override
+    void writeValues(ByteBuffer out) {
+      out.putInt(dictionary.size());
+      for (String value : dictionary) {
+        out.putInt(value.length());
+        for (int i = 0; i < value.length(); i++) {
+          out.putChar(value.charAt(i));
+        }
+      }
+      out.asIntBuffer().put(codes);
+      out.position(out.position() + codes.length * 4);
+    }
+
+    @Override
+    void readValues(ByteBuffer in, int rowCount) {
+      int size = in.getInt();
+      char[] chars = new char[64];
+      for (int code = 0; code < size; code++) {
+        int length = in.getInt();
+        if (length > chars.length) {
+          chars = new char[length];
+        }
+        for (int i = 0; i < length; i++) {
+          chars[i] = in.getChar();
+        }
+        dictionary.add(new String(chars, 0, length));
+      }
+      lookup = null;
+      codes = new int[rowCount];
+      in.asIntBuffer().get(codes);
+      in.position(in.position() + rowCount * 4);
+    }
+  }
+}
@@ -0,0 +1,82 @@
+package DatabaseGUI;
+
+import java.util.ArrayList;
+import java.util.List;
+import javafx.application.Platform;
+import javafx.geometry.Point2D;
+import javafx.geometry.Side;
+import javafx.scene.control.ContextMenu;
+import javafx.scene.control.MenuItem;
+import javafx.scene.control.TextArea;
+import javafx.scene.input.KeyCode;
+import javafx.scene.input.KeyEvent;
+
+/**
+ * Autocomplete for the query box. Ctrl+Space offers the tables and columns that fit the word at
+ * the caret, and so does typing a dot after a table name or alias. See SchemaCache.complete.
+ */
+public class CompletionMenu extends ContextMenu {
+
+  private final TextArea queryBox;
+  private final SchemaCache schemaCache;
+
+  public CompletionMenu(TextArea queryBox, SchemaCache schemaCache) {
+    this.queryBox = queryBox;
+    this.schemaCache = schemaCache;
+    queryBox.addEventFilter(KeyEvent.KEY_PRESSED, e -> {
+      if (e.getCode() == KeyCode.SPACE && e.isControlDown()) {
+        e.consume();
+        showCompletions(true);
+      }
+    });
+    queryBox.addEventHandler(KeyEvent.KEY_TYPED, e -> {
+      if (".".equals(e.getCharacter())) {
+        Platform.runLater(() -> showCompletions(false)); // once the dot is in the text
+      } else if (isShowing()) {
+        Platform.runLater(() -> showCompletions(false)); // narrow down as the word grows
+      }
+    });
+  }
+
+  /**
+   * Shows the names SchemaCache suggests for the word at the caret under the caret. Picking one
+   * puts it in place of what was typed of the word.
+   *
+   * @param insertSingle if there is only one suggestion, put it in right away
+   */
+  public void showCompletions(boolean insertSingle) {
+    int caret = queryBox.getCaretPosition();
+    SchemaCache.Completion completion = schemaCache.complete(queryBox.getText(), caret);
+    List<String> candidates = completion.getCandidates();
+    if (candidates.isEmpty()) {
+      hide();
+      return;
+    }
+    if (insertSingle && candidates.size() == 1) {
+      hide();
+      queryBox.replaceText(completion.getStart(), caret, candidates.get(0));
+      return;
+    }
+    List<MenuItem> items = new ArrayList<>();
+    for (String candidate : candidates) {
+      MenuItem item = new MenuItem(candidate);
+      item.setMnemonicParsing(false);
+      item.setOnAction(e -> queryBox.replaceText(completion.getStart(),
+          queryBox.getCaretPosition(), candidate));
+      items.add(item);
+    }
+    getItems().setAll(items);
+    Point2D caretOnScreen = null;
+    try {
+      caretOnScreen = queryBox.getInputMethodRequests() == null ? null
+          : queryBox.getInputMethodRequests().getTextLocation(0);
+    } catch (RuntimeException notLaidOut) {
+      // the skin can't place the caret before the text has been laid out, use the box instead
+    }
+    if (caretOnScreen != null) {
+      show(queryBox, caretOnScreen.getX(), caretOnScreen.getY());
+    } else {
+      show(queryBox, Side.BOTTOM, 0, 0);
+    }
+  }// end of showCompletions method
+}// end of CompletionMenu class
@@ -0,0 +1,229 @@
+package DatabaseGUI;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.Properties;
+
+/**
+ * Where salesDB is and how to get to it. The profile is picked with -Ddatabasegui.profile=NAME:
+ *
+ * embedded   (the default) opens lib/salesDB inside this program. Fastest, but Derby locks the
+ *            database, so no other program can open it at the same time.
+ * network    connects to a Derby Network Server on databasegui.server.host and
+ *            databasegui.server.port (localhost:1527). If none is running on this machine, one is
+ *            started inside this program (see NetworkServer) and the other programs connect to
+ *            that, so any number of windows and BatchRunners can share the database. Needs
+ *            derbyclient.jar and derbynet.jar, of the same Derby release as derby.jar, in lib.
+ *
+ * Other profiles are read from the properties file named by databasegui.profiles
+ * (databasegui.properties by default), e.g.
+ *
+ * profile.shared.url=jdbc:derby://dbhost:1527/lib/salesDB
+ * profile.shared.user=twittwer
+ * profile.shared.password=12345
+ *
+ * The database path is databasegui.db.path (lib/salesDB, with the separator of the platform).
+ * -Ddatabasegui.url still overrides the URL of whichever profile is picked.
+ */
+public final class ConnectionProfile {
+
+  public static final String EMBEDDED = "embedded";
+  public static final String NETWORK = "network";
+
+  private static final String DEFAULT_USER = "twittwer";
+  // I'm aware FindBugs-IDEA is yelling at me about this password, I'm just not sure how else
+  // to use the password connection.
+  private static final String DEFAULT_PASSWORD = "12345";
+  private static final String CLIENT_DRIVER = "org.apache.derby.jdbc.ClientDriver";
+
+  private static ConnectionProfile current;
+
+  private final String name;
+  private final String url;
+  private final String user;
+  private final String password;
+
+  private ConnectionProfile(String name, String url, String user, String password) {
+    this.name = name;
+    this.url = url;
+    this.user = user;
+    this.password = password;
+  }
+
+  /**
+   * @return the profile picked by the system properties. Read once, the first time it is needed.
+   */
+  public static synchronized ConnectionProfile current() {
+    if (current == null) {
+      current = named(System.getProperty("databasegui.profile", EMBEDDED));
+      String url = System.getProperty("databasegui.url");
+      if (url != null) {
+        current = new ConnectionProfile(current.name, url, current.user, current.password);
+      }
+    }
+    return current;
+  }
+
+  /**
+   * @throws IllegalArgumentException if there is no profile of that name
+   */
+  public static ConnectionProfile named(String name) {
+    if (EMBEDDED.equals(name)) {
+      return new ConnectionProfile(name, "jdbc:derby:" + databasePath(), DEFAULT_USER,
+          DEFAULT_PASSWORD);
+    }
+    if (NETWORK.equals(name)) {
+      // the server finds the database relative to the folder it was started in
+      return new ConnectionProfile(name, "jdbc:derby://" + NetworkServer.HOST + ":"
+          + NetworkServer.PORT + "/" + databasePath().replace('\\', '/'), DEFAULT_USER,
+          DEFAULT_PASSWORD);
+    }
+    Properties file = readProfiles();
+    String url = file.getProperty("profile." + name + ".url");
+    if (url == null) {
+      throw new IllegalArgumentException("No connection profile called " + name + " (there is "
+          + EMBEDDED + ", " + NETWORK + " and the profile.NAME.url entries of "
+          + profilesFile() + ")");
+    }
+    return new ConnectionProfile(name, url,
+        file.getProperty("profile." + name + ".user", DEFAULT_USER),
+        file.getProperty("profile." + name + ".password", DEFAULT_PASSWORD));
+  }
+
+  /**
+   * @return where salesDB is, relative to the folder the program runs in unless set otherwise
+   */
+  public static String databasePath() {
+    return System.getProperty("databasegui.db.path", Paths.get("lib", "salesDB").toString());
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public String getUrl() {
+    return url;
+  }
+
+  /**
+   * @return true if the database is opened inside this program rather than through a server.
+   */
+  public boolean isEmbedded() {
+    return url.startsWith("jdbc:derby:") && !url.startsWith("jdbc:derby://");
+  }
+
+  /**
+   * Opens a connection. For a network profile pointing at this machine, a server is started
+   * here first if none answers.
+   */
+  public Connection connect() throws SQLException {
+    if (isEmbedded()) {
+      try {
+        return DriverManager.getConnection(url, user, password);
+      } catch (SQLException sqlEx) {
+        if (isLockedByAnotherProgram(sqlEx)) {
+          throw new SQLException(databasePath() + " is open in another program. Only one program"
+              + " at a time can open it embedded; start them all with"
+              + " -Ddatabasegui.profile=network to share it", sqlEx.getSQLState(), sqlEx);
+        }
+        throw sqlEx;
+      }
+    }
+    loadClientDriver();
+    try {
+      return DriverManager.getConnection(url, user, password);
+    } catch (SQLException sqlEx) {
+      // 08001: nothing is listening. Another program may still be starting one, so only start
+      // one here if the port is free.
+      if (!"08001".equals(sqlEx.getSQLState()) || !NetworkServer.START
+          || !NETWORK.equals(name) || !NetworkServer.isLocal()) {
+        throw sqlEx;
+      }
+      NetworkServer.start();
+      return DriverManager.getConnection(url, user, password);
+    }
+  }// end of connect method
+
+  /**
+   * Closes the database cleanly, so the next start doesn't have to run recovery. Only an
+   * embedded database, or one served from this program, is closed: a server elsewhere keeps
+   * serving the other programs.
+   */
+  public void shutdown() {
+    boolean served = NetworkServer.stop(); // the database was open here for the other programs
+    String database = isEmbedded() ? url : served ? "jdbc:derby:" + databasePath() : null;
+    if (database == null) {
+      return;
+    }
+    int attributes = database.indexOf(';');
+    try {
+      DriverManager.getConnection((attributes < 0 ? database : database.substring(0, attributes))
+          + ";shutdown=true", user, password);
+    } catch (SQLException sqlEx) {
+      // Derby reports a successful shutdown with SQLState 08006.
+      if (!"08006".equals(sqlEx.getSQLState())) {
+        System.out.println("Issue shutting down the database: " + sqlEx.getMessage());
+      }
+    }
+  }// end of shutdown method
+
+  /**
+   * @return e.g. "network (jdbc:derby://localhost:1527/lib/salesDB)"
+   */
+  @Override
+  public String toString() {
+    return name + " (" + url + ")";
+  }
+
+  private static void loadClientDriver() throws SQLException {
+    try {
+      Class.forName(CLIENT_DRIVER);
+    } catch (ClassNotFoundException notBundled) {
+      throw new SQLException("Connecting to a Derby Network Server needs derbyclient.jar on the"
+          + " class path (and derbynet.jar to start one), from the same Derby release as"
+          + " lib/derby.jar", "08001", notBundled);
+    }
+  }
+
+  /**
+   * Derby wraps "another instance of Derby may have already booted the database" (XSDB6) in the
+   * error that the database couldn't be opened.
+   */
+  private static boolean isLockedByAnotherProgram(SQLException sqlEx) {
+    for (Throwable cause = sqlEx; cause != null; cause = cause.getCause()) {
+      if (cause instanceof SQLException && "XSDB6".equals(((SQLException) cause).getSQLState())) {
+        return true;
+      }
+      SQLException next = cause instanceof SQLException
+          ? ((SQLException) cause).getNextException() : null;
+      if (next != null && "XSDB6".equals(next.getSQLState())) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static Path profilesFile() {
+    return Paths.get(System.getProperty("databasegui.profiles", "databasegui.properties"));
+  }
+
+  private static Properties readProfiles() {
+    Properties profiles = new Properties();
+    Path file = profilesFile();
+    if (Files.isRegularFile(file)) {
+      try (InputStream in = Files.newInputStream(file)) {
+        profiles.load(in);
+      } catch (IOException ioEx) {
+        System.out.println("Unable to read the connection profiles in " + file + ": "
+            + ioEx.getMessage());
+      }
+    }
+    return profiles;
+  }
+}// end of ConnectionProfile class
@@ -1,64 +1,74 @@
 package DatabaseGUI;
 
-import javafx.animation.KeyFrame;
-import javafx.animation.KeyValue;
-import javafx.animation.Timeline;
 import javafx.beans.property.DoubleProperty;
+import javafx.beans.property.ReadOnlyDoubleProperty;
 import javafx.beans.property.SimpleDoubleProperty;
-import javafx.util.Duration;
 
-public class CustomAnimation {
+/**
+ * Moves something back and forth across a width: from 0 to width in the given number of seconds,
+ * and back again, for as long as it plays. Bind a node's translateX to xProperty to move it.
+ *
+ * It runs on the FrameClock and works out x from how long it has been playing, so a dropped frame
+ * doesn't slow it down, and changing the width or the time doesn't have to make anything new.
+ * Every animation has its own x and y.
+ */
+public class CustomAnimation implements FrameClock.FrameListener {
 
   private double width;
-  private Timeline timeline;
+  private double seconds = 5;
+  private long started = 0; // the time of the first frame, 0 until there was one
 
-  private static DoubleProperty x = new SimpleDoubleProperty();
-  private static DoubleProperty y = new SimpleDoubleProperty();
+  private final DoubleProperty x = new SimpleDoubleProperty();
+  private final DoubleProperty y = new SimpleDoubleProperty();
 
   CustomAnimation() {
     width = 200;
-    timeline = new Timeline(
-        new KeyFrame(Duration.seconds(0), new KeyValue(x, 0), new KeyValue(y, 0))
-        , new KeyFrame(Duration.seconds(5), new KeyValue(x, width), new KeyValue(y, 0)));
-    timeline.setAutoReverse(true);
-    timeline.setCycleCount(Timeline.INDEFINITE);
   }
 
   /**
    * This constructor was meant to allow a user to affect the distance traveled by the circle shape
-   * by assigning a value through the slider. I ran out of time to implement this.
+   * by assigning a value through the slider. The slider now calls setWidth instead.
    */
   CustomAnimation(double width) {
     this.width = width;
-    timeline = new Timeline(
-        new KeyFrame(Duration.seconds(0), new KeyValue(x, 0), new KeyValue(y, 0))
-        , new KeyFrame(Duration.seconds(5), new KeyValue(x, width), new KeyValue(y, 0)));
-    timeline.setAutoReverse(true);
-    timeline.setCycleCount(Timeline.INDEFINITE);
   }
 
-  /*
-  CustomAnimation(double userTime, double width){
-    this.width = width;
-    timeline = new Timeline(
-        new KeyFrame(Duration.seconds(0), new KeyValue(x, 0), new KeyValue(y, 0))
-        , new KeyFrame(Duration.seconds(userTime), new KeyValue(x, width), new KeyValue(y, 0)));
-    timeline.setAutoReverse(true);
-    timeline.setCycleCount(Timeline.INDEFINITE);
+  public void play() {
+    started = 0;
+    FrameClock.add(this);
+  }
+
+  public void stop() {
+    FrameClock.remove(this);
+  }
+
+  @Override
+  public void frame(long now) {
+    if (started == 0) {
+      started = now;
+    }
+    double cycles = (now - started) / (seconds * 1e9);
+    double phase = cycles % 2; // 0 to 1 on the way out, 1 to 2 on the way back
+    x.set(width * (phase <= 1 ? phase : 2 - phase));
   }
-  */
-  public Timeline getTimeline() {
-    return timeline;
+
+  public ReadOnlyDoubleProperty xProperty() {
+    return x;
+  }
+
+  public ReadOnlyDoubleProperty yProperty() {
+    return y;
   }
 
   public double getWidth() {
     return width;
   }
 
+  /**
+   * @param userTime how many seconds one way across takes
+   */
   public void setTimeline(double userTime) {
-    timeline = new Timeline(
-        new KeyFrame(Duration.seconds(0), new KeyValue(x, 0), new KeyValue(y, 0))
-        , new KeyFrame(Duration.seconds(userTime), new KeyValue(x, width), new KeyValue(y, 0)));
+    seconds = Math.max(0.1, userTime);
   }
 
   public void setWidth(double width) {
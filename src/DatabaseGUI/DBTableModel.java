@@ -36,7 +36,7 @@ public class DBTableModel {
   private ResultSet resultSet;
   private ResultSetMetaData metaData;
   private int numberOfRows;
-  private TableView actualTable = new TableView();
+  private TableView actualTable; // made on first use, so the model also works without a window
 
   private boolean databaseConnected = false;
 
@@ -48,13 +48,14 @@ public class DBTableModel {
     connection = DriverManager.getConnection(url, userName, pw);
     data = FXCollections.observableArrayList();
 
-    // ResultSet.TYPE_SCROLL_INSENSITIVE means:
-    //    The cursor can scroll forward and backward. Also, changes made to database aren't updated
-    //    in real time, so the results will not change while viewing.
+    // ResultSet.TYPE_FORWARD_ONLY means:
+    //    The cursor can only move forward. A scrollable cursor makes Derby build the whole result
+    //    before the first row can be read, which is slow (and memory hungry) for big results.
     // ResultSet.CONCUR_READ_ONLY means:
     //    the information returned cannot be modified. It is read-only.
-    sqlStatement = connection.createStatement(ResultSet.TYPE_SCROLL_INSENSITIVE,
+    sqlStatement = connection.createStatement(ResultSet.TYPE_FORWARD_ONLY,
         ResultSet.CONCUR_READ_ONLY);
+    sqlStatement.setFetchSize(PagedResultList.DEFAULT_PAGE_SIZE);
 
     databaseConnected = true; // if this statement has been reached then the database is connected
 
@@ -72,6 +73,7 @@ public class DBTableModel {
    */
   public void setQuery(String sqlQuery) throws SQLException {
     resultSet = sqlStatement.executeQuery(sqlQuery);
+    numberOfRows = 0;
 
 
     // Not being used, yet, but will provide useful info such as the amount of columns / rows
@@ -108,12 +110,8 @@ public class DBTableModel {
     }
     actualTable.setItems(data);
 */
-    // The first command sets the ResultSet object to focus on the very last object.
-    // The second command returns the current row number. Since it's focusing on the last object,
-    // integer value returned will represent the total number of rows.
-    // Apparently it's required for correct output.
-    resultSet.last(); // Not being used, yet.
-    numberOfRows = resultSet.getRow(); // Not being used, yet.
+    // The number of rows used to be found by jumping to the last row, but that only works on a
+    // scrollable cursor. Rows are counted by addRow as they are read, instead.
   }// end of setQuery method
 
   public ResultSet getResultSet(){
@@ -125,11 +123,14 @@ public class DBTableModel {
     for (int column = 1; column <= metaData.getColumnCount(); column++){
       row.add(resultSet.getString(column));
     }
-    System.out.println("Row [1] added " + row);
     data.add(row);
+    numberOfRows++;
   }
 
   public TableView getTableView(){
+    if (actualTable == null) {
+      actualTable = new TableView();
+    }
     return actualTable;
   }
 
@@ -159,6 +160,10 @@ public class DBTableModel {
     }
   }
 
+  /**
+   * @return the number of rows read so far. The cursor is forward-only, so the total is only known
+   *     once every row has been read.
+   */
   public int getTotalQueryRows(){
     return numberOfRows;
   }
@@ -1,41 +1,496 @@
 package DatabaseGUI;
 
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
 import java.sql.Connection;
-import java.sql.DriverManager;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Hands out connections to the salesDB database from a small, bounded pool. Opening an embedded
+ * Derby connection is far more expensive than running a simple query, so connections are opened
+ * ahead of time by warmUp and reused from then on.
+ *
+ * A connection returned by connect is a stand-in for the real one: calling close on it puts the
+ * real connection back in the pool instead of closing it. Everything else is passed straight
+ * through to Derby. prepareStatement goes through a per-connection StatementCache, so preparing
+ * the same SQL again on the same connection reuses the already compiled statement.
+ *
+ * The pool size and timeouts can be changed with system properties, e.g. -Ddatabasegui.pool.max=8
+ * Where the connections go is set by the ConnectionProfile, embedded lib/salesDB by default.
+ */
 public class DatabaseConnect {
 
-  private static Connection connection;
-  private static final String URL = "jdbc:derby:lib\\salesDB"; // relative path to salesDB database
-  private static final String USER = "twittwer"; // username to access database
-  // I'm aware FindBugs-IDEA is yelling at me about this password, I'm just not sure how else
-  // to use the password connection.
-  private static final String PASSWORD = "12345"; // password to access database
+  // The most connections that may be open at once, and how many are kept open while idle. By
+  // default enough for a query per processor with one to spare for a script or an export.
+  private static final int MAX_SIZE = Math.max(1, Integer.getInteger("databasegui.pool.max",
+      Math.max(4, Runtime.getRuntime().availableProcessors() + 1)));
+  private static final int MIN_IDLE = Math.min(MAX_SIZE,
+      Math.max(0, Integer.getInteger("databasegui.pool.minIdle", 2)));
+  // How long a borrower waits for a free connection before giving up.
+  private static final long BORROW_TIMEOUT_MS =
+      Long.getLong("databasegui.pool.borrowTimeout", 30000);
+  // Idle connections above MIN_IDLE are closed once they haven't been used for this long.
+  private static final long IDLE_TIMEOUT_MS = Long.getLong("databasegui.pool.idleTimeout", 300000);
+  private static final long REAP_INTERVAL_MS = 30000;
+  private static final int VALIDATION_TIMEOUT = 2; // seconds
+
+  // All pool state below is guarded by LOCK.
+  private static final Object LOCK = new Object();
+  private static final Deque<PooledConnection> idle = new ArrayDeque<>();
+  private static int openCount = 0;   // connections open, or being opened, in total
+  private static int activeCount = 0; // connections currently borrowed
+  private static boolean closed = false;
+  private static boolean booted = false; // true once any connection has been opened
+
+  // Statistics, also guarded by LOCK.
+  private static final long createdAt = System.nanoTime();
+  private static long borrowCount = 0;
+  private static long totalWaitNanos = 0;
+  private static long maxWaitNanos = 0;
+  private static long busyIntegral = 0; // sum of activeCount * nanoseconds spent at that count
+  private static long lastChange = createdAt;
+
+  private static ScheduledExecutorService reaper;
+
+  // The last connection each thread got from connect, so the old connect/disconnect pairing
+  // keeps working without one static Connection shared by every thread.
+  private static final ThreadLocal<Connection> threadConnection = new ThreadLocal<>();
+
+  /**
+   * Opens MIN_IDLE connections ahead of time and starts the idle connection reaper. Safe to call
+   * more than once. Called on startup so the first query doesn't pay for opening a connection.
+   */
+  public static void warmUp() throws SQLException {
+    startReaper();
+    List<PooledConnection> opened = new ArrayList<>();
+    try {
+      while (true) {
+        synchronized (LOCK) {
+          if (closed || openCount >= MIN_IDLE) {
+            break;
+          }
+          openCount++; // reserve the slot before opening outside the lock
+        }
+        opened.add(open());
+      }
+    } finally {
+      synchronized (LOCK) {
+        for (PooledConnection pooled : opened) {
+          idle.push(pooled);
+        }
+        LOCK.notifyAll();
+      }
+    }
+  }
 
   /**
-   * Attempts to make a connection with the static URL, username and password.
+   * Borrows a connection from the pool, opening a new one if none are idle and the pool isn't at
+   * its limit yet. Idle connections are validated before they are handed out.
    *
-   * @return returns a Connection object.
+   * @return returns a Connection object. Close it (or call disconnect) to return it to the pool.
    */
   public static Connection connect() throws SQLException {
-    connection = DriverManager.getConnection(URL, USER, PASSWORD);
-    return connection;
-  }
+    long start = System.nanoTime();
+    long deadline = start + TimeUnit.MILLISECONDS.toNanos(BORROW_TIMEOUT_MS);
+
+    while (true) {
+      PooledConnection pooled = null;
+      boolean openNew = false;
+
+      synchronized (LOCK) {
+        while (!closed && idle.isEmpty() && openCount >= MAX_SIZE) {
+          long remaining = deadline - System.nanoTime();
+          if (remaining <= 0) {
+            throw new SQLException("Timed out waiting for a database connection");
+          }
+          try {
+            TimeUnit.NANOSECONDS.timedWait(LOCK, remaining);
+          } catch (InterruptedException interrupted) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a database connection");
+          }
+        }
+        if (closed) {
+          throw new SQLException("The connection pool has been shut down");
+        }
+
+        if (!idle.isEmpty()) {
+          pooled = idle.pop(); // most recently used first, it's the least likely to be stale
+        } else {
+          openCount++;
+          openNew = true;
+        }
+      }
+
+      if (openNew) {
+        pooled = open();
+      } else if (!isValid(pooled)) {
+        discard(pooled);
+        continue; // try again with the next idle connection
+      }
+
+      synchronized (LOCK) {
+        long waited = System.nanoTime() - start;
+        borrowCount++;
+        totalWaitNanos += waited;
+        maxWaitNanos = Math.max(maxWaitNanos, waited);
+        changeActive(1);
+      }
+
+      Connection handle = pooled.borrow();
+      threadConnection.set(handle);
+      return handle;
+    }
+  }// end of connect method
 
   /**
-   * The disconnect method is performed to disconnect from the database.
+   * Returns the calling thread's most recent connection to the pool.
    *
    * @throws SQLException database connection may result in an SQLException
    */
   public static void disconnect() throws SQLException {
+    Connection connection = threadConnection.get();
+    threadConnection.remove();
+    // if there IS a connection AND said connection is not closed, go ahead and close it.
+    if (connection != null && !connection.isClosed()) {
+      connection.close();
+    }
+  }
+
+  /**
+   * Closes every pooled connection and shuts the embedded database down cleanly, so the next start
+   * doesn't have to run recovery. Borrowed connections are closed as they are returned. A
+   * database behind a network server in another program is left open for its other clients.
+   */
+  public static void shutdown() {
+    List<PooledConnection> toClose;
+    synchronized (LOCK) {
+      closed = true;
+      toClose = new ArrayList<>(idle);
+      idle.clear();
+      LOCK.notifyAll();
+    }
+    if (reaper != null) {
+      reaper.shutdownNow();
+    }
+    for (PooledConnection pooled : toClose) {
+      discard(pooled);
+    }
+    synchronized (LOCK) {
+      if (!booted) {
+        return; // Derby was never started, there is nothing to shut down
+      }
+    }
+
+    ConnectionProfile.current().shutdown();
+  }
+
+  /**
+   * @return a one-line summary of the pool, e.g. for a status bar.
+   */
+  public static String getPoolStatus() {
+    synchronized (LOCK) {
+      long now = System.nanoTime();
+      long integral = busyIntegral + activeCount * (now - lastChange);
+      double utilization = 100.0 * integral / ((double) MAX_SIZE * Math.max(1, now - createdAt));
+      double averageWait = borrowCount == 0 ? 0 : totalWaitNanos / (double) borrowCount / 1e6;
+      return String.format("Pool: %d/%d in use, %d idle, avg wait %.2f ms, max wait %.2f ms, "
+              + "utilization %.1f%%", activeCount, MAX_SIZE, idle.size(), averageWait,
+          maxWaitNanos / 1e6, utilization);
+    }
+  }
+
+  public static int getActiveCount() {
+    synchronized (LOCK) {
+      return activeCount;
+    }
+  }
+
+  public static int getIdleCount() {
+    synchronized (LOCK) {
+      return idle.size();
+    }
+  }
+
+  public static int getMaxSize() {
+    return MAX_SIZE;
+  }
+
+  /**
+   * Opens a real connection for a slot that has already been counted in openCount.
+   */
+  private static PooledConnection open() throws SQLException {
+    try {
+      ConnectionProfile profile;
+      try {
+        profile = ConnectionProfile.current();
+      } catch (IllegalArgumentException noSuchProfile) {
+        throw new SQLException(noSuchProfile.getMessage(), "08001", noSuchProfile);
+      }
+      PooledConnection pooled = new PooledConnection(profile.connect());
+      synchronized (LOCK) {
+        booted = true;
+      }
+      StartupTimer.mark(StartupTimer.DATABASE_BOOTED);
+      return pooled;
+    } catch (SQLException | RuntimeException ex) {
+      synchronized (LOCK) {
+        openCount--;
+        LOCK.notifyAll();
+      }
+      throw ex;
+    }
+  }
+
+  private static boolean isValid(PooledConnection pooled) {
+    try {
+      return pooled.physical.isValid(VALIDATION_TIMEOUT);
+    } catch (SQLException sqlEx) {
+      return false;
+    }
+  }
+
+  /**
+   * Closes a real connection and gives its slot back to the pool.
+   */
+  private static void discard(PooledConnection pooled) {
+    pooled.statements.closeAll();
     try {
-      // if there IS a connection AND said connection is not closed, go ahead and close it.
-      if (connection != null && !connection.isClosed()) {
-        connection.close();
+      pooled.physical.close();
+    } catch (SQLException sqlEx) {
+      // it's being thrown away either way
+    }
+    synchronized (LOCK) {
+      openCount--;
+      LOCK.notifyAll();
+    }
+  }
+
+  /**
+   * Called when a borrowed connection is closed. Puts it back in the pool in a clean state, or
+   * throws it away if it can't be cleaned up.
+   */
+  private static void release(PooledConnection pooled) {
+    boolean reusable;
+    pooled.statements.releaseAll();
+    try {
+      // don't let an unfinished transaction leak into the next borrower
+      if (!pooled.physical.getAutoCommit()) {
+        pooled.physical.rollback();
+        pooled.physical.setAutoCommit(true);
+      }
+      pooled.physical.clearWarnings();
+      reusable = !pooled.physical.isClosed();
+    } catch (SQLException sqlEx) {
+      reusable = false;
+    }
+
+    synchronized (LOCK) {
+      changeActive(-1);
+      if (reusable && !closed) {
+        pooled.lastUsed = System.nanoTime();
+        idle.push(pooled);
+        LOCK.notifyAll();
+        return;
+      }
+    }
+    discard(pooled);
+  }
+
+  /**
+   * Keeps the running total that utilization is worked out from. Caller must hold LOCK.
+   */
+  private static void changeActive(int delta) {
+    long now = System.nanoTime();
+    busyIntegral += activeCount * (now - lastChange);
+    lastChange = now;
+    activeCount += delta;
+  }
+
+  private static void startReaper() {
+    synchronized (LOCK) {
+      if (reaper != null || closed) {
+        return;
+      }
+      reaper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "pool-reaper");
+        thread.setDaemon(true);
+        return thread;
+      });
+    }
+    reaper.scheduleWithFixedDelay(DatabaseConnect::reapIdle, REAP_INTERVAL_MS, REAP_INTERVAL_MS,
+        TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Closes connections that have been idle for longer than IDLE_TIMEOUT_MS, but never goes below
+   * MIN_IDLE open connections.
+   */
+  private static void reapIdle() {
+    List<PooledConnection> expired = new ArrayList<>();
+    long cutoff = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(IDLE_TIMEOUT_MS);
+    synchronized (LOCK) {
+      // the oldest connections sit at the end of the deque
+      Iterator<PooledConnection> oldestFirst = idle.descendingIterator();
+      while (oldestFirst.hasNext() && openCount - expired.size() > MIN_IDLE) {
+        PooledConnection pooled = oldestFirst.next();
+        if (pooled.lastUsed - cutoff > 0) {
+          break;
+        }
+        oldestFirst.remove();
+        expired.add(pooled);
       }
-    } catch (Exception e) {
-      throw e; // don't know what exception would be here, but go ahead and throw it.
+    }
+    for (PooledConnection pooled : expired) {
+      discard(pooled);
+    }
+  }
+
+  /**
+   * A real Derby connection plus the bookkeeping the pool needs for it.
+   */
+  private static class PooledConnection {
+
+    private final Connection physical;
+    private final StatementCache statements;
+    private long lastUsed = System.nanoTime();
+
+    PooledConnection(Connection physical) {
+      this.physical = physical;
+      this.statements = new StatementCache(physical, StatementCache.DEFAULT_SIZE);
+    }
+
+    /**
+     * @return a new stand-in for this connection that returns it to the pool when closed.
+     */
+    Connection borrow() {
+      return (Connection) Proxy.newProxyInstance(DatabaseConnect.class.getClassLoader(),
+          new Class<?>[]{Connection.class}, new Handle(this));
     }
   }
+
+  /**
+   * Passes every call through to the real connection, except close (which returns it to the pool),
+   * prepareStatement (which goes through the statement cache) and anything called after close.
+   * The statements and metadata it hands out are wrapped so their getConnection gives this
+   * stand-in, never the real connection: closing that one would skip the pool's bookkeeping.
+   */
+  private static class Handle implements InvocationHandler {
+
+    private PooledConnection pooled;
+
+    Handle(PooledConnection pooled) {
+      this.pooled = pooled;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+      String name = method.getName();
+      if ("equals".equals(name)) {
+        return proxy == args[0];
+      }
+      if ("hashCode".equals(name)) {
+        return System.identityHashCode(proxy);
+      }
+
+      PooledConnection target;
+      synchronized (this) {
+        if ("close".equals(name)) {
+          if (pooled != null) {
+            PooledConnection returning = pooled;
+            pooled = null;
+            release(returning);
+          }
+          return null;
+        }
+        if ("isClosed".equals(name)) {
+          return pooled == null || pooled.physical.isClosed();
+        }
+        if (pooled == null) {
+          throw new SQLException("Connection has already been returned to the pool");
+        }
+        target = pooled;
+      }
+      if (isCacheablePrepare(method)) {
+        int type = args.length == 3 ? (Integer) args[1] : ResultSet.TYPE_FORWARD_ONLY;
+        int concurrency = args.length == 3 ? (Integer) args[2] : ResultSet.CONCUR_READ_ONLY;
+        return target.statements.prepare((Connection) proxy, (String) args[0], type,
+            concurrency);
+      }
+      Object result;
+      try {
+        result = method.invoke(target.physical, args);
+      } catch (InvocationTargetException ex) {
+        throw ex.getCause();
+      }
+      Class<?> type = method.getReturnType();
+      if (result != null
+          && (Statement.class.isAssignableFrom(type) || type == DatabaseMetaData.class)) {
+        return Proxy.newProxyInstance(DatabaseConnect.class.getClassLoader(),
+            new Class<?>[]{type}, new Owned((Connection) proxy, result));
+      }
+      return result;
+    }
+
+    /**
+     * Only prepareStatement(sql) and prepareStatement(sql, type, concurrency) are cached. The
+     * other forms (generated keys, holdability) are rare enough to go straight to Derby.
+     */
+    private static boolean isCacheablePrepare(Method method) {
+      if (!"prepareStatement".equals(method.getName())) {
+        return false;
+      }
+      Class<?>[] parameters = method.getParameterTypes();
+      return parameters.length == 1
+          || (parameters.length == 3 && parameters[1] == int.class && parameters[2] == int.class);
+    }
+  }// end of Handle class
+
+  /**
+   * Passes every call through to a Statement or DatabaseMetaData of a pooled connection, except
+   * getConnection, which gives the borrowed connection. ResultSets aren't wrapped, since next and
+   * the getters are called for every row.
+   */
+  private static class Owned implements InvocationHandler {
+
+    private final Connection owner;
+    private final Object target;
+
+    Owned(Connection owner, Object target) {
+      this.owner = owner;
+      this.target = target;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+      String name = method.getName();
+      if ("equals".equals(name)) {
+        return proxy == args[0];
+      }
+      if ("hashCode".equals(name)) {
+        return System.identityHashCode(proxy);
+      }
+      if ("getConnection".equals(name)) {
+        return owner;
+      }
+      try {
+        return method.invoke(target, args);
+      } catch (InvocationTargetException ex) {
+        throw ex.getCause();
+      }
+    }
+  }// end of Owned class
 }
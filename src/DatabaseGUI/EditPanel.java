@@ -0,0 +1,82 @@
+package DatabaseGUI;
+
+import javafx.scene.control.Button;
+import javafx.scene.control.Label;
+import javafx.scene.control.TabPane;
+import javafx.scene.control.ToggleButton;
+import javafx.scene.layout.HBox;
+
+/**
+ * The Edit row under the results. Edit lets the cells of the selected query tab be changed
+ * (double click one), and rows be added and deleted. Nothing is written until Save, which writes
+ * every change in one transaction, see ResultEditor.
+ */
+public class EditPanel extends HBox {
+
+  private final TabPane resultTabs;
+  private final ToggleButton editButton = new ToggleButton("Edit");
+  private final Button addRowButton = new Button("Add row...");
+  private final Button deleteRowsButton = new Button("Delete rows");
+  private final Button saveButton = new Button("Save");
+  private final Button discardButton = new Button("Discard");
+
+  /**
+   * @param resultTabs the buttons work on whichever of its tabs is a selected query tab
+   * @param statusLabel where Edit says it can't be used on the selected tab
+   */
+  public EditPanel(TabPane resultTabs, Label statusLabel) {
+    super(10);
+    this.resultTabs = resultTabs;
+    editButton.setOnAction(e -> {
+      QueryTab selected = ResultTables.selectedQueryTab(resultTabs);
+      if (selected == null) {
+        editButton.setSelected(false);
+        statusLabel.setText("Only the result of a query tab can be edited");
+      } else if (editButton.isSelected()) {
+        selected.startEditing();
+      } else {
+        selected.stopEditing();
+      }
+      update();
+    });
+    addRowButton.setOnAction(e -> {
+      if (ResultTables.selectedQueryTab(resultTabs) != null) {
+        ResultTables.selectedQueryTab(resultTabs).addRow();
+      }
+    });
+    deleteRowsButton.setOnAction(e -> {
+      if (ResultTables.selectedQueryTab(resultTabs) != null) {
+        ResultTables.selectedQueryTab(resultTabs).deleteSelectedRows();
+      }
+    });
+    saveButton.setOnAction(e -> {
+      if (ResultTables.selectedQueryTab(resultTabs) != null) {
+        ResultTables.selectedQueryTab(resultTabs).save();
+      }
+    });
+    discardButton.setOnAction(e -> {
+      if (ResultTables.selectedQueryTab(resultTabs) != null) {
+        ResultTables.selectedQueryTab(resultTabs).discardChanges();
+      }
+    });
+    getChildren().addAll(editButton, addRowButton, deleteRowsButton, saveButton, discardButton);
+    update();
+  }
+
+  /**
+   * Edit shows whether the selected query tab is being edited, and the other edit buttons are
+   * only there while it is.
+   */
+  public void update() {
+    QueryTab selected = ResultTables.selectedQueryTab(resultTabs);
+    ResultEditor editor = selected == null ? null : selected.getEditor();
+    boolean editing = editor != null;
+    // nothing can be changed while a save runs, see ResultEditor.prepareSave
+    boolean saving = editing && editor.isSaving();
+    editButton.setSelected(selected != null && selected.isEditing());
+    addRowButton.setDisable(!editing || saving);
+    deleteRowsButton.setDisable(!editing || saving);
+    saveButton.setDisable(!editing || saving);
+    discardButton.setDisable(!editing || saving);
+  }
+}// end of EditPanel class
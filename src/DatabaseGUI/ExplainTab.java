@@ -0,0 +1,241 @@
+package DatabaseGUI;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import javafx.application.Platform;
+import javafx.collections.FXCollections;
+import javafx.scene.control.Button;
+import javafx.scene.control.Label;
+import javafx.scene.control.ListView;
+import javafx.scene.control.Tab;
+import javafx.scene.control.TabPane;
+import javafx.scene.control.TextArea;
+import javafx.scene.control.TreeCell;
+import javafx.scene.control.TreeItem;
+import javafx.scene.control.TreeView;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.Priority;
+import javafx.scene.layout.VBox;
+
+/**
+ * The Plan tab. "Explain" runs the query with Derby's runtime statistics on and shows its plan,
+ * with the indexes the advisor suggests and a button that creates them and times the query again.
+ * See PlanExplainer.
+ *
+ * Everything here is done on the FX thread, the explaining itself on a worker.
+ */
+public class ExplainTab {
+
+  private final PlanExplainer explainer = new PlanExplainer();
+  private final TabPane resultTabs;
+  private final Label statusLabel;
+  private final Button explainButton;
+  private final QueryCache queryCache;
+  private Thread explainThread;
+  private Tab planTab;
+  private List<PlanExplainer.IndexAdvice> createdIndexes = new ArrayList<>();
+  // the parameter values and timeout of the last explain, to explain the query again with
+  private Map<String, String> lastValues;
+  private int queryTimeout;
+
+  /**
+   * @param explainButton disabled while a query is explained or indexes are changed
+   */
+  public ExplainTab(TabPane resultTabs, Label statusLabel, Button explainButton,
+      QueryCache queryCache) {
+    this.resultTabs = resultTabs;
+    this.statusLabel = statusLabel;
+    this.explainButton = explainButton;
+    this.queryCache = queryCache;
+  }
+
+  /**
+   * Explains the query on a background thread and shows the plan in the Plan tab.
+   *
+   * @param queryTimeout seconds Derby may spend on each run of the query, 0 for no limit
+   */
+  public void explain(String sqlQuery, Map<String, String> values, int queryTimeout) {
+    lastValues = values;
+    this.queryTimeout = queryTimeout;
+    startExplain(sqlQuery, null);
+  }
+
+  /**
+   * @param before the explanation of the same query before indexes were created for it, to
+   *     compare the new timing with. Null for a fresh explain.
+   */
+  private void startExplain(String sqlQuery, PlanExplainer.Explanation before) {
+    if (explainThread != null) {
+      statusLabel.setText("Already explaining a query");
+      return;
+    }
+    Map<String, String> values = lastValues;
+    explainer.setQueryTimeout(queryTimeout);
+    explainButton.setDisable(true);
+    statusLabel.setText(before == null ? "Explaining query..." : "Running the query again...");
+    explainThread = new Thread(() -> {
+      PlanExplainer.Explanation explanation = null;
+      List<PlanExplainer.IndexAdvice> advice = new ArrayList<>();
+      String failure = null;
+      try {
+        explanation = explainer.explain(sqlQuery, values);
+        advice = explainer.advise(sqlQuery, explanation.getPlan());
+      } catch (SQLException sqlEx) {
+        System.out.println("Issue explaining the query");
+        failure = sqlEx.getMessage();
+      }
+      PlanExplainer.Explanation explained = explanation;
+      List<PlanExplainer.IndexAdvice> suggested = advice;
+      String explainFailure = failure;
+      Platform.runLater(() -> {
+        explainThread = null;
+        explainButton.setDisable(false);
+        if (explainFailure != null) {
+          statusLabel.setText("Unable to explain the query: " + explainFailure);
+        } else {
+          showPlan(explained, suggested, before);
+        }
+      });
+    }, "explain-worker");
+    explainThread.setDaemon(true);
+    explainThread.start();
+  }// end of startExplain method
+
+  /**
+   * Fills the Plan tab: the operator tree with rows, time and scan type per node, the details
+   * Derby gave for the node picked, and the suggested indexes with a button that creates them and
+   * times the query again.
+   */
+  private void showPlan(PlanExplainer.Explanation explanation,
+      List<PlanExplainer.IndexAdvice> advice, PlanExplainer.Explanation before) {
+    QueryPlan plan = explanation.getPlan();
+    TreeView<QueryPlan.Node> tree = new TreeView<>(plan.getRoot() == null ? null
+        : treeItem(plan.getRoot()));
+    tree.setCellFactory(treeView -> new TreeCell<QueryPlan.Node>() {
+      @Override
+      protected void updateItem(QueryPlan.Node node, boolean empty) {
+        super.updateItem(node, empty);
+        setText(empty || node == null ? null : node.toString());
+        // full scans stand out, they are what an index could save
+        setStyle(!empty && node != null && node.isFullScan() ? "-fx-text-fill: firebrick;" : "");
+      }
+    });
+    TextArea details = new TextArea();
+    details.setEditable(false);
+    details.setPrefRowCount(6);
+    tree.getSelectionModel().selectedItemProperty().addListener((obvValue, oldItem, newItem) ->
+        details.setText(newItem == null ? "" : String.join("\n", newItem.getValue().getDetails())));
+
+    String timing = String.format("%d%s rows in %.1f ms (fastest of %d runs), %s, %d full scans",
+        explanation.getRows(), explanation.isTruncated() ? "+" : "",
+        explanation.getBestNanos() / 1e6, PlanExplainer.TIMING_RUNS, plan.describeTimes(),
+        plan.getFullScans().size());
+    if (before != null) {
+      timing += String.format("  |  before the indexes %.1f ms, now %.1fx as fast",
+          before.getBestNanos() / 1e6,
+          before.getBestNanos() / (double) Math.max(1, explanation.getBestNanos()));
+    }
+    Label summary = new Label(timing);
+
+    ListView<PlanExplainer.IndexAdvice> adviceList = new ListView<>(
+        FXCollections.observableArrayList(advice));
+    adviceList.setPrefHeight(advice.isEmpty() ? 30 : Math.min(5, advice.size()) * 26 + 4);
+    adviceList.setPlaceholder(new Label("No indexes to suggest"));
+    Button create = new Button("Create indexes and re-run");
+    create.setDisable(advice.isEmpty());
+    create.setOnAction(e -> createIndexes(explanation, advice));
+    Button drop = new Button("Drop created indexes");
+    drop.setDisable(createdIndexes.isEmpty());
+    drop.setOnAction(e -> dropIndexes(explanation.getSql()));
+    HBox adviceButtons = new HBox(10, create, drop);
+
+    VBox panel = new VBox(5, summary, tree, details, new Label("Suggested indexes:"), adviceList,
+        adviceButtons);
+    VBox.setVgrow(tree, Priority.ALWAYS);
+    if (planTab == null) {
+      planTab = new Tab("Plan");
+      planTab.setOnClosed(e -> planTab = null);
+    }
+    planTab.setContent(panel);
+    if (!resultTabs.getTabs().contains(planTab)) {
+      resultTabs.getTabs().add(planTab);
+    }
+    resultTabs.getSelectionModel().select(planTab);
+    statusLabel.setText(timing);
+  }// end of showPlan method
+
+  private static TreeItem<QueryPlan.Node> treeItem(QueryPlan.Node node) {
+    TreeItem<QueryPlan.Node> item = new TreeItem<>(node);
+    item.setExpanded(true);
+    for (QueryPlan.Node child : node.getChildren()) {
+      item.getChildren().add(treeItem(child));
+    }
+    return item;
+  }
+
+  /**
+   * Creates the suggested indexes and explains the query again, to show what they changed.
+   */
+  private void createIndexes(PlanExplainer.Explanation before,
+      List<PlanExplainer.IndexAdvice> advice) {
+    statusLabel.setText("Creating " + advice.size() + " indexes...");
+    runIndexChange(() -> explainer.createIndexes(advice), () -> {
+      createdIndexes.addAll(advice);
+      startExplain(before.getSql(), before);
+    }, advice);
+  }
+
+  /**
+   * Drops the indexes the advisor created and explains the query again.
+   */
+  private void dropIndexes(String sqlQuery) {
+    List<PlanExplainer.IndexAdvice> created = createdIndexes;
+    statusLabel.setText("Dropping " + created.size() + " indexes...");
+    runIndexChange(() -> explainer.dropIndexes(created), () -> {
+      createdIndexes = new ArrayList<>();
+      startExplain(sqlQuery, null);
+    }, created);
+  }
+
+  /**
+   * The work of createIndexes and dropIndexes, on a background thread. Cached results of the
+   * tables are dropped either way, the statements may have gotten part way.
+   */
+  private void runIndexChange(IndexChange change, Runnable done,
+      List<PlanExplainer.IndexAdvice> indexes) {
+    explainButton.setDisable(true);
+    Thread thread = new Thread(() -> {
+      String failure = null;
+      try {
+        change.run();
+      } catch (SQLException sqlEx) {
+        System.out.println("Issue changing indexes");
+        failure = sqlEx.getMessage();
+      }
+      String changeFailure = failure;
+      Platform.runLater(() -> {
+        explainButton.setDisable(false);
+        for (PlanExplainer.IndexAdvice index : indexes) {
+          queryCache.statementExecuted(index.getSql());
+        }
+        if (changeFailure != null) {
+          statusLabel.setText("Unable to change the indexes: " + changeFailure);
+        } else {
+          done.run();
+        }
+      });
+    }, "explain-worker");
+    thread.setDaemon(true);
+    thread.start();
+  }// end of runIndexChange method
+
+  /**
+   * Creating or dropping indexes, which may throw.
+   */
+  private interface IndexChange {
+
+    void run() throws SQLException;
+  }
+}// end of ExplainTab class
@@ -0,0 +1,240 @@
+package DatabaseGUI;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
+import javafx.animation.AnimationTimer;
+import javafx.application.Platform;
+import javafx.stage.Stage;
+
+/**
+ * The one clock every animation of the window runs on: a single AnimationTimer, started when
+ * something needs frames and stopped again when nothing does. Animations register a FrameListener
+ * and work out where they should be from the frame's time, so a late frame makes them jump ahead
+ * rather than fall behind.
+ *
+ * Work on the FX thread that can be split up, like handing the pages of a long result to its
+ * table, can be spread over frames with nextFrame: queued tasks run at the start of a frame until
+ * BUDGET_NANOS are used up, and whatever is left waits for the next frame. That way the frame in
+ * between gets drawn, and the animations keep going while a big result streams in.
+ *
+ * The time between frames is kept in a histogram (see getFrameSummary). The clock pauses while the
+ * window is minimized or hidden, and the gap isn't counted.
+ *
+ * Use this class from the FX thread.
+ */
+public final class FrameClock {
+
+  // how much of a frame the queued tasks may take. A 60 Hz frame is 16.7 ms, the rest is left
+  // for CSS, layout and drawing.
+  public static final long BUDGET_NANOS = Long.getLong("databasegui.frame.budgetMs", 6)
+      * 1000000L;
+  // a frame taking longer than this means at least one was dropped at 60 Hz
+  private static final long FRAME_NANOS = 1000000000L / 60;
+
+  /**
+   * Called once per frame while registered.
+   */
+  public interface FrameListener {
+
+    /**
+     * @param now the frame's time, in System.nanoTime terms
+     */
+    void frame(long now);
+  }
+
+  /**
+   * The frame times recorded so far.
+   */
+  public static final class FrameSummary {
+
+    private final long frames;
+    private final long late;
+    private final double p50;
+    private final double p95;
+    private final double p99;
+    private final double max;
+
+    FrameSummary(long frames, long late, double p50, double p95, double p99, double max) {
+      this.frames = frames;
+      this.late = late;
+      this.p50 = p50;
+      this.p95 = p95;
+      this.p99 = p99;
+      this.max = max;
+    }
+
+    public long getFrames() {
+      return frames;
+    }
+
+    /**
+     * @return how many frames came more than a 60 Hz frame and a half after the one before.
+     */
+    public long getLate() {
+      return late;
+    }
+
+    /**
+     * @return the median time between frames in milliseconds.
+     */
+    public double getP50() {
+      return p50;
+    }
+
+    public double getP95() {
+      return p95;
+    }
+
+    public double getP99() {
+      return p99;
+    }
+
+    public double getMax() {
+      return max;
+    }
+
+    /**
+     * @return e.g. "Frames: 3600, p50 16.7 ms, p95 17.0 ms, p99 18.2 ms, max 40.1 ms, 2 late"
+     */
+    @Override
+    public String toString() {
+      return String.format(Locale.ROOT,
+          "Frames: %d, p50 %.1f ms, p95 %.1f ms, p99 %.1f ms, max %.1f ms, %d late", frames, p50,
+          p95, p99, max, late);
+    }
+  }// end of FrameSummary class
+
+  private static final List<FrameListener> listeners = new ArrayList<>();
+  private static final Deque<Runnable> tasks = new ArrayDeque<>();
+  private static final QueryMetrics.Histogram frameTimes = new QueryMetrics.Histogram();
+  private static long frames = 0;
+  private static long lateFrames = 0;
+  private static long maxFrameNanos = 0;
+  private static long lastFrame = 0; // 0 after a pause, so the gap isn't counted
+  private static boolean running = false;
+  private static boolean paused = false;
+
+  private static final AnimationTimer timer = new AnimationTimer() {
+    @Override
+    public void handle(long now) {
+      tick(now);
+    }
+  };
+
+  private FrameClock() {
+  }
+
+  /**
+   * Pauses the clock while the stage is minimized or hidden.
+   */
+  public static void attach(Stage stage) {
+    stage.iconifiedProperty().addListener((obvValue, wasIconified, iconified) ->
+        setPaused(iconified || !stage.isShowing()));
+    stage.showingProperty().addListener((obvValue, wasShowing, showing) ->
+        setPaused(!showing || stage.isIconified()));
+  }
+
+  public static void add(FrameListener listener) {
+    if (!listeners.contains(listener)) {
+      listeners.add(listener);
+      update();
+    }
+  }
+
+  public static void remove(FrameListener listener) {
+    listeners.remove(listener);
+    update();
+  }
+
+  /**
+   * Runs the task at the start of the next frame, or of a later one if the tasks queued before it
+   * use up the frame's budget. While the clock is paused there are no frames, so the task goes
+   * through Platform.runLater instead.
+   */
+  public static void nextFrame(Runnable task) {
+    if (paused) {
+      Platform.runLater(task);
+      return;
+    }
+    tasks.add(task);
+    update();
+  }
+
+  /**
+   * @return true once more than BUDGET_NANOS have passed since start, so the caller should leave
+   *     the rest of its work to nextFrame.
+   */
+  public static boolean overBudget(long start) {
+    return System.nanoTime() - start > BUDGET_NANOS;
+  }
+
+  public static FrameSummary getFrameSummary() {
+    long max = maxFrameNanos;
+    return new FrameSummary(frames, lateFrames,
+        Math.min(frameTimes.percentile(0.50), max) / 1e6,
+        Math.min(frameTimes.percentile(0.95), max) / 1e6,
+        Math.min(frameTimes.percentile(0.99), max) / 1e6, max / 1e6);
+  }
+
+  public static void resetFrameTimes() {
+    frameTimes.reset();
+    frames = 0;
+    lateFrames = 0;
+    maxFrameNanos = 0;
+  }
+
+  private static void tick(long now) {
+    if (lastFrame != 0) {
+      long frameNanos = now - lastFrame;
+      frameTimes.add(frameNanos);
+      frames++;
+      maxFrameNanos = Math.max(maxFrameNanos, frameNanos);
+      if (frameNanos > FRAME_NANOS * 3 / 2) {
+        lateFrames++;
+      }
+    }
+    lastFrame = now;
+
+    long start = System.nanoTime();
+    while (!tasks.isEmpty() && !overBudget(start)) {
+      tasks.poll().run();
+    }
+    for (FrameListener listener : new ArrayList<>(listeners)) {
+      listener.frame(now);
+    }
+    update();
+  }// end of tick method
+
+  private static void setPaused(boolean pause) {
+    if (paused == pause) {
+      return;
+    }
+    paused = pause;
+    if (paused) {
+      // nothing is drawn while paused, the queued work shouldn't wait for that
+      while (!tasks.isEmpty()) {
+        Platform.runLater(tasks.poll());
+      }
+    }
+    update();
+  }
+
+  /**
+   * Starts the timer if there is anything to do and the window can be seen, and stops it
+   * otherwise.
+   */
+  private static void update() {
+    boolean wanted = !paused && (!listeners.isEmpty() || !tasks.isEmpty());
+    if (wanted && !running) {
+      running = true;
+      lastFrame = 0;
+      timer.start();
+    } else if (!wanted && running) {
+      running = false;
+      timer.stop();
+    }
+  }
+}// end of FrameClock class
@@ -0,0 +1,151 @@
+package DatabaseGUI;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import javafx.application.Platform;
+import javafx.collections.FXCollections;
+import javafx.scene.control.Button;
+import javafx.scene.control.ComboBox;
+import javafx.scene.control.Label;
+import javafx.scene.control.Tab;
+import javafx.scene.control.TabPane;
+import javafx.scene.control.TableView;
+import javafx.scene.layout.HBox;
+
+/**
+ * The Group row under the results. Grouping works out e.g. the sum of one column for each value of
+ * another over the rows of the result tab being looked at (those the filter leaves), in memory,
+ * and shows the groups in a new tab. With a pivot column, each of its values gets a column of its
+ * own.
+ */
+public class GroupPanel extends HBox {
+
+  private final TabPane resultTabs;
+  private final Label statusLabel;
+  private final LocalViews localViews;
+
+  private final ComboBox<String> groupColumnBox = new ComboBox<>();
+  private final ComboBox<Aggregation.Function> functionBox = new ComboBox<>(
+      FXCollections.observableArrayList(Aggregation.Function.values()));
+  private final ComboBox<String> valueColumnBox = new ComboBox<>();
+  private final ComboBox<String> pivotColumnBox = new ComboBox<>();
+  private final Button groupButton = new Button("Group");
+
+  public GroupPanel(TabPane resultTabs, Label statusLabel, LocalViews localViews) {
+    super(10);
+    this.resultTabs = resultTabs;
+    this.statusLabel = statusLabel;
+    this.localViews = localViews;
+
+    groupColumnBox.setPromptText("group by");
+    functionBox.setValue(Aggregation.Function.COUNT);
+    valueColumnBox.setPromptText("of");
+    pivotColumnBox.setPromptText("across");
+    for (ComboBox<String> box : Arrays.asList(groupColumnBox, valueColumnBox, pivotColumnBox)) {
+      box.setOnShowing(e -> fillColumnChoices());
+    }
+    groupButton.setOnAction(e -> group(ResultTables.selectedResultTable(resultTabs)));
+    getChildren().addAll(new Label("Group:"), groupColumnBox, functionBox, valueColumnBox,
+        pivotColumnBox, groupButton);
+  }
+
+  /**
+   * Groups the rows of the table by the column picked, on a worker thread, and shows the groups
+   * in a new tab. Like sorting, a result that isn't all in memory is read to the end first.
+   */
+  private void group(TableView<ResultRow> view) {
+    List<String> names = ResultTables.columnNamesOf(view);
+    if (names.isEmpty()) {
+      statusLabel.setText("Pick a result tab to group first");
+      return;
+    }
+    if (view.getItems() instanceof LiveResultList) {
+      statusLabel.setText("A result that refreshes itself can't be grouped");
+      return;
+    }
+    int groupColumn = names.indexOf(groupColumnBox.getValue());
+    int valueColumn = names.indexOf(valueColumnBox.getValue());
+    int pivotColumn = names.indexOf(pivotColumnBox.getValue());
+    Aggregation.Function function = functionBox.getValue();
+    if (groupColumn < 0) {
+      statusLabel.setText("Pick the column to group by");
+      return;
+    }
+    if (valueColumn < 0 && function != Aggregation.Function.COUNT) {
+      statusLabel.setText("Pick the column to work out the " + function + " of");
+      return;
+    }
+    if (pivotColumn == groupColumn) {
+      statusLabel.setText("The pivot column must be another column than the group column");
+      return;
+    }
+    localViews.withLocalView(view, "group", local -> {
+      if (valueColumn >= 0 && !function.appliesTo(local.getColumnType(valueColumn))) {
+        statusLabel.setText("The " + function + " of " + names.get(valueColumn)
+            + " can't be worked out, it isn't a number");
+        return;
+      }
+      Aggregation aggregation = local.aggregation();
+      Aggregation.Measure measure = new Aggregation.Measure(function, valueColumn);
+      String title = function + "(" + (valueColumn < 0 ? "*" : names.get(valueColumn)) + ") by "
+          + names.get(groupColumn) + (pivotColumn < 0 ? "" : " and " + names.get(pivotColumn));
+      int rows = local.size();
+      statusLabel.setText("Grouping " + rows + " rows...");
+      Thread groupThread = new Thread(() -> {
+        try {
+          Aggregation.Result result = pivotColumn < 0
+              ? aggregation.groupBy(new int[] {groupColumn}, Collections.singletonList(measure))
+              : aggregation.pivot(new int[] {groupColumn}, pivotColumn, measure);
+          Platform.runLater(() -> showGroups(title, result, rows));
+        } catch (IllegalArgumentException argEx) {
+          Platform.runLater(() -> statusLabel.setText("Unable to group: " + argEx.getMessage()));
+        }
+      }, "aggregate-worker");
+      groupThread.setDaemon(true);
+      groupThread.start();
+    });
+  }// end of group method
+
+  /**
+   * Shows the groups in a new tab next to the result they came from. They can be sorted,
+   * filtered and grouped again like any other result.
+   */
+  private void showGroups(String title, Aggregation.Result result, int rows) {
+    TableView<ResultRow> groupTable = new TableView<>();
+    PagedResultList groups = PagedResultList.ofPages(result.getColumnNames(),
+        result.getColumnTypes(), PagedResultList.DEFAULT_PAGE_SIZE, result.getPages());
+    ResultTables.addColumns(groupTable, groups);
+    groupTable.setItems(groups);
+    localViews.enableSort(groupTable);
+    Tab tab = new Tab(title, groupTable);
+    resultTabs.getTabs().add(resultTabs.getSelectionModel().getSelectedIndex() + 1, tab);
+    resultTabs.getSelectionModel().select(tab);
+    statusLabel.setText(String.format("%d groups from %d rows in %.1f ms",
+        result.getGroupCount(), rows, result.getNanos() / 1e6));
+  }
+
+  /**
+   * Offers the columns of the result tab being looked at in the group boxes, keeping what was
+   * picked if the column is still there.
+   */
+  private void fillColumnChoices() {
+    List<String> names = ResultTables.columnNamesOf(ResultTables.selectedResultTable(resultTabs));
+    List<String> values = new ArrayList<>();
+    values.add("*");
+    values.addAll(names);
+    List<String> pivots = new ArrayList<>();
+    pivots.add("no pivot");
+    pivots.addAll(names);
+    setChoices(groupColumnBox, names);
+    setChoices(valueColumnBox, values);
+    setChoices(pivotColumnBox, pivots);
+  }
+
+  private static void setChoices(ComboBox<String> box, List<String> choices) {
+    String picked = box.getValue();
+    box.getItems().setAll(choices);
+    box.setValue(choices.contains(picked) ? picked : null);
+  }
+}// end of GroupPanel class
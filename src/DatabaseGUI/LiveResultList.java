@@ -0,0 +1,96 @@
+package DatabaseGUI;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import javafx.collections.ObservableListBase;
+
+/**
+ * The rows of a query that is refreshed every few seconds (see AutoRefresher). Every row is held
+ * in memory. A refresh doesn't replace the list: only the rows a RowDiff says were inserted,
+ * deleted or updated are changed, and only those are reported to the TableView. The rows around
+ * them stay put, and so do the scroll position and the selection.
+ *
+ * This class must only be used from the JavaFX application thread.
+ */
+public class LiveResultList extends ObservableListBase<ResultRow> {
+
+  private final List<String> columnNames;
+  private final ColumnType[] columnTypes;
+  private List<ResultRow> rows;
+
+  public LiveResultList(List<String> columnNames, ColumnType[] columnTypes,
+      List<ColumnarPage> pages) {
+    this.columnNames = Collections.unmodifiableList(new ArrayList<>(columnNames));
+    this.columnTypes = columnTypes.clone();
+    this.rows = rowsOf(pages);
+  }
+
+  @Override
+  public ResultRow get(int index) {
+    return rows.get(index);
+  }
+
+  @Override
+  public int size() {
+    return rows.size();
+  }
+
+  public List<String> getColumnNames() {
+    return columnNames;
+  }
+
+  public ColumnType[] getColumnTypes() {
+    return columnTypes.clone();
+  }
+
+  /**
+   * Turns the rows into the ones of the new run, hunk by hunk, and reports the changes as one
+   * change of the list.
+   *
+   * @param diff the changes from the rows shown now to the new ones
+   * @param pages every row of the new run
+   */
+  public void apply(RowDiff diff, List<ColumnarPage> pages) {
+    List<ResultRow> newRows = rowsOf(pages);
+    if (diff.isEmpty()) {
+      // the same values in the same places. The rows are swapped without telling anyone, so the
+      // old pages can go, and nothing has to be drawn again.
+      rows = newRows;
+      return;
+    }
+    beginChange();
+    for (RowDiff.Hunk hunk : diff.getHunks()) {
+      int at = hunk.getNewIndex();
+      if (hunk.isUpdated()) {
+        nextSet(at, rows.set(at, newRows.get(at)));
+        continue;
+      }
+      List<ResultRow> removed = rows.subList(at, at + hunk.getRemoveCount());
+      if (!removed.isEmpty()) {
+        nextRemove(at, new ArrayList<>(removed));
+        removed.clear();
+      }
+      if (hunk.getInsertCount() > 0) {
+        rows.addAll(at, newRows.subList(at, at + hunk.getInsertCount()));
+        nextAdd(at, at + hunk.getInsertCount());
+      }
+    }
+    endChange();
+    rows = newRows; // equal to the edited list, and it only points at the new pages
+  }// end of apply method
+
+  private static List<ResultRow> rowsOf(List<ColumnarPage> pages) {
+    int count = 0;
+    for (ColumnarPage page : pages) {
+      count += page.getRowCount();
+    }
+    List<ResultRow> rows = new ArrayList<>(count);
+    for (ColumnarPage page : pages) {
+      for (int row = 0; row < page.getRowCount(); row++) {
+        rows.add(page.getRow(row));
+      }
+    }
+    return rows;
+  }
+}// end of LiveResultList class
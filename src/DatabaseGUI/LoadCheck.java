@@ -0,0 +1,290 @@
+package DatabaseGUI;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Measures how the database copes with more clients at once: runs the same statements with 1, 2,
+ * 4 and 8 clients (or other counts) for a few seconds each, and reports the throughput and latency
+ * of every step and how much faster than one client it was.
+ *
+ * java -cp out:lib/derby.jar DatabaseGUI.LoadCheck [--profile network] [options]
+ *
+ * Every client has its own connection, opened through the connection profile rather than the
+ * pool, so with the network profile each client is a separate session of the server, as if it
+ * were another program. Statements are read to the last row. Run with --help for the options.
+ */
+public class LoadCheck {
+
+  private static final String[] DEFAULT_STATEMENTS = {
+      "SELECT * FROM customers WHERE customerID = 1",
+      "SELECT * FROM products ORDER BY pricePerUnit DESC",
+      "SELECT c.lastName, COUNT(*) FROM orders o JOIN customers c ON o.customerID = c.customerID"
+          + " GROUP BY c.lastName",
+      "SELECT p.name, SUM(op.quantity) FROM order_product op JOIN products p"
+          + " ON op.productID = p.productID GROUP BY p.name"};
+
+  private static final String USAGE = String.join(System.lineSeparator(),
+      "Usage: LoadCheck [options]",
+      "Runs the same statements with more and more clients at once and reports how throughput",
+      "scales.",
+      "  --profile NAME        connection profile, e.g. embedded or network (default the",
+      "                        databasegui.profile property, or embedded)",
+      "  --clients LIST        client counts to run, e.g. 1,2,4,8 (default 1,2,4,8)",
+      "  --seconds N           how long each step runs (default 5)",
+      "  -e, --execute SQL     a statement the clients run, may be given more than once",
+      "                        (default a few queries of salesDB)",
+      "  --file FILE           statements the clients run, separated by ;",
+      "  --help                show this message");
+
+  private int[] clientCounts = {1, 2, 4, 8};
+  private double seconds = 5;
+  private final List<String> statements = new ArrayList<>();
+
+  /**
+   * How one step went.
+   */
+  private static final class Step {
+
+    private final int clients;
+    private final QueryMetrics.Histogram latency = new QueryMetrics.Histogram();
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicReference<String> error = new AtomicReference<>();
+    private long nanos;
+
+    Step(int clients) {
+      this.clients = clients;
+    }
+
+    double perSecond() {
+      return count.get() * 1e9 / Math.max(1, nanos);
+    }
+  }// end of Step class
+
+  /**
+   * @param args see USAGE
+   */
+  public static void main(String[] args) {
+    int exitCode;
+    ConnectionProfile profile = null;
+    try {
+      LoadCheck check = new LoadCheck();
+      profile = check.readOptions(args);
+      exitCode = profile == null ? 0 : check.run(profile);
+    } catch (IllegalArgumentException badOption) {
+      System.err.println(badOption.getMessage());
+      System.err.println(USAGE);
+      exitCode = 2;
+    } catch (IOException ioEx) {
+      System.err.println("Issue reading the statements: " + ioEx.getMessage());
+      exitCode = 1;
+    } finally {
+      if (profile != null) {
+        profile.shutdown();
+      }
+    }
+    System.exit(exitCode);
+  }
+
+  /**
+   * @return the profile to connect with, or null if only the help was wanted
+   */
+  private ConnectionProfile readOptions(String[] args) throws IOException {
+    String profileName = null;
+    for (int i = 0; i < args.length; i++) {
+      String arg = args[i];
+      switch (arg) {
+        case "--profile":
+          profileName = value(args, ++i, arg);
+          break;
+        case "--clients":
+          String[] counts = value(args, ++i, arg).split(",");
+          clientCounts = new int[counts.length];
+          for (int step = 0; step < counts.length; step++) {
+            clientCounts[step] = Math.max(1, (int) number(counts[step], arg));
+          }
+          break;
+        case "--seconds":
+          seconds = Math.max(0.1, number(value(args, ++i, arg), arg));
+          break;
+        case "-e":
+        case "--execute":
+          statements.add(value(args, ++i, arg));
+          break;
+        case "--file":
+          String script = new String(Files.readAllBytes(Paths.get(value(args, ++i, arg))),
+              StandardCharsets.UTF_8);
+          statements.addAll(SqlText.splitStatements(script));
+          break;
+        case "--help":
+          System.out.println(USAGE);
+          return null;
+        default:
+          throw new IllegalArgumentException("Unexpected argument: " + arg);
+      }
+    }// end of for loop
+    if (statements.isEmpty()) {
+      statements.addAll(Arrays.asList(DEFAULT_STATEMENTS));
+    }
+    return profileName == null ? ConnectionProfile.current()
+        : ConnectionProfile.named(profileName);
+  }// end of readOptions method
+
+  /**
+   * Runs every step and prints the report.
+   *
+   * @return 0, or 1 if a statement failed or a client couldn't connect
+   */
+  private int run(ConnectionProfile profile) {
+    System.out.println("Load check against " + profile + ", " + statements.size()
+        + " statements, " + Runtime.getRuntime().availableProcessors() + " processors");
+    System.out.println(String.format("%7s %13s %8s %11s %9s %9s %9s %7s", "clients",
+        "statements/s", "speedup", "efficiency", "p50 ms", "p95 ms", "p99 ms", "failed"));
+    Step first = null;
+    Step last = null;
+    boolean failed = false;
+    try {
+      // not counted: until the JIT has compiled the driver, the first step would look slow
+      runStep(profile, clientCounts[0], Math.min(1, seconds));
+    } catch (SQLException sqlEx) {
+      System.out.println("Unable to connect: " + sqlEx.getMessage());
+      return 1;
+    }
+    for (int clients : clientCounts) {
+      Step step;
+      try {
+        step = runStep(profile, clients, seconds);
+      } catch (SQLException sqlEx) {
+        System.out.println("Unable to connect " + clients + " clients: " + sqlEx.getMessage());
+        return 1;
+      }
+      if (first == null) {
+        first = step;
+      }
+      // per client of the first step, so --clients 2,4,8 still compares like with like
+      double speedup = step.perSecond() / Math.max(1e-9, first.perSecond() / first.clients);
+      System.out.println(String.format("%7d %13.1f %7.2fx %10.0f%% %9.1f %9.1f %9.1f %7d",
+          clients, step.perSecond(), speedup, 100 * speedup / clients,
+          step.latency.percentile(0.50) / 1e6, step.latency.percentile(0.95) / 1e6,
+          step.latency.percentile(0.99) / 1e6, step.failures.get()));
+      if (step.error.get() != null) {
+        System.out.println("        first failure: " + step.error.get());
+        failed = true;
+      }
+      last = step;
+    }// end of for loop
+    if (last != null && last != first) {
+      System.out.println(String.format("Throughput went from %.1f to %.1f statements/s going "
+              + "from %d to %d clients.", first.perSecond(), last.perSecond(), first.clients,
+          last.clients));
+    }
+    return failed ? 1 : 0;
+  }// end of run method
+
+  /**
+   * Connects the clients, lets each run every statement once so the plans are compiled, then
+   * starts them all together and stops them after the given time.
+   */
+  private Step runStep(ConnectionProfile profile, int clients, double seconds)
+      throws SQLException {
+    Step step = new Step(clients);
+    List<Connection> connections = new ArrayList<>();
+    try {
+      for (int client = 0; client < clients; client++) {
+        Connection connection = profile.connect();
+        connections.add(connection);
+        for (String sql : statements) {
+          runStatement(connection, sql);
+        }
+      }
+      CountDownLatch go = new CountDownLatch(1);
+      CountDownLatch done = new CountDownLatch(clients);
+      long[] deadline = new long[1];
+      for (int client = 0; client < clients; client++) {
+        Connection connection = connections.get(client);
+        int offset = client; // so the clients don't all run the same statement at once
+        Thread thread = new Thread(() -> {
+          try {
+            go.await();
+            for (int next = offset; System.nanoTime() < deadline[0]; next++) {
+              String sql = statements.get(next % statements.size());
+              long start = System.nanoTime();
+              try {
+                runStatement(connection, sql);
+                step.latency.add(System.nanoTime() - start);
+                step.count.incrementAndGet();
+              } catch (SQLException sqlEx) {
+                step.failures.incrementAndGet();
+                step.error.compareAndSet(null, sqlEx.getMessage());
+              }
+            }
+          } catch (InterruptedException interrupted) {
+            Thread.currentThread().interrupt();
+          } finally {
+            done.countDown();
+          }
+        }, "load-client-" + (client + 1));
+        thread.setDaemon(true);
+        thread.start();
+      }
+      long start = System.nanoTime();
+      deadline[0] = start + (long) (seconds * 1e9);
+      go.countDown(); // the deadline is set before the clients can see it
+      try {
+        done.await();
+      } catch (InterruptedException interrupted) {
+        Thread.currentThread().interrupt();
+      }
+      step.nanos = System.nanoTime() - start;
+      return step;
+    } finally {
+      for (Connection connection : connections) {
+        try {
+          connection.close();
+        } catch (SQLException closeFailed) {
+          // it's being thrown away either way
+        }
+      }
+    }
+  }// end of runStep method
+
+  private static void runStatement(Connection connection, String sql) throws SQLException {
+    try (Statement statement = connection.createStatement()) {
+      if (statement.execute(sql)) {
+        try (ResultSet rs = statement.getResultSet()) {
+          while (rs.next()) {
+            // every row is read, as a client showing the result would
+          }
+        }
+      }
+    }
+  }
+
+  private static String value(String[] args, int index, String option) {
+    if (index >= args.length) {
+      throw new IllegalArgumentException(option + " needs a value");
+    }
+    return args[index];
+  }
+
+  private static double number(String value, String option) {
+    try {
+      return Double.parseDouble(value.trim());
+    } catch (NumberFormatException notNumber) {
+      throw new IllegalArgumentException(option + " needs a number, got: " + value);
+    }
+  }
+}// end of LoadCheck class
@@ -0,0 +1,175 @@
+package DatabaseGUI;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import javafx.collections.ObservableList;
+import javafx.scene.control.Label;
+import javafx.scene.control.TabPane;
+import javafx.scene.control.TableColumn;
+import javafx.scene.control.TableView;
+
+/**
+ * Sorting, filtering and grouping a result without going back to the database. A result tab
+ * starts out showing a PagedResultList; the first time it is sorted or filtered the rows are put
+ * in a ResultView, reading the rest of the query first if not all of it is in memory.
+ *
+ * Everything here is done on the FX thread.
+ */
+public class LocalViews {
+
+  // where a table keeps the LocalLoad of the result being read to the end, see withLocalView
+  private static final String LOCAL_LOAD_KEY = "databasegui.localLoad";
+
+  private final TabPane resultTabs;
+  private final Label statusLabel;
+
+  /**
+   * @param resultTabs the tabs the results are shown in
+   * @param statusLabel where the rows left by a sort or filter are shown, for tabs that aren't
+   *     query tabs (those show it themselves)
+   */
+  public LocalViews(TabPane resultTabs, Label statusLabel) {
+    this.resultTabs = resultTabs;
+    this.statusLabel = statusLabel;
+  }
+
+  /**
+   * Replaces the TableView's own sort, which compares the Strings shown in the cells, with a sort
+   * by each column's type done in memory. See sort.
+   */
+  public void enableSort(TableView<ResultRow> view) {
+    view.setSortPolicy(sortedView -> {
+      sort(sortedView);
+      return true;
+    });
+  }
+
+  /**
+   * Sorts the table's rows by the columns in its sort order, without going back to the database.
+   * The first sort of a result that isn't all in memory reads the rest of it first.
+   */
+  public void sort(TableView<ResultRow> view) {
+    if (view.getSortOrder().isEmpty() && !(view.getItems() instanceof ResultView)) {
+      return; // nothing to sort, and nothing sorted to put back
+    }
+    withLocalView(view, "sort", local -> {
+      List<TableColumn<ResultRow, ?>> sortOrder = view.getSortOrder();
+      int[] columns = new int[sortOrder.size()];
+      boolean[] ascending = new boolean[sortOrder.size()];
+      for (int i = 0; i < columns.length; i++) {
+        columns[i] = (Integer) sortOrder.get(i).getUserData();
+        ascending[i] = sortOrder.get(i).getSortType() == TableColumn.SortType.ASCENDING;
+      }
+      local.sort(columns, ascending, () -> localViewChanged(view, local));
+    });
+  }
+
+  /**
+   * Applies the filter text to the table's rows. If the rows have to be read first, the text the
+   * supplier gives by then is used, not the text it gave when this was called.
+   */
+  public void filter(TableView<ResultRow> view, Supplier<String> text) {
+    if (view == null) {
+      return;
+    }
+    if (text.get().isEmpty() && !(view.getItems() instanceof ResultView)) {
+      return;
+    }
+    withLocalView(view, "filter",
+        local -> local.filter(text.get(), () -> localViewChanged(view, local)));
+  }
+
+  /**
+   * The actions waiting for a PagedResultList to be read to the end, one per kind, so however many
+   * keystrokes come in while it's read, it is read once and filtered once.
+   */
+  private static final class LocalLoad {
+
+    private final PagedResultList list;
+    private final Map<String, Consumer<ResultView>> actions = new LinkedHashMap<>();
+
+    LocalLoad(PagedResultList list) {
+      this.list = list;
+    }
+  }// end of LocalLoad class
+
+  /**
+   * Hands the table's rows to the action as a ResultView, making one first if the table is still
+   * showing a PagedResultList. If not every row of that list is in memory, the query is read to
+   * the end on the worker thread first. While that read runs, a later action of the same kind
+   * replaces the one waiting instead of starting another read.
+   *
+   * @param kind "sort", "filter" or "group"
+   */
+  public void withLocalView(TableView<ResultRow> view, String kind,
+      Consumer<ResultView> action) {
+    ObservableList<ResultRow> items = view.getItems();
+    if (items instanceof ResultView) {
+      action.accept((ResultView) items);
+      return;
+    }
+    if (!(items instanceof PagedResultList)) {
+      return;
+    }
+    PagedResultList list = (PagedResultList) items;
+    ResultView local = ResultView.of(list);
+    if (local != null) {
+      showLocalView(view, local);
+      action.accept(local);
+      return;
+    }
+    QueryTab owner = (QueryTab) view.getUserData();
+    if (owner == null) {
+      return; // only a query tab's result can be read again
+    }
+    LocalLoad running = (LocalLoad) view.getProperties().get(LOCAL_LOAD_KEY);
+    if (running != null && running.list == list) {
+      running.actions.put(kind, action); // done once the read that is running finishes
+      return;
+    }
+    LocalLoad load = new LocalLoad(list);
+    load.actions.put(kind, action);
+    view.getProperties().put(LOCAL_LOAD_KEY, load); // replaces one for an earlier result
+    owner.setStatus("Reading every row so they can be sorted and filtered...");
+    owner.getExecutor().loadAll(pages -> {
+      view.getProperties().remove(LOCAL_LOAD_KEY, load);
+      if (view.getItems() != list) {
+        return; // another query has replaced the result since
+      }
+      if (pages == null) {
+        owner.setStatus("Unable to sort or filter: the result has more than "
+            + ResultView.MAX_ROWS + " rows or couldn't be read. Use ORDER BY or WHERE instead.");
+        return;
+      }
+      list.close(); // every row is in memory now, the cursor isn't needed anymore
+      ResultView loaded = new ResultView(list.getColumnNames(), list.getColumnTypes(),
+          list.getPageSize(), pages);
+      showLocalView(view, loaded);
+      for (Consumer<ResultView> waiting : load.actions.values()) {
+        waiting.accept(loaded);
+      }
+    });
+  }// end of withLocalView method
+
+  /**
+   * Puts the ResultView in the table. Setting the items clears the table's sort order, so it is
+   * put back afterwards, which sorts the new view the same way.
+   */
+  private static void showLocalView(TableView<ResultRow> view, ResultView local) {
+    List<TableColumn<ResultRow, ?>> sortOrder = new ArrayList<>(view.getSortOrder());
+    view.setItems(local);
+    view.getSortOrder().setAll(sortOrder);
+  }
+
+  private void localViewChanged(TableView<ResultRow> view, ResultView local) {
+    if (view.getUserData() instanceof QueryTab) {
+      ((QueryTab) view.getUserData()).updateStatus();
+    } else if (view == ResultTables.selectedResultTable(resultTabs)) {
+      statusLabel.setText(ResultTables.describe(local));
+    }
+  }
+}// end of LocalViews class
@@ -11,7 +11,12 @@ package DatabaseGUI;
 // I probably shouldn't have used all of these wildcards. Program is a little slow on start up.
 
 import java.sql.*;
-import javafx.beans.property.SimpleStringProperty;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javafx.application.Platform;
 import javafx.beans.value.ChangeListener;
 import javafx.beans.value.ObservableValue;
 import javafx.collections.*;
@@ -21,21 +26,24 @@ import javafx.application.Application;
 import javafx.geometry.Insets;
 import javafx.scene.*;
 import javafx.scene.control.*;
-import javafx.scene.control.TableColumn.CellDataFeatures;
 import javafx.scene.layout.*;
 import javafx.scene.paint.Color;
 import javafx.scene.shape.*;
 import javafx.stage.Stage;
-import javafx.util.Callback;
 
 /**
  * The Oracle example of the Books database project used ActionListener, but I was having trouble
  * getting it to work. I'm pretty sure this was because their example used Javax.swing while this
  * assignment uses JavaFX. EventHandler appears to be JavaFX's equivalent to ActionListener.
+ *
+ * The tabs and rows of controls each feature needs are classes of their own (QueryTab,
+ * MetricsPanel, SchemaPanel, GroupPanel, EditPanel, TransferPanel, ScriptTabs and ExplainTab).
+ * Main lays them out and passes between them what one needs to know of another.
  */
-public class Main extends Application implements EventHandler<ActionEvent> {
+public class Main extends Application implements EventHandler<ActionEvent>, QueryTab.Listener {
 
-  // The default query is written into the TextArea whenever reset or an invalid query is entered.
+  // The default query is written into the TextArea at start up and whenever reset is pressed. A
+  // query that fails is left in the box so it can be fixed, which matters for long scripts.
   private static final String DEFAULT_QUERY = "SELECT *\nFROM employees";
 
   // The highest level Pane objects (aside from scene)
@@ -47,28 +55,79 @@ public class Main extends Application implements EventHandler<ActionEvent> {
   private HBox dbButtons;
   private HBox shapeStuff;
   private HBox sliderStuff;
+  private HBox timeoutStuff;
+  private HBox previewStuff;
+  private FlowPane parameterStuff;
+  private HBox filterStuff;
+  private GroupPanel groupPanel;
+  private EditPanel editPanel;
+  private TransferPanel transferPanel;
+  private TabPane resultTabs;
 
   // The lowest the level objects
+  private Tab metricsTab;
+  private Tab schemaTab;
+  private MetricsPanel metricsPanel; // built when the tab is first picked
+  private SchemaPanel schemaPanel; // same
   private Button queryButton;
+  private Button newTabButton;
+  private Button explainButton;
   private Button resetButton;
+  private Button cancelButton;
   private Button colorButton;
   private Label sliderLabel;
   private TextField sliderValue;
   private TextArea queryBox;
   private Slider timeSlider;
+  private Label timeoutLabel;
+  private TextField timeoutValue;
+  private Label refreshLabel;
+  private TextField refreshValue;
+  private Label previewLabel;
+  private TextField previewValue;
+  private CheckBox profileBox;
+  private Label statusLabel;
+  private Label filterLabel;
+  private TextField filterValue;
+  private CompletionMenu completions;
+
+  // One text field per ? or :name parameter in the query box, and what has been typed into them.
+  // Values are kept by name, so they survive the fields being rebuilt while the query is edited.
+  private final Map<String, String> parameterValues = new HashMap<>();
+  private List<String> parameterNames = new ArrayList<>();
 
   // This stuff is used for the shape object. Color is initially set to black for visibility.
   private ColorPicker shapeColor = new ColorPicker(Color.BLACK);
   private Circle myCircle;
   private Line myLine;
-  //private static CustomAnimation myAnimation; // unused
+  private final CustomAnimation myAnimation = new CustomAnimation(); // moves the clockyThing
+
+  // Used for database query results (if any). Every query tab runs its query on its own worker
+  // (see QueryTab), and only a few pages of each result are held in memory at a time. Results
+  // that were read in full are kept in the cache, which all tabs share, so running the same query
+  // again doesn't go back to the database.
+  private final QueryCache queryCache = new QueryCache();
+  private final List<QueryTab> queryTabs = new ArrayList<>();
+  private QueryTab currentQueryTab; // the query tab picked last, Select Query runs in it
+  private int queryTabsOpened = 0;
+  private int queryTimeout = QueryExecutor.DEFAULT_QUERY_TIMEOUT;
+  private int previewRows = 0; // the most rows a query tab reads, 0 for all of them
+
+  // Sorting, filtering and grouping any result tab in memory, see LocalViews.
+  private LocalViews localViews;
+
+  // A query box holding more than one statement is run as a script, see ScriptTabs.
+  private ScriptTabs scriptTabs;
 
-  // Used for database query results (if any)
-  private Connection c;
-  private Statement s;
-  private ResultSet rs;
-  private ObservableList<ObservableList> data;
-  private static TableView table = new TableView();
+  // "Explain" shows the query's plan in the Plan tab instead of its rows, see ExplainTab.
+  private ExplainTab explainTab;
+
+  // The tables and columns of the schema, read once in the background. They fill the Schema tab
+  // and the query box's autocomplete without a catalog query each time.
+  private final SchemaCache schemaCache = new SchemaCache();
+
+  // Set once the database is being booted in the background, see bootDatabase.
+  private static final AtomicBoolean booting = new AtomicBoolean();
 
 
   @Override
@@ -78,6 +137,14 @@ public class Main extends Application implements EventHandler<ActionEvent> {
      * Try block attempts to create the database connection and sets up the GUI, afterwards.
      */
 
+    // through a server other programs write too, and their writes can't invalidate anything
+    queryCache.setEnabled(ConnectionProfile.current().isEmbedded());
+    // a view changes when its base tables do, which no write names, so only plain tables are cached
+    queryCache.setTableCheck(name -> {
+      SchemaCache.Table table = schemaCache.getTable(name);
+      return table != null && !table.isView();
+    });
+
     // Create a GridPane for a very basic GUI. It's got a text field, button, and a label.
     outerGrid = new GridPane();
 
@@ -95,10 +162,57 @@ public class Main extends Application implements EventHandler<ActionEvent> {
     dbButtons = new HBox();
     shapeStuff = new HBox();
     sliderStuff = new HBox();
+    timeoutStuff = new HBox();
+    previewStuff = new HBox();
+    parameterStuff = new FlowPane(10, 5);
+    filterStuff = new HBox();
+    resultTabs = new TabPane();
+    statusLabel = new Label();
+    localViews = new LocalViews(resultTabs, statusLabel);
+    // the Metrics and Schema panels are only built when their tab is first picked, so they don't
+    // hold up the window being shown
+    metricsTab = new Tab("Metrics");
+    metricsTab.setClosable(false);
+    metricsTab.setOnSelectionChanged(e -> {
+      if (metricsTab.isSelected() && metricsPanel == null) {
+        metricsPanel = new MetricsPanel(statusLabel);
+        metricsTab.setContent(metricsPanel);
+      }
+      refreshMetrics();
+    });
+    schemaTab = new Tab("Schema");
+    schemaTab.setClosable(false);
+    schemaTab.setOnSelectionChanged(e -> {
+      if (schemaTab.isSelected() && schemaPanel == null) {
+        schemaPanel = new SchemaPanel(schemaCache, queryBox, statusLabel);
+        schemaTab.setContent(schemaPanel);
+      }
+    });
+    resultTabs.getTabs().addAll(metricsTab, schemaTab);
+    schemaCache.addListener(() -> {
+      StartupTimer.mark(StartupTimer.SCHEMA_READ);
+      Platform.runLater(() -> {
+        if (schemaPanel != null) {
+          schemaPanel.refresh();
+        }
+        finishTraining();
+      });
+    });
+    resultTabs.getSelectionModel().select(addQueryTab().getTab());
 
     queryBox = new TextArea(DEFAULT_QUERY); // populate the text field with the default query
     queryButton = new Button("Select Query"); // Button's text reads as "Select Query"
+    newTabButton = new Button("In New Tab"); // same, but the result goes in a tab of its own
+    explainButton = new Button("Explain"); // shows how Derby runs the query instead
     resetButton = new Button("Reset Table");
+    cancelButton = new Button("Cancel");
+    cancelButton.setDisable(true); // nothing to cancel until a query is running
+    scriptTabs = new ScriptTabs(resultTabs, statusLabel, queryCache, schemaCache, localViews,
+        () -> {
+          queryButton.setDisable(scriptTabs.isRunning());
+          updateCancelButton();
+        });
+    explainTab = new ExplainTab(resultTabs, statusLabel, explainButton, queryCache);
 
     /**
      * The color button updates the color of the Shape object (a circle) to the color listed in
@@ -114,19 +228,25 @@ public class Main extends Application implements EventHandler<ActionEvent> {
     myCircle.setFill(shapeColor.getValue());
 
     /**
-     * This is a line that I wanted to use to simulate an analogue clock, but I couldn't figure out
-     * how to set up all the positions in time.
+     * This is a line that simulates an analogue clock. It's the second hand: every frame it is
+     * pointed where the second hand of a real clock would be.
      */
 
     myLine = new Line(0, 0, 0, 50);
     myLine.setTranslateX(100);
     myLine.setTranslateY(100);
     myLine.setStroke(Color.WHITE);
+    FrameClock.add(now -> {
+      double angle = (System.currentTimeMillis() % 60000) / 60000.0 * 2 * Math.PI;
+      myLine.setEndX(50 * Math.sin(angle));
+      myLine.setEndY(-50 * Math.cos(angle));
+    });
 
     // This Group glues the Circle and Line object together.
     Group clockyThing = new Group(myCircle, myLine);
+    clockyThing.translateXProperty().bind(myAnimation.xProperty());
 
-    // The timeSlider would have been able to affect the distance traveled by the clockyThing
+    // The timeSlider sets the distance traveled by the clockyThing
     timeSlider = new Slider(0, 200, 200);
     sliderLabel = new Label("Width:");
     sliderValue = new TextField(Double.toString(timeSlider.getValue()));
@@ -140,6 +260,7 @@ public class Main extends Application implements EventHandler<ActionEvent> {
           Number oldValue, Number newValue) {
         double truncatedValue = (int) timeSlider.getValue();
         sliderValue.setText(Double.toString(truncatedValue));
+        myAnimation.setWidth(truncatedValue);
       }
     });
 
@@ -163,24 +284,121 @@ public class Main extends Application implements EventHandler<ActionEvent> {
     // add the items associated with the slider to an HBox
     sliderStuff.getChildren().addAll(sliderLabel, sliderValue, timeSlider);
 
+    /**
+     * The timeout text field sets how many seconds Derby may spend on a query before giving up.
+     * The new value is used starting with the next query.
+     */
+    timeoutLabel = new Label("Timeout (s):");
+    timeoutValue = new TextField(Integer.toString(queryTimeout));
+    timeoutValue.setMaxWidth(50);
+    timeoutValue.setOnAction(e -> {
+      try {
+        queryTimeout = Math.max(0, Integer.parseInt(timeoutValue.getText().trim()));
+      } catch (NumberFormatException wrongTypeEx) {
+        System.out.println("Incorrect timeout input. Please enter a whole number of seconds.");
+      }
+      timeoutValue.setText(Integer.toString(queryTimeout));
+    });
+
+    /**
+     * The refresh text field makes the selected query tab run its query again every so many
+     * seconds, changing only the rows that changed (see AutoRefresher). 0 turns it off.
+     */
+    refreshLabel = new Label("Refresh (s):");
+    refreshValue = new TextField("0");
+    refreshValue.setMaxWidth(50);
+    refreshValue.setOnAction(e -> {
+      QueryTab selected = ResultTables.selectedQueryTab(resultTabs);
+      try {
+        int seconds = Math.max(0, Integer.parseInt(refreshValue.getText().trim()));
+        if (selected != null) {
+          selected.setAutoRefresh(seconds);
+        }
+      } catch (NumberFormatException wrongTypeEx) {
+        System.out.println("Incorrect refresh input. Please enter a whole number of seconds.");
+      }
+      refreshValue.setText(Integer.toString(selected == null ? 0 : selected.getRefreshSeconds()));
+    });
+    timeoutStuff.getChildren().addAll(timeoutLabel, timeoutValue, refreshLabel, refreshValue);
+    timeoutStuff.setSpacing(10);
+
+    /**
+     * The preview field stops the next queries after that many rows, so a huge result can be
+     * looked at without reading all of it (0 reads everything). Profile also reads the result on
+     * a worker of its own and shows its row count and each column's nulls, range and distinct
+     * values in a tab next to the query's while they are still coming in, see ResultProfiler.
+     */
+    previewLabel = new Label("Preview (rows):");
+    previewValue = new TextField("0");
+    previewValue.setMaxWidth(70);
+    previewValue.setOnAction(e -> {
+      try {
+        previewRows = Math.max(0, Integer.parseInt(previewValue.getText().trim()));
+      } catch (NumberFormatException wrongTypeEx) {
+        System.out.println("Incorrect preview input. Please enter a whole number of rows.");
+      }
+      previewValue.setText(Integer.toString(previewRows));
+    });
+    profileBox = new CheckBox("Profile");
+    previewStuff.getChildren().addAll(previewLabel, previewValue, profileBox);
+    previewStuff.setSpacing(10);
+
+    /**
+     * Whenever the query changes, the parameter fields are rebuilt to match its ? and :name
+     * placeholders. Nothing happens while the set of names stays the same, so typing elsewhere in
+     * the query doesn't reset the fields.
+     */
+    queryBox.textProperty().addListener((obvValue, oldText, newText) -> updateParameterFields());
+    updateParameterFields();
+
+    // Ctrl+Space, or a dot after a table name, offers the names that fit, see CompletionMenu
+    completions = new CompletionMenu(queryBox, schemaCache);
+
+    /**
+     * The filter hides the rows of the result tab being looked at that don't contain the text.
+     * It's applied as the user types, and again when another result tab is picked.
+     */
+    filterLabel = new Label("Filter:");
+    filterValue = new TextField();
+    filterValue.setPrefColumnCount(20);
+    filterValue.textProperty().addListener((obvValue, oldText, newText) ->
+        localViews.filter(ResultTables.selectedResultTable(resultTabs), filterValue::getText));
+    resultTabs.getSelectionModel().selectedItemProperty().addListener(
+        (obvValue, oldTab, newTab) -> resultTabSelected(newTab));
+    filterStuff.getChildren().addAll(filterLabel, filterValue);
+    filterStuff.setSpacing(10);
+
+    // grouping and pivoting the rows of a result, and editing a query tab's result
+    groupPanel = new GroupPanel(resultTabs, statusLabel, localViews);
+    editPanel = new EditPanel(resultTabs, statusLabel);
+
     // add the items associated with the database to an HBox
-    dbButtons.getChildren().addAll(queryButton, resetButton);
+    dbButtons.getChildren().addAll(queryButton, newTabButton, explainButton, resetButton,
+        cancelButton);
     dbButtons.setSpacing(10);
     dbButtons.setMinWidth(300);
 
+    // getting data out of, and into, the database
+    transferPanel = new TransferPanel(queryBox, parameterValues, statusLabel, queryCache);
+
     // add the items associated with the shape object to an HBox
     shapeStuff.getChildren().addAll(colorButton, shapeColor);
     shapeStuff.setSpacing(10);
 
     queryBox.setPrefWidth(750);
     queryBox.setPrefHeight(100);
-    table.setMaxWidth(750);
+    resultTabs.setMaxWidth(750);
 
     //queryBox.setAlignment(Pos.TOP_LEFT); // was used for TextField, not for TextArea.
 
     // add the components to the inner-left GridPane object.
     innerLeftGrid.add(queryBox, 0, 0, 1, 1);
-    innerLeftGrid.add(table, 0, 2, 1, 2);
+    innerLeftGrid.add(parameterStuff, 0, 1, 1, 1);
+    innerLeftGrid.add(resultTabs, 0, 2, 1, 2);
+    innerLeftGrid.add(filterStuff, 0, 4, 1, 1);
+    innerLeftGrid.add(groupPanel, 0, 5, 1, 1);
+    innerLeftGrid.add(editPanel, 0, 6, 1, 1);
+    innerLeftGrid.add(statusLabel, 0, 7, 1, 1);
     innerLeftGrid.setPadding(new Insets(25, 25, 25, 25));
     innerLeftGrid.setPrefWidth(800);
 
@@ -189,6 +407,9 @@ public class Main extends Application implements EventHandler<ActionEvent> {
     innerRightGrid.add(shapeStuff, 0, 1, 1, 1);
     innerRightGrid.add(clockyThing, 0, 2, 1, 1);
     innerRightGrid.add(sliderStuff, 0, 3, 1, 1);
+    innerRightGrid.add(timeoutStuff, 0, 4, 1, 1);
+    innerRightGrid.add(transferPanel, 0, 5, 1, 1);
+    innerRightGrid.add(previewStuff, 0, 6, 1, 1);
     innerRightGrid.setPadding(new Insets(25, 25, 25, 25));
     innerRightGrid.setPrefWidth(300);
 
@@ -197,136 +418,274 @@ public class Main extends Application implements EventHandler<ActionEvent> {
     outerGrid.add(innerRightGrid, 1, 0, 1, 2);
 
     queryButton.setOnAction(this); // leads to the handle method. Defines what button does.
+    newTabButton.setOnAction(this);
+    explainButton.setOnAction(this);
     resetButton.setOnAction(this);
+    cancelButton.setOnAction(this);
 
     primaryStage.setTitle("Final GUI Project");
     Scene myScene = new Scene(outerGrid, 1100, 350);
     myScene.getStylesheets().add("myCss.css"); // CSS cannot be used in community version
     primaryStage.setScene(myScene); // add GridPane to scene
+    StartupTimer.mark(StartupTimer.WINDOW_BUILT);
+    FrameClock.attach(primaryStage); // no frames while the window is minimized
+    myAnimation.play();
     primaryStage.show();
-
+    StartupTimer.mark(StartupTimer.WINDOW_SHOWN);
+    bootDatabase(); // if main didn't already
+    schemaCache.loadInBackground();
+
+    // a training run goes through a whole start, up to the first rows, and then closes again
+    if (StartupTimer.TRAINING) {
+      queryButton.fire();
+    }
   }// end of try
 
   /**
    * The handle method may end up having more components to work with, that's why I've got an
-   * if-statement to find out what called the EventHandler. Since the queryButton object is the only
-   * thing calling EventHandler at the moment, it's the only if-statement present.
+   * if-statement to find out what called the EventHandler. The panels under the results handle
+   * their own buttons.
    */
   @Override
   public void handle(ActionEvent event) {
     /**
      * if the user hits the "Select Query" button.
      */
-    if (event.getSource() == queryButton) { // User hit the query button.
-      data = FXCollections.observableArrayList(); // get ObservableList ready to go
-
-      // Make sure to clear all columns from previous query.
-      table.getItems().clear();
-      table.getColumns().clear();
+    if (event.getSource() == queryButton || event.getSource() == newTabButton) {
+      // more than one statement: run them all as a script instead
+      if (SqlText.splitStatements(queryBox.getText()).size() > 1) {
+        scriptTabs.run(queryBox.getText(), new HashMap<>(parameterValues), queryTimeout);
+        return;
+      }
 
-      try {
-        c = DatabaseConnect.connect(); // attempt to connect to the database
-        s = c.createStatement(ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_READ_ONLY);
-        //the result set will consist of the statement provided by the user in the text-area
-        try {
-          rs = s.executeQuery(queryBox.getText());
-          ResultSetMetaData rsmd = rs.getMetaData(); // rsmd consists of rs' metadata
-
-          /**
-           * Since the TabelView doesn't know exactly how many query results will be received, the for
-           * loop needs to be dynamic. Without knowing the number of columns or rows, the for loop
-           * must start using meta data extracted from the ResultSet object.
-           *
-           * rs = the ResultSet created from the user's query
-           *
-           * rsmd = the metadata extracted from the user's query results. For this loop's use, the
-           * most valuable meta data are the total number of columns and the column's name.
-           *
-           * column = the counter variable used to determine how many columns exist within the query
-           *
-           * currColumn = an unchangeable value declared and initialized at the beginning of each
-           * for-loop iteration. This value is used when retrieving the value type stored in column.
-           *
-           * col = that particular loop iteration's TableColumn object. This is added to the
-           * TableView object as a column at the end of the loop's iteration.
-           */
-          for (int column = 0; column < rsmd.getColumnCount(); column++) {
-            final int currColumn = column;
-            TableColumn col = new TableColumn(rsmd.getColumnName(column + 1));
-
-            col.setCellValueFactory(
-                new Callback<CellDataFeatures<ObservableList, String>, ObservableValue<String>>() {
-                  public ObservableValue<String> call(
-                      CellDataFeatures<ObservableList, String> elem) {
-                    return new SimpleStringProperty(elem.getValue().get(currColumn).toString());
-                  }
-                });
-
-            table.getColumns().addAll(col); // add the TableColumn to the TableView
-          }
-
-          /**
-           * While there are still results in the ResultSet object, continue to iterate through
-           * this loop.
-           *
-           * This loop is responsible for creating new rows. Again, the rows need to be dynamic since
-           * the user doesn't necessarily know how many rows will be returned by the query.
-           *
-           * The for-loop's counter variable starts at 1 because row 0 consisted of the table's
-           * column names.
-           *
-           * Each iteration of the for loop adds a String received from that particular column and row
-           * to the local ObservableList object, row.
-           *
-           * At the end of the while-loop iteration, an entire row of information is added to the
-           * class-level ObservableList collection.
-           */
-          while (rs.next()) {
-            ObservableList<String> row = FXCollections.observableArrayList();
-            for (int column = 1; column <= rsmd.getColumnCount(); column++) {
-              row.add(rs.getString(column));
-            }
-            data.add(
-                row); // add the ObservableList<String> row to the ObservableList<ObservableList>
-          }
-
-          /**
-           * At the end of the try statement, all rows stored in the class-level ObservableList
-           * collection are added to the class-level TableView object.
-           */
-          table.setItems(data);
-        } catch (SQLException sqlEx2) {
-          System.out.println("Issue with SQL statement");
-          queryBox.setText(DEFAULT_QUERY); // set TextArea back to default query.
+      // the query runs on the tab's own worker thread, so the window stays responsive and the
+      // other tabs can go on running theirs. The tab's previous result is closed first, which
+      // gives its connection back to the pool.
+      QueryTab target = currentQueryTab;
+      if (event.getSource() == newTabButton || target == null) {
+        target = addQueryTab();
+        resultTabs.getSelectionModel().select(target.getTab());
+      } else if (!metricsTab.isSelected()) { // someone watching the metrics stays on them
+        resultTabs.getSelectionModel().select(target.getTab());
+      }
+      target.run(queryBox.getText(), new HashMap<>(parameterValues), queryTimeout, previewRows,
+          profileBox.isSelected());
+    }//end of if
 
-        }
+    /**
+     * If the user hits "Explain" the query is run with runtime statistics on, and its plan is
+     * shown instead of its rows.
+     */
+    else if (event.getSource() == explainButton) {
+      explainTab.explain(queryBox.getText(), new HashMap<>(parameterValues), queryTimeout);
+    }// end of else-if
 
-        rs.close(); // close the ResultSet object
-        DatabaseConnect.disconnect(); // disconnect from the database
-      } catch (SQLException sqlEx) { // attempting to connect to a database may result in an error
-        System.out.println("Issue with SQL statement");
-        queryBox.setText(DEFAULT_QUERY); // set TextArea back to default query.
-      }// end of catch
-    }//end of if
+    /**
+     * If the user hits the "Cancel" button while a query is still running.
+     */
+    else if (event.getSource() == cancelButton) {
+      QueryTab selected = ResultTables.selectedQueryTab(resultTabs);
+      if (selected != null) {
+        selected.cancel();
+      }
+      if (scriptTabs.isRunning()) {
+        scriptTabs.cancel();
+      }
+      if (scriptTabs.isRunning() || selected != null && selected.isLoading()) {
+        statusLabel.setText("Cancelling..."); // a profile stops straight away, the rest may not
+      }
+    }// end of else-if
 
     /**
      * If the user selects the "Reset Table" button
      */
     else if (event.getSource() == resetButton) {
       queryBox.setText(DEFAULT_QUERY); // set the TextArea back to the default query
-
-      // clear the items and columns from the table
-      table.getItems().clear();
-      table.getColumns().clear();
+      if (currentQueryTab != null) {
+        currentQueryTab.clear(); // clear the items and columns from the table
+        resultTabs.getSelectionModel().select(currentQueryTab.getTab());
+      }
+      statusLabel.setText("");
     }// end of else-if
   }// end of handle method
 
+  /**
+   * The first rows of a query tab are on screen: they are filtered if the tab is being looked
+   * at, and the metrics now include the query.
+   */
+  @Override
+  public void resultShown(QueryTab queryTab) {
+    if (StartupTimer.mark(StartupTimer.FIRST_ROWS)) {
+      firstRowsShown();
+    }
+    if (queryTab.getTab().isSelected()) {
+      localViews.filter(queryTab.getView(), filterValue::getText);
+    }
+    refreshMetrics();
+  }
+
+  @Override
+  public void stateChanged(QueryTab queryTab) {
+    if (queryTab.getTab().isSelected()) {
+      updateCancelButton();
+      editPanel.update();
+    }
+  }
+
+  @Override
+  public void cleared(QueryTab queryTab) {
+    if (queryTab.getTab().isSelected()) {
+      filterValue.setText("");
+      updateCancelButton();
+    }
+  }
+
+  @Override
+  public void closed(QueryTab queryTab) {
+    queryTabs.remove(queryTab);
+    if (currentQueryTab == queryTab) {
+      currentQueryTab = queryTabs.isEmpty() ? null : queryTabs.get(queryTabs.size() - 1);
+    }
+  }
+
+  private void refreshMetrics() {
+    if (metricsTab.isSelected() && metricsPanel != null) {
+      metricsPanel.refresh();
+    }
+  }
+
+  /**
+   * Another tab was picked. A query tab becomes the one Select Query runs in, and the status bar
+   * and Cancel button switch over to it. The filter is applied to the tab's rows.
+   */
+  private void resultTabSelected(Tab selected) {
+    if (selected != null && selected.getUserData() instanceof QueryTab) {
+      currentQueryTab = (QueryTab) selected.getUserData();
+      currentQueryTab.updateStatus();
+      refreshValue.setText(Integer.toString(currentQueryTab.getRefreshSeconds()));
+    }
+    updateCancelButton();
+    editPanel.update();
+    localViews.filter(ResultTables.selectedResultTable(resultTabs), filterValue::getText);
+  }
+
+  /**
+   * Cancel is there while the selected tab's query, or a script, is running.
+   */
+  private void updateCancelButton() {
+    QueryTab selected = ResultTables.selectedQueryTab(resultTabs);
+    cancelButton.setDisable(!scriptTabs.isRunning()
+        && (selected == null || !selected.isLoading() && !selected.isProfiling()));
+  }
+
+  /**
+   * Opens a new, empty query tab after the other query tabs.
+   */
+  private QueryTab addQueryTab() {
+    QueryTab queryTab = new QueryTab(++queryTabsOpened, resultTabs, statusLabel, queryCache,
+        schemaCache, localViews, this);
+    queryTabs.add(queryTab);
+    if (currentQueryTab == null) {
+      currentQueryTab = queryTab;
+    }
+    resultTabs.getTabs().add(queryTabs.size() - 1, queryTab.getTab());
+    return queryTab;
+  }
+
+  /**
+   * Makes one labelled text field for every distinct parameter of the query in the query box.
+   * Plain ? parameters are labelled by their position, named ones by their name.
+   */
+  private void updateParameterFields() {
+    List<String> names = SqlText.parameters(queryBox.getText()).getDistinctNames();
+    if (names.equals(parameterNames)) {
+      return;
+    }
+    parameterNames = names;
+    parameterStuff.getChildren().clear();
+    for (String name : names) {
+      Label label = new Label(Character.isDigit(name.charAt(0)) ? "?" + name + ":" : ":" + name);
+      TextField value = new TextField(parameterValues.getOrDefault(name, ""));
+      value.setPrefColumnCount(8);
+      value.textProperty().addListener((obvValue, oldText, newText) ->
+          parameterValues.put(name, newText));
+      value.setOnAction(e -> queryButton.fire()); // enter runs the query
+      parameterStuff.getChildren().addAll(label, value);
+    }
+  }
+
+  /**
+   * Called by JavaFX when the window closes. Stops any query that is still running and closes the
+   * pooled database connections.
+   */
+  @Override
+  public void stop() {
+    transferPanel.cancel();
+    scriptTabs.cancel();
+    for (QueryTab queryTab : queryTabs) {
+      queryTab.shutdown();
+    }
+    schemaCache.shutdown();
+    QueryMetrics.dumpIfRequested();
+    DatabaseConnect.shutdown();
+  }
+
   /**
    * main method only leads to the start method.
    *
    * @param args this parameter may contain info if user runs the program from the command prompt.
    */
   public static void main(String[] args) {
+    StartupTimer.mark(StartupTimer.MAIN);
+    // Derby boots while JavaFX starts up. With only one processor the two would just take turns,
+    // and the window would be later, so then the database is booted once the window is shown.
+    if (Runtime.getRuntime().availableProcessors() > 1) {
+      bootDatabase();
+    }
     launch(args);
   }// end of main method
+
+  /**
+   * Boots Derby and opens the pooled database connections on a background thread, so the first
+   * query doesn't have to wait for the engine to start and the database to be recovered. main
+   * calls it before JavaFX starts, so the two happen side by side, and start calls it once the
+   * window is shown. Calls after the first do nothing.
+   */
+  private static void bootDatabase() {
+    if (!booting.compareAndSet(false, true)) {
+      return;
+    }
+    Thread warmUp = new Thread(() -> {
+      try {
+        DatabaseConnect.warmUp();
+        StartupTimer.mark(StartupTimer.POOL_WARM);
+      } catch (SQLException sqlEx) {
+        System.out.println("Unable to open database connections: " + sqlEx.getMessage());
+      }
+    }, "pool-warm-up");
+    warmUp.setDaemon(true);
+    warmUp.start();
+  }
+
+  /**
+   * Called when the first rows of any query are on screen. Prints the startup report if asked to.
+   */
+  private void firstRowsShown() {
+    StartupTimer.reportIfRequested();
+    finishTraining();
+  }
+
+  /**
+   * Ends a training run (see StartupTimer) once the first rows are shown and the schema has been
+   * read. The panels built on demand are built first, so their classes are part of the run too.
+   */
+  private void finishTraining() {
+    if (!StartupTimer.TRAINING || !StartupTimer.isMarked(StartupTimer.FIRST_ROWS)
+        || !schemaCache.isLoaded()) {
+      return;
+    }
+    resultTabs.getSelectionModel().select(schemaTab);
+    resultTabs.getSelectionModel().select(metricsTab);
+    Platform.exit();
+  }
 }// end of Main class
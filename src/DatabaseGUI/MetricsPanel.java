@@ -0,0 +1,87 @@
+package DatabaseGUI;
+
+import java.io.File;
+import java.io.IOException;
+import javafx.collections.FXCollections;
+import javafx.scene.control.Button;
+import javafx.scene.control.Label;
+import javafx.scene.control.TableView;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.VBox;
+import javafx.stage.FileChooser;
+
+/**
+ * The Metrics tab: one line per stage of a query with its p50/p95/p99 latency, rows per second
+ * and allocation, see QueryMetrics. Underneath are the time between frames (see FrameClock), and
+ * how long the window and the first rows took to appear (see StartupTimer).
+ */
+public class MetricsPanel extends VBox {
+
+  private final TableView<QueryMetrics.StageSummary> metricsTable = new TableView<>();
+  private final Label frameLabel = new Label();
+  private final Label startupLabel = new Label();
+
+  /**
+   * @param statusLabel where a failure to save the metrics is shown
+   */
+  public MetricsPanel(Label statusLabel) {
+    super(5);
+    metricsTable.getColumns().add(ResultTables.textColumn("Stage",
+        stage -> stage.getStage().getLabel()));
+    metricsTable.getColumns().add(ResultTables.textColumn("Count",
+        stage -> Long.toString(stage.getCount())));
+    metricsTable.getColumns().add(ResultTables.textColumn("p50 ms",
+        stage -> fixed(stage.getP50())));
+    metricsTable.getColumns().add(ResultTables.textColumn("p95 ms",
+        stage -> fixed(stage.getP95())));
+    metricsTable.getColumns().add(ResultTables.textColumn("p99 ms",
+        stage -> fixed(stage.getP99())));
+    metricsTable.getColumns().add(ResultTables.textColumn("Max ms",
+        stage -> fixed(stage.getMax())));
+    metricsTable.getColumns().add(ResultTables.textColumn("Rows/s",
+        stage -> String.format("%.0f", stage.getRowsPerSecond())));
+    metricsTable.getColumns().add(ResultTables.textColumn("KB/call",
+        stage -> fixed(stage.getKbPerCall())));
+
+    Button refresh = new Button("Refresh");
+    refresh.setOnAction(e -> refresh());
+    Button reset = new Button("Reset");
+    reset.setOnAction(e -> {
+      QueryMetrics.reset();
+      FrameClock.resetFrameTimes();
+      refresh();
+    });
+    Button save = new Button("Save...");
+    save.setOnAction(e -> {
+      FileChooser chooser = new FileChooser();
+      chooser.setTitle("Save metrics");
+      chooser.setInitialFileName("metrics.txt");
+      File file = chooser.showSaveDialog(save.getScene().getWindow());
+      if (file != null) {
+        try {
+          QueryMetrics.dump(file.toPath());
+        } catch (IOException ioEx) {
+          System.out.println("Issue saving the metrics");
+          statusLabel.setText("Unable to save the metrics: " + ioEx.getMessage());
+        }
+      }
+    });
+    Label flightRecorder = new Label(QueryMetrics.isFlightRecorderAvailable()
+        ? "Also recorded as databasegui.QueryStage JFR events" : "Flight Recorder not available");
+    HBox metricsButtons = new HBox(10, refresh, reset, save, flightRecorder);
+    getChildren().addAll(metricsTable, metricsButtons, frameLabel, startupLabel);
+  }
+
+  /**
+   * Reads the metrics again. Main calls it whenever the tab is shown or a query finishes.
+   */
+  public void refresh() {
+    metricsTable.setItems(FXCollections.observableArrayList(QueryMetrics.getSummaries()));
+    frameLabel.setText(FrameClock.getFrameSummary().toString());
+    startupLabel.setText(StartupTimer.summary());
+  }
+
+  private static String fixed(double value) {
+    return String.format("%.2f", value);
+  }
+}// end of MetricsPanel class
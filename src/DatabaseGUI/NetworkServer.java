@@ -0,0 +1,197 @@
+package DatabaseGUI;
+
+import java.io.PrintWriter;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.sql.SQLException;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * A Derby Network Server inside this program, serving the database to other programs. The
+ * network connection profile (see ConnectionProfile) starts one when nothing answers on its port,
+ * and it runs until the program that started it ends. To serve salesDB without a window:
+ *
+ * java -cp out:lib/derby.jar:lib/derbynet.jar DatabaseGUI.NetworkServer [--host H] [--port N]
+ *
+ * The server classes come from derbynet.jar, which is looked up when a server is started rather
+ * than linked, so the rest of the program runs with derby.jar alone. Databases are found relative
+ * to the folder the server runs in, like an embedded one.
+ */
+public final class NetworkServer {
+
+  public static final String HOST = System.getProperty("databasegui.server.host", "localhost");
+  public static final int PORT = Integer.getInteger("databasegui.server.port", 1527);
+  // false to only ever connect to a server that is already running
+  public static final boolean START =
+      Boolean.parseBoolean(System.getProperty("databasegui.server.start", "true"));
+
+  private static final String CONTROL_CLASS = "org.apache.derby.drda.NetworkServerControl";
+  private static final long START_TIMEOUT_MS = 10000;
+
+  private static final String USAGE = String.join(System.lineSeparator(),
+      "Usage: NetworkServer [options]",
+      "Serves the databases under this folder (e.g. lib/salesDB) to other programs until stopped.",
+      "  --host H       address to listen on (default " + HOST + ")",
+      "  --port N       port to listen on (default " + PORT + ")",
+      "  --help         show this message");
+
+  // guarded by NetworkServer.class
+  private static Object control; // the NetworkServerControl of the server running here
+
+  private NetworkServer() {
+  }
+
+  /**
+   * @param args see USAGE
+   */
+  public static void main(String[] args) {
+    String host = HOST;
+    int port = PORT;
+    for (int i = 0; i < args.length; i++) {
+      String arg = args[i];
+      try {
+        switch (arg) {
+          case "--host":
+            host = args[++i];
+            break;
+          case "--port":
+            port = Integer.parseInt(args[++i]);
+            break;
+          case "--help":
+            System.out.println(USAGE);
+            System.exit(0);
+            break;
+          default:
+            throw new IllegalArgumentException("Unexpected argument: " + arg);
+        }
+      } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException badOption) {
+        System.err.println(arg + ": " + badOption.getMessage());
+        System.err.println(USAGE);
+        System.exit(2);
+      }
+    }
+    try {
+      start(host, port);
+    } catch (SQLException sqlEx) {
+      System.err.println(sqlEx.getMessage());
+      System.exit(1);
+    }
+    System.err.println("Serving on " + host + ":" + port + ", stop with Ctrl+C");
+    Runtime.getRuntime().addShutdownHook(new Thread(() ->
+        ConnectionProfile.named(ConnectionProfile.NETWORK).shutdown(), "server-shutdown"));
+    try {
+      new CountDownLatch(1).await(); // the server's threads are daemons, this one isn't
+    } catch (InterruptedException interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }// end of main method
+
+  /**
+   * Starts a server on databasegui.server.host and port, unless one is running here already.
+   */
+  public static void start() throws SQLException {
+    start(HOST, PORT);
+  }
+
+  /**
+   * Starts a server and waits until it answers. If another program is serving on the port
+   * already, its server is used instead.
+   *
+   * @throws SQLException if derbynet.jar isn't on the class path or no server came up
+   */
+  public static synchronized void start(String host, int port) throws SQLException {
+    if (control != null) {
+      return;
+    }
+    Object starting;
+    try {
+      Class<?> controlClass = Class.forName(CONTROL_CLASS);
+      Constructor<?> constructor = controlClass.getConstructor(InetAddress.class, int.class);
+      starting = constructor.newInstance(InetAddress.getByName(host), port);
+      if (ping(starting)) {
+        return; // another program has started one since, it isn't ours to stop
+      }
+      controlClass.getMethod("start", PrintWriter.class).invoke(starting,
+          new PrintWriter(System.out, true));
+    } catch (ClassNotFoundException notBundled) {
+      throw new SQLException("Starting a Derby Network Server needs derbynet.jar on the class"
+          + " path, from the same Derby release as lib/derby.jar", "08001", notBundled);
+    } catch (UnknownHostException badHost) {
+      throw new SQLException("Unknown server host " + host, "08001", badHost);
+    } catch (ReflectiveOperationException startFailed) {
+      Throwable cause = startFailed instanceof InvocationTargetException
+          ? startFailed.getCause() : startFailed;
+      throw new SQLException("Unable to start a Derby Network Server on " + host + ":" + port
+          + ": " + cause, "08001", cause);
+    }
+
+    // start returns straight away, and fails on its own thread if the port is taken
+    long deadline = System.currentTimeMillis() + START_TIMEOUT_MS;
+    while (!ping(starting)) {
+      if (System.currentTimeMillis() > deadline) {
+        throw new SQLException("The Derby Network Server on " + host + ":" + port
+            + " didn't start within " + START_TIMEOUT_MS / 1000 + " s", "08001");
+      }
+      try {
+        Thread.sleep(50);
+      } catch (InterruptedException interrupted) {
+        Thread.currentThread().interrupt();
+        throw new SQLException("Interrupted while starting the Derby Network Server", "08001");
+      }
+    }
+    control = starting;
+  }// end of start method
+
+  /**
+   * Stops the server started here, if there is one. Programs connected to it lose their
+   * connections.
+   *
+   * @return true if a server was running here
+   */
+  public static synchronized boolean stop() {
+    if (control == null) {
+      return false;
+    }
+    try {
+      control.getClass().getMethod("shutdown").invoke(control);
+    } catch (ReflectiveOperationException stopFailed) {
+      System.out.println("Issue stopping the Derby Network Server: " + stopFailed);
+    }
+    control = null;
+    return true;
+  }
+
+  /**
+   * @return true if a server was started by this program and is still running.
+   */
+  public static synchronized boolean isRunningHere() {
+    return control != null;
+  }
+
+  /**
+   * @return true if databasegui.server.host is this machine, where a server can be started.
+   */
+  public static boolean isLocal() {
+    try {
+      InetAddress address = InetAddress.getByName(HOST);
+      return address.isLoopbackAddress() || address.isAnyLocalAddress()
+          || address.equals(InetAddress.getLocalHost());
+    } catch (UnknownHostException badHost) {
+      return false;
+    }
+  }
+
+  /**
+   * @return true if the server answers, whether it runs here or in another program.
+   */
+  private static boolean ping(Object control) {
+    try {
+      control.getClass().getMethod("ping").invoke(control);
+      return true;
+    } catch (ReflectiveOperationException notYet) {
+      return false;
+    }
+  }
+}// end of NetworkServer class
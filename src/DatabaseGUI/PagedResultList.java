@@ -0,0 +1,324 @@
+package DatabaseGUI;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javafx.collections.ObservableListBase;
+
+/**
+ * A read-only list of query results that only keeps a few pages of rows in memory. The TableView
+ * only ever asks for the rows it is about to draw, so pages are requested from the PageSource when
+ * the user scrolls to them and the least recently used pages are dropped once more than
+ * maxCachedPages are held.
+ *
+ * The size of the list is the number of rows read so far. When the user scrolls near the end and
+ * the result has more rows, the next page is requested and the list grows, so the scroll bar keeps
+ * growing as the user scrolls down instead of the whole result being read up front.
+ *
+ * Each page is a ColumnarPage, so the values are kept in typed arrays rather than one String per
+ * cell. A row whose page isn't in memory shows up as a row of empty cells until the page arrives.
+ *
+ * With spilling on (the default), the pages are kept to a heap budget instead of a number of
+ * pages, and a page that is dropped is written to a SpillFile first. Scrolling back reads it from
+ * there, straight away, instead of running the query again and skipping to it. That way a result
+ * far bigger than the heap can be scrolled through, as long as there is room on disk.
+ * This class must only be used from the JavaFX application thread.
+ */
+public class PagedResultList extends ObservableListBase<ResultRow> {
+
+  public static final int DEFAULT_PAGE_SIZE = Integer.getInteger("databasegui.pageSize", 500);
+  public static final int DEFAULT_CACHED_PAGES = Integer.getInteger("databasegui.cachedPages", 8);
+
+  // how much of the heap the pages of one list may take before they are spilled to disk
+  public static final long HEAP_BUDGET_BYTES =
+      Long.getLong("databasegui.result.heapBudgetMB", 32) * 1024 * 1024;
+  public static final boolean SPILL =
+      Boolean.parseBoolean(System.getProperty("databasegui.spill", "true"));
+
+  /**
+   * Where the pages come from. Requests are made on the FX thread, and the source answers later by
+   * calling pageLoaded (also on the FX thread).
+   */
+  public interface PageSource {
+
+    /**
+     * Asks for the rows of a page. Pages past the end of what has been read so far are only asked
+     * for one at a time, in order.
+     */
+    void requestPage(int pageIndex);
+
+    /**
+     * Releases the cursor and connection behind the list. Pages can't be requested afterwards.
+     */
+    void close();
+  }
+
+  private final List<String> columnNames;
+  private final ColumnType[] columnTypes;
+  private final int pageSize;
+  private final int maxCachedPages;
+  private final ResultRow placeholder = new ResultRow(null, 0);
+  private PageSource source;
+
+  // pages in least recently used order, the eldest is the first to go
+  private final LinkedHashMap<Integer, ColumnarPage> pages;
+  private final Set<Integer> requested = new HashSet<>();
+  private int knownRows = 0;
+  private boolean complete = false;
+  private long heldBytes = 0; // estimateBytes of the pages in memory
+  private SpillFile spill; // made when the first page is spilled
+  private boolean spillFailed = false;
+
+  /**
+   * @param columnNames names of the result's columns
+   * @param columnTypes how each column is stored
+   * @param pageSize how many rows make up one page
+   * @param maxCachedPages how many pages may be held in memory at once. Only used if spilling is
+   *     off, otherwise the heap budget decides.
+   * @param source supplies the pages. May be null if every row is passed in up front.
+   */
+  public PagedResultList(List<String> columnNames, ColumnType[] columnTypes, int pageSize,
+      int maxCachedPages, PageSource source) {
+    this.columnNames = Collections.unmodifiableList(new ArrayList<>(columnNames));
+    this.columnTypes = columnTypes.clone();
+    this.pageSize = Math.max(1, pageSize);
+    this.maxCachedPages = Math.max(2, maxCachedPages);
+    this.source = source;
+    this.pages = new LinkedHashMap<>(16, 0.75f, true);
+  }
+
+  /**
+   * Makes a list of a result that has already been read in full, e.g. one from the QueryCache.
+   * Every page stays in memory, there is nothing to load them from.
+   */
+  public static PagedResultList ofPages(List<String> columnNames, ColumnType[] columnTypes,
+      int pageSize, List<ColumnarPage> pages) {
+    PagedResultList list = new PagedResultList(columnNames, columnTypes, pageSize, pages.size(),
+        null);
+    for (int pageIndex = 0; pageIndex < pages.size(); pageIndex++) {
+      list.pageLoaded(pageIndex, pages.get(pageIndex), pageIndex == pages.size() - 1);
+    }
+    list.complete = true; // also covers a result without any rows
+    return list;
+  }
+
+  /**
+   * Called by the PageSource when a page's rows have been read.
+   *
+   * @param pageIndex which page the rows belong to
+   * @param page the rows of the page. Fewer than a full page means the end of the result.
+   * @param endOfResult true if there are no rows after this page
+   */
+  public void pageLoaded(int pageIndex, ColumnarPage page, boolean endOfResult) {
+    requested.remove(pageIndex);
+    int firstRow = pageIndex * pageSize;
+    int rowCount = page.getRowCount();
+    int oldSize = knownRows;
+
+    hold(pageIndex, page);
+
+    if (endOfResult || rowCount < pageSize) {
+      complete = true;
+    }
+
+    beginChange();
+    // rows that were already counted were showing the placeholder until now
+    int replacedEnd = Math.min(oldSize, firstRow + rowCount);
+    for (int index = firstRow; index < replacedEnd; index++) {
+      nextSet(index, placeholder);
+    }
+    int newSize = Math.max(oldSize, firstRow + rowCount);
+    if (newSize > oldSize) {
+      knownRows = newSize;
+      nextAdd(oldSize, newSize);
+    }
+    endChange();
+  }
+
+  /**
+   * Called by the PageSource when it stops early (cancelled) or fails. The list keeps the rows it
+   * has and won't ask for more than that.
+   */
+  public void sourceStopped() {
+    requested.clear();
+    complete = true;
+  }
+
+  @Override
+  public ResultRow get(int index) {
+    if (index < 0 || index >= knownRows) {
+      throw new IndexOutOfBoundsException("Row " + index + " of " + knownRows);
+    }
+    int pageIndex = index / pageSize;
+
+    // the user is getting close to the last row read so far, so read the next page early
+    if (!complete && index >= knownRows - pageSize / 2) {
+      request(knownRows / pageSize);
+    }
+
+    ColumnarPage page = pages.get(pageIndex);
+    if (page == null && spill != null && spill.contains(pageIndex)) {
+      page = spill.read(pageIndex);
+      hold(pageIndex, page);
+    }
+    if (page == null) {
+      request(pageIndex); // was dropped to save memory, ask for it again
+      return placeholder;
+    }
+    return page.getRow(index - pageIndex * pageSize);
+  }
+
+  @Override
+  public int size() {
+    return knownRows;
+  }
+
+  public List<String> getColumnNames() {
+    return columnNames;
+  }
+
+  public ColumnType getColumnType(int column) {
+    return columnTypes[column];
+  }
+
+  public ColumnType[] getColumnTypes() {
+    return columnTypes.clone();
+  }
+
+  /**
+   * @return every page of the result in order, or null if the result hasn't been read to the end
+   *     or some of its pages have been dropped to save memory.
+   */
+  public List<ColumnarPage> getAllPages() {
+    if (!complete) {
+      return null;
+    }
+    int pageCount = (knownRows + pageSize - 1) / pageSize;
+    List<ColumnarPage> all = new ArrayList<>(pageCount);
+    for (int pageIndex = 0; pageIndex < pageCount; pageIndex++) {
+      ColumnarPage page = pages.get(pageIndex);
+      if (page == null) {
+        return null;
+      }
+      all.add(page);
+    }
+    return all;
+  }
+
+  /**
+   * @return true once the last row of the result has been read.
+   */
+  public boolean isComplete() {
+    return complete;
+  }
+
+  /**
+   * @return true while the list is waiting on the PageSource for a page.
+   */
+  public boolean isLoading() {
+    return !requested.isEmpty();
+  }
+
+  public int getPageSize() {
+    return pageSize;
+  }
+
+  public int getCachedPageCount() {
+    return pages.size();
+  }
+
+  /**
+   * @return roughly how much of the heap the pages in memory take.
+   */
+  public long getHeldBytes() {
+    return heldBytes;
+  }
+
+  /**
+   * @return how many bytes of pages have been written to disk, 0 if none have.
+   */
+  public long getSpilledBytes() {
+    return spill == null ? 0 : spill.getBytesWritten();
+  }
+
+  /**
+   * Lets go of the cursor and connection behind the list, and deletes the spill file. The rows
+   * still in memory can still be looked at, but nothing more will be loaded.
+   */
+  public void close() {
+    PageSource closing = source;
+    source = null;
+    requested.clear();
+    if (spill != null) {
+      spill.close();
+      spill = null;
+    }
+    if (closing != null) {
+      closing.close();
+    }
+  }
+
+  private void request(int pageIndex) {
+    if (source != null && requested.add(pageIndex)) {
+      source.requestPage(pageIndex);
+    }
+  }
+
+  private void hold(int pageIndex, ColumnarPage page) {
+    ColumnarPage replaced = pages.put(pageIndex, page);
+    if (replaced != null) {
+      heldBytes -= replaced.estimateBytes();
+    }
+    heldBytes += page.estimateBytes();
+    evictPages();
+  }
+
+  /**
+   * Drops the least recently used pages once there are too many, or they take more than the heap
+   * budget. With spilling on, a page is written to the spill file before it goes. A list without
+   * a source never drops pages, there would be nothing to get them back from.
+   */
+  private void evictPages() {
+    if (source == null && spill == null) {
+      return;
+    }
+    Iterator<Map.Entry<Integer, ColumnarPage>> eldestFirst =
+        pages.entrySet().iterator();
+    while (pages.size() > 2 && tooMuchHeld() && eldestFirst.hasNext()) {
+      Map.Entry<Integer, ColumnarPage> eldest = eldestFirst.next();
+      spill(eldest.getKey(), eldest.getValue());
+      heldBytes -= eldest.getValue().estimateBytes();
+      eldestFirst.remove();
+    }
+  }// end of evictPages method
+
+  private boolean tooMuchHeld() {
+    return spilling() ? heldBytes > HEAP_BUDGET_BYTES : pages.size() > maxCachedPages;
+  }
+
+  private boolean spilling() {
+    return SPILL && !spillFailed;
+  }
+
+  private void spill(int pageIndex, ColumnarPage page) {
+    if (!spilling()) {
+      return;
+    }
+    try {
+      if (spill == null) {
+        spill = new SpillFile();
+      }
+      spill.write(pageIndex, page);
+    } catch (IOException ioEx) {
+      // e.g. the disk is full. Back to dropping pages and reading them again.
+      System.out.println("Couldn't spill results to disk: " + ioEx.getMessage());
+      spillFailed = true;
+    }
+  }
+}
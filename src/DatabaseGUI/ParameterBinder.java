@@ -0,0 +1,112 @@
+package DatabaseGUI;
+
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.JDBCType;
+import java.sql.ParameterMetaData;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Fills in the ? parameters of a PreparedStatement from text typed by the user, whether it was
+ * typed into the parameter fields of the window or given on the BatchRunner command line. Has no
+ * JavaFX in it, so the headless runner can use it.
+ */
+final class ParameterBinder {
+
+  private ParameterBinder() {
+  }
+
+  /**
+   * Looks up the value of every ? of the statement by its name. A parameter that has no value is
+   * treated as empty.
+   *
+   * @param values the text typed for each parameter, by name (see SqlText.parameters)
+   */
+  static List<String> valuesOf(SqlText.Parameters parameters, Map<String, String> values) {
+    List<String> ordered = new ArrayList<>(parameters.getNames().size());
+    for (String name : parameters.getNames()) {
+      String value = values.get(name);
+      ordered.add(value == null ? "" : value);
+    }
+    return ordered;
+  }
+
+  /**
+   * Sets each ? from the text the user typed, converted to the type Derby expects there. An empty
+   * value is NULL, except for text parameters where it's an empty string.
+   */
+  static void bind(PreparedStatement statement, List<String> names,
+      List<String> values) throws SQLException {
+    if (names.isEmpty()) {
+      return;
+    }
+    ParameterMetaData meta = statement.getParameterMetaData();
+    for (int i = 0; i < names.size(); i++) {
+      int index = i + 1;
+      int type = meta.getParameterType(index);
+      Object value;
+      try {
+        value = convert(type, values.get(i));
+      } catch (IllegalArgumentException badValue) { // NumberFormatException is one of these too
+        throw new SQLException("Parameter " + names.get(i) + ": '" + values.get(i).trim()
+            + "' is not a valid " + JDBCType.valueOf(type).getName(), "22018", badValue);
+      }
+      if (value == null) {
+        statement.setNull(index, type);
+      } else {
+        statement.setObject(index, value);
+      }
+    }
+  }// end of bind method
+
+  /**
+   * Turns typed text into the Java object JDBC expects for a column or parameter of the given
+   * java.sql.Types type. Text types keep the text exactly as it is. For every other type the text
+   * is trimmed, and empty text means NULL.
+   *
+   * @return the value, or null for NULL
+   * @throws IllegalArgumentException if the text isn't a valid value of the type
+   */
+  static Object convert(int type, String text) {
+    switch (type) {
+      case Types.CHAR:
+      case Types.VARCHAR:
+      case Types.LONGVARCHAR:
+      case Types.CLOB:
+        return text;
+      default:
+        break;
+    }
+    String value = text.trim();
+    if (value.isEmpty()) {
+      return null;
+    }
+    switch (type) {
+      case Types.SMALLINT:
+      case Types.TINYINT:
+      case Types.INTEGER:
+        return Integer.parseInt(value);
+      case Types.BIGINT:
+        return Long.parseLong(value);
+      case Types.REAL:
+      case Types.FLOAT:
+      case Types.DOUBLE:
+        return Double.parseDouble(value);
+      case Types.DECIMAL:
+      case Types.NUMERIC:
+        return new BigDecimal(value);
+      case Types.DATE:
+        return Date.valueOf(value);
+      case Types.TIMESTAMP:
+        return Timestamp.valueOf(value);
+      default:
+        return value; // let Derby convert it
+    }
+  }
+}
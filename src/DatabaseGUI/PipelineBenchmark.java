@@ -0,0 +1,418 @@
+package DatabaseGUI;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import javafx.beans.property.SimpleStringProperty;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+
+/**
+ * Times each stage of getting a query result into the table on its own, so a change to one stage
+ * can be measured instead of guessed at. Every stage runs against a generated in-memory Derby
+ * database of the size asked for, so salesDB is never touched and the numbers don't depend on
+ * whatever is on disk.
+ *
+ * The stages:
+ *   connect-pooled       DatabaseConnect.connect and close (borrow and return)
+ *   connect-raw          DriverManager.getConnection and close, what connect used to do
+ *   execute-statement    createStatement and a point lookup with a different literal every time
+ *   execute-prepared     the same lookup through the pooled connection's statement cache
+ *   drain                rs.next over the whole table, reading nothing
+ *   materialize-legacy   the old Main.handle loop: an ObservableList of Strings per row
+ *   materialize-model    DBTableModel.addRow over the whole table
+ *   materialize-columnar ColumnarPage.read, one page at a time, as QueryExecutor does
+ *   cell-legacy          the old cell value factory: a SimpleStringProperty per cell
+ *   cell-columnar        ResultRow.format per cell, what ResultCell does
+ *   sort-legacy          sorting the String rows by category then price, as TableView did
+ *   sort-local           ResultView's typed sort by category then price (descending)
+ *   filter-local         ResultView's filter for rows containing "name 12"
+ *
+ * Each stage is warmed up first, then timed over several iterations. An iteration runs the stage
+ * over and over until --time-ms has passed, so quick stages get many runs and slow ones at least
+ * one. The bytes allocated per run are read from the JVM's per-thread allocation counter.
+ *
+ * java -cp out:lib/derby.jar:(JavaFX jars) DatabaseGUI.PipelineBenchmark --rows 100000
+ */
+public class PipelineBenchmark {
+
+  private static final String BENCH_URL = "jdbc:derby:memory:benchDB";
+  private static final String USER = "twittwer"; // the tables go in the same schema as salesDB
+  private static final String FULL_SCAN = "SELECT * FROM bench";
+  private static final String POINT_LOOKUP = "SELECT * FROM bench WHERE id = ";
+
+  private static final String USAGE = String.join(System.lineSeparator(),
+      "Usage: PipelineBenchmark [options]",
+      "  --rows N        rows in the generated table (default 100000)",
+      "  --warmup N      warm-up iterations per stage (default 3)",
+      "  --iterations N  timed iterations per stage (default 5)",
+      "  --time-ms N     how long one iteration runs for (default 500)",
+      "  --page-size N   page size for materialize-columnar and fetch size for all (default 500)",
+      "  --stage NAME    only run stages whose name starts with NAME (may be repeated)",
+      "  --help          show this message");
+
+  /**
+   * One stage of the pipeline. Returns a number worked out from what it read, which is added up
+   * and printed at the end so the JIT can't decide the work was pointless and skip it.
+   */
+  private interface Stage {
+
+    long run() throws Exception;
+  }
+
+  private int rows = 100000;
+  private int warmup = 3;
+  private int iterations = 5;
+  private long timeMs = 500;
+  private int pageSize = 500;
+  private final List<String> only = new ArrayList<>();
+
+  private final Random random = new Random(42);
+  private long blackhole = 0;
+  // each drawn cell value is stored here, like a real cell keeps it. Without it the JIT sees the
+  // value never leaves the loop and doesn't allocate it at all, which makes the old path look free.
+  private Object lastCell;
+
+  // what the cell stages draw, loaded once
+  private List<ObservableList<String>> legacyRows;
+  private List<ColumnarPage> columnarPages;
+  private ResultView localView;
+
+  public static void main(String[] args) throws Exception {
+    PipelineBenchmark benchmark = new PipelineBenchmark();
+    for (int i = 0; i < args.length; i++) {
+      switch (args[i]) {
+        case "--rows":
+          benchmark.rows = Integer.parseInt(args[++i]);
+          break;
+        case "--warmup":
+          benchmark.warmup = Integer.parseInt(args[++i]);
+          break;
+        case "--iterations":
+          benchmark.iterations = Math.max(1, Integer.parseInt(args[++i]));
+          break;
+        case "--time-ms":
+          benchmark.timeMs = Long.parseLong(args[++i]);
+          break;
+        case "--page-size":
+          benchmark.pageSize = Math.max(1, Integer.parseInt(args[++i]));
+          break;
+        case "--stage":
+          benchmark.only.add(args[++i]);
+          break;
+        case "--help":
+          System.out.println(USAGE);
+          return;
+        default:
+          System.err.println("Unexpected argument: " + args[i]);
+          System.err.println(USAGE);
+          System.exit(2);
+      }
+    }
+
+    // must be set before DatabaseConnect is first used, it reads the URL once
+    System.setProperty("databasegui.url", BENCH_URL);
+    try {
+      benchmark.generate();
+      benchmark.runAll();
+    } finally {
+      DatabaseConnect.shutdown();
+    }
+  }// end of main method
+
+  /**
+   * Creates the BENCH table with a mix of the column types salesDB has: ints, a long, a double, a
+   * decimal, a date, a unique text column and a text column with few distinct values.
+   */
+  private void generate() throws SQLException {
+    long start = System.nanoTime();
+    try (Connection connection = DriverManager.getConnection(BENCH_URL + ";create=true", USER,
+        "")) {
+      try (Statement statement = connection.createStatement()) {
+        statement.execute("CREATE TABLE bench (id INT PRIMARY KEY, name VARCHAR(40), "
+            + "category VARCHAR(20), price DOUBLE, quantity BIGINT, amount DECIMAL(12, 2), "
+            + "orderDate DATE, customerId INT)");
+      }
+      connection.setAutoCommit(false);
+      String[] categories = {"books", "games", "garden", "kitchen", "music", "toys", "tools"};
+      try (PreparedStatement insert = connection.prepareStatement(
+          "INSERT INTO bench VALUES (?, ?, ?, ?, ?, ?, ?, ?)")) {
+        for (int id = 0; id < rows; id++) {
+          insert.setInt(1, id);
+          insert.setString(2, "Customer name " + id);
+          insert.setString(3, categories[id % categories.length]);
+          insert.setDouble(4, random.nextInt(100000) / 100.0);
+          insert.setLong(5, random.nextInt(1000));
+          insert.setBigDecimal(6, BigDecimal.valueOf(random.nextInt(10000000), 2));
+          insert.setDate(7, new Date(1420070400000L + (id % 2000) * 86400000L));
+          insert.setInt(8, random.nextInt(1000));
+          insert.addBatch();
+          if (id % 5000 == 4999) {
+            insert.executeBatch();
+            connection.commit();
+          }
+        }
+        insert.executeBatch();
+        connection.commit();
+      }
+    }
+    System.out.printf("Generated %d rows in %.0f ms%n%n", rows, (System.nanoTime() - start) / 1e6);
+  }// end of generate method
+
+  private void runAll() throws Exception {
+    Map<String, Stage> stages = new LinkedHashMap<>();
+    stages.put("connect-pooled", () -> {
+      try (Connection connection = DatabaseConnect.connect()) {
+        return connection.hashCode();
+      }
+    });
+    stages.put("connect-raw", () -> {
+      try (Connection connection = DriverManager.getConnection(BENCH_URL, USER, "")) {
+        return connection.hashCode();
+      }
+    });
+    stages.put("execute-statement", () -> {
+      try (Connection connection = DatabaseConnect.connect();
+          Statement statement = connection.createStatement();
+          ResultSet rs = statement.executeQuery(POINT_LOOKUP + random.nextInt(rows))) {
+        return rs.next() ? rs.getInt(1) : 0;
+      }
+    });
+    stages.put("execute-prepared", () -> {
+      try (Connection connection = DatabaseConnect.connect();
+          PreparedStatement statement = connection.prepareStatement(POINT_LOOKUP + "?")) {
+        statement.setInt(1, random.nextInt(rows));
+        try (ResultSet rs = statement.executeQuery()) {
+          return rs.next() ? rs.getInt(1) : 0;
+        }
+      }
+    });
+    stages.put("drain", () -> scan(rs -> {
+      long count = 0;
+      while (rs.next()) {
+        count++;
+      }
+      return count;
+    }));
+    stages.put("materialize-legacy", () -> scan(rs -> readLegacy(rs).size()));
+    stages.put("materialize-model", this::readWithModel);
+    stages.put("materialize-columnar", () -> scan(rs -> readColumnar(rs).size()));
+    stages.put("cell-legacy", this::drawLegacyCells);
+    stages.put("cell-columnar", this::drawColumnarCells);
+    stages.put("sort-legacy", () -> {
+      List<ObservableList<String>> copy = new ArrayList<>(legacyRows);
+      // the TableView compared the cell text, so "10.5" sorts before "9.5"
+      copy.sort((a, b) -> {
+        int byCategory = a.get(2).compareTo(b.get(2));
+        return byCategory != 0 ? byCategory : b.get(3).compareTo(a.get(3));
+      });
+      return copy.get(0).hashCode();
+    });
+    stages.put("sort-local", () -> localView.sortOrder(new int[] {2, 3},
+        new boolean[] {true, false})[0]);
+    stages.put("filter-local", () -> localView.filterRows(null, "name 12").length);
+
+    System.out.printf("%-22s %12s %12s %12s %14s %12s%n", "stage", "ms/op", "error", "ops/s",
+        "alloc MB/op", "alloc MB/s");
+    for (Map.Entry<String, Stage> stage : stages.entrySet()) {
+      if (selected(stage.getKey())) {
+        measure(stage.getKey(), stage.getValue());
+      }
+    }
+    System.out.println();
+    System.out.println("(blackhole " + blackhole + ")");
+  }// end of runAll method
+
+  /**
+   * Warms a stage up, then times it and prints one line: the mean time per run with the spread
+   * between iterations, runs per second, and how much it allocated.
+   */
+  private void measure(String name, Stage stage) throws Exception {
+    prepareFor(name);
+    for (int i = 0; i < warmup; i++) {
+      iteration(stage);
+    }
+    double[] nanosPerOp = new double[iterations];
+    double[] bytesPerOp = new double[iterations];
+    for (int i = 0; i < iterations; i++) {
+      double[] result = iteration(stage);
+      nanosPerOp[i] = result[0];
+      bytesPerOp[i] = result[1];
+    }
+
+    double meanNanos = mean(nanosPerOp);
+    double meanBytes = mean(bytesPerOp);
+    System.out.printf("%-22s %12.4f %12.4f %12.1f %14.3f %12.1f%n", name, meanNanos / 1e6,
+        halfRange(nanosPerOp) / 1e6, 1e9 / meanNanos, meanBytes / 1048576.0,
+        meanBytes / 1048576.0 / (meanNanos / 1e9));
+  }
+
+  /**
+   * Runs the stage until timeMs has passed.
+   *
+   * @return nanoseconds per run and bytes allocated per run
+   */
+  private double[] iteration(Stage stage) throws Exception {
+    long ops = 0;
+    long bytesBefore = QueryMetrics.allocatedBytes();
+    long start = System.nanoTime();
+    long deadline = start + timeMs * 1000000L;
+    long now;
+    do {
+      blackhole += stage.run();
+      ops++;
+      now = System.nanoTime();
+    } while (now < deadline);
+    long bytes = QueryMetrics.allocatedBytes() - bytesBefore;
+    return new double[]{(now - start) / (double) ops, bytes / (double) ops};
+  }
+
+  /**
+   * The cell stages draw rows that were read beforehand, so reading them isn't counted.
+   */
+  private void prepareFor(String name) throws Exception {
+    if ("cell-legacy".equals(name) && legacyRows == null) {
+      legacyRows = scanRows(rs -> readLegacy(rs));
+    }
+    if ("sort-legacy".equals(name) && legacyRows == null) {
+      legacyRows = scanRows(rs -> readLegacy(rs));
+    }
+    if (("cell-columnar".equals(name) || name.endsWith("-local")) && columnarPages == null) {
+      columnarPages = scanRows(rs -> readColumnar(rs));
+    }
+    if (name.endsWith("-local") && localView == null) {
+      List<String> names = new ArrayList<>();
+      ColumnType[] types = new ColumnType[columnarPages.get(0).getColumnCount()];
+      for (int column = 0; column < types.length; column++) {
+        names.add("C" + column);
+        types[column] = columnarPages.get(0).getType(column);
+      }
+      localView = new ResultView(names, types, pageSize, columnarPages);
+    }
+  }
+
+  /**
+   * What the old Main.handle did with every row: an ObservableList of Strings each.
+   */
+  private static List<ObservableList<String>> readLegacy(ResultSet rs) throws SQLException {
+    ResultSetMetaData rsmd = rs.getMetaData();
+    ObservableList<ObservableList<String>> data = FXCollections.observableArrayList();
+    while (rs.next()) {
+      ObservableList<String> row = FXCollections.observableArrayList();
+      for (int column = 1; column <= rsmd.getColumnCount(); column++) {
+        row.add(rs.getString(column));
+      }
+      data.add(row);
+    }
+    return data;
+  }
+
+  private List<ColumnarPage> readColumnar(ResultSet rs) throws SQLException {
+    ColumnType[] types = ColumnarPage.typesOf(rs);
+    int[] scales = ColumnarPage.scalesOf(rs);
+    List<ColumnarPage> pages = new ArrayList<>();
+    ColumnarPage page;
+    do {
+      page = ColumnarPage.read(rs, types, scales, pageSize, () -> false);
+      pages.add(page);
+    } while (page.getRowCount() == pageSize);
+    return pages;
+  }
+
+  private long readWithModel() throws SQLException {
+    DBTableModel model = new DBTableModel(BENCH_URL, USER, "", FULL_SCAN);
+    try {
+      while (model.getResultSet().next()) {
+        model.addRow();
+      }
+      return model.getTotalQueryRows();
+    } finally {
+      model.disconnectFromDatabase();
+    }
+  }
+
+  private long drawLegacyCells() {
+    long length = 0;
+    for (ObservableList<String> row : legacyRows) {
+      for (int column = 0; column < row.size(); column++) {
+        SimpleStringProperty cell = new SimpleStringProperty(String.valueOf(row.get(column)));
+        lastCell = cell;
+        length += cell.get().length();
+      }
+    }
+    return length;
+  }
+
+  private long drawColumnarCells() {
+    long length = 0;
+    for (ColumnarPage page : columnarPages) {
+      for (int row = 0; row < page.getRowCount(); row++) {
+        ResultRow resultRow = page.getRow(row);
+        for (int column = 0; column < page.getColumnCount(); column++) {
+          String cell = resultRow.format(column);
+          lastCell = cell;
+          length += cell.length();
+        }
+      }
+    }
+    return length;
+  }
+
+  /**
+   * Reads the whole table through a pooled connection with a forward-only cursor.
+   */
+  private long scan(ResultReader<?> reader) throws Exception {
+    Object result = scanRows(reader);
+    return result instanceof Number ? ((Number) result).longValue() : result.hashCode();
+  }
+
+  private <T> T scanRows(ResultReader<T> reader) throws Exception {
+    try (Connection connection = DatabaseConnect.connect();
+        PreparedStatement statement = connection.prepareStatement(FULL_SCAN)) {
+      statement.setFetchSize(pageSize);
+      try (ResultSet rs = statement.executeQuery()) {
+        return reader.read(rs);
+      }
+    }
+  }
+
+  private interface ResultReader<T> {
+
+    T read(ResultSet rs) throws SQLException;
+  }
+
+  private boolean selected(String name) {
+    if (only.isEmpty()) {
+      return true;
+    }
+    for (String prefix : only) {
+      if (name.startsWith(prefix)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static double mean(double[] values) {
+    return Arrays.stream(values).average().orElse(0);
+  }
+
+  /**
+   * Half the distance between the fastest and slowest iteration, a rough +/- for the mean.
+   */
+  private static double halfRange(double[] values) {
+    return (Arrays.stream(values).max().orElse(0) - Arrays.stream(values).min().orElse(0)) / 2;
+  }
+}
@@ -0,0 +1,330 @@
+package DatabaseGUI;
+
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Explains a query: runs it once with Derby's runtime statistics on and reads the plan Derby used
+ * (see QueryPlan), then runs it a few more times without them to time it.
+ *
+ * The index advisor looks at the tables the plan reads from start to end and the columns the
+ * query compares in its ON and WHERE clauses. A column of such a table that no index starts with
+ * gets a CREATE INDEX suggestion. It's a rule of thumb, not a cost model: whether Derby then uses
+ * the index is up to its optimizer, which is why the suggestions can be created and the query
+ * timed again straight away, and dropped again if they didn't help.
+ *
+ * Runtime statistics are switched on per connection, so they are switched off again before the
+ * pooled connection goes back. Like ScriptRunner this class doesn't touch JavaFX.
+ */
+public class PlanExplainer {
+
+  // rows read per run. A bigger result is cut off, its plan then shows the rows read so far.
+  public static final int MAX_ROWS = Integer.getInteger("databasegui.explain.maxRows", 100000);
+  // how many times the query is timed, the fastest run counts
+  public static final int TIMING_RUNS = Math.max(1, Integer.getInteger("databasegui.explain.runs",
+      3));
+
+  /**
+   * A plan, and how long the query takes without statistics being gathered.
+   */
+  public static final class Explanation {
+
+    private final String sql;
+    private final QueryPlan plan;
+    private final long rows;
+    private final boolean truncated;
+    private final long bestNanos;
+
+    Explanation(String sql, QueryPlan plan, long rows, boolean truncated, long bestNanos) {
+      this.sql = sql;
+      this.plan = plan;
+      this.rows = rows;
+      this.truncated = truncated;
+      this.bestNanos = bestNanos;
+    }
+
+    public String getSql() {
+      return sql;
+    }
+
+    public QueryPlan getPlan() {
+      return plan;
+    }
+
+    /**
+     * @return the rows the query returned, or the first MAX_ROWS of them.
+     */
+    public long getRows() {
+      return rows;
+    }
+
+    public boolean isTruncated() {
+      return truncated;
+    }
+
+    /**
+     * @return the fastest of the TIMING_RUNS runs, from execute to the last row read.
+     */
+    public long getBestNanos() {
+      return bestNanos;
+    }
+  }// end of Explanation class
+
+  /**
+   * One suggested index.
+   */
+  public static final class IndexAdvice {
+
+    private final String table;
+    private final String column;
+    private final String indexName;
+    private final String reason;
+
+    IndexAdvice(String table, String column, String indexName, String reason) {
+      this.table = table;
+      this.column = column;
+      this.indexName = indexName;
+      this.reason = reason;
+    }
+
+    public String getTable() {
+      return table;
+    }
+
+    public String getColumn() {
+      return column;
+    }
+
+    public String getIndexName() {
+      return indexName;
+    }
+
+    /**
+     * @return the statement that creates the index.
+     */
+    public String getSql() {
+      return "CREATE INDEX " + indexName + " ON " + table + " (" + column + ")";
+    }
+
+    /**
+     * @return why the index is suggested, e.g. "Table Scan of ORDERS visited 5000 rows, and
+     *     CUSTOMERID is compared in a join or filter"
+     */
+    public String getReason() {
+      return reason;
+    }
+
+    @Override
+    public String toString() {
+      return getSql() + "  -- " + reason;
+    }
+  }// end of IndexAdvice class
+
+  private int queryTimeout = QueryExecutor.DEFAULT_QUERY_TIMEOUT;
+
+  /**
+   * @param seconds how long Derby may spend on each run. 0 means no limit.
+   */
+  public PlanExplainer setQueryTimeout(int seconds) {
+    this.queryTimeout = Math.max(0, seconds);
+    return this;
+  }
+
+  /**
+   * Runs the query with runtime statistics on, reads its plan, and times it TIMING_RUNS more
+   * times.
+   *
+   * @param parameterValues the text typed for each ? or :name parameter, by name
+   * @throws SQLException if the statement isn't a query, or it failed
+   */
+  public Explanation explain(String sql, Map<String, String> parameterValues)
+      throws SQLException {
+    if (!SqlText.isQuery(sql)) {
+      throw new SQLException("Only queries (SELECT, VALUES or WITH) can be explained");
+    }
+    SqlText.Parameters parameters = SqlText.parameters(sql);
+    List<String> values = ParameterBinder.valuesOf(parameters, parameterValues);
+
+    try (Connection connection = DatabaseConnect.connect()) {
+      QueryPlan plan;
+      long[] rows = new long[2]; // rows read, and 1 if there were more
+      setStatistics(connection, true);
+      try {
+        run(connection, parameters, values, rows);
+        try (Statement statement = connection.createStatement();
+            ResultSet rs = statement.executeQuery(
+                "VALUES SYSCS_UTIL.SYSCS_GET_RUNTIMESTATISTICS()")) {
+          plan = QueryPlan.parse(rs.next() && rs.getString(1) != null ? rs.getString(1) : "");
+        }
+      } finally {
+        setStatistics(connection, false);
+      }
+
+      long best = Long.MAX_VALUE;
+      for (int i = 0; i < TIMING_RUNS; i++) {
+        best = Math.min(best, run(connection, parameters, values, new long[2]));
+      }
+      return new Explanation(sql, plan, rows[0], rows[1] > 0, best);
+    }
+  }// end of explain method
+
+  /**
+   * Suggests an index for every column the query compares that belongs to a table the plan
+   * scans in full, unless an index already starts with that column.
+   */
+  public List<IndexAdvice> advise(String sql, QueryPlan plan) throws SQLException {
+    List<QueryPlan.Node> scans = plan.getFullScans();
+    if (scans.isEmpty()) {
+      return Collections.emptyList();
+    }
+    Map<String, String> aliases = SqlText.tableAliases(sql);
+    Set<String> compared = SqlText.predicateColumns(sql);
+    Map<String, IndexAdvice> advice = new LinkedHashMap<>();
+
+    try (Connection connection = DatabaseConnect.connect()) {
+      DatabaseMetaData metaData = connection.getMetaData();
+      String schema = metaData.getUserName().toUpperCase(Locale.ROOT);
+      for (QueryPlan.Node scan : scans) {
+        String table = scan.getTable();
+        Set<String> columns = names(metaData.getColumns(null, schema, table, "%"),
+            "COLUMN_NAME", false);
+        Set<String> indexed = names(metaData.getIndexInfo(null, schema, table, false, true),
+            "COLUMN_NAME", true);
+
+        for (String reference : compared) {
+          int dot = reference.lastIndexOf('.');
+          String column = reference.substring(dot + 1);
+          if (dot > 0) {
+            String qualifier = reference.substring(0, dot);
+            qualifier = qualifier.substring(qualifier.lastIndexOf('.') + 1);
+            if (!table.equals(aliases.get(qualifier))) {
+              continue; // a column of another table
+            }
+          }
+          String key = table + "." + column;
+          if (!columns.contains(column) || indexed.contains(column) || advice.containsKey(key)) {
+            continue;
+          }
+          String visited = scan.getRowsVisited() >= 0 ? scan.getRowsVisited() + " rows"
+              : "every row";
+          String reason = scan.getOperator() + " of " + table + " visited " + visited
+              + (scan.getOpens() > 1 ? " in each of " + scan.getOpens() + " opens" : "")
+              + ", and " + column + " is compared in a join or filter";
+          advice.put(key, new IndexAdvice(table, column, indexName(table, column), reason));
+        }
+      }
+    }
+    return new ArrayList<>(advice.values());
+  }// end of advise method
+
+  /**
+   * Creates the suggested indexes, one statement at a time.
+   */
+  public void createIndexes(List<IndexAdvice> advice) throws SQLException {
+    try (Connection connection = DatabaseConnect.connect();
+        Statement statement = connection.createStatement()) {
+      for (IndexAdvice index : advice) {
+        statement.executeUpdate(index.getSql());
+      }
+    }
+  }
+
+  /**
+   * Drops indexes made by createIndexes.
+   */
+  public void dropIndexes(List<IndexAdvice> advice) throws SQLException {
+    try (Connection connection = DatabaseConnect.connect();
+        Statement statement = connection.createStatement()) {
+      for (IndexAdvice index : advice) {
+        statement.executeUpdate("DROP INDEX " + index.getIndexName());
+      }
+    }
+  }
+
+  /**
+   * Runs the query and reads up to MAX_ROWS rows.
+   *
+   * @param rows gets the number of rows read, and 1 in rows[1] if there were more
+   * @return the time from execute to the last row read
+   */
+  private long run(Connection connection, SqlText.Parameters parameters, List<String> values,
+      long[] rows) throws SQLException {
+    try (PreparedStatement statement = connection.prepareStatement(parameters.getSql(),
+        ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+      statement.setQueryTimeout(queryTimeout);
+      statement.setFetchSize(PagedResultList.DEFAULT_PAGE_SIZE);
+      ParameterBinder.bind(statement, parameters.getNames(), values);
+      long start = System.nanoTime();
+      try (ResultSet rs = statement.executeQuery()) {
+        int columns = rs.getMetaData().getColumnCount();
+        while (rows[0] < MAX_ROWS && rs.next()) {
+          for (int column = 1; column <= columns; column++) {
+            rs.getObject(column); // the values are read, as they would be for the table
+          }
+          rows[0]++;
+        }
+        if (rows[0] == MAX_ROWS && rs.next()) {
+          rows[1] = 1;
+        }
+      }
+      return System.nanoTime() - start;
+    }
+  }// end of run method
+
+  /**
+   * Switches runtime statistics, and the timing that goes with them, on or off for the
+   * connection.
+   */
+  private static void setStatistics(Connection connection, boolean on) throws SQLException {
+    try (CallableStatement statistics = connection.prepareCall(
+        "CALL SYSCS_UTIL.SYSCS_SET_RUNTIMESTATISTICS(?)");
+        CallableStatement timing = connection.prepareCall(
+            "CALL SYSCS_UTIL.SYSCS_SET_STATISTICS_TIMING(?)")) {
+      statistics.setInt(1, on ? 1 : 0);
+      statistics.execute();
+      timing.setInt(1, on ? 1 : 0);
+      timing.execute();
+    }
+  }
+
+  /**
+   * Reads one column of a metadata ResultSet into a set, closing it afterwards.
+   *
+   * @param firstOnly only keep the first column of each index
+   */
+  private static Set<String> names(ResultSet rs, String column, boolean firstOnly)
+      throws SQLException {
+    Set<String> names = new HashSet<>();
+    try {
+      while (rs.next()) {
+        if (!firstOnly || rs.getShort("ORDINAL_POSITION") == 1) {
+          names.add(rs.getString(column));
+        }
+      }
+    } finally {
+      rs.close();
+    }
+    return names;
+  }
+
+  /**
+   * @return e.g. "IDX_ORDERS_CUSTOMERID", cut to Derby's 128 character limit.
+   */
+  private static String indexName(String table, String column) {
+    String name = "IDX_" + table + "_" + column;
+    return name.length() > 128 ? name.substring(0, 128) : name;
+  }
+}// end of PlanExplainer class
@@ -0,0 +1,286 @@
+package DatabaseGUI;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * Keeps the complete results of recent queries in memory, so running the same query again doesn't
+ * have to go back to Derby at all. Queries are looked up by their normalized text (see
+ * SqlText.normalize) plus the values of their parameters, so differences in case and spacing
+ * don't matter but the same query run with a different :name value is a different result.
+ *
+ * The cache is bounded by a memory budget. When a new result doesn't fit, the least recently used
+ * results are dropped until it does. Whenever a statement changes a table, every cached result
+ * that read from that table is dropped. That only works when the tables the query names are the
+ * tables it reads, so queries that use a view, a table the catalog doesn't know about, or a
+ * value like CURRENT_TIMESTAMP or RANDOM() are never cached.
+ *
+ * All methods are synchronized since results are put in from the query worker thread.
+ */
+public class QueryCache {
+
+  public static final long DEFAULT_BUDGET_BYTES =
+      Long.getLong("databasegui.cache.mb", 32) * 1024 * 1024;
+
+  /**
+   * A complete query result, ready to be shown again.
+   */
+  public static class CachedResult {
+
+    private final List<String> columnNames;
+    private final ColumnType[] columnTypes;
+    private final int pageSize;
+    private final List<ColumnarPage> pages;
+    private final Set<String> tables;
+    private final long bytes;
+
+    CachedResult(List<String> columnNames, ColumnType[] columnTypes, int pageSize,
+        List<ColumnarPage> pages, Set<String> tables, long bytes) {
+      this.columnNames = columnNames;
+      this.columnTypes = columnTypes;
+      this.pageSize = pageSize;
+      this.pages = pages;
+      this.tables = tables;
+      this.bytes = bytes;
+    }
+
+    /**
+     * @return a new list showing this result. The pages themselves are shared, not copied.
+     */
+    public PagedResultList toList() {
+      return PagedResultList.ofPages(columnNames, columnTypes, pageSize, pages);
+    }
+
+    public long getBytes() {
+      return bytes;
+    }
+  }
+
+  private final long budgetBytes;
+  // least recently used first
+  private final LinkedHashMap<String, CachedResult> entries = new LinkedHashMap<>(16, 0.75f, true);
+  private long usedBytes = 0;
+  private long generation = 0; // goes up every time something is invalidated
+
+  private long hits = 0;
+  private long misses = 0;
+  // without a check, only queries that read no table at all can be cached
+  private Predicate<String> tableCheck = table -> false;
+  private boolean enabled = true;
+
+  public QueryCache() {
+    this(DEFAULT_BUDGET_BYTES);
+  }
+
+  /**
+   * @param budgetBytes the most memory the cached results may take up together
+   */
+  public QueryCache(long budgetBytes) {
+    this.budgetBytes = Math.max(0, budgetBytes);
+  }
+
+  /**
+   * Sets what decides whether a table's results can be cached: it should be true only for plain
+   * tables whose changes go through statementExecuted or invalidateTables, not for views, whose
+   * base tables a write doesn't name.
+   *
+   * @param tableCheck given a table name as the catalog has it (upper case unless it was quoted),
+   *     without its schema
+   */
+  public synchronized void setTableCheck(Predicate<String> tableCheck) {
+    this.tableCheck = tableCheck;
+  }
+
+  /**
+   * Turns the cache on or off. It has to be off when other programs can write to the database, as
+   * they do through a network server: their writes never reach statementExecuted, so nothing
+   * would drop the results they made stale.
+   */
+  public synchronized void setEnabled(boolean enabled) {
+    this.enabled = enabled;
+    if (!enabled) {
+      clear();
+    }
+  }
+
+  public synchronized boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * @return the cached result of the query, or null if it isn't cached.
+   */
+  public CachedResult get(String sql) {
+    return get(sql, Collections.<String>emptyList());
+  }
+
+  /**
+   * @param parameters the value of each ? in the query, in order
+   * @return the cached result of the query run with these values, or null if it isn't cached.
+   */
+  public synchronized CachedResult get(String sql, List<String> parameters) {
+    if (!enabled || !SqlText.isQuery(sql)) {
+      return null; // only queries are ever cached
+    }
+    CachedResult result = entries.get(keyOf(sql, parameters));
+    if (result == null) {
+      misses++;
+    } else {
+      hits++;
+    }
+    return result;
+  }
+
+  /**
+   * @return a number to hand back to put, so a result that was being read while a table changed
+   *     isn't cached.
+   */
+  public synchronized long getGeneration() {
+    return generation;
+  }
+
+  /**
+   * Largest single result worth caching. Anything bigger would push most other results out.
+   */
+  public long getMaxEntryBytes() {
+    return budgetBytes / 2;
+  }
+
+  /**
+   * Caches a complete result.
+   *
+   * @param sql the query as typed
+   * @param parameters the value of each ? in the query, in order
+   * @param generation what getGeneration returned before the query started running
+   * @param pages every page of the result, in order
+   */
+  public synchronized void put(String sql, List<String> parameters, long generation,
+      List<String> columnNames, ColumnType[] columnTypes, int pageSize, List<ColumnarPage> pages) {
+    if (!enabled) {
+      return;
+    }
+    if (generation != this.generation) {
+      return; // a table changed while the query was running, the result may already be stale
+    }
+    Set<String> tables = cacheableTables(sql);
+    if (tables == null) {
+      return;
+    }
+    long bytes = 0;
+    for (ColumnarPage page : pages) {
+      bytes += page.estimateBytes();
+    }
+    if (bytes > getMaxEntryBytes()) {
+      return;
+    }
+
+    String key = keyOf(sql, parameters);
+    remove(key);
+    entries.put(key, new CachedResult(new ArrayList<>(columnNames), columnTypes.clone(), pageSize,
+        Collections.unmodifiableList(new ArrayList<>(pages)), tables, bytes));
+    usedBytes += bytes;
+
+    // drop the least recently used results until everything fits in the budget again
+    Iterator<Map.Entry<String, CachedResult>> eldestFirst = entries.entrySet().iterator();
+    while (usedBytes > budgetBytes && eldestFirst.hasNext()) {
+      usedBytes -= eldestFirst.next().getValue().bytes;
+      eldestFirst.remove();
+    }
+  }
+
+  /**
+   * @return the tables the query reads, or null if its result can't be cached because running it
+   *     again could give a different result without any of those tables changing.
+   */
+  private Set<String> cacheableTables(String sql) {
+    if (!SqlText.isQuery(sql) || SqlText.isVolatile(sql)) {
+      return null;
+    }
+    Set<String> tables = SqlText.referencedTables(sql);
+    for (String table : tables) {
+      if (!tableCheck.test(table)) {
+        return null;
+      }
+    }
+    return tables;
+  }
+
+  /**
+   * Called after a statement has run. If it could have changed data, the cached results it may
+   * have made stale are dropped: those that read one of the tables it wrote, or everything when
+   * the tables can't be worked out (a CALL, for example).
+   */
+  public synchronized void statementExecuted(String sql) {
+    if (!SqlText.isWrite(sql)) {
+      return;
+    }
+    invalidateTables(SqlText.writtenTables(sql));
+  }
+
+  /**
+   * Drops every cached result that read from one of the tables.
+   *
+   * @param tables table names as the catalog has them, without the schema, or null to drop
+   *     everything
+   */
+  public synchronized void invalidateTables(Set<String> tables) {
+    generation++;
+    Iterator<CachedResult> results = entries.values().iterator();
+    while (results.hasNext()) {
+      CachedResult result = results.next();
+      if (tables == null || result.tables.isEmpty()
+          || !Collections.disjoint(tables, result.tables)) {
+        usedBytes -= result.bytes;
+        results.remove();
+      }
+    }
+  }
+
+  public synchronized void clear() {
+    invalidateTables(null);
+  }
+
+  public synchronized long getHits() {
+    return hits;
+  }
+
+  public synchronized long getMisses() {
+    return misses;
+  }
+
+  /**
+   * @return a one-line summary for the status bar.
+   */
+  public synchronized String getStatus() {
+    if (!enabled) {
+      return "Cache: off";
+    }
+    return String.format("Cache: %d hits, %d misses, %d results (%.1f of %.0f MB)", hits, misses,
+        entries.size(), usedBytes / 1048576.0, budgetBytes / 1048576.0);
+  }
+
+  /**
+   * The normalized query followed by its parameter values. The separator can't be typed in the
+   * query box, so two different queries never end up with the same key.
+   */
+  private static String keyOf(String sql, List<String> parameters) {
+    StringBuilder key = new StringBuilder(SqlText.normalize(sql));
+    for (String value : parameters) {
+      key.append('\u0000').append(value);
+    }
+    return key.toString();
+  }
+
+  private void remove(String key) {
+    CachedResult old = entries.remove(key);
+    if (old != null) {
+      usedBytes -= old.bytes;
+    }
+  }
+}
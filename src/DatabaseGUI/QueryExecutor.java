@@ -0,0 +1,818 @@
+package DatabaseGUI;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import javafx.application.Platform;
+
+/**
+ * Runs the user's query on a worker thread so the JavaFX application thread never has to wait on
+ * the database. The result is read through a forward-only cursor one page at a time, and only when
+ * the PagedResultList showing it asks for the page, so a huge result never has to be read (or
+ * held) all at once.
+ *
+ * Statements are always run as PreparedStatements, with the ? and :name parameters of the query
+ * filled in from the values the user typed. The pooled connection keeps prepared statements
+ * around (see StatementCache), so running the same query again with other values skips Derby's
+ * compile step.
+ *
+ * If the executor has a QueryCache, a query that is in it is answered straight from memory, and
+ * a result that gets read to the end (and isn't too big) is put in it. Statements that change
+ * data drop the cached results they make stale.
+ *
+ * Loaded pages are handed back to the GUI through Platform.runLater, but only one runLater is ever
+ * waiting in the FX event queue for a query. If the worker finishes another page before the GUI got
+ * around to the previous one, the new page simply joins the runLater that is already waiting. That
+ * way a fast result set can't flood the event queue and the window keeps repainting. Pages that
+ * piled up are handed over a frame's budget at a time, see FrameClock.
+ *
+ * Every executor has a worker of its own, so each tab of the window can run a query while the
+ * others run theirs. The worker is a virtual thread when the JVM has them (Java 21 and later) and a
+ * daemon thread otherwise. How many queries may be working against the database at the same time
+ * is limited for all executors together by MAX_CONCURRENT (-Ddatabasegui.query.maxConcurrent),
+ * a query over the limit waits for one of the others to finish its page. A result that has been
+ * scrolled part way keeps its cursor, and with it a pooled connection, open. When the pool runs
+ * out the cursor that has been idle the longest is closed, and opened again if that result is
+ * scrolled further.
+ */
+public class QueryExecutor {
+
+  public static final int DEFAULT_QUERY_TIMEOUT = 30; // seconds, 0 means no limit
+
+  // how many queries may run at once, across every executor. By default one per processor (at
+  // least two, so a quick lookup doesn't wait behind a long report), but no more than the pool
+  // has connections.
+  public static final int MAX_CONCURRENT = Math.max(1, Integer.getInteger(
+      "databasegui.query.maxConcurrent", Math.min(DatabaseConnect.getMaxSize(),
+          Math.max(2, Runtime.getRuntime().availableProcessors()))));
+
+  private static final Semaphore running = new Semaphore(MAX_CONCURRENT, true);
+  private static final AtomicInteger waiting = new AtomicInteger();
+  private static final ThreadFactory workerThreads = workerThreads("query-worker");
+
+  // results whose cursor is open while nothing is being read from it, the longest idle first.
+  // Guarded by itself.
+  private static final LinkedHashSet<OpenResult> idleCursors = new LinkedHashSet<>();
+
+  /**
+   * Receives the results of a query. Every method is called on the JavaFX application thread, so
+   * implementations are free to touch GUI objects.
+   */
+  public interface ResultListener {
+
+    /**
+     * The query ran and its first page has been read. More pages are read as the list asks.
+     */
+    void resultReady(PagedResultList rows);
+
+    /**
+     * Called when the worker starts or stops reading from the database.
+     */
+    void loadingChanged(boolean loading);
+
+    /**
+     * The statement wasn't a query (an INSERT, UPDATE, CREATE TABLE...) and has run.
+     *
+     * @param updateCount the number of rows changed, or -1 if that doesn't apply
+     */
+    void updateFinished(int updateCount);
+
+    void queryFailed(SQLException sqlEx);
+  }
+
+  private final ExecutorService worker;
+  private final QueryCache cache;
+  private volatile int pageSize = PagedResultList.DEFAULT_PAGE_SIZE;
+  private volatile int cachedPages = PagedResultList.DEFAULT_CACHED_PAGES;
+  private volatile int queryTimeout = DEFAULT_QUERY_TIMEOUT;
+  private volatile int maxRows = 0;
+  private OpenResult current; // only touched on the FX thread
+
+  public QueryExecutor() {
+    this(null);
+  }
+
+  /**
+   * @param cache where complete results are kept for next time. May be null for no caching.
+   */
+  public QueryExecutor(QueryCache cache) {
+    this.cache = cache;
+    // one thread, so the pages of a result are read in the order they were asked for
+    worker = Executors.newSingleThreadExecutor(workerThreads);
+  }
+
+  /**
+   * Makes virtual threads if the JVM has them and -Ddatabasegui.query.virtualThreads isn't false.
+   * They are looked up by reflection so the code still builds and runs on Java 8. Otherwise the
+   * threads are daemon threads, so a query that is still running doesn't keep the JVM alive
+   * after the window has been closed (virtual threads never do).
+   */
+  static ThreadFactory workerThreads(String name) {
+    if (Boolean.parseBoolean(System.getProperty("databasegui.query.virtualThreads", "true"))) {
+      try {
+        Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+        Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+        builder = builderClass.getMethod("name", String.class, long.class)
+            .invoke(builder, name + "-", 1L);
+        return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+      } catch (ReflectiveOperationException | RuntimeException notAvailable) {
+        // older JVM, or virtual threads are a preview feature that isn't enabled
+      }
+    }
+    AtomicInteger count = new AtomicInteger();
+    return runnable -> {
+      Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    };
+  }
+
+  /**
+   * @return e.g. "Queries: 2/4 running, 1 waiting", for a status bar.
+   */
+  public static String getConcurrencyStatus() {
+    return "Queries: " + (MAX_CONCURRENT - running.availablePermits()) + "/" + MAX_CONCURRENT
+        + " running, " + waiting.get() + " waiting";
+  }
+
+  /**
+   * Starts running a query that has no parameters in the background.
+   */
+  public void execute(String sqlQuery, ResultListener listener) {
+    execute(sqlQuery, Collections.<String, String>emptyMap(), listener);
+  }
+
+  /**
+   * Starts running the query in the background. The previous result is closed first, which also
+   * cancels it if it's still loading.
+   *
+   * @param sqlQuery the query typed by the user
+   * @param parameterValues the text typed for each parameter, by name (see SqlText.parameters).
+   *     A parameter that isn't in the map is treated as empty.
+   * @param listener receives the result, or the error, on the FX thread
+   */
+  public void execute(String sqlQuery, Map<String, String> parameterValues,
+      ResultListener listener) {
+    close();
+
+    SqlText.Parameters parameters = SqlText.parameters(sqlQuery);
+    List<String> values = ParameterBinder.valuesOf(parameters, parameterValues);
+
+    // the same query ran before and no table it reads has changed since: nothing to do
+    QueryCache.CachedResult cached = cache == null ? null : cache.get(sqlQuery, values);
+    if (cached != null) {
+      listener.resultReady(cached.toList());
+      return;
+    }
+
+    OpenResult result = new OpenResult(sqlQuery, parameters, values, listener);
+    current = result;
+    worker.submit(result::open);
+  }
+
+  /**
+   * Stops the page that is loading right now. The rows read so far stay in the table, but the
+   * result won't grow any further.
+   */
+  public void cancel() {
+    if (current != null) {
+      current.cancel();
+    }
+  }
+
+  /**
+   * Reads every row of the current result into memory, so it can be sorted and filtered in the
+   * window (see ResultView). The query is run again from the start, since the pages that were
+   * scrolled past have been dropped.
+   *
+   * @param done called on the FX thread with every page of the result, or with null if there is
+   *     no result, it has more than ResultView.MAX_ROWS rows, or reading it was cancelled or
+   *     failed (a failure also goes to the ResultListener)
+   */
+  public void loadAll(Consumer<List<ColumnarPage>> done) {
+    OpenResult result = current;
+    if (result == null) {
+      done.accept(null);
+      return;
+    }
+    // a cancel only applies to the loads asked for before it, including this one once it's queued
+    result.cancelled.set(false);
+    worker.submit(() -> result.readAll(done));
+  }
+
+  /**
+   * Closes the current result, giving its connection back to the pool.
+   */
+  public void close() {
+    if (current != null) {
+      current.cancel();
+      current.close();
+      current = null;
+    }
+  }
+
+  public int getPageSize() {
+    return pageSize;
+  }
+
+  /**
+   * @param pageSize rows per page. Also used as the JDBC fetch size.
+   */
+  public void setPageSize(int pageSize) {
+    this.pageSize = Math.max(1, pageSize);
+  }
+
+  public int getCachedPages() {
+    return cachedPages;
+  }
+
+  public void setCachedPages(int cachedPages) {
+    this.cachedPages = Math.max(2, cachedPages);
+  }
+
+  public int getQueryTimeout() {
+    return queryTimeout;
+  }
+
+  /**
+   * @param seconds how long Derby may spend on a statement before giving up. 0 means no limit.
+   */
+  public void setQueryTimeout(int seconds) {
+    this.queryTimeout = Math.max(0, seconds);
+  }
+
+  public int getMaxRows() {
+    return maxRows;
+  }
+
+  /**
+   * @param rows the most rows a query may return, for a quick preview of a big result. Derby stops
+   *     there, so the rest is never read. 0 means no limit.
+   */
+  public void setMaxRows(int rows) {
+    this.maxRows = Math.max(0, rows);
+  }
+
+  /**
+   * Closes whatever is open and stops the worker thread. Called when the window closes.
+   */
+  public void shutdown() {
+    close();
+    worker.shutdown();
+  }
+
+  /**
+   * The cursor behind one query's PagedResultList. The FX thread asks for pages, the worker thread
+   * reads them. The JDBC objects are only ever touched on the worker thread.
+   */
+  private class OpenResult implements PagedResultList.PageSource {
+
+    private final String sqlQuery;
+    private final SqlText.Parameters parameters;
+    private final List<String> values;
+    private final ResultListener listener;
+    private final int rowsPerPage = pageSize;
+    private final int rowLimit = maxRows;
+    private final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+    private final AtomicBoolean cancelled = new AtomicBoolean(false);
+    private volatile boolean closed = false;
+    private PagedResultList list; // FX thread only
+    private List<LoadedPage> pending = new ArrayList<>();
+
+    // pages kept for the QueryCache while they come in order, null once the result is too big.
+    // A preview isn't the whole result, so it is never kept.
+    private final long cacheGeneration = cache == null ? 0 : cache.getGeneration();
+    private List<ColumnarPage> captured = cache == null || rowLimit > 0 ? null
+        : new ArrayList<>();
+    private long capturedBytes = 0;
+    private List<String> columnNames;
+
+    // worker thread only
+    private Connection connection;
+    private volatile PreparedStatement statement;
+    private ResultSet rs;
+    private ColumnType[] columnTypes;
+    private int[] columnScales;
+    private int position;       // how many rows have been read from rs so far
+    private boolean exhausted;  // rs has no more rows
+
+    OpenResult(String sqlQuery, SqlText.Parameters parameters, List<String> values,
+        ResultListener listener) {
+      this.sqlQuery = sqlQuery;
+      this.parameters = parameters;
+      this.values = values;
+      this.listener = listener;
+    }
+
+    /**
+     * Runs the query and reads the first page. Worker thread.
+     */
+    void open() {
+      if (closed) {
+        return; // replaced before it even got to the front of the queue
+      }
+      deliver(() -> listener.loadingChanged(true));
+      if (acquireSlot()) {
+        try {
+          if (cancelled.get()) {
+            deliver(() -> listener.queryFailed(new SQLException("Cancelled before it started")));
+          } else {
+            runQuery();
+          }
+        } finally {
+          releaseSlot();
+        }
+      }
+      deliver(() -> listener.loadingChanged(false));
+    }// end of open method
+
+    /**
+     * Runs the statement and reads the first page, holding one of the MAX_CONCURRENT slots.
+     */
+    private void runQuery() {
+      long start = System.nanoTime();
+      try {
+        if (!openCursor()) {
+          // not a query. Whatever it changed may have made cached results stale.
+          int updateCount = statement.getUpdateCount();
+          WorkloadRecorder.record(WorkloadRecorder.GUI, sqlQuery, values,
+              System.nanoTime() - start, updateCount, null);
+          closeCursor();
+          if (cache != null) {
+            cache.statementExecuted(sqlQuery);
+          }
+          deliver(() -> listener.updateFinished(updateCount));
+          return;
+        }
+        columnNames = new ArrayList<>(columnTypes.length);
+        ResultSetMetaData rsmd = rs.getMetaData();
+        for (int column = 1; column <= columnTypes.length; column++) {
+          columnNames.add(rsmd.getColumnName(column));
+        }
+
+        ColumnarPage firstPage = readPage();
+        WorkloadRecorder.record(WorkloadRecorder.GUI, sqlQuery, values, System.nanoTime() - start,
+            firstPage.getRowCount(), null);
+        capture(0, firstPage);
+        boolean endOfResult = exhausted || cancelled.get();
+        if (exhausted) {
+          closeCursor(); // everything has been read, the connection can go back to the pool
+        }
+        deliver(() -> {
+          list = new PagedResultList(columnNames, columnTypes, rowsPerPage, cachedPages, this);
+          list.pageLoaded(0, firstPage, endOfResult);
+          listener.resultReady(list);
+        });
+        cursorIdle();
+      } catch (SQLException sqlEx) {
+        WorkloadRecorder.record(WorkloadRecorder.GUI, sqlQuery, values, System.nanoTime() - start,
+            0, sqlEx.getMessage());
+        closeCursor();
+        deliver(() -> listener.queryFailed(sqlEx));
+      }
+    }// end of runQuery method
+
+    /**
+     * Called by the PagedResultList on the FX thread.
+     */
+    @Override
+    public void requestPage(int pageIndex) {
+      if (!closed) {
+        cancelled.set(false); // here rather than on the worker, so a cancel while queued sticks
+        worker.submit(() -> loadPage(pageIndex));
+      }
+    }
+
+    /**
+     * Reads one page, positioning the cursor first. Going forward only means skipping rows, but
+     * a page before the cursor (one that was dropped from memory) means running the query again.
+     * Worker thread.
+     */
+    private void loadPage(int pageIndex) {
+      if (closed) {
+        return;
+      }
+      deliver(() -> listener.loadingChanged(true));
+      if (!acquireSlot()) {
+        deliver(() -> list.sourceStopped());
+        deliver(() -> listener.loadingChanged(false));
+        return;
+      }
+      if (cancelled.get()) {
+        releaseSlot(); // cancelled while it waited for the slot
+        deliver(() -> list.sourceStopped());
+        deliver(() -> listener.loadingChanged(false));
+        return;
+      }
+      cursorBusy();
+      try {
+        int firstRow = pageIndex * rowsPerPage;
+        if (rs == null || firstRow < position) {
+          closeCursor();
+          openCursor();
+        }
+        while (position < firstRow && !exhausted && !cancelled.get()) {
+          if (rs.next()) {
+            position++;
+          } else {
+            exhausted = true;
+          }
+        }
+
+        ColumnarPage page = readPage();
+        capture(pageIndex, page);
+        boolean stopped = cancelled.get();
+        if (exhausted) {
+          closeCursor();
+        }
+        publish(new LoadedPage(pageIndex, page, exhausted || stopped));
+        if (stopped) {
+          deliver(() -> list.sourceStopped());
+        }
+        cursorIdle();
+      } catch (SQLException sqlEx) {
+        closeCursor();
+        deliver(() -> {
+          list.sourceStopped();
+          if (!cancelled.get()) {
+            listener.queryFailed(sqlEx);
+          }
+        });
+      } finally {
+        releaseSlot();
+      }
+      deliver(() -> listener.loadingChanged(false));
+    }// end of loadPage method
+
+    /**
+     * Runs the query again and reads every row, see QueryExecutor.loadAll. Worker thread.
+     */
+    void readAll(Consumer<List<ColumnarPage>> done) {
+      if (closed) {
+        return;
+      }
+      deliver(() -> listener.loadingChanged(true));
+      if (!acquireSlot()) {
+        deliver(() -> done.accept(null));
+        deliver(() -> listener.loadingChanged(false));
+        return;
+      }
+      if (closed || cancelled.get()) {
+        releaseSlot(); // closed or cancelled while it waited for the slot
+        deliver(() -> done.accept(null));
+        deliver(() -> listener.loadingChanged(false));
+        return;
+      }
+      try {
+        closeCursor();
+        openCursor();
+        List<ColumnarPage> all = new ArrayList<>();
+        long rows = 0;
+        while (!exhausted && !cancelled.get() && rows <= ResultView.MAX_ROWS) {
+          ColumnarPage page = readPage();
+          if (page.getRowCount() > 0) {
+            all.add(page);
+            rows += page.getRowCount();
+          }
+        }
+        boolean readAll = exhausted && !cancelled.get() && rows <= ResultView.MAX_ROWS;
+        closeCursor(); // if the list still wants a page, it opens the cursor again
+        deliver(() -> done.accept(readAll ? all : null));
+      } catch (SQLException sqlEx) {
+        closeCursor();
+        deliver(() -> {
+          listener.queryFailed(sqlEx);
+          done.accept(null);
+        });
+      } finally {
+        releaseSlot();
+      }
+      deliver(() -> listener.loadingChanged(false));
+    }// end of readAll method
+
+    /**
+     * Waits for one of the MAX_CONCURRENT slots. Worker thread.
+     *
+     * @return false if the wait was interrupted, the work should be skipped then
+     */
+    private boolean acquireSlot() {
+      waiting.incrementAndGet();
+      try {
+        running.acquire();
+        return true;
+      } catch (InterruptedException interrupted) {
+        Thread.currentThread().interrupt();
+        return false;
+      } finally {
+        waiting.decrementAndGet();
+      }
+    }
+
+    private void releaseSlot() {
+      running.release();
+    }
+
+    /**
+     * The cursor is open but nothing is reading from it, so it may be closed if another query
+     * needs the connection. Worker thread.
+     */
+    private void cursorIdle() {
+      if (rs != null) {
+        synchronized (idleCursors) {
+          idleCursors.remove(this); // to the end of the line
+          idleCursors.add(this);
+        }
+      }
+    }
+
+    private void cursorBusy() {
+      synchronized (idleCursors) {
+        idleCursors.remove(this);
+      }
+    }
+
+    /**
+     * If every pooled connection is borrowed, closes the cursor that has been idle the longest,
+     * on its own worker thread. Connecting then gets the connection it gives back. Worker thread.
+     */
+    private void parkIdleCursor() {
+      if (DatabaseConnect.getIdleCount() > 0
+          || DatabaseConnect.getActiveCount() < DatabaseConnect.getMaxSize()) {
+        return;
+      }
+      OpenResult oldest = null;
+      synchronized (idleCursors) {
+        Iterator<OpenResult> cursors = idleCursors.iterator();
+        while (cursors.hasNext() && oldest == null) {
+          OpenResult next = cursors.next();
+          if (next != this) {
+            oldest = next;
+            cursors.remove();
+          }
+        }
+      }
+      if (oldest != null) {
+        oldest.park();
+      }
+    }
+
+    /**
+     * Closes the cursor so its connection goes back to the pool. The next page the list asks for
+     * runs the query again and skips to it, the same as for a page before the cursor.
+     */
+    private void park() {
+      if (!closed) {
+        submit(this::closeCursor);
+      }
+    }
+
+    /**
+     * Runs the task on this result's own worker. Quietly does nothing once that executor has
+     * been shut down.
+     */
+    private void submit(Runnable task) {
+      try {
+        worker.submit(task);
+      } catch (RejectedExecutionException shutDown) {
+        // the window is closing
+      }
+    }
+
+    /**
+     * Reads up to one page of rows from where the cursor is. Checking the cancelled flag once per
+     * row is cheap and makes Cancel take effect right away even though Derby can't interrupt.
+     */
+    private ColumnarPage readPage() throws SQLException {
+      if (exhausted) {
+        return ColumnarPage.read(rs, columnTypes, columnScales, 0, cancelled::get);
+      }
+      QueryMetrics.Span fetch = QueryMetrics.start();
+      ColumnarPage page = ColumnarPage.read(rs, columnTypes, columnScales, rowsPerPage,
+          cancelled::get);
+      fetch.end(QueryMetrics.Stage.FETCH, sqlQuery, page.getRowCount());
+      position += page.getRowCount();
+      if (page.getRowCount() < rowsPerPage && !cancelled.get()) {
+        exhausted = true; // the ResultSet ran out before the page was full
+      }
+      return page;
+    }
+
+    /**
+     * Keeps a page for the QueryCache if it is the next one in order, and caches the whole result
+     * once the last page is in. Gives up on caching if the result gets too big or a page is
+     * missed (cancelled part way). Worker thread.
+     */
+    private void capture(int pageIndex, ColumnarPage page) {
+      if (captured == null || pageIndex != captured.size()) {
+        return; // not caching, or this is a dropped page being read again
+      }
+      capturedBytes += page.estimateBytes();
+      if (cancelled.get() || capturedBytes > cache.getMaxEntryBytes()) {
+        captured = null;
+        return;
+      }
+      captured.add(page);
+      if (exhausted) {
+        cache.put(sqlQuery, values, cacheGeneration, columnNames, columnTypes, rowsPerPage,
+            captured);
+        captured = null;
+      }
+    }
+
+    /**
+     * Borrows a connection and runs the statement with a forward-only cursor. Forward-only lets
+     * Derby hand rows over as it finds them instead of building the whole result first.
+     *
+     * @return true if the statement returned a ResultSet, false if it was an update or DDL.
+     */
+    private boolean openCursor() throws SQLException {
+      parkIdleCursor();
+      QueryMetrics.Span stage = QueryMetrics.start();
+      connection = DatabaseConnect.connect();
+      stage.end(QueryMetrics.Stage.CONNECT, sqlQuery, 0);
+
+      stage = QueryMetrics.start();
+      statement = connection.prepareStatement(parameters.getSql(), ResultSet.TYPE_FORWARD_ONLY,
+          ResultSet.CONCUR_READ_ONLY);
+      statement.setQueryTimeout(queryTimeout);
+      statement.setFetchSize(rowsPerPage);
+      statement.setMaxRows(rowLimit);
+      ParameterBinder.bind(statement, parameters.getNames(), values);
+      stage.end(QueryMetrics.Stage.PREPARE, sqlQuery, 0);
+
+      stage = QueryMetrics.start();
+      boolean query = statement.execute();
+      stage.end(QueryMetrics.Stage.EXECUTE, sqlQuery, 0);
+      if (!query) {
+        return false;
+      }
+      rs = statement.getResultSet();
+      // the column types are worked out once per query, every page is read with them
+      columnTypes = ColumnarPage.typesOf(rs);
+      columnScales = ColumnarPage.scalesOf(rs);
+      position = 0;
+      exhausted = false;
+      return true;
+    }
+
+    /**
+     * Closes the ResultSet and Statement and gives the connection back to the pool. Worker thread.
+     */
+    private void closeCursor() {
+      cursorBusy();
+      try {
+        if (rs != null) {
+          rs.close();
+        }
+        if (statement != null) {
+          statement.close();
+        }
+      } catch (SQLException sqlEx) {
+        // closing anyway
+      } finally {
+        rs = null;
+        statement = null;
+        if (connection != null) {
+          try {
+            connection.close();
+          } catch (SQLException sqlEx) {
+            System.out.println("Issue returning a connection to the pool");
+          }
+          connection = null;
+        }
+      }
+    }
+
+    /**
+     * Asks the database to stop working on the statement. The embedded Derby driver doesn't
+     * implement Statement.cancel, in which case the row loop notices the flag on its next row and
+     * the query timeout covers a statement that is still executing.
+     */
+    void cancel() {
+      if (!cancelled.compareAndSet(false, true)) {
+        return;
+      }
+      Statement running = statement;
+      if (running != null) {
+        try {
+          running.cancel();
+        } catch (SQLFeatureNotSupportedException notSupported) {
+          // expected with the embedded driver, the flag takes care of it.
+        } catch (SQLException sqlEx) {
+          System.out.println("Unable to cancel the running statement");
+        }
+      }
+    }
+
+    /**
+     * Called on the FX thread once the result is no longer shown.
+     */
+    @Override
+    public void close() {
+      if (!closed) {
+        closed = true;
+        submit(this::closeCursor);
+        if (list != null) {
+          list.close(); // its spill file. Calls back here, but that does nothing now.
+        }
+      }
+    }
+
+    /**
+     * Hands a page to the GUI. If a runLater is already waiting, the page joins it instead of
+     * scheduling another one.
+     */
+    private void publish(LoadedPage page) {
+      synchronized (this) {
+        pending.add(page);
+      }
+      if (flushScheduled.compareAndSet(false, true)) {
+        long queued = System.nanoTime();
+        Platform.runLater(() -> {
+          QueryMetrics.record(QueryMetrics.Stage.DELIVER, sqlQuery, System.nanoTime() - queued,
+              0, 0);
+          flush();
+        });
+      }
+    }
+
+    /**
+     * Runs on the FX thread. Takes the pages the worker has read so far, as many as fit in the
+     * frame's budget (see FrameClock). The rest go back in front of the pending pages and are
+     * handed over in the next frame, after this one has been drawn.
+     */
+    private void flush() {
+      flushScheduled.set(false);
+      List<LoadedPage> pages;
+      synchronized (this) {
+        pages = pending;
+        pending = new ArrayList<>();
+      }
+      if (closed) {
+        return;
+      }
+      long start = System.nanoTime();
+      for (int i = 0; i < pages.size(); i++) {
+        LoadedPage page = pages.get(i);
+        list.pageLoaded(page.pageIndex, page.page, page.endOfResult);
+        if (i + 1 < pages.size() && FrameClock.overBudget(start)) {
+          synchronized (this) {
+            pending.addAll(0, pages.subList(i + 1, pages.size()));
+          }
+          if (flushScheduled.compareAndSet(false, true)) {
+            FrameClock.nextFrame(this::flush);
+          }
+          return;
+        }
+      }
+    }
+
+    /**
+     * Runs a callback on the FX thread, unless the result has been closed since.
+     */
+    private void deliver(Runnable callback) {
+      long queued = System.nanoTime();
+      Platform.runLater(() -> {
+        QueryMetrics.record(QueryMetrics.Stage.DELIVER, sqlQuery, System.nanoTime() - queued, 0,
+            0);
+        if (!closed) {
+          callback.run();
+        }
+      });
+    }
+  }// end of OpenResult class
+
+  /**
+   * A page read by the worker, waiting to be handed to the list.
+   */
+  private static class LoadedPage {
+
+    private final int pageIndex;
+    private final ColumnarPage page;
+    private final boolean endOfResult;
+
+    LoadedPage(int pageIndex, ColumnarPage page, boolean endOfResult) {
+      this.pageIndex = pageIndex;
+      this.page = page;
+      this.endOfResult = endOfResult;
+    }
+  }
+}// end of QueryExecutor class
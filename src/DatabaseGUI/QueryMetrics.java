@@ -0,0 +1,448 @@
+package DatabaseGUI;
+
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Keeps track of where the time goes between pressing "Select Query" and seeing the rows: how
+ * long each stage takes (as a histogram, so slow outliers show up as p95/p99 rather than being
+ * averaged away), how many rows it handled and how many bytes it allocated.
+ *
+ * The stages are recorded by QueryExecutor (worker thread), Main (FX thread) and BatchRunner.
+ * Recording is lock free, so it can be left on all the time. The numbers are shown in the Metrics
+ * tab and can be written to a file: set databasegui.metrics.file and they are written there when
+ * the program exits.
+ *
+ * When the JVM has Flight Recorder (JDK 11 and later, and 8u272 onwards), every recorded stage is
+ * also committed as a "databasegui.QueryStage" event, so a recording lines the stages up with GC
+ * pauses, safepoints and so on. The event type is made with jdk.jfr.EventFactory through
+ * reflection, since the program is still built for Java 8. Without JFR nothing is emitted.
+ */
+public final class QueryMetrics {
+
+  public static final String DUMP_FILE = System.getProperty("databasegui.metrics.file");
+
+  /**
+   * The stages of a query, in the order they happen.
+   */
+  public enum Stage {
+    CONNECT("connect"),         // borrowing a pooled connection
+    PREPARE("prepare"),         // prepareStatement and binding the parameters
+    EXECUTE("execute"),         // statement.execute, up to the first row being available
+    FETCH("fetch"),             // reading one page of rows with rs.next
+    DELIVER("fx queue wait"),   // from Platform.runLater until the FX thread gets to it
+    BUILD("build table"),       // making the columns and handing the rows to the TableView
+    LAYOUT("table layout"),     // CSS and layout of the TableView with the new rows
+    FIRST_PAGE("first page");   // the whole thing, button press to rows on screen
+
+    private final String label;
+
+    Stage(String label) {
+      this.label = label;
+    }
+
+    public String getLabel() {
+      return label;
+    }
+  }
+
+  /**
+   * A snapshot of one stage's numbers, for showing or writing out.
+   */
+  public static final class StageSummary {
+
+    private final Stage stage;
+    private final long count;
+    private final double p50;
+    private final double p95;
+    private final double p99;
+    private final double max;
+    private final double rowsPerSecond;
+    private final double kbPerCall;
+
+    private StageSummary(Stage stage, StageStats stats) {
+      this.stage = stage;
+      this.count = stats.count.get();
+      // a bucket's middle can be past the slowest value that landed in it
+      long maxNanos = stats.maxNanos.get();
+      this.p50 = Math.min(stats.histogram.percentile(0.50), maxNanos) / 1e6;
+      this.p95 = Math.min(stats.histogram.percentile(0.95), maxNanos) / 1e6;
+      this.p99 = Math.min(stats.histogram.percentile(0.99), maxNanos) / 1e6;
+      this.max = maxNanos / 1e6;
+      long nanos = stats.totalNanos.get();
+      this.rowsPerSecond = nanos == 0 ? 0 : stats.rows.get() * 1e9 / nanos;
+      this.kbPerCall = count == 0 ? 0 : stats.bytes.get() / 1024.0 / count;
+    }
+
+    public Stage getStage() {
+      return stage;
+    }
+
+    public long getCount() {
+      return count;
+    }
+
+    /**
+     * @return the median time in milliseconds. Percentiles are accurate to about 6%.
+     */
+    public double getP50() {
+      return p50;
+    }
+
+    public double getP95() {
+      return p95;
+    }
+
+    public double getP99() {
+      return p99;
+    }
+
+    public double getMax() {
+      return max;
+    }
+
+    /**
+     * @return rows handled per second of time spent in the stage, 0 for stages without rows.
+     */
+    public double getRowsPerSecond() {
+      return rowsPerSecond;
+    }
+
+    /**
+     * @return KB allocated by the thread per call, 0 if the JVM can't measure it.
+     */
+    public double getKbPerCall() {
+      return kbPerCall;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("%-14s %8d %10.2f %10.2f %10.2f %10.2f %12.0f %10.1f",
+          stage.getLabel(), count, p50, p95, p99, max, rowsPerSecond, kbPerCall);
+    }
+  }// end of StageSummary class
+
+  /**
+   * A stage that has started and not yet been recorded. Created by start().
+   */
+  public static final class Span {
+
+    private final long startNanos = System.nanoTime();
+    private final long startBytes = allocatedBytes();
+
+    /**
+     * Records the time and allocation since start() against the stage.
+     */
+    public void end(Stage stage, String sql, long rows) {
+      record(stage, sql, System.nanoTime() - startNanos, rows, allocatedBytes() - startBytes);
+    }
+  }
+
+  private static final Map<Stage, StageStats> STATS = new EnumMap<>(Stage.class);
+
+  static {
+    for (Stage stage : Stage.values()) {
+      STATS.put(stage, new StageStats());
+    }
+  }
+
+  private static final JfrEvents JFR = JfrEvents.create();
+  private static final long STARTED = System.currentTimeMillis();
+
+  private QueryMetrics() {
+  }
+
+  /**
+   * Starts timing a stage on this thread.
+   */
+  public static Span start() {
+    return new Span();
+  }
+
+  /**
+   * Adds one call of a stage.
+   *
+   * @param sql the statement it was for, only used for the JFR event. May be null.
+   * @param rows rows handled by the call, 0 if that doesn't apply
+   * @param bytes bytes allocated by the call, 0 if not known
+   */
+  public static void record(Stage stage, String sql, long nanos, long rows, long bytes) {
+    STATS.get(stage).add(nanos, rows, bytes);
+    if (JFR != null) {
+      JFR.commit(stage.getLabel(), sql, nanos, rows, bytes);
+    }
+  }
+
+  /**
+   * @return the number of bytes this thread has allocated so far, or 0 if the JVM can't say.
+   */
+  public static long allocatedBytes() {
+    java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    if (threads instanceof com.sun.management.ThreadMXBean) {
+      return ((com.sun.management.ThreadMXBean) threads)
+          .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+    return 0;
+  }
+
+  /**
+   * @return a snapshot of every stage that has been recorded at least once.
+   */
+  public static List<StageSummary> getSummaries() {
+    List<StageSummary> summaries = new ArrayList<>();
+    for (Map.Entry<Stage, StageStats> entry : STATS.entrySet()) {
+      if (entry.getValue().count.get() > 0) {
+        summaries.add(new StageSummary(entry.getKey(), entry.getValue()));
+      }
+    }
+    return summaries;
+  }
+
+  /**
+   * @return true if the stages are also being sent to Flight Recorder.
+   */
+  public static boolean isFlightRecorderAvailable() {
+    return JFR != null;
+  }
+
+  /**
+   * Forgets everything recorded so far.
+   */
+  public static void reset() {
+    for (StageStats stats : STATS.values()) {
+      stats.reset();
+    }
+  }
+
+  /**
+   * @return every stage as a plain text table, with a header line.
+   */
+  public static String report() {
+    StringBuilder text = new StringBuilder();
+    text.append(String.format("%-14s %8s %10s %10s %10s %10s %12s %10s%n", "stage", "count",
+        "p50 ms", "p95 ms", "p99 ms", "max ms", "rows/s", "KB/call"));
+    for (StageSummary summary : getSummaries()) {
+      text.append(summary).append(System.lineSeparator());
+    }
+    return text.toString();
+  }
+
+  /**
+   * Writes the report to the file, replacing what was there.
+   */
+  public static void dump(Path file) throws IOException {
+    String text = "DatabaseGUI metrics since " + new Date(STARTED) + ", written " + new Date()
+        + System.lineSeparator() + report();
+    Files.write(file, text.getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Writes the report to databasegui.metrics.file, if it is set. Called when the program exits.
+   */
+  public static void dumpIfRequested() {
+    if (DUMP_FILE == null || DUMP_FILE.isEmpty()) {
+      return;
+    }
+    try {
+      dump(Paths.get(DUMP_FILE));
+    } catch (IOException ioEx) {
+      System.out.println("Unable to write the metrics to " + DUMP_FILE + ": " + ioEx.getMessage());
+    }
+  }
+
+  /**
+   * Counters and the latency histogram of one stage.
+   */
+  private static final class StageStats {
+
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong totalNanos = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+    private final AtomicLong rows = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+    private final Histogram histogram = new Histogram();
+
+    void add(long nanos, long rowCount, long byteCount) {
+      count.incrementAndGet();
+      totalNanos.addAndGet(nanos);
+      maxNanos.accumulateAndGet(nanos, Math::max);
+      rows.addAndGet(rowCount);
+      bytes.addAndGet(Math.max(0, byteCount));
+      histogram.add(nanos);
+    }
+
+    void reset() {
+      count.set(0);
+      totalNanos.set(0);
+      maxNanos.set(0);
+      rows.set(0);
+      bytes.set(0);
+      histogram.reset();
+    }
+  }
+
+  /**
+   * A log-linear histogram of nanosecond values: every power of two is split into 8 equal
+   * buckets, so any value lands in a bucket at most 12.5% wide, and the whole range from 1 ns to
+   * centuries takes 512 counters. Adding a value is one atomic increment.
+   */
+  static final class Histogram {
+
+    private static final int SUB_BUCKETS = 8;
+    private static final int SUB_BITS = 3;
+
+    private final AtomicLongArray counts = new AtomicLongArray(64 * SUB_BUCKETS);
+
+    void add(long nanos) {
+      counts.incrementAndGet(bucketOf(Math.max(1, nanos)));
+    }
+
+    /**
+     * @param fraction e.g. 0.95 for the 95th percentile
+     * @return the middle of the bucket holding that percentile, 0 if nothing was recorded.
+     */
+    long percentile(double fraction) {
+      long total = 0;
+      for (int bucket = 0; bucket < counts.length(); bucket++) {
+        total += counts.get(bucket);
+      }
+      if (total == 0) {
+        return 0;
+      }
+      long wanted = Math.max(1, (long) Math.ceil(total * fraction));
+      long seen = 0;
+      for (int bucket = 0; bucket < counts.length(); bucket++) {
+        seen += counts.get(bucket);
+        if (seen >= wanted) {
+          return (lowerBound(bucket) + lowerBound(bucket + 1)) / 2;
+        }
+      }
+      return lowerBound(counts.length() - 1);
+    }
+
+    void reset() {
+      for (int bucket = 0; bucket < counts.length(); bucket++) {
+        counts.set(bucket, 0);
+      }
+    }
+
+    static int bucketOf(long value) {
+      int exponent = 63 - Long.numberOfLeadingZeros(value);
+      if (exponent < SUB_BITS) {
+        return (int) value; // 1 to 7 get a bucket each
+      }
+      int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+      return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    static long lowerBound(int bucket) {
+      if (bucket < SUB_BUCKETS) {
+        return bucket;
+      }
+      int exponent = bucket / SUB_BUCKETS + SUB_BITS - 1;
+      long sub = bucket % SUB_BUCKETS;
+      return (SUB_BUCKETS + sub) << (exponent - SUB_BITS);
+    }
+  }// end of Histogram class
+
+  /**
+   * Commits "databasegui.QueryStage" Flight Recorder events. Everything goes through reflection,
+   * see the class comment. Events are only built while a recording has them enabled.
+   */
+  private static final class JfrEvents {
+
+    private final Object factory;
+    private final Method newEvent;
+    private final Method shouldCommit;
+    private final Method set;
+    private final Method commit;
+
+    private JfrEvents(Object factory, Method newEvent, Method shouldCommit, Method set,
+        Method commit) {
+      this.factory = factory;
+      this.newEvent = newEvent;
+      this.shouldCommit = shouldCommit;
+      this.set = set;
+      this.commit = commit;
+    }
+
+    /**
+     * @return the event type, or null if this JVM has no Flight Recorder.
+     */
+    @SuppressWarnings("unchecked")
+    static JfrEvents create() {
+      try {
+        Class<?> element = Class.forName("jdk.jfr.AnnotationElement");
+        Constructor<?> annotation = element.getConstructor(Class.class, Object.class);
+        Class<?> descriptor = Class.forName("jdk.jfr.ValueDescriptor");
+        Constructor<?> field = descriptor.getConstructor(Class.class, String.class, List.class);
+        Class<? extends Annotation> name =
+            (Class<? extends Annotation>) Class.forName("jdk.jfr.Name");
+        Class<? extends Annotation> label =
+            (Class<? extends Annotation>) Class.forName("jdk.jfr.Label");
+        Class<? extends Annotation> category =
+            (Class<? extends Annotation>) Class.forName("jdk.jfr.Category");
+        Class<? extends Annotation> timespan =
+            (Class<? extends Annotation>) Class.forName("jdk.jfr.Timespan");
+        Class<? extends Annotation> dataAmount =
+            (Class<? extends Annotation>) Class.forName("jdk.jfr.DataAmount");
+
+        List<Object> annotations = Arrays.asList(
+            annotation.newInstance(name, "databasegui.QueryStage"),
+            annotation.newInstance(label, "Query Stage"),
+            annotation.newInstance(category, new String[] {"DatabaseGUI"}));
+        List<Object> fields = Arrays.asList(
+            field.newInstance(String.class, "stage", Collections.emptyList()),
+            field.newInstance(String.class, "sql", Collections.emptyList()),
+            field.newInstance(long.class, "took",
+                Collections.singletonList(annotation.newInstance(timespan, "NANOSECONDS"))),
+            field.newInstance(long.class, "rows", Collections.emptyList()),
+            field.newInstance(long.class, "allocated",
+                Collections.singletonList(annotation.newInstance(dataAmount, "BYTES"))));
+
+        Class<?> factoryClass = Class.forName("jdk.jfr.EventFactory");
+        Object factory = factoryClass.getMethod("create", List.class, List.class)
+            .invoke(null, annotations, fields);
+        Class<?> event = Class.forName("jdk.jfr.Event");
+        return new JfrEvents(factory, factoryClass.getMethod("newEvent"),
+            event.getMethod("shouldCommit"), event.getMethod("set", int.class, Object.class),
+            event.getMethod("commit"));
+      } catch (ReflectiveOperationException | RuntimeException noJfr) {
+        return null; // no Flight Recorder in this JVM
+      }
+    }
+
+    void commit(String stage, String sql, long nanos, long rows, long bytes) {
+      try {
+        Object event = newEvent.invoke(factory);
+        if (!(Boolean) shouldCommit.invoke(event)) {
+          return;
+        }
+        set.invoke(event, 0, stage);
+        set.invoke(event, 1, sql);
+        set.invoke(event, 2, nanos);
+        set.invoke(event, 3, rows);
+        set.invoke(event, 4, bytes);
+        commit.invoke(event);
+      } catch (ReflectiveOperationException eventEx) {
+        // a broken event mustn't break the query it was measuring
+      }
+    }
+  }// end of JfrEvents class
+}// end of QueryMetrics class
@@ -0,0 +1,356 @@
+package DatabaseGUI;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The execution plan of one statement, read from the text Derby returns from
+ * SYSCS_UTIL.SYSCS_GET_RUNTIMESTATISTICS() after the statement ran with runtime statistics on.
+ *
+ * The text starts with the statement's compile and execute times, followed by a tree of result
+ * sets. Every result set starts with a line like "Hash Join ResultSet:" or "Table Scan ResultSet
+ * for CUSTOMERS at read committed isolation level ...", and its inputs follow it, indented one tab
+ * further. Their lines are read into Nodes here, keeping the counters the window shows (rows,
+ * time) and whether the node reads a whole table or goes through an index.
+ *
+ * Derby only fills in the times if statistics timing was on as well, otherwise they are 0.
+ */
+public class QueryPlan {
+
+  // "Project-Restrict ResultSet (11):", "Index Scan ResultSet for ORDERS using constraint ..."
+  private static final Pattern NODE = Pattern.compile(
+      "^([A-Z][A-Za-z -]*?) ?ResultSet(?: \\(\\d+\\))?(?: for ([\\w$]+))?(.*)$");
+  private static final Pattern INDEX = Pattern.compile("using (?:index|constraint) ([\\w$]+)");
+  private static final Pattern STATEMENT_TIME = Pattern.compile("^(\\w+) Time: (\\d+)$");
+
+  /**
+   * How a node gets at its table's rows, if it reads a table at all.
+   */
+  public enum Access {
+    NONE, FULL_SCAN, INDEX_SCAN
+  }
+
+  /**
+   * One result set of the plan.
+   */
+  public static final class Node {
+
+    private final String operator;
+    private final String table;
+    private final String index;
+    private final String role;
+    private final List<Node> children = new ArrayList<>();
+    private final List<String> details = new ArrayList<>();
+    private final Map<String, String> counters = new LinkedHashMap<>();
+
+    Node(String operator, String table, String index, String role) {
+      this.operator = operator;
+      this.table = table;
+      this.index = index;
+      this.role = role;
+    }
+
+    /**
+     * @return what the node does, e.g. "Hash Join", "Table Scan" or "Project-Restrict".
+     */
+    public String getOperator() {
+      return operator;
+    }
+
+    /**
+     * @return the table the node reads, or null if it works on the rows of other nodes.
+     */
+    public String getTable() {
+      return table;
+    }
+
+    /**
+     * @return the index or constraint the node reads through, or null.
+     */
+    public String getIndex() {
+      return index;
+    }
+
+    /**
+     * @return "Left", "Right", "Source"... as Derby labels the node under its parent, or "" for
+     *     the top of the tree and nodes Derby didn't label.
+     */
+    public String getRole() {
+      return role;
+    }
+
+    public List<Node> getChildren() {
+      return Collections.unmodifiableList(children);
+    }
+
+    /**
+     * @return the node's lines as Derby wrote them, without the indentation.
+     */
+    public List<String> getDetails() {
+      return Collections.unmodifiableList(details);
+    }
+
+    /**
+     * A table or hash scan with "Scan type=heap" reads every row of the table. A hash scan builds
+     * its hash table from such a scan, so it counts as one too.
+     */
+    public Access getAccess() {
+      if (table == null) {
+        return Access.NONE;
+      }
+      String scanType = counters.get("Scan type");
+      if (operator.contains("Index") || "btree".equals(scanType)) {
+        return Access.INDEX_SCAN;
+      }
+      return operator.contains("Scan") || "heap".equals(scanType) ? Access.FULL_SCAN
+          : Access.NONE;
+    }
+
+    public boolean isFullScan() {
+      return getAccess() == Access.FULL_SCAN;
+    }
+
+    /**
+     * @return the rows the node handed up to its parent. Derby calls it "Rows returned" for
+     *     joins and "Rows seen" for everything else. -1 if neither was there.
+     */
+    public long getRows() {
+      long returned = counter("Rows returned");
+      return returned >= 0 ? returned : counter("Rows seen");
+    }
+
+    /**
+     * @return how many rows a scan looked at, including the ones its qualifiers threw away, or
+     *     -1 for nodes that don't scan.
+     */
+    public long getRowsVisited() {
+      return counter("Number of rows visited");
+    }
+
+    public long getOpens() {
+      return counter("Number of opens");
+    }
+
+    /**
+     * @return the open, next and close time of the node, in milliseconds. The time of a node
+     *     includes the time of its inputs.
+     */
+    public long getMillis() {
+      return Math.max(0, counter("open time (milliseconds)"))
+          + Math.max(0, counter("next time (milliseconds)"))
+          + Math.max(0, counter("close time (milliseconds)"));
+    }
+
+    /**
+     * @return the optimizer's guess at the rows the node returns, or -1 if it didn't give one.
+     */
+    public double getEstimatedRows() {
+      String value = counters.get("optimizer estimated row count");
+      try {
+        return value == null ? -1 : Double.parseDouble(value);
+      } catch (NumberFormatException notNumber) {
+        return -1;
+      }
+    }
+
+    /**
+     * @return a whole number counter of the node, or -1 if the node doesn't have it.
+     */
+    public long counter(String name) {
+      String value = counters.get(name);
+      try {
+        return value == null ? -1 : Long.parseLong(value);
+      } catch (NumberFormatException notNumber) {
+        return -1;
+      }
+    }
+
+    /**
+     * @return e.g. "Table Scan of CUSTOMERS: 300000 rows, 41 ms"
+     */
+    @Override
+    public String toString() {
+      StringBuilder text = new StringBuilder();
+      if (!role.isEmpty()) {
+        text.append(role).append(": ");
+      }
+      text.append(operator);
+      if (table != null) {
+        text.append(" of ").append(table);
+      }
+      if (index != null) {
+        text.append(" using ").append(index);
+      }
+      long rows = getRows();
+      if (rows >= 0) {
+        text.append(": ").append(rows).append(rows == 1 ? " row" : " rows");
+        long opens = getOpens();
+        if (opens > 1) {
+          text.append(" in ").append(opens).append(" opens");
+        }
+      }
+      text.append(", ").append(getMillis()).append(" ms");
+      if (isFullScan()) {
+        text.append("  [full scan]");
+      }
+      return text.toString();
+    }
+  }// end of Node class
+
+  private final String text;
+  private final Map<String, Long> statementMillis;
+  private final Node root;
+
+  private QueryPlan(String text, Map<String, Long> statementMillis, Node root) {
+    this.text = text;
+    this.statementMillis = statementMillis;
+    this.root = root;
+  }
+
+  /**
+   * Reads the text of SYSCS_GET_RUNTIMESTATISTICS. Lines that don't fit the expected layout are
+   * kept in the details of the node they come after, so nothing Derby says gets lost.
+   *
+   * @return the plan. Its root is null if the text had no result sets, e.g. for an INSERT.
+   */
+  public static QueryPlan parse(String text) {
+    Map<String, Long> times = new LinkedHashMap<>();
+    Deque<Node> open = new ArrayDeque<>();
+    Deque<Integer> depths = new ArrayDeque<>();
+    Node root = null;
+    String role = "";
+    boolean inPlan = false;
+
+    for (String rawLine : text.split("\r?\n")) {
+      int depth = 0;
+      while (depth < rawLine.length() && rawLine.charAt(depth) == '\t') {
+        depth++;
+      }
+      String line = rawLine.trim();
+      if (line.isEmpty()) {
+        continue;
+      }
+      if (!inPlan) {
+        Matcher time = STATEMENT_TIME.matcher(line);
+        if (time.matches()) {
+          times.put(time.group(1), Long.parseLong(time.group(2)));
+        }
+        inPlan = line.startsWith("Statement Execution Plan Text");
+        continue;
+      }
+
+      Matcher node = NODE.matcher(line);
+      if (node.matches()) {
+        Matcher index = INDEX.matcher(node.group(3));
+        Node next = new Node(node.group(1).trim(), node.group(2),
+            index.find() ? index.group(1) : null, role);
+        role = "";
+        next.details.add(line);
+        // the parent is the nearest node above that is indented less
+        while (!depths.isEmpty() && depths.peek() >= depth) {
+          depths.pop();
+          open.pop();
+        }
+        if (open.isEmpty()) {
+          if (root == null) {
+            root = next;
+          }
+        } else {
+          open.peek().children.add(next);
+        }
+        open.push(next);
+        depths.push(depth);
+        continue;
+      }
+
+      if (line.endsWith("result set:")) {
+        // "Left result set:", "Source result set:"... labels the next node
+        String label = line.substring(0, line.length() - "result set:".length()).trim();
+        role = label.isEmpty() ? "" : Character.toUpperCase(label.charAt(0)) + label.substring(1);
+        continue;
+      }
+      if (open.isEmpty()) {
+        continue;
+      }
+      Node current = open.peek();
+      current.details.add(line);
+      int split = line.indexOf(" = ");
+      int separatorLength = 3;
+      if (split < 0) {
+        split = line.indexOf('=');
+        separatorLength = 1;
+      }
+      if (split < 0 && line.startsWith("optimizer estimated")) {
+        split = line.indexOf(':');
+        separatorLength = 1;
+      }
+      if (split > 0) {
+        String name = line.substring(0, split).trim();
+        // the first value wins, later ones belong to blocks like "scan information"
+        if (!current.counters.containsKey(name)) {
+          current.counters.put(name, line.substring(split + separatorLength).trim());
+        }
+      }
+    }// end of for loop
+    return new QueryPlan(text, times, root);
+  }// end of parse method
+
+  /**
+   * @return the text the plan was read from.
+   */
+  public String getText() {
+    return text;
+  }
+
+  /**
+   * @return the top node, or null if the statement had no plan.
+   */
+  public Node getRoot() {
+    return root;
+  }
+
+  /**
+   * @return one of the statement's times in milliseconds ("Parse", "Bind", "Optimize",
+   *     "Generate", "Compile" or "Execute"), or -1 if Derby didn't report it.
+   */
+  public long getStatementMillis(String name) {
+    Long millis = statementMillis.get(name);
+    return millis == null ? -1 : millis;
+  }
+
+  /**
+   * @return every node that reads a whole table, from the top of the tree down.
+   */
+  public List<Node> getFullScans() {
+    List<Node> scans = new ArrayList<>();
+    if (root != null) {
+      collectFullScans(root, scans);
+    }
+    return scans;
+  }
+
+  private static void collectFullScans(Node node, List<Node> scans) {
+    if (node.isFullScan()) {
+      scans.add(node);
+    }
+    for (Node child : node.children) {
+      collectFullScans(child, scans);
+    }
+  }
+
+  /**
+   * @return e.g. "compile 224 ms, execute 40 ms"
+   */
+  public String describeTimes() {
+    return String.format(Locale.ROOT, "compile %d ms, execute %d ms",
+        Math.max(0, getStatementMillis("Compile")), Math.max(0, getStatementMillis("Execute")));
+  }
+}// end of QueryPlan class
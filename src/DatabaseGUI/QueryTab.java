@@ -0,0 +1,627 @@
+package DatabaseGUI;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import javafx.application.Platform;
+import javafx.collections.FXCollections;
+import javafx.collections.ListChangeListener;
+import javafx.scene.control.ButtonType;
+import javafx.scene.control.Dialog;
+import javafx.scene.control.Label;
+import javafx.scene.control.ScrollPane;
+import javafx.scene.control.SelectionMode;
+import javafx.scene.control.Tab;
+import javafx.scene.control.TabPane;
+import javafx.scene.control.TableColumn;
+import javafx.scene.control.TableView;
+import javafx.scene.control.TextField;
+import javafx.scene.control.Tooltip;
+import javafx.scene.layout.GridPane;
+import javafx.scene.layout.VBox;
+
+/**
+ * One tab of query results. Each tab has a QueryExecutor of its own, so a long report running in
+ * one tab doesn't hold up a quick lookup in another. All the tabs share the query cache, and
+ * the executors share the limit on how many queries may run at once.
+ *
+ * Everything here is done on the FX thread.
+ */
+public class QueryTab {
+
+  /**
+   * What Main does when a query tab changes. Called on the FX thread.
+   */
+  public interface Listener {
+
+    /**
+     * The first rows of a result are on screen.
+     */
+    void resultShown(QueryTab queryTab);
+
+    /**
+     * Whether the tab's query is running or profiled, or its result is edited, has changed.
+     */
+    void stateChanged(QueryTab queryTab);
+
+    /**
+     * The tab was emptied, see clear.
+     */
+    void cleared(QueryTab queryTab);
+
+    /**
+     * The tab was closed, and its query stopped.
+     */
+    void closed(QueryTab queryTab);
+  }// end of Listener interface
+
+  private final Tab tab;
+  private final TableView<ResultRow> view = new TableView<>();
+  private final QueryExecutor executor;
+  private final String title;
+  private final TabPane resultTabs;
+  private final Label statusLabel;
+  private final QueryCache queryCache;
+  private final SchemaCache schemaCache;
+  private final Listener listener;
+  private PagedResultList data;
+  private boolean loading;
+  private String status = "";
+  // the last query run in the tab, how it was run, and how often it is run again (0 for never)
+  private String lastSql;
+  private Map<String, String> lastValues;
+  private int queryTimeout;
+  private boolean profiled;
+  private int refreshSeconds = 0;
+  private AutoRefresher refresher;
+  // editing stays on when the query is run again, the editor is made again for each result
+  private boolean editing;
+  private ResultEditor editor;
+  private String savedStatus; // shown once the query has been run again after a save
+  // the preview limit the last query ran with, and its profile if Profile was ticked
+  private int previewLimit;
+  private ResultProfiler profiler; // while it is still reading
+  private ResultProfiler.Summary profile;
+  private Tab profileTab;
+  private Label profileLabel;
+  private TableView<ResultProfiler.ColumnSummary> profileTable;
+
+  /**
+   * @param number the tab's title is "Query " and the number
+   * @param resultTabs the tabs the profile tab is put in, next to this one
+   * @param statusLabel where the tab's status is shown while the tab is selected
+   */
+  public QueryTab(int number, TabPane resultTabs, Label statusLabel, QueryCache queryCache,
+      SchemaCache schemaCache, LocalViews localViews, Listener listener) {
+    this.resultTabs = resultTabs;
+    this.statusLabel = statusLabel;
+    this.queryCache = queryCache;
+    this.schemaCache = schemaCache;
+    this.listener = listener;
+    executor = new QueryExecutor(queryCache);
+    title = "Query " + number;
+    tab = new Tab(title, view);
+    tab.setUserData(this);
+    view.setUserData(this);
+    view.getSelectionModel().setSelectionMode(SelectionMode.MULTIPLE);
+    view.addEventHandler(ResultCell.EditedEvent.EDITED, e -> setStatus(e.getError() != null
+        ? e.getError() : "Not saved yet: " + editor + "  |  Save writes them, Discard undoes"));
+    localViews.enableSort(view);
+    // closing the tab stops its query and gives its connection back to the pool
+    tab.setOnClosed(e -> {
+      shutdown();
+      resultTabs.getTabs().remove(profileTab);
+      listener.closed(this);
+    });
+  }
+
+  public Tab getTab() {
+    return tab;
+  }
+
+  public TableView<ResultRow> getView() {
+    return view;
+  }
+
+  public QueryExecutor getExecutor() {
+    return executor;
+  }
+
+  public boolean isLoading() {
+    return loading;
+  }
+
+  public boolean isProfiling() {
+    return profiler != null;
+  }
+
+  public boolean isEditing() {
+    return editing;
+  }
+
+  /**
+   * @return the editor of the result, or null while it isn't being edited (or can't be yet).
+   */
+  public ResultEditor getEditor() {
+    return editor;
+  }
+
+  public int getRefreshSeconds() {
+    return refreshSeconds;
+  }
+
+  /**
+   * Runs the query in this tab, replacing what the tab was showing.
+   *
+   * @param queryTimeout seconds Derby may spend on the query, 0 for no limit
+   * @param previewRows the most rows to read, 0 for all of them
+   * @param profile whether to read the result a second time to profile it, see ResultProfiler
+   */
+  public void run(String sqlQuery, Map<String, String> values, int queryTimeout,
+      int previewRows, boolean profile) {
+    clear();
+    lastSql = sqlQuery;
+    lastValues = values;
+    this.queryTimeout = queryTimeout;
+    profiled = profile;
+    setStatus("Running query...");
+    tab.setTooltip(new Tooltip(sqlQuery));
+    executor.setQueryTimeout(queryTimeout);
+    executor.setMaxRows(previewRows);
+    previewLimit = previewRows;
+    if (profile && SqlText.isQuery(sqlQuery)) {
+      startProfile(sqlQuery, values);
+    } else if (profileTab != null) {
+      resultTabs.getTabs().remove(profileTab); // it was the profile of another query
+      profileTab = null;
+    }
+    long pressed = System.nanoTime();
+
+    // the listener below is called back on the FX thread as the results come in.
+    executor.execute(sqlQuery, values, new QueryExecutor.ResultListener() {
+
+      @Override
+      public void resultReady(PagedResultList rows) {
+        QueryMetrics.Span build = QueryMetrics.start();
+        ResultTables.addColumns(view, rows);
+
+        data = rows;
+        data.addListener((ListChangeListener<ResultRow>) change -> updateStatus());
+        view.setItems(data);
+        build.end(QueryMetrics.Stage.BUILD, sqlQuery, rows.size());
+
+        // lay the table out now instead of in the next pulse, so the time can be measured
+        QueryMetrics.Span layout = QueryMetrics.start();
+        view.applyCss();
+        view.layout();
+        layout.end(QueryMetrics.Stage.LAYOUT, sqlQuery, 0);
+        QueryMetrics.record(QueryMetrics.Stage.FIRST_PAGE, sqlQuery,
+            System.nanoTime() - pressed, rows.size(), 0);
+        if (refreshSeconds > 0) {
+          startRefresh();
+        } else if (editing) {
+          openEditor();
+        }
+
+        listener.resultShown(QueryTab.this);
+        updateStatus();
+      }
+
+      @Override
+      public void loadingChanged(boolean nowLoading) {
+        loading = nowLoading;
+        tab.setText(loading ? title + " (running)" : title);
+        updateStatus();
+        listener.stateChanged(QueryTab.this);
+      }
+
+      @Override
+      public void updateFinished(int updateCount) {
+        schemaCache.statementExecuted(sqlQuery);
+        setStatus((updateCount < 0 ? "Statement executed" : updateCount + " rows changed")
+            + "  |  " + queryCache.getStatus() + "  |  " + StatementCache.getStatus());
+      }
+
+      @Override
+      public void queryFailed(SQLException sqlEx) {
+        System.out.println("Issue with SQL statement");
+        setStatus(sqlEx.getMessage());
+      }
+    });
+  }// end of run method
+
+  public void cancel() {
+    executor.cancel();
+    if (profiler != null) {
+      stopProfile();
+      if (profile != null) {
+        profileLabel.setText(String.format("Cancelled after %d rows in %.1f ms",
+            profile.getRows(), profile.getNanos() / 1e6));
+      }
+      updateStatus();
+      listener.stateChanged(this);
+    }
+  }
+
+  /**
+   * Reads the whole result (up to the preview limit) a second time on a worker of its own,
+   * filling the tab's profile tab as it goes.
+   */
+  private void startProfile(String sqlQuery, Map<String, String> values) {
+    profiler = new ResultProfiler(sqlQuery, values, previewLimit, queryTimeout,
+        new ResultProfiler.Listener() {
+
+          @Override
+          public void profiled(ResultProfiler.Summary summary) {
+            if (summary.isFinished()) {
+              profiler = null;
+              listener.stateChanged(QueryTab.this);
+            }
+            showProfile(summary);
+          }
+
+          @Override
+          public void profileFailed(SQLException sqlEx) {
+            System.out.println("Issue profiling the query");
+            profiler = null;
+            if (profileLabel != null) {
+              profileLabel.setText("Unable to profile: " + sqlEx.getMessage());
+            }
+            listener.stateChanged(QueryTab.this);
+          }
+        });
+    profiler.start();
+  }
+
+  /**
+   * Shows the summary in the profile tab, which is put back next to the query tab if it was
+   * closed. The query tab stays selected.
+   */
+  private void showProfile(ResultProfiler.Summary summary) {
+    profile = summary;
+    if (profileTab == null) {
+      profileTable = new TableView<>();
+      profileTable.getColumns().add(ResultTables.textColumn("Column",
+          ResultProfiler.ColumnSummary::getName));
+      profileTable.getColumns().add(ResultTables.textColumn("Type",
+          column -> column.getType().toString()));
+      profileTable.getColumns().add(ResultTables.textColumn("Nulls",
+          column -> column.getNulls() + " (" + column.getNullPercent() + ")"));
+      profileTable.getColumns().add(ResultTables.textColumn("Min",
+          ResultProfiler.ColumnSummary::getMin));
+      profileTable.getColumns().add(ResultTables.textColumn("Max",
+          ResultProfiler.ColumnSummary::getMax));
+      profileTable.getColumns().add(ResultTables.textColumn("Distinct",
+          ResultProfiler.ColumnSummary::getDistinctText));
+      profileLabel = new Label();
+      profileTab = new Tab(title + " profile", new VBox(5, profileLabel, profileTable));
+      profileTab.setOnClosed(e -> profileTab = null);
+    }
+    if (!resultTabs.getTabs().contains(profileTab)) {
+      resultTabs.getTabs().add(resultTabs.getTabs().indexOf(tab) + 1, profileTab);
+    }
+    profileTable.setItems(FXCollections.observableArrayList(summary.getColumns()));
+    profileLabel.setText(summary.toString());
+    updateStatus();
+  }
+
+  private void stopProfile() {
+    if (profiler != null) {
+      profiler.cancel();
+      profiler = null;
+    }
+  }
+
+  /**
+   * Runs the tab's query again every so many seconds, or stops doing so for 0. Only queries are
+   * refreshed.
+   */
+  public void setAutoRefresh(int seconds) {
+    if (seconds > 0 && editing) {
+      stopEditing();
+      if (editing) {
+        return; // there are changes to save first
+      }
+      listener.stateChanged(this);
+    }
+    refreshSeconds = seconds;
+    stopRefresh();
+    if (refreshSeconds > 0 && lastSql != null && SqlText.isQuery(lastSql)) {
+      startRefresh();
+    }
+  }
+
+  /**
+   * The first run replaces the table's rows with a LiveResultList holding every row. After that
+   * only the rows in the diff are touched, and a run where nothing changed only updates the
+   * status.
+   */
+  private void startRefresh() {
+    stopRefresh();
+    AutoRefresher started = new AutoRefresher(lastSql, lastValues, refreshSeconds,
+        queryTimeout, new AutoRefresher.Listener() {
+
+          @Override
+          public void refreshed(List<String> columnNames, ColumnType[] columnTypes,
+              List<ColumnarPage> pages, RowDiff diff, long nanos) {
+            if (diff == null || !(view.getItems() instanceof LiveResultList)) {
+              executor.close(); // every row is in memory now, the cursor isn't needed
+              data = null;
+              if (!columnNames.equals(liveColumnNames())) {
+                view.getColumns().clear();
+                ResultTables.addColumns(view, columnNames, columnTypes);
+              }
+              view.setItems(new LiveResultList(columnNames, columnTypes, pages));
+            } else {
+              ((LiveResultList) view.getItems()).apply(diff, pages);
+            }
+            setStatus(String.format("%d rows, refreshed every %d s at %s: %s (rows matched "
+                    + "by %s), read in %.1f ms", view.getItems().size(), refreshSeconds,
+                LocalTime.now().withNano(0), diff == null ? "all rows new" : diff.toString(),
+                refresher != null && refresher.isKeyed() ? "primary key" : "content",
+                nanos / 1e6));
+          }
+
+          @Override
+          public void refreshFailed(SQLException sqlEx) {
+            System.out.println("Issue refreshing the query");
+            refresher = null;
+            setStatus("Auto-refresh stopped: " + sqlEx.getMessage());
+          }
+        });
+    refresher = started;
+    started.start();
+  }
+
+  /**
+   * Lets the cells of the tab's result be changed, once it is known that the result can be.
+   */
+  public void startEditing() {
+    if (lastSql == null || data == null) {
+      setStatus("Run a query first, then edit its result");
+      editing = false;
+    } else if (refresher != null) {
+      setStatus("A result that refreshes itself can't be edited, turn auto-refresh off first");
+      editing = false;
+    } else {
+      editing = true;
+      openEditor();
+    }
+  }
+
+  /**
+   * Stops editing, unless there are changes that haven't been saved or discarded.
+   */
+  public void stopEditing() {
+    if (editor != null && !editor.isEmpty()) {
+      setStatus("Save or discard the changes first: " + editor);
+      return;
+    }
+    editing = false;
+    editor = null;
+    ResultCell.setEditor(view, null);
+  }
+
+  /**
+   * Finds out on a worker thread whether, and how, the result can be written back.
+   */
+  private void openEditor() {
+    String sql = lastSql;
+    List<String> names = ResultTables.columnNamesOf(view);
+    setStatus("Reading the primary key of the table...");
+    Thread editThread = new Thread(() -> {
+      try (Connection connection = DatabaseConnect.connect()) {
+        ResultEditor opened = ResultEditor.open(connection, sql, names);
+        Platform.runLater(() -> {
+          if (!editing || !sql.equals(lastSql) || data == null) {
+            return; // stopped, or another query was run since
+          }
+          editor = opened;
+          ResultCell.setEditor(view, opened);
+          setStatus(savedStatus != null ? savedStatus : "Editing " + opened.getTableName()
+              + ": double click a cell to change it. Nothing is written until Save");
+          savedStatus = null;
+          listener.stateChanged(this);
+        });
+      } catch (SQLException sqlEx) {
+        Platform.runLater(() -> {
+          editing = false;
+          setStatus("Unable to edit: " + sqlEx.getMessage());
+          listener.stateChanged(this);
+        });
+      }
+    }, "edit-worker");
+    editThread.setDaemon(true);
+    editThread.start();
+  }// end of openEditor method
+
+  /**
+   * Asks for the values of a new row, one field per column. Columns that can't be edited are
+   * left to the table.
+   */
+  public void addRow() {
+    List<String> names = ResultTables.columnNamesOf(view);
+    GridPane fields = new GridPane();
+    fields.setHgap(10);
+    fields.setVgap(5);
+    List<TextField> values = new ArrayList<>();
+    for (int column = 0; column < names.size(); column++) {
+      TextField value = new TextField();
+      value.setDisable(!editor.isEditable(column));
+      values.add(value);
+      fields.add(new Label(names.get(column)), 0, column);
+      fields.add(value, 1, column);
+    }
+    Dialog<ButtonType> dialog = new Dialog<>();
+    dialog.setTitle("Add row to " + editor.getTableName());
+    dialog.setHeaderText("Empty fields are NULL, or the column's default");
+    dialog.getDialogPane().setContent(new ScrollPane(fields));
+    dialog.getDialogPane().getButtonTypes().addAll(ButtonType.OK, ButtonType.CANCEL);
+    if (dialog.showAndWait().orElse(ButtonType.CANCEL) != ButtonType.OK) {
+      return;
+    }
+    List<String> texts = new ArrayList<>();
+    for (TextField value : values) {
+      texts.add(value.isDisabled() || value.getText().trim().isEmpty() ? null
+          : value.getText());
+    }
+    String error = editor.insert(texts);
+    setStatus(error != null ? error : "Not saved yet: " + editor
+        + "  |  the new rows show up once saved");
+  }// end of addRow method
+
+  /**
+   * Marks the selected rows to be deleted, or keeps those that already were.
+   */
+  public void deleteSelectedRows() {
+    for (ResultRow row : new ArrayList<>(view.getSelectionModel().getSelectedItems())) {
+      if (row != null) {
+        editor.toggleDeleted(row);
+      }
+    }
+    view.refresh();
+    setStatus("Not saved yet: " + editor + "  |  Save writes them, Discard undoes");
+  }
+
+  /**
+   * Writes every change in one transaction on a worker thread, and runs the query again when
+   * it was committed so the table shows the rows as they are now.
+   */
+  public void save() {
+    ResultEditor saving = editor;
+    ResultEditor.Save save = saving.prepareSave();
+    if (save.getRowCount() == 0) {
+      setStatus("Nothing to save");
+      return;
+    }
+    listener.stateChanged(this); // the editor takes no changes until the save is handed back
+    setStatus("Saving " + save + "...");
+    Thread saveThread = new Thread(() -> {
+      String error = null;
+      try {
+        save.run();
+      } catch (SQLException sqlEx) {
+        System.out.println("Issue saving the changes");
+        error = sqlEx.getMessage();
+      }
+      String failure = error;
+      Platform.runLater(() -> {
+        saving.saved(save);
+        listener.stateChanged(this);
+        if (failure != null) {
+          setStatus("Nothing was saved: " + failure);
+        } else if (!save.isCommitted()) {
+          view.refresh();
+          setStatus("Nothing was saved: " + save.getConflictCount() + " of the rows (in red)"
+              + " were changed or deleted by someone else since they were read. Run the query"
+              + " again to see them as they are now");
+        } else {
+          queryCache.invalidateTables(Collections.singleton(saving.getTableName()));
+          savedStatus = String.format("Saved %s in one transaction, %d batches, %.1f ms",
+              save, save.getBatchCount(), save.getNanos() / 1e6);
+          run(lastSql, lastValues, queryTimeout, previewLimit, profiled);
+        }
+      });
+    }, "edit-worker");
+    saveThread.setDaemon(true);
+    saveThread.start();
+  }// end of save method
+
+  public void discardChanges() {
+    editor.discard();
+    view.refresh();
+    setStatus("Changes discarded");
+  }
+
+  public void stopRefresh() {
+    if (refresher != null) {
+      refresher.stop();
+      refresher = null;
+    }
+  }
+
+  /**
+   * Stops everything the tab has running and gives its connection back to the pool.
+   */
+  public void shutdown() {
+    stopRefresh();
+    stopProfile();
+    executor.shutdown();
+  }
+
+  /**
+   * @return the names of the columns the table shows now.
+   */
+  private List<String> liveColumnNames() {
+    List<String> names = new ArrayList<>();
+    for (TableColumn<ResultRow, ?> column : view.getColumns()) {
+      names.add(column.getText());
+    }
+    return names;
+  }
+
+  /**
+   * Empties the table and closes the result it was showing, if any.
+   */
+  public void clear() {
+    stopRefresh();
+    stopProfile();
+    profile = null;
+    executor.close();
+    data = null;
+    editor = null;
+    ResultCell.setEditor(view, null);
+    loading = false;
+    tab.setText(title);
+    view.setItems(FXCollections.<ResultRow>observableArrayList());
+    view.getColumns().clear();
+    view.getSortOrder().clear();
+    listener.cleared(this);
+  }
+
+  /**
+   * Shows the text in the status bar while this tab is selected, and whenever it is picked again.
+   */
+  public void setStatus(String text) {
+    status = text;
+    if (tab.isSelected()) {
+      statusLabel.setText(status);
+    }
+  }
+
+  /**
+   * Shows how many rows have been read so far, and whether there are more to come.
+   */
+  public void updateStatus() {
+    if (data == null) {
+      setStatus(status);
+      return;
+    }
+    String rows = data.isComplete() ? data.size() + " rows"
+        : data.size() + "+ rows (scroll down for more)";
+    if (view.getItems() instanceof ResultView) {
+      rows = ResultTables.describe((ResultView) view.getItems());
+    } else if (previewLimit > 0 && data.isComplete() && data.size() >= previewLimit) {
+      rows = "first " + data.size() + " rows (preview)";
+    } else if (previewLimit > 0 && !data.isComplete()) {
+      rows = data.size() + "+ of the first " + previewLimit + " rows (scroll down for more)";
+    }
+    if (profile != null && !profile.isLimited()) {
+      rows += ", " + profile.getRows() + (profile.isFinished() ? " in all"
+          : profiler != null ? "+ counted so far" : "+ counted before the profile was cancelled");
+    }
+    if (data.getSpilledBytes() > 0) {
+      rows += ", " + data.getSpilledBytes() / (1024 * 1024) + " MB on disk";
+    }
+    if (data.isLoading()) {
+      rows += ", loading...";
+    }
+    setStatus(rows + "  |  " + queryCache.getStatus() + "  |  " + StatementCache.getStatus()
+        + "  |  " + DatabaseConnect.getPoolStatus() + "  |  "
+        + QueryExecutor.getConcurrencyStatus());
+  }
+}// end of QueryTab class
@@ -0,0 +1,141 @@
+package DatabaseGUI;
+
+import javafx.event.Event;
+import javafx.event.EventType;
+import javafx.geometry.Pos;
+import javafx.scene.control.TableCell;
+import javafx.scene.control.TableView;
+import javafx.scene.control.TextField;
+import javafx.scene.input.KeyCode;
+
+/**
+ * A table cell that shows one column of a ResultRow. The TableView only creates enough cells to
+ * fill the window and reuses them while scrolling, so values are only formatted for the rows that
+ * are actually on screen.
+ *
+ * While the table has a ResultEditor (see setEditor) the cell shows the changes made to it, and a
+ * double click edits it: enter keeps the text, escape throws it away.
+ */
+public class ResultCell extends TableCell<ResultRow, ResultRow> {
+
+  // where the TableView keeps its ResultEditor, in its properties
+  private static final String EDITOR_KEY = "databasegui.editor";
+
+  private static final String EDITED_STYLE = "-fx-background-color: #fff2b3;";
+  private static final String DELETED_STYLE = "-fx-text-fill: #999999; -fx-font-style: italic;";
+  private static final String CONFLICT_STYLE = "-fx-background-color: #f7c6c6;";
+
+  private final int column;
+
+  /**
+   * @param column which column of the result this cell shows, starting at 0
+   * @param type how the column is stored. Numbers are lined up on the right.
+   */
+  public ResultCell(int column, ColumnType type) {
+    this.column = column;
+    if (type.isNumeric()) {
+      setAlignment(Pos.CENTER_RIGHT);
+    }
+  }
+
+  /**
+   * Lets the cells of the table be edited into the editor, or stops it for null.
+   */
+  public static void setEditor(TableView<ResultRow> view, ResultEditor editor) {
+    if (editor == null) {
+      view.getProperties().remove(EDITOR_KEY);
+    } else {
+      view.getProperties().put(EDITOR_KEY, editor);
+    }
+    view.setEditable(editor != null);
+    view.refresh();
+  }
+
+  public static ResultEditor getEditor(TableView<ResultRow> view) {
+    return (ResultEditor) view.getProperties().get(EDITOR_KEY);
+  }
+
+  @Override
+  protected void updateItem(ResultRow row, boolean empty) {
+    super.updateItem(row, empty);
+    ResultEditor editor = getTableView() == null ? null : getEditor(getTableView());
+    if (empty || row == null) {
+      setText(null);
+      setStyle(null);
+    } else if (editor == null) {
+      setText(row.format(column));
+      setStyle(null);
+    } else {
+      setText(editor.format(row, column));
+      setStyle(editor.isConflicted(row) ? CONFLICT_STYLE : editor.isDeleted(row) ? DELETED_STYLE
+          : editor.isEdited(row, column) ? EDITED_STYLE : null);
+    }
+    setGraphic(null);
+  }
+
+  @Override
+  public void startEdit() {
+    ResultRow row = getItem();
+    ResultEditor editor = getEditor(getTableView());
+    if (editor == null || row == null || !row.isLoaded() || !editor.isEditable(column)) {
+      return;
+    }
+    super.startEdit();
+    TextField field = new TextField(editor.format(row, column));
+    field.setOnAction(e -> {
+      String error = editor.setValue(row, column, field.getText());
+      if (error == null) {
+        cancelEdit();
+        getTableView().fireEvent(new EditedEvent());
+      } else {
+        field.setStyle(CONFLICT_STYLE);
+        getTableView().fireEvent(new EditedEvent(error));
+      }
+    });
+    field.setOnKeyPressed(e -> {
+      if (e.getCode() == KeyCode.ESCAPE) {
+        cancelEdit();
+      }
+    });
+    setText(null);
+    setGraphic(field);
+    field.selectAll();
+    field.requestFocus();
+  }
+
+  @Override
+  public void cancelEdit() {
+    super.cancelEdit();
+    updateItem(getItem(), getItem() == null);
+  }
+
+  /**
+   * Fired at the TableView when a cell has been edited, so the window can show what is waiting
+   * to be saved, or why the text wasn't taken.
+   */
+  public static final class EditedEvent extends Event {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final EventType<EditedEvent> EDITED =
+        new EventType<>(Event.ANY, "RESULT_CELL_EDITED");
+
+    private final String error;
+
+    EditedEvent() {
+      this(null);
+    }
+
+    EditedEvent(String error) {
+      super(EDITED);
+      this.error = error;
+    }
+
+    /**
+     * @return why the text wasn't taken, or null if it was.
+     */
+    public String getError() {
+      return error;
+    }
+  }// end of EditedEvent class
+}// end of ResultCell class
@@ -0,0 +1,668 @@
+package DatabaseGUI;
+
+import java.math.BigDecimal;
+import java.sql.BatchUpdateException;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * The changes the user has made to the rows of a result: cells edited, rows deleted and rows
+ * added. Nothing is written until save is called, which writes every change in one transaction,
+ * with one executeBatch per kind of statement, so changing thousands of rows costs a handful of
+ * calls instead of one connection and statement per row.
+ *
+ * Only the result of a query that reads one table and returns all of its primary key columns can
+ * be edited, and only the columns that are columns of that table. A changed row is found by its
+ * primary key, and by the values it had when it was read, so a row that someone else changed or
+ * deleted since isn't overwritten: its UPDATE or DELETE changes no row. That counts as a conflict
+ * and the whole save is rolled back, leaving the changes in place to be looked at.
+ *
+ * The rows of a result never change (a ColumnarPage can't), so the new values are kept here, by
+ * the primary key of the row. Nothing here touches JavaFX; everything but Save.run must be called
+ * on the same thread (the JavaFX application thread). While a save is running nothing can be
+ * changed, so what the user sees is what gets written.
+ */
+public class ResultEditor {
+
+  // what is typed into a cell to set it to NULL, the text shown for NULL
+  public static final String NULL_TEXT = "null";
+
+  /**
+   * The new values of one row that was read from the table, or the row being deleted.
+   */
+  private static final class Change {
+
+    private final Object[] original; // every column of the row, as JDBC values
+    private final Object[] values;   // the new value of every edited column
+    private final boolean[] edited;
+    private boolean deleted;
+
+    Change(Object[] original) {
+      this.original = original;
+      this.values = new Object[original.length];
+      this.edited = new boolean[original.length];
+    }
+
+    boolean isEmpty() {
+      if (deleted) {
+        return false;
+      }
+      for (boolean column : edited) {
+        if (column) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }// end of Change class
+
+  private final String table;       // quoted, with its schema
+  private final String tableName;   // as SqlText names it, e.g. CUSTOMERS
+  private final List<String> columnNames;
+  private final String[] tableColumns; // quoted name of each result column in the table, or null
+  private final int[] sqlTypes;        // java.sql.Types of each result column in the table
+  private final boolean[] editable;
+  private final boolean[] comparable;  // can be used in the WHERE to find the row
+  private final int[] keyColumns;
+
+  private final Map<List<Object>, Change> changes = new LinkedHashMap<>();
+  private final List<Object[]> inserts = new ArrayList<>();
+  private Set<List<Object>> conflicts = new HashSet<>();
+  private Save saving; // prepared and not yet saved
+
+  private ResultEditor(String table, String tableName, List<String> columnNames,
+      String[] tableColumns, int[] sqlTypes, boolean[] editable, boolean[] comparable,
+      int[] keyColumns) {
+    this.table = table;
+    this.tableName = tableName;
+    this.columnNames = columnNames;
+    this.tableColumns = tableColumns;
+    this.sqlTypes = sqlTypes;
+    this.editable = editable;
+    this.comparable = comparable;
+    this.keyColumns = keyColumns;
+  }
+
+  /**
+   * Reads what is needed to write to the table the query reads.
+   *
+   * @param columnNames the column names of the query's result
+   * @throws SQLException if the result can't be edited, with the reason as its message
+   */
+  public static ResultEditor open(Connection connection, String sql, List<String> columnNames)
+      throws SQLException {
+    if (!SqlText.isQuery(sql)) {
+      throw new SQLException("Only the result of a query can be edited");
+    }
+    Set<String> tables = SqlText.referencedTables(sql);
+    if (tables.size() != 1) {
+      throw new SQLException("Only the result of a query that reads one table can be edited");
+    }
+    DatabaseMetaData metaData = connection.getMetaData();
+    String tableName = tables.iterator().next();
+    int[] keyColumns = primaryKeyColumns(metaData, sql, columnNames);
+    if (keyColumns.length == 0) {
+      throw new SQLException("Only a result that has every primary key column of " + tableName
+          + " can be edited");
+    }
+
+    String schema = metaData.getUserName().toUpperCase(Locale.ROOT);
+    String[] tableColumns = new String[columnNames.size()];
+    int[] sqlTypes = new int[columnNames.size()];
+    boolean[] editable = new boolean[columnNames.size()];
+    boolean[] comparable = new boolean[columnNames.size()];
+    String table = null;
+    try (ResultSet columns = metaData.getColumns(null, schema, tableName, null)) {
+      while (columns.next()) {
+        table = quote(columns.getString("TABLE_SCHEM")) + "." + quote(
+            columns.getString("TABLE_NAME"));
+        String name = columns.getString("COLUMN_NAME");
+        int column = indexOfIgnoreCase(columnNames, name);
+        if (column < 0 || tableColumns[column] != null) {
+          continue; // not in the result, or already seen (SELECT a, a)
+        }
+        int type = columns.getInt("DATA_TYPE");
+        tableColumns[column] = quote(name);
+        sqlTypes[column] = type;
+        editable[column] = isWritable(type)
+            && !"YES".equals(columns.getString("IS_AUTOINCREMENT"));
+        comparable[column] = isComparable(type);
+      }
+    }
+    if (table == null) {
+      throw new SQLException("Table " + tableName + " wasn't found in schema " + schema);
+    }
+    return new ResultEditor(table, tableName, new ArrayList<>(columnNames), tableColumns,
+        sqlTypes, editable, comparable, keyColumns);
+  }// end of open method
+
+  /**
+   * @return the positions of the result columns that make up the primary key of the one table
+   *     the query reads, or an empty array if the query reads more than one table or doesn't
+   *     return the whole key. AutoRefresher matches rows by these too.
+   */
+  static int[] primaryKeyColumns(DatabaseMetaData metaData, String sql, List<String> names)
+      throws SQLException {
+    Set<String> tables = SqlText.referencedTables(sql);
+    if (tables.size() != 1) {
+      return new int[0];
+    }
+    String schema = metaData.getUserName().toUpperCase(Locale.ROOT);
+    List<Integer> positions = new ArrayList<>();
+    try (ResultSet keys = metaData.getPrimaryKeys(null, schema, tables.iterator().next())) {
+      while (keys.next()) {
+        int position = indexOfIgnoreCase(names, keys.getString("COLUMN_NAME"));
+        if (position < 0) {
+          return new int[0]; // a key column isn't in the result
+        }
+        positions.add(position);
+      }
+    }
+    int[] columns = new int[positions.size()];
+    for (int i = 0; i < columns.length; i++) {
+      columns[i] = positions.get(i);
+    }
+    return columns;
+  }// end of primaryKeyColumns method
+
+  /**
+   * @return the name of the table that is written to, e.g. CUSTOMERS
+   */
+  public String getTableName() {
+    return tableName;
+  }
+
+  /**
+   * @return true if the cells of the column can be changed. Columns that aren't columns of the
+   *     table (expressions), generated keys and binary columns can't.
+   */
+  public boolean isEditable(int column) {
+    return editable[column] && saving == null;
+  }
+
+  /**
+   * @return true between prepareSave and saved, while nothing can be changed.
+   */
+  public boolean isSaving() {
+    return saving != null;
+  }
+
+  /**
+   * Changes the value of a cell. The text is read the way a parameter is (see ParameterBinder),
+   * and "null" sets the cell to NULL. Setting a cell back to the value it was read with undoes
+   * the change.
+   *
+   * @return why the text can't go in the cell, or null if it was taken
+   */
+  public String setValue(ResultRow row, int column, String text) {
+    if (saving != null) {
+      return "Wait for the save to finish";
+    }
+    if (!row.isLoaded() || !editable[column]) {
+      return columnNames.get(column) + " can't be changed";
+    }
+    Object value;
+    try {
+      value = toValue(column, text);
+    } catch (IllegalArgumentException badValue) {
+      return "'" + text.trim() + "' isn't a valid value for " + columnNames.get(column);
+    }
+    List<Object> key = keyOf(row);
+    Change change = changes.get(key);
+    if (change == null) {
+      change = new Change(originalOf(row));
+      changes.put(key, change);
+    }
+    boolean same = sameValue(change.original[column], value);
+    change.edited[column] = !same;
+    change.values[column] = same ? null : value;
+    if (change.isEmpty()) {
+      changes.remove(key);
+    }
+    conflicts.remove(key);
+    return null;
+  }// end of setValue method
+
+  /**
+   * Marks a row to be deleted, or keeps it after all if it already was.
+   */
+  public void toggleDeleted(ResultRow row) {
+    if (!row.isLoaded() || saving != null) {
+      return;
+    }
+    List<Object> key = keyOf(row);
+    Change change = changes.get(key);
+    if (change == null) {
+      change = new Change(originalOf(row));
+      changes.put(key, change);
+    }
+    change.deleted = !change.deleted;
+    if (change.isEmpty()) {
+      changes.remove(key);
+    }
+  }
+
+  /**
+   * Adds a row to be inserted. Columns that can't be edited are left to the table's defaults,
+   * and so are those typed as "null".
+   *
+   * @param texts the text typed for every column of the result
+   * @return why the row can't be added, or null if it was
+   */
+  public String insert(List<String> texts) {
+    if (saving != null) {
+      return "Wait for the save to finish";
+    }
+    Object[] values = new Object[columnNames.size()];
+    boolean any = false;
+    for (int column = 0; column < values.length; column++) {
+      if (!editable[column] || texts.get(column) == null) {
+        continue;
+      }
+      try {
+        values[column] = toValue(column, texts.get(column));
+      } catch (IllegalArgumentException badValue) {
+        return "'" + texts.get(column).trim() + "' isn't a valid value for "
+            + columnNames.get(column);
+      }
+      any |= values[column] != null;
+    }
+    if (!any) {
+      return "Type a value for at least one column";
+    }
+    inserts.add(values);
+    return null;
+  }
+
+  /**
+   * @return the text of a cell, with the change made to it if there is one.
+   */
+  public String format(ResultRow row, int column) {
+    Change change = changes.isEmpty() || !row.isLoaded() ? null : changes.get(keyOf(row));
+    if (change == null || !change.edited[column]) {
+      return row.format(column);
+    }
+    Object value = change.values[column];
+    if (value instanceof BigDecimal) {
+      return ((BigDecimal) value).toPlainString();
+    }
+    return value == null ? NULL_TEXT : value.toString();
+  }
+
+  public boolean isEdited(ResultRow row, int column) {
+    Change change = changes.isEmpty() || !row.isLoaded() ? null : changes.get(keyOf(row));
+    return change != null && change.edited[column];
+  }
+
+  public boolean isDeleted(ResultRow row) {
+    Change change = changes.isEmpty() || !row.isLoaded() ? null : changes.get(keyOf(row));
+    return change != null && change.deleted;
+  }
+
+  /**
+   * @return true if the last save found that someone else changed or deleted the row since it
+   *     was read.
+   */
+  public boolean isConflicted(ResultRow row) {
+    return !conflicts.isEmpty() && row.isLoaded() && conflicts.contains(keyOf(row));
+  }
+
+  /**
+   * @return true if there is nothing to save.
+   */
+  public boolean isEmpty() {
+    return changes.isEmpty() && inserts.isEmpty();
+  }
+
+  /**
+   * Forgets every change that hasn't been saved. Not while a save is running.
+   */
+  public void discard() {
+    if (saving != null) {
+      return;
+    }
+    changes.clear();
+    inserts.clear();
+    conflicts = new HashSet<>();
+  }
+
+  /**
+   * @return e.g. "2 updated, 1 inserted, 0 deleted"
+   */
+  @Override
+  public String toString() {
+    int deleted = 0;
+    for (Change change : changes.values()) {
+      if (change.deleted) {
+        deleted++;
+      }
+    }
+    return (changes.size() - deleted) + " updated, " + inserts.size() + " inserted, " + deleted
+        + " deleted";
+  }
+
+  /**
+   * Works out the statements that write the changes as they are now. The Save can then be run on
+   * any thread; until it is handed back to saved, nothing can be changed.
+   */
+  public Save prepareSave() {
+    Save save = new Save();
+    // deletes first, so a row can be deleted and added again with the same key
+    for (Map.Entry<List<Object>, Change> entry : changes.entrySet()) {
+      Change change = entry.getValue();
+      if (change.deleted) {
+        List<Object> parameters = new ArrayList<>();
+        List<Integer> types = new ArrayList<>();
+        String where = where(change.original, parameters, types);
+        save.add("DELETE FROM " + table + where, parameters, types, entry.getKey());
+      }
+    }
+    for (Map.Entry<List<Object>, Change> entry : changes.entrySet()) {
+      Change change = entry.getValue();
+      if (change.deleted) {
+        continue;
+      }
+      List<Object> parameters = new ArrayList<>();
+      List<Integer> types = new ArrayList<>();
+      StringBuilder sql = new StringBuilder("UPDATE ").append(table).append(" SET ");
+      String separator = "";
+      for (int column = 0; column < change.edited.length; column++) {
+        if (change.edited[column]) {
+          sql.append(separator).append(tableColumns[column]).append(" = ?");
+          parameters.add(change.values[column]);
+          types.add(sqlTypes[column]);
+          separator = ", ";
+        }
+      }
+      sql.append(where(change.original, parameters, types));
+      save.add(sql.toString(), parameters, types, entry.getKey());
+    }
+    for (Object[] values : inserts) {
+      List<Object> parameters = new ArrayList<>();
+      List<Integer> types = new ArrayList<>();
+      StringBuilder columns = new StringBuilder();
+      StringBuilder marks = new StringBuilder();
+      for (int column = 0; column < values.length; column++) {
+        if (values[column] != null) {
+          columns.append(columns.length() == 0 ? "" : ", ").append(tableColumns[column]);
+          marks.append(marks.length() == 0 ? "?" : ", ?");
+          parameters.add(values[column]);
+          types.add(sqlTypes[column]);
+        }
+      }
+      save.add("INSERT INTO " + table + " (" + columns + ") VALUES (" + marks + ")", parameters,
+          types, null);
+      save.inserts.add(values);
+    }
+    if (save.getRowCount() > 0) {
+      saving = save;
+    }
+    return save;
+  }// end of prepareSave method
+
+  /**
+   * Takes in the outcome of a save, and lets the changes be changed again: the changes it wrote
+   * are forgotten if it was committed, otherwise the rows it found in conflict are marked.
+   */
+  public void saved(Save save) {
+    if (saving == save) {
+      saving = null;
+    }
+    if (save.committed) {
+      changes.keySet().removeAll(save.keys);
+      inserts.removeAll(save.inserts); // the same arrays, Object[] equals is identity
+      conflicts = new HashSet<>();
+    } else {
+      conflicts = new HashSet<>(save.conflicts);
+    }
+  }
+
+  /**
+   * The statements that write a set of changes, grouped by their text so that each kind of
+   * statement is one PreparedStatement and one executeBatch.
+   */
+  public final class Save {
+
+    private final Map<String, List<Object[]>> batches = new LinkedHashMap<>();
+    private final Map<String, List<int[]>> batchTypes = new HashMap<>();
+    private final Map<String, List<List<Object>>> batchKeys = new HashMap<>();
+    private final Set<List<Object>> conflicts = new HashSet<>();
+    // the changes this save writes, which are all that is forgotten once it is committed
+    private final Set<List<Object>> keys = new HashSet<>();
+    private final List<Object[]> inserts = new ArrayList<>();
+    private final String summary = ResultEditor.this.toString();
+    private int rows = 0;
+    private boolean committed = false;
+    private long nanos;
+
+    private Save() {
+    }
+
+    private void add(String sql, List<Object> parameters, List<Integer> types, List<Object> key) {
+      int[] typeArray = new int[types.size()];
+      for (int i = 0; i < typeArray.length; i++) {
+        typeArray[i] = types.get(i);
+      }
+      batches.computeIfAbsent(sql, s -> new ArrayList<>()).add(parameters.toArray());
+      batchTypes.computeIfAbsent(sql, s -> new ArrayList<>()).add(typeArray);
+      batchKeys.computeIfAbsent(sql, s -> new ArrayList<>()).add(key);
+      if (key != null) {
+        keys.add(key);
+      }
+      rows++;
+    }
+
+    /**
+     * Writes the changes in one transaction on a connection from the pool. If a row was changed
+     * or deleted by someone else since it was read nothing is written, see getConflictCount.
+     *
+     * @throws SQLException if a statement failed, e.g. a key that is already taken. Nothing is
+     *     written then either.
+     */
+    public void run() throws SQLException {
+      long start = System.nanoTime();
+      try (Connection connection = DatabaseConnect.connect()) {
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        try {
+          for (Map.Entry<String, List<Object[]>> batch : batches.entrySet()) {
+            runBatch(connection, batch.getKey(), batch.getValue());
+          }
+          if (conflicts.isEmpty()) {
+            connection.commit();
+            committed = true;
+          }
+        } finally {
+          if (!committed) {
+            connection.rollback();
+          }
+          connection.setAutoCommit(autoCommit);
+          nanos = System.nanoTime() - start;
+        }
+      }
+    }// end of run method
+
+    private void runBatch(Connection connection, String sql, List<Object[]> rowParameters)
+        throws SQLException {
+      List<int[]> types = batchTypes.get(sql);
+      List<List<Object>> keys = batchKeys.get(sql);
+      try (PreparedStatement statement = connection.prepareStatement(sql)) {
+        for (int row = 0; row < rowParameters.size(); row++) {
+          Object[] parameters = rowParameters.get(row);
+          for (int i = 0; i < parameters.length; i++) {
+            if (parameters[i] == null) {
+              statement.setNull(i + 1, types.get(row)[i]);
+            } else {
+              statement.setObject(i + 1, parameters[i]);
+            }
+          }
+          statement.addBatch();
+        }
+        int[] counts;
+        try {
+          counts = statement.executeBatch();
+        } catch (BatchUpdateException batchEx) {
+          throw new SQLException(batchEx.getMessage(), batchEx.getSQLState(), batchEx);
+        }
+        for (int row = 0; row < counts.length; row++) {
+          // an UPDATE or DELETE that found nothing: the row isn't as it was read anymore
+          if (counts[row] == 0 && keys.get(row) != null) {
+            conflicts.add(keys.get(row));
+          }
+        }
+      }
+    }// end of runBatch method
+
+    public boolean isCommitted() {
+      return committed;
+    }
+
+    /**
+     * @return how many rows someone else changed or deleted since they were read.
+     */
+    public int getConflictCount() {
+      return conflicts.size();
+    }
+
+    /**
+     * @return how many executeBatch calls the save took, one per kind of statement.
+     */
+    public int getBatchCount() {
+      return batches.size();
+    }
+
+    /**
+     * @return how many rows the save updates, inserts or deletes.
+     */
+    public int getRowCount() {
+      return rows;
+    }
+
+    public long getNanos() {
+      return nanos;
+    }
+
+    /**
+     * @return what was saved, e.g. "2 updated, 1 inserted, 0 deleted"
+     */
+    @Override
+    public String toString() {
+      return summary;
+    }
+  }// end of Save class
+
+  /**
+   * Finds the row by its key and by every other column it was read with, so the statement
+   * doesn't touch it if someone else changed it since.
+   */
+  private String where(Object[] original, List<Object> parameters, List<Integer> types) {
+    StringBuilder where = new StringBuilder(" WHERE ");
+    String separator = "";
+    for (int column = 0; column < original.length; column++) {
+      if (tableColumns[column] == null || !comparable[column]) {
+        continue;
+      }
+      where.append(separator).append(tableColumns[column]);
+      if (original[column] == null) {
+        where.append(" IS NULL");
+      } else {
+        where.append(" = ?");
+        parameters.add(original[column]);
+        types.add(sqlTypes[column]);
+      }
+      separator = " AND ";
+    }
+    return where.toString();
+  }
+
+  private Object toValue(int column, String text) {
+    return NULL_TEXT.equals(text) ? null : ParameterBinder.convert(sqlTypes[column], text);
+  }
+
+  private List<Object> keyOf(ResultRow row) {
+    Object[] key = new Object[keyColumns.length];
+    for (int i = 0; i < key.length; i++) {
+      key[i] = row.getValue(keyColumns[i]);
+    }
+    return Arrays.asList(key);
+  }
+
+  /**
+   * @return every value of the row as JDBC takes it, e.g. a DATE as a java.sql.Date
+   */
+  private static Object[] originalOf(ResultRow row) {
+    Object[] values = new Object[row.getPage().getColumnCount()];
+    for (int column = 0; column < values.length; column++) {
+      Object value = row.getValue(column);
+      values[column] = value instanceof LocalDate ? Date.valueOf((LocalDate) value) : value;
+    }
+    return values;
+  }
+
+  /**
+   * @return true if the typed value is the value the cell was read with, e.g. 2.50 and 2.5
+   */
+  private static boolean sameValue(Object original, Object value) {
+    if (original instanceof BigDecimal && value instanceof BigDecimal) {
+      return ((BigDecimal) original).compareTo((BigDecimal) value) == 0;
+    }
+    if (original != null && value != null && original.getClass() != value.getClass()) {
+      return original.toString().equals(value.toString()); // text read from e.g. a TIMESTAMP
+    }
+    return Objects.equals(original, value);
+  }
+
+  /**
+   * Binary and large object columns are shown as text that can't be turned back into the value.
+   */
+  private static boolean isWritable(int type) {
+    switch (type) {
+      case Types.BINARY:
+      case Types.VARBINARY:
+      case Types.LONGVARBINARY:
+      case Types.BLOB:
+      case Types.SQLXML:
+      case Types.JAVA_OBJECT:
+      case Types.OTHER:
+        return false;
+      default:
+        return true;
+    }
+  }
+
+  /**
+   * Derby can't compare large objects and long text with =.
+   */
+  private static boolean isComparable(int type) {
+    return isWritable(type) && type != Types.CLOB && type != Types.LONGVARCHAR;
+  }
+
+  private static String quote(String identifier) {
+    return "\"" + identifier.replace("\"", "\"\"") + "\"";
+  }
+
+  private static int indexOfIgnoreCase(List<String> names, String name) {
+    for (int i = 0; i < names.size(); i++) {
+      if (names.get(i).equalsIgnoreCase(name)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+}// end of ResultEditor class
@@ -0,0 +1,359 @@
+package DatabaseGUI;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Writes a query's result straight from the ResultSet to a file, without it ever going through
+ * the table. Bytes are put into one direct buffer that is written to a FileChannel whenever it
+ * fills up, and the same buffer is used for every export, so memory use stays the same whether
+ * the result has a hundred rows or a hundred million.
+ *
+ * Two formats are supported:
+ *
+ * CSV (RFC 4180, UTF-8, NULL as an empty field and an empty string as ""), written one row at a
+ * time.
+ *
+ * COLUMNAR, a compact typed binary file read back one block at a time. Everything is big-endian:
+ *   "DBGC" magic, int version (1), int column count
+ *   per column: short name length, name (UTF-8), byte ColumnType ordinal, byte scale
+ *   blocks of up to BLOCK_ROWS rows, each: int row count, then per column
+ *     the null bitmap, (rows + 7) / 8 bytes: row r is null when bit r % 8 of byte r / 8 is set
+ *     INT and DATE (days since 1970): an int per row
+ *     LONG and DECIMAL (unscaled): a long per row
+ *     DOUBLE and REAL: a double per row
+ *     TEXT: int dictionary size, each value as int length + UTF-8, then a code per row that is
+ *       one byte when the dictionary has up to 256 values, two up to 65536, otherwise four
+ *   an int 0 where the next block would start, then the long total row count
+ *
+ * One exporter does one export at a time. Cancel may be called from any thread.
+ */
+public class ResultExporter {
+
+  public static final int BLOCK_ROWS = Integer.getInteger("databasegui.export.blockRows", 8192);
+  private static final int BUFFER_BYTES =
+      Integer.getInteger("databasegui.export.bufferKb", 1024) * 1024;
+  private static final int PROGRESS_EVERY = 10000; // rows between progress reports (CSV)
+  private static final byte[] MAGIC = {'D', 'B', 'G', 'C'};
+  private static final int VERSION = 1;
+
+  public enum Format {
+    CSV, COLUMNAR;
+
+    /**
+     * @return CSV for a .csv or .txt file, COLUMNAR for anything else.
+     */
+    public static Format forFile(Path file) {
+      String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+      return name.endsWith(".csv") || name.endsWith(".txt") ? CSV : COLUMNAR;
+    }
+  }
+
+  /**
+   * Told how many rows have been written so far. Called on the exporting thread.
+   */
+  public interface ProgressListener {
+
+    void rowsWritten(long rows);
+  }
+
+  private final ByteBuffer buffer = ByteBuffer.allocateDirect(Math.max(64 * 1024, BUFFER_BYTES));
+  private final AtomicBoolean cancelled = new AtomicBoolean(false);
+  private FileChannel channel; // only set while an export is running
+
+  /**
+   * Runs the query on a pooled connection and exports its result.
+   *
+   * @param parameterValues the text typed for each ? or :name parameter, by name
+   * @return the number of rows written. If the export was cancelled or failed the file is
+   *     deleted.
+   */
+  public long export(String sqlQuery, Map<String, String> parameterValues, Path file,
+      Format format, ProgressListener progress) throws SQLException, IOException {
+    cancelled.set(false);
+    SqlText.Parameters parameters = SqlText.parameters(sqlQuery);
+    try (Connection connection = DatabaseConnect.connect();
+        PreparedStatement statement = connection.prepareStatement(parameters.getSql(),
+            ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+      statement.setFetchSize(BLOCK_ROWS);
+      ParameterBinder.bind(statement, parameters.getNames(),
+          ParameterBinder.valuesOf(parameters, parameterValues));
+      try (ResultSet rs = statement.executeQuery()) {
+        return write(rs, file, format, progress);
+      }
+    }
+  }
+
+  /**
+   * Exports every row left in the ResultSet. The ResultSet is read but not closed.
+   *
+   * @return the number of rows written. If the export was cancelled or failed the file is
+   *     deleted.
+   */
+  public long export(ResultSet rs, Path file, Format format, ProgressListener progress)
+      throws SQLException, IOException {
+    cancelled.set(false);
+    return write(rs, file, format, progress);
+  }
+
+  private long write(ResultSet rs, Path file, Format format, ProgressListener progress)
+      throws SQLException, IOException {
+    long rows;
+    buffer.clear();
+    try (FileChannel out = FileChannel.open(file, StandardOpenOption.CREATE,
+        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+      channel = out;
+      rows = format == Format.CSV ? writeCsv(rs, progress) : writeColumnar(rs, progress);
+      flush();
+    } catch (SQLException | IOException | RuntimeException failed) {
+      try {
+        Files.deleteIfExists(file); // half a file is worse than none
+      } catch (IOException deleteFailed) {
+        failed.addSuppressed(deleteFailed);
+      }
+      throw failed;
+    } finally {
+      channel = null;
+    }
+    if (cancelled.get()) {
+      Files.deleteIfExists(file);
+    }
+    return rows;
+  }
+
+  /**
+   * Stops the export that is running. It finishes the row (or block) it's on and deletes the file.
+   */
+  public void cancel() {
+    cancelled.set(true);
+  }
+
+  public boolean isCancelled() {
+    return cancelled.get();
+  }
+
+  private long writeCsv(ResultSet rs, ProgressListener progress)
+      throws SQLException, IOException {
+    ResultSetMetaData rsmd = rs.getMetaData();
+    int columnCount = rsmd.getColumnCount();
+    for (int column = 1; column <= columnCount; column++) {
+      if (column > 1) {
+        putByte(',');
+      }
+      putCsvField(rsmd.getColumnName(column));
+    }
+    putByte('\n');
+
+    long rows = 0;
+    while (!cancelled.get() && rs.next()) {
+      for (int column = 1; column <= columnCount; column++) {
+        if (column > 1) {
+          putByte(',');
+        }
+        String value = rs.getString(column);
+        if (value != null) {
+          putCsvField(value);
+        }
+      }
+      putByte('\n');
+      rows++;
+      if (rows % PROGRESS_EVERY == 0 && progress != null) {
+        progress.rowsWritten(rows);
+      }
+    }
+    if (progress != null) {
+      progress.rowsWritten(rows);
+    }
+    return rows;
+  }// end of writeCsv method
+
+  private long writeColumnar(ResultSet rs, ProgressListener progress)
+      throws SQLException, IOException {
+    ResultSetMetaData rsmd = rs.getMetaData();
+    ColumnType[] types = ColumnarPage.typesOf(rs);
+    int[] scales = ColumnarPage.scalesOf(rs);
+
+    ensure(12);
+    buffer.put(MAGIC).putInt(VERSION).putInt(types.length);
+    for (int column = 0; column < types.length; column++) {
+      byte[] name = rsmd.getColumnName(column + 1).getBytes(StandardCharsets.UTF_8);
+      ensure(2 + name.length + 2);
+      buffer.putShort((short) name.length).put(name);
+      buffer.put((byte) types[column].ordinal()).put((byte) scales[column]);
+    }
+
+    long rows = 0;
+    while (!cancelled.get()) {
+      ColumnarPage block = ColumnarPage.read(rs, types, scales, BLOCK_ROWS, cancelled::get);
+      if (block.getRowCount() == 0) {
+        break;
+      }
+      writeBlock(block);
+      rows += block.getRowCount();
+      if (progress != null) {
+        progress.rowsWritten(rows);
+      }
+      if (block.getRowCount() < BLOCK_ROWS) {
+        break; // the ResultSet ran out (or the export was cancelled part way)
+      }
+    }
+    ensure(12);
+    buffer.putInt(0).putLong(rows);
+    return rows;
+  }// end of writeColumnar method
+
+  private void writeBlock(ColumnarPage block) throws IOException {
+    int rowCount = block.getRowCount();
+    ensure(4);
+    buffer.putInt(rowCount);
+    for (int column = 0; column < block.getColumnCount(); column++) {
+      BitSet nulls = new BitSet(rowCount);
+      for (int row = 0; row < rowCount; row++) {
+        if (block.isNull(column, row)) {
+          nulls.set(row);
+        }
+      }
+      // toByteArray leaves off trailing zero bytes, so pad it back to the full length
+      putBytes(Arrays.copyOf(nulls.toByteArray(), (rowCount + 7) / 8));
+
+      switch (block.getType(column)) {
+        case INT:
+        case DATE:
+          for (int row = 0; row < rowCount; row++) {
+            ensure(4);
+            buffer.putInt((int) block.getLong(column, row));
+          }
+          break;
+        case LONG:
+        case DECIMAL:
+          for (int row = 0; row < rowCount; row++) {
+            ensure(8);
+            buffer.putLong(block.getLong(column, row));
+          }
+          break;
+        case DOUBLE:
+        case REAL:
+          for (int row = 0; row < rowCount; row++) {
+            ensure(8);
+            buffer.putDouble(block.getDouble(column, row));
+          }
+          break;
+        default:
+          writeTextColumn(block, column);
+      }
+    }
+  }// end of writeBlock method
+
+  private void writeTextColumn(ColumnarPage block, int column) throws IOException {
+    int dictionarySize = block.getDictionarySize(column);
+    ensure(4);
+    buffer.putInt(dictionarySize);
+    for (int code = 0; code < dictionarySize; code++) {
+      byte[] value = block.getDictionaryValue(column, code).getBytes(StandardCharsets.UTF_8);
+      ensure(4);
+      buffer.putInt(value.length);
+      putBytes(value);
+    }
+    int codeBytes = dictionarySize <= 256 ? 1 : dictionarySize <= 65536 ? 2 : 4;
+    for (int row = 0; row < block.getRowCount(); row++) {
+      int code = block.isNull(column, row) ? 0 : block.getTextCode(column, row);
+      ensure(codeBytes);
+      if (codeBytes == 1) {
+        buffer.put((byte) code);
+      } else if (codeBytes == 2) {
+        buffer.putShort((short) code);
+      } else {
+        buffer.putInt(code);
+      }
+    }
+  }
+
+  /**
+   * Writes a CSV field as UTF-8, quoted only when it has to be. An empty string is always quoted,
+   * so it isn't read back as NULL (see BulkImporter.splitRecord).
+   */
+  private void putCsvField(String value) throws IOException {
+    boolean quote = value.isEmpty();
+    for (int i = 0; i < value.length() && !quote; i++) {
+      char c = value.charAt(i);
+      quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+    }
+    if (quote) {
+      putByte('"');
+    }
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (c < 0x80) {
+        if (c == '"') {
+          putByte('"'); // a quote inside a quoted field is doubled
+        }
+        putByte(c);
+      } else {
+        // anything outside ASCII is rare in this data, let the JDK encode it
+        int end = i + 1;
+        while (end < value.length() && value.charAt(end) >= 0x80) {
+          end++;
+        }
+        putBytes(value.substring(i, end).getBytes(StandardCharsets.UTF_8));
+        i = end - 1;
+      }
+    }
+    if (quote) {
+      putByte('"');
+    }
+  }
+
+  private void putByte(int b) throws IOException {
+    if (!buffer.hasRemaining()) {
+      flush();
+    }
+    buffer.put((byte) b);
+  }
+
+  private void putBytes(byte[] bytes) throws IOException {
+    int offset = 0;
+    while (offset < bytes.length) {
+      if (!buffer.hasRemaining()) {
+        flush();
+      }
+      int length = Math.min(buffer.remaining(), bytes.length - offset);
+      buffer.put(bytes, offset, length);
+      offset += length;
+    }
+  }
+
+  /**
+   * Makes sure there is room in the buffer for the next few bytes.
+   */
+  private void ensure(int bytes) throws IOException {
+    if (buffer.remaining() < bytes) {
+      flush();
+    }
+  }
+
+  /**
+   * Writes whatever is in the buffer to the file and empties it for reuse.
+   */
+  private void flush() throws IOException {
+    buffer.flip();
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+    buffer.clear();
+  }
+}
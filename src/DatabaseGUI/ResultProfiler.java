@@ -0,0 +1,497 @@
+package DatabaseGUI;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import javafx.application.Platform;
+
+/**
+ * Reads a query's whole result on a "profile-worker" thread of its own, next to the QueryExecutor
+ * that pages it into the table, and works out for every column how many values are null, the
+ * smallest and largest value and about how many distinct values there are. Rows aren't kept, so
+ * a result of any size can be profiled in a few KB. While it reads, a Summary of the rows so far
+ * is handed to the FX thread every PUBLISH_INTERVAL_MS, so the row count and the columns' ranges
+ * can be judged long before the last row, and the query cancelled if it isn't worth waiting for.
+ *
+ * Distinct counts are exact up to EXACT_DISTINCT values, and estimated with a HyperLogLog sketch
+ * (about 1.6% off) after that.
+ */
+public class ResultProfiler {
+
+  // how often the FX thread is told about the rows read so far
+  public static final long PUBLISH_INTERVAL_MS =
+      Long.getLong("databasegui.profile.publishMs", 100);
+
+  // a column with more distinct values than this has them estimated instead of counted
+  static final int EXACT_DISTINCT = 1000;
+
+  private static final int LONGEST_VALUE = 40; // characters of a min or max shown
+
+  /**
+   * Receives the summaries, on the JavaFX application thread.
+   */
+  public interface Listener {
+
+    /**
+     * @param summary the rows read so far. The last one isFinished.
+     */
+    void profiled(Summary summary);
+
+    void profileFailed(SQLException sqlEx);
+  }
+
+  private final String sqlQuery;
+  private final SqlText.Parameters parameters;
+  private final List<String> values;
+  private final int maxRows;
+  private final int queryTimeout;
+  private final Listener listener;
+  private final AtomicBoolean cancelled = new AtomicBoolean(false);
+  private final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+  private final AtomicReference<Summary> latest = new AtomicReference<>();
+  private volatile Statement statement;
+
+  /**
+   * @param parameterValues the text typed for each ? or :name parameter, by name
+   * @param maxRows the most rows to read, 0 for all of them
+   * @param queryTimeout how long Derby may spend on the statement, 0 for no limit
+   */
+  public ResultProfiler(String sqlQuery, Map<String, String> parameterValues, int maxRows,
+      int queryTimeout, Listener listener) {
+    this.sqlQuery = sqlQuery;
+    this.parameters = SqlText.parameters(sqlQuery);
+    this.values = ParameterBinder.valuesOf(parameters, parameterValues);
+    this.maxRows = Math.max(0, maxRows);
+    this.queryTimeout = queryTimeout;
+    this.listener = listener;
+  }
+
+  public void start() {
+    Thread profileThread = new Thread(this::run, "profile-worker");
+    profileThread.setDaemon(true);
+    profileThread.start();
+  }
+
+  /**
+   * Stops reading. Nothing more is handed to the listener, not even a summary that was already on
+   * its way, so call it on the FX thread.
+   */
+  public void cancel() {
+    if (!cancelled.compareAndSet(false, true)) {
+      return;
+    }
+    Statement running = statement;
+    if (running != null) {
+      try {
+        running.cancel();
+      } catch (SQLFeatureNotSupportedException notSupported) {
+        // the embedded driver, the loop notices the flag after the page it is reading
+      } catch (SQLException sqlEx) {
+        System.out.println("Unable to cancel the profile's statement");
+      }
+    }
+  }
+
+  /**
+   * Reads the result page by page, adding every page to the columns' statistics. profile-worker.
+   */
+  private void run() {
+    long start = System.nanoTime();
+    long rows = 0;
+    try (Connection connection = DatabaseConnect.connect();
+        PreparedStatement prepared = connection.prepareStatement(parameters.getSql(),
+            ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+      statement = prepared;
+      prepared.setQueryTimeout(queryTimeout);
+      prepared.setFetchSize(PagedResultList.DEFAULT_PAGE_SIZE);
+      prepared.setMaxRows(maxRows); // Derby stops producing rows there, not just the loop
+      ParameterBinder.bind(prepared, parameters.getNames(), values);
+      try (ResultSet rs = prepared.executeQuery()) {
+        ColumnType[] types = ColumnarPage.typesOf(rs);
+        int[] scales = ColumnarPage.scalesOf(rs);
+        ResultSetMetaData rsmd = rs.getMetaData();
+        ColumnStats[] columns = new ColumnStats[types.length];
+        for (int column = 0; column < columns.length; column++) {
+          columns[column] = new ColumnStats(rsmd.getColumnName(column + 1), types[column],
+              scales[column]);
+        }
+
+        long published = System.nanoTime();
+        while (true) {
+          ColumnarPage page = ColumnarPage.read(rs, types, scales,
+              PagedResultList.DEFAULT_PAGE_SIZE, cancelled::get);
+          for (int column = 0; column < columns.length; column++) {
+            columns[column].add(page, column);
+          }
+          rows += page.getRowCount();
+          boolean done = page.getRowCount() < PagedResultList.DEFAULT_PAGE_SIZE;
+          long now = System.nanoTime();
+          if (done || now - published >= PUBLISH_INTERVAL_MS * 1000000) {
+            publish(new Summary(rows, now - start, done, maxRows > 0 && rows >= maxRows,
+                columns));
+            published = now;
+          }
+          if (done) {
+            break;
+          }
+        }// end of while loop
+      }
+      WorkloadRecorder.record(WorkloadRecorder.PROFILE, sqlQuery, values,
+          System.nanoTime() - start, rows, null);
+    } catch (SQLException sqlEx) {
+      WorkloadRecorder.record(WorkloadRecorder.PROFILE, sqlQuery, values,
+          System.nanoTime() - start, rows, sqlEx.getMessage());
+      Platform.runLater(() -> {
+        if (!cancelled.get()) {
+          listener.profileFailed(sqlEx);
+        }
+      });
+    } finally {
+      statement = null;
+    }
+  }// end of run method
+
+  /**
+   * Only one runLater is ever waiting: a summary made before the FX thread got to the last one
+   * simply replaces it.
+   */
+  private void publish(Summary summary) {
+    latest.set(summary);
+    if (flushScheduled.compareAndSet(false, true)) {
+      Platform.runLater(() -> {
+        flushScheduled.set(false);
+        if (!cancelled.get()) {
+          listener.profiled(latest.get());
+        }
+      });
+    }
+  }
+
+  /**
+   * What the profile knows after some (or all) of the rows.
+   */
+  public static final class Summary {
+
+    private final long rows;
+    private final long nanos;
+    private final boolean finished;
+    private final boolean limited;
+    private final List<ColumnSummary> columns;
+
+    Summary(long rows, long nanos, boolean finished, boolean limited, ColumnStats[] stats) {
+      this.rows = rows;
+      this.nanos = nanos;
+      this.finished = finished;
+      this.limited = limited;
+      List<ColumnSummary> summaries = new ArrayList<>(stats.length);
+      for (ColumnStats column : stats) {
+        summaries.add(column.summarize(rows));
+      }
+      this.columns = Collections.unmodifiableList(summaries);
+    }
+
+    public long getRows() {
+      return rows;
+    }
+
+    public long getNanos() {
+      return nanos;
+    }
+
+    public double getRowsPerSecond() {
+      return rows * 1e9 / Math.max(1, nanos);
+    }
+
+    /**
+     * @return true once every row has been read, up to the row limit if there is one.
+     */
+    public boolean isFinished() {
+      return finished;
+    }
+
+    /**
+     * @return true if reading stopped at the row limit, so the result may have more rows.
+     */
+    public boolean isLimited() {
+      return limited;
+    }
+
+    public List<ColumnSummary> getColumns() {
+      return columns;
+    }
+
+    /**
+     * @return e.g. "120000 rows in 240.5 ms (498960 rows/s), still reading"
+     */
+    @Override
+    public String toString() {
+      return String.format("%d rows in %.1f ms (%.0f rows/s)%s", rows, nanos / 1e6,
+          getRowsPerSecond(), !finished ? ", still reading"
+              : limited ? ", stopped at the preview limit" : "");
+    }
+  }// end of Summary class
+
+  /**
+   * One column of a Summary, with its values formatted as they are in the table.
+   */
+  public static final class ColumnSummary {
+
+    private final String name;
+    private final ColumnType type;
+    private final long nulls;
+    private final long rows;
+    private final String min;
+    private final String max;
+    private final long distinct;
+    private final boolean exact;
+
+    ColumnSummary(String name, ColumnType type, long nulls, long rows, String min, String max,
+        long distinct, boolean exact) {
+      this.name = name;
+      this.type = type;
+      this.nulls = nulls;
+      this.rows = rows;
+      this.min = min;
+      this.max = max;
+      this.distinct = distinct;
+      this.exact = exact;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public ColumnType getType() {
+      return type;
+    }
+
+    public long getNulls() {
+      return nulls;
+    }
+
+    /**
+     * @return e.g. "12.5%", the share of the rows read whose value is null
+     */
+    public String getNullPercent() {
+      return String.format("%.1f%%", rows == 0 ? 0.0 : 100.0 * nulls / rows);
+    }
+
+    /**
+     * @return the smallest value, or "" while there are only nulls
+     */
+    public String getMin() {
+      return min;
+    }
+
+    public String getMax() {
+      return max;
+    }
+
+    public long getDistinct() {
+      return distinct;
+    }
+
+    /**
+     * @return false if getDistinct is an estimate.
+     */
+    public boolean isExact() {
+      return exact;
+    }
+
+    /**
+     * @return e.g. "42", or "~1250000" for an estimate
+     */
+    public String getDistinctText() {
+      return (exact ? "" : "~") + distinct;
+    }
+  }// end of ColumnSummary class
+
+  /**
+   * The statistics of one column so far. profile-worker only.
+   */
+  static final class ColumnStats {
+
+    private final String name;
+    private final ColumnType type;
+    private final int scale;
+    private long nulls;
+    private boolean seen;
+    private long minLong = Long.MAX_VALUE;
+    private long maxLong = Long.MIN_VALUE;
+    private double minDouble = Double.POSITIVE_INFINITY;
+    private double maxDouble = Double.NEGATIVE_INFINITY;
+    private String minText;
+    private String maxText;
+    private Set<Long> exactHashes = new HashSet<>(); // null once there are too many
+    private final DistinctSketch sketch = new DistinctSketch();
+
+    ColumnStats(String name, ColumnType type, int scale) {
+      this.name = name;
+      this.type = type;
+      this.scale = scale;
+    }
+
+    void add(ColumnarPage page, int column) {
+      if (type == ColumnType.TEXT) {
+        addText(page, column);
+        return;
+      }
+      for (int row = 0; row < page.getRowCount(); row++) {
+        if (page.isNull(column, row)) {
+          nulls++;
+          continue;
+        }
+        seen = true;
+        long bits;
+        if (type.isFloating()) {
+          double value = page.getDouble(column, row);
+          minDouble = Math.min(minDouble, value);
+          maxDouble = Math.max(maxDouble, value);
+          bits = Double.doubleToLongBits(value);
+        } else {
+          long value = page.getLong(column, row);
+          minLong = Math.min(minLong, value);
+          maxLong = Math.max(maxLong, value);
+          bits = value;
+        }
+        addHash(DistinctSketch.hash(bits));
+      }
+    }// end of add method
+
+    /**
+     * Text is kept in a dictionary per page, so each distinct value of the page is compared and
+     * hashed only once however many rows have it.
+     */
+    private void addText(ColumnarPage page, int column) {
+      boolean[] counted = new boolean[page.getDictionarySize(column)];
+      for (int row = 0; row < page.getRowCount(); row++) {
+        if (page.isNull(column, row)) {
+          nulls++;
+          continue;
+        }
+        int code = page.getTextCode(column, row);
+        if (counted[code]) {
+          continue;
+        }
+        counted[code] = true;
+        String value = page.getDictionaryValue(column, code);
+        if (!seen || value.compareTo(minText) < 0) {
+          minText = value;
+        }
+        if (!seen || value.compareTo(maxText) > 0) {
+          maxText = value;
+        }
+        seen = true;
+        addHash(DistinctSketch.hash(value.hashCode()));
+      }
+    }// end of addText method
+
+    private void addHash(long hash) {
+      sketch.add(hash);
+      if (exactHashes != null) {
+        exactHashes.add(hash);
+        if (exactHashes.size() > EXACT_DISTINCT) {
+          exactHashes = null;
+        }
+      }
+    }
+
+    ColumnSummary summarize(long rows) {
+      boolean exact = exactHashes != null;
+      return new ColumnSummary(name, type, nulls, rows, format(true), format(false),
+          exact ? exactHashes.size() : sketch.estimate(), exact);
+    }
+
+    private String format(boolean min) {
+      if (!seen) {
+        return "";
+      }
+      String text;
+      switch (type) {
+        case DOUBLE:
+        case REAL:
+          text = type.format(min ? minDouble : maxDouble);
+          break;
+        case DECIMAL:
+          text = BigDecimal.valueOf(min ? minLong : maxLong, scale).toPlainString();
+          break;
+        case DATE:
+          text = LocalDate.ofEpochDay(min ? minLong : maxLong).toString();
+          break;
+        case TEXT:
+          text = min ? minText : maxText;
+          break;
+        default:
+          text = Long.toString(min ? minLong : maxLong);
+      }
+      return text.length() > LONGEST_VALUE ? text.substring(0, LONGEST_VALUE - 3) + "..." : text;
+    }
+  }// end of ColumnStats class
+
+  /**
+   * A HyperLogLog sketch: 4096 one byte registers, each keeping the longest run of leading zero
+   * bits among the hashes that fall in it. The runs say how many distinct hashes there were, to
+   * within about 1.6%, in 4 KB however many there are.
+   */
+  static final class DistinctSketch {
+
+    private static final int BITS = 12;
+    private static final int REGISTERS = 1 << BITS;
+    private static final double ALPHA = 0.7213 / (1 + 1.079 / REGISTERS);
+
+    private final byte[] registers = new byte[REGISTERS];
+
+    /**
+     * Spreads the bits of a value over all 64 bits of the hash (MurmurHash3's finalizer), so
+     * values that only differ in their last bits, like 1, 2, 3, land in different registers.
+     */
+    static long hash(long value) {
+      long h = value;
+      h ^= h >>> 33;
+      h *= 0xff51afd7ed558ccdL;
+      h ^= h >>> 33;
+      h *= 0xc4ceb9fe1a85ec53L;
+      h ^= h >>> 33;
+      return h;
+    }
+
+    void add(long hash) {
+      int register = (int) (hash >>> (64 - BITS));
+      // the bits left over, with a 1 after them so a hash of all zeros still has an end
+      int run = Long.numberOfLeadingZeros((hash << BITS) | (1L << (BITS - 1))) + 1;
+      if (run > registers[register]) {
+        registers[register] = (byte) run;
+      }
+    }
+
+    long estimate() {
+      double sum = 0;
+      int empty = 0;
+      for (byte run : registers) {
+        sum += 1.0 / (1L << run);
+        if (run == 0) {
+          empty++;
+        }
+      }
+      double estimate = ALPHA * REGISTERS * REGISTERS / sum;
+      if (estimate <= 2.5 * REGISTERS && empty > 0) {
+        estimate = REGISTERS * Math.log((double) REGISTERS / empty); // few values: count empties
+      }
+      return Math.round(estimate);
+    }
+  }// end of DistinctSketch class
+}// end of ResultProfiler class
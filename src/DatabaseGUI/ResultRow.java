@@ -0,0 +1,71 @@
+package DatabaseGUI;
+
+import javafx.beans.value.ObservableValueBase;
+
+/**
+ * One row of a query result as the TableView sees it. The values stay in the ColumnarPage, this
+ * object only remembers which page and which row it is.
+ *
+ * A row is also its own ObservableValue. Every column's cell value factory just returns the row,
+ * so drawing a cell doesn't create a new property object the way SimpleStringProperty did. The
+ * ResultCell then formats the one value it needs.
+ */
+public class ResultRow extends ObservableValueBase<ResultRow> {
+
+  private final ColumnarPage page;
+  private final int row;
+
+  ResultRow(ColumnarPage page, int row) {
+    this.page = page;
+    this.row = row;
+  }
+
+  /**
+   * @return the text of a cell, or an empty String for a row that hasn't been loaded yet.
+   */
+  public String format(int column) {
+    return page == null ? "" : page.format(column, row);
+  }
+
+  /**
+   * @return the value of a cell as a Java object, or null.
+   */
+  public Object getValue(int column) {
+    return page == null ? null : page.getValue(column, row);
+  }
+
+  /**
+   * @return false for the stand-in rows shown while a page is still being read.
+   */
+  public boolean isLoaded() {
+    return page != null;
+  }
+
+  public ColumnarPage getPage() {
+    return page;
+  }
+
+  public int getRowInPage() {
+    return row;
+  }
+
+  @Override
+  public ResultRow getValue() {
+    return this;
+  }
+
+  @Override
+  public String toString() {
+    if (page == null) {
+      return "[]";
+    }
+    StringBuilder text = new StringBuilder("[");
+    for (int column = 0; column < page.getColumnCount(); column++) {
+      if (column > 0) {
+        text.append(", ");
+      }
+      text.append(page.format(column, row));
+    }
+    return text.append(']').toString();
+  }
+}
@@ -0,0 +1,128 @@
+package DatabaseGUI;
+
+import java.util.Collections;
+import java.util.List;
+import javafx.beans.property.ReadOnlyStringWrapper;
+import javafx.beans.value.ObservableValue;
+import javafx.collections.ObservableList;
+import javafx.scene.control.Tab;
+import javafx.scene.control.TabPane;
+import javafx.scene.control.TableColumn;
+import javafx.scene.control.TableColumn.CellDataFeatures;
+import javafx.scene.control.TableView;
+import javafx.util.Callback;
+
+/**
+ * The bits every tab of results needs: building the columns of a result, reading the column names
+ * back out of a table, and finding the result table of the tab being looked at.
+ */
+public final class ResultTables {
+
+  private ResultTables() {
+  }
+
+  /**
+   * Since the TabelView doesn't know exactly how many query results will be received, the
+   * columns are built dynamically from the column names of the query's ResultSet.
+   *
+   * currColumn = an unchangeable value declared and initialized at the beginning of each
+   * for-loop iteration. This value is used when retrieving the value type stored in column.
+   *
+   * col = that particular loop iteration's TableColumn object. This is added to the
+   * TableView object as a column at the end of the loop's iteration.
+   *
+   * The rows themselves are only read from the database as the user scrolls to them. Clicking a
+   * column header sorts the result in memory instead (see LocalViews), so each column remembers
+   * its number in the result as its user data.
+   *
+   * Every cell of a row gets the same ResultRow object as its value, and the ResultCell picks
+   * out and formats its own column. That way drawing a cell doesn't create a new property
+   * object, and values that never scroll into view are never turned into Strings at all.
+   */
+  public static void addColumns(TableView<ResultRow> view, PagedResultList rows) {
+    addColumns(view, rows.getColumnNames(), rows.getColumnTypes());
+  }
+
+  public static void addColumns(TableView<ResultRow> view, List<String> columnNames,
+      ColumnType[] columnTypes) {
+    for (int column = 0; column < columnNames.size(); column++) {
+      final int currColumn = column;
+      final ColumnType type = columnTypes[column];
+      TableColumn<ResultRow, ResultRow> col = new TableColumn<>(columnNames.get(column));
+      col.setUserData(currColumn);
+
+      col.setCellValueFactory(
+          new Callback<CellDataFeatures<ResultRow, ResultRow>, ObservableValue<ResultRow>>() {
+            public ObservableValue<ResultRow> call(CellDataFeatures<ResultRow, ResultRow> elem) {
+              return elem.getValue(); // the row is its own ObservableValue
+            }
+          });
+      col.setCellFactory(tableColumn -> new ResultCell(currColumn, type));
+
+      view.getColumns().add(col); // add the TableColumn to the TableView
+    }
+  }// end of addColumns method
+
+  /**
+   * Makes a read-only column that shows the text worked out from each row's item.
+   */
+  public static <T> TableColumn<T, String> textColumn(String name, Callback<T, String> text) {
+    TableColumn<T, String> col = new TableColumn<>(name);
+    col.setCellValueFactory(elem -> new ReadOnlyStringWrapper(text.call(elem.getValue())));
+    return col;
+  }
+
+  /**
+   * @return the column names of the result the table shows, empty if it shows none.
+   */
+  public static List<String> columnNamesOf(TableView<ResultRow> view) {
+    ObservableList<ResultRow> items = view == null ? null : view.getItems();
+    if (items instanceof ResultView) {
+      return ((ResultView) items).getColumnNames();
+    } else if (items instanceof PagedResultList) {
+      return ((PagedResultList) items).getColumnNames();
+    } else if (items instanceof LiveResultList) {
+      return ((LiveResultList) items).getColumnNames();
+    }
+    return Collections.emptyList();
+  }
+
+  /**
+   * @return e.g. "120 of 5000 rows, sorted and filtered (4.2 ms)", the time being that of the
+   *     last sort or filter
+   */
+  public static String describe(ResultView local) {
+    String rows = local.isFiltered() ? local.size() + " of " + local.getRowCount() + " rows"
+        : local.size() + " rows";
+    if (local.isSorted() || local.isFiltered()) {
+      rows += (local.isSorted() && local.isFiltered() ? ", sorted and filtered"
+          : local.isSorted() ? ", sorted" : ", filtered")
+          + String.format(" (%.1f ms)", local.getLastNanos() / 1e6);
+    }
+    return rows;
+  }
+
+  /**
+   * @return the table of the selected result tab, or null if the tab isn't a query result.
+   */
+  @SuppressWarnings("unchecked")
+  public static TableView<ResultRow> selectedResultTable(TabPane resultTabs) {
+    Tab selected = resultTabs.getSelectionModel().getSelectedItem();
+    if (selected == null || !(selected.getContent() instanceof TableView)) {
+      return null;
+    }
+    TableView<?> view = (TableView<?>) selected.getContent();
+    ObservableList<?> items = view.getItems();
+    return items instanceof PagedResultList || items instanceof ResultView
+        || selected.getUserData() instanceof QueryTab ? (TableView<ResultRow>) view : null;
+  }
+
+  /**
+   * @return the selected tab's QueryTab, or null if it isn't a query tab.
+   */
+  public static QueryTab selectedQueryTab(TabPane resultTabs) {
+    Tab selected = resultTabs.getSelectionModel().getSelectedItem();
+    return selected != null && selected.getUserData() instanceof QueryTab
+        ? (QueryTab) selected.getUserData() : null;
+  }
+}// end of ResultTables class
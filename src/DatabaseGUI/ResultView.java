@@ -0,0 +1,468 @@
+package DatabaseGUI;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.IntPredicate;
+import java.util.stream.IntStream;
+import javafx.application.Platform;
+import javafx.collections.ObservableListBase;
+
+/**
+ * A result that is held in memory in full, shown sorted and filtered without going back to the
+ * database. The rows themselves never move: the view is just an int array of row numbers in the
+ * order they are shown, so sorting a million rows shuffles four megabytes of ints rather than a
+ * million row objects.
+ *
+ * Sorting uses each column's own type, so 9 comes before 10 and dates sort by date. Every sort key
+ * is first turned into a dense int rank (the 0th, 1st, 2nd... distinct value, nulls first), the
+ * ranks of several columns are folded into one, and the rank and the row number are packed into
+ * one long. Sorting those longs is a plain primitive sort, which is stable for free and runs in
+ * parallel with Arrays.parallelSort once there are more than PARALLEL_THRESHOLD rows.
+ *
+ * The filter keeps the rows where any cell contains the text typed, ignoring case. When the new
+ * text contains the old text, only the rows that matched before are looked at again, so each key
+ * typed is quicker than the last. TEXT cells are matched once per distinct value per page, not
+ * once per row.
+ *
+ * Sorting and filtering run on the "sort-worker" thread. Only the latest request is applied, so
+ * typing fast doesn't queue up stale work on the FX thread. Use this class from the FX thread.
+ */
+public class ResultView extends ObservableListBase<ResultRow> {
+
+  public static final int MAX_ROWS = Integer.getInteger("databasegui.sort.maxRows", 2000000);
+  public static final int PARALLEL_THRESHOLD =
+      Integer.getInteger("databasegui.sort.parallelThreshold", 100000);
+
+  private static final String NULL_TEXT = "null"; // what ColumnarPage.format shows for NULL
+  private static final Comparator<String> TEXT_ORDER =
+      String.CASE_INSENSITIVE_ORDER.thenComparing(Comparator.naturalOrder());
+
+  private static final ExecutorService WORKER = Executors.newSingleThreadExecutor(runnable -> {
+    Thread thread = new Thread(runnable, "sort-worker");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  private final List<String> columnNames;
+  private final ColumnType[] columnTypes;
+  private final ColumnarPage[] pages;
+  private final int pageSize;
+  private final int rowCount;
+
+  // FX thread only
+  private int[] sorted;           // every row in sort order, null for the order of the query
+  private String sortKey = "";    // which sort "sorted" is, e.g. "2+,0-"
+  private String filterText = "";
+  private int[] visible;          // the rows shown, in order. null means every row of "sorted"
+  private int generation;         // bumped by every request, stale results are thrown away
+  private String requestedSortKey = "";
+  private int[] requestedColumns = new int[0];
+  private boolean[] requestedAscending = new boolean[0];
+  private String requestedFilter = "";
+  private long lastNanos;
+
+  /**
+   * @param pages every page of the result, in order. All but the last must hold pageSize rows.
+   */
+  public ResultView(List<String> columnNames, ColumnType[] columnTypes, int pageSize,
+      List<ColumnarPage> pages) {
+    this.columnNames = Collections.unmodifiableList(new ArrayList<>(columnNames));
+    this.columnTypes = columnTypes.clone();
+    this.pageSize = Math.max(1, pageSize);
+    this.pages = pages.toArray(new ColumnarPage[0]);
+    int rows = 0;
+    for (ColumnarPage page : this.pages) {
+      rows += page.getRowCount();
+    }
+    this.rowCount = rows;
+  }
+
+  /**
+   * @return a view of the list's rows, or null if the list doesn't hold every row right now.
+   */
+  public static ResultView of(PagedResultList list) {
+    List<ColumnarPage> pages = list.getAllPages();
+    return pages == null ? null
+        : new ResultView(list.getColumnNames(), list.getColumnTypes(), list.getPageSize(), pages);
+  }
+
+  @Override
+  public ResultRow get(int index) {
+    int row = visible != null ? visible[index] : sorted != null ? sorted[index] : index;
+    return pages[row / pageSize].getRow(row % pageSize);
+  }
+
+  @Override
+  public int size() {
+    return visible != null ? visible.length : rowCount;
+  }
+
+  /**
+   * @return every row of the result, including those the filter hides.
+   */
+  public int getRowCount() {
+    return rowCount;
+  }
+
+  public List<String> getColumnNames() {
+    return columnNames;
+  }
+
+  public ColumnType getColumnType(int column) {
+    return columnTypes[column];
+  }
+
+  public boolean isFiltered() {
+    return visible != null;
+  }
+
+  /**
+   * @return an Aggregation over the rows the filter leaves, as they are now. Filtering again
+   *     afterwards doesn't change it.
+   */
+  public Aggregation aggregation() {
+    return new Aggregation(columnNames, columnTypes, pageSize, Arrays.asList(pages), visible);
+  }
+
+  public boolean isSorted() {
+    return sorted != null;
+  }
+
+  /**
+   * @return how long the last sort or filter took, in nanoseconds.
+   */
+  public long getLastNanos() {
+    return lastNanos;
+  }
+
+  /**
+   * Sorts the view by the columns, first column first. Does nothing if it is sorted that way
+   * already. An empty array puts the rows back in the order the query returned them.
+   *
+   * @param done run on the FX thread once the view has changed, may be null
+   */
+  public void sort(int[] columns, boolean[] ascending, Runnable done) {
+    StringBuilder key = new StringBuilder();
+    for (int i = 0; i < columns.length; i++) {
+      key.append(columns[i]).append(ascending[i] ? '+' : '-').append(',');
+    }
+    if (key.toString().equals(requestedSortKey)) {
+      return;
+    }
+    requestedSortKey = key.toString();
+    requestedColumns = columns.clone();
+    requestedAscending = ascending.clone();
+    update(done);
+  }
+
+  /**
+   * Shows only the rows where some cell contains the text, ignoring case. An empty text shows
+   * every row.
+   *
+   * @param done run on the FX thread once the view has changed, may be null
+   */
+  public void filter(String text, Runnable done) {
+    if (text.equals(requestedFilter)) {
+      return;
+    }
+    requestedFilter = text;
+    update(done);
+  }
+
+  /**
+   * Works out the order for the requested sort and filter on the worker thread and swaps it in on
+   * the FX thread. The sort is only done again if it isn't the one already shown.
+   */
+  private void update(Runnable done) {
+    int requested = ++generation;
+    String newSortKey = requestedSortKey;
+    String newFilter = requestedFilter;
+    int[] columns = newSortKey.equals(sortKey) ? null : requestedColumns;
+    boolean[] ascending = requestedAscending;
+    int[] currentSorted = sorted;
+    int[] currentVisible = visible;
+    String oldNeedle = filterText.toLowerCase(Locale.ROOT);
+    String needle = newFilter.toLowerCase(Locale.ROOT);
+
+    WORKER.submit(() -> {
+      long start = System.nanoTime();
+      int[] order = columns == null ? currentSorted
+          : columns.length == 0 ? null : sortOrder(columns, ascending);
+      int[] shown;
+      if (needle.isEmpty()) {
+        shown = null;
+      } else if (columns == null && !oldNeedle.isEmpty() && needle.contains(oldNeedle)) {
+        // typed more of the same filter: only rows that matched before can still match
+        shown = filterRows(currentVisible, needle);
+      } else {
+        shown = filterRows(order, needle);
+      }
+      long nanos = System.nanoTime() - start;
+
+      Platform.runLater(() -> {
+        if (requested != generation) {
+          return; // something newer has been asked for since
+        }
+        int oldSize = size();
+        sorted = order;
+        sortKey = newSortKey;
+        filterText = newFilter;
+        visible = shown;
+        lastNanos = nanos;
+        beginChange();
+        nextRemove(0, new AbstractList<ResultRow>() {
+          @Override
+          public ResultRow get(int index) {
+            return null; // the old rows aren't kept, nothing looks at them
+          }
+
+          @Override
+          public int size() {
+            return oldSize;
+          }
+        });
+        nextAdd(0, size());
+        endChange();
+        if (done != null) {
+          done.run();
+        }
+      });
+    });
+  }// end of update method
+
+  /**
+   * @return every row number, in the order of the sort columns. Any thread.
+   */
+  int[] sortOrder(int[] columns, boolean[] ascending) {
+    int[] rank = null;
+    long highestRank = 0;
+    for (int i = 0; i < columns.length; i++) {
+      int[] columnRank = rankColumn(columns[i]);
+      int highest = 0;
+      for (int value : columnRank) {
+        highest = Math.max(highest, value);
+      }
+      if (!ascending[i]) {
+        for (int row = 0; row < rowCount; row++) {
+          columnRank[row] = highest - columnRank[row];
+        }
+      }
+      if (rank == null) {
+        rank = columnRank;
+        highestRank = highest;
+      } else if ((highestRank + 1) * (highest + 1) <= Integer.MAX_VALUE) {
+        // rows equal on the columns so far are told apart by this one. When both ranks fit
+        // side by side in an int that is simple arithmetic...
+        for (int row = 0; row < rowCount; row++) {
+          rank[row] = rank[row] * (highest + 1) + columnRank[row];
+        }
+        highestRank = (highestRank + 1) * (highest + 1) - 1;
+      } else {
+        // ...otherwise the pairs are ranked again
+        long[] pairs = new long[rowCount];
+        for (int row = 0; row < rowCount; row++) {
+          pairs[row] = (long) rank[row] << 32 | columnRank[row];
+        }
+        rank = denseRank(pairs);
+        highestRank = rowCount;
+      }
+    }
+
+    // the row number in the low half keeps rows with equal keys in their original order
+    long[] packed = new long[rowCount];
+    for (int row = 0; row < rowCount; row++) {
+      packed[row] = (long) rank[row] << 32 | row;
+    }
+    sort(packed);
+    int[] order = new int[rowCount];
+    for (int i = 0; i < rowCount; i++) {
+      order[i] = (int) packed[i];
+    }
+    return order;
+  }// end of sortOrder method
+
+  /**
+   * @return a rank for each row that sorts the same way as the column: 0 for null, bigger values
+   *     get bigger ranks. Not always dense, an INT column's rank is just its value minus the
+   *     smallest value.
+   */
+  private int[] rankColumn(int column) {
+    long[] keys = new long[rowCount];
+    boolean[] nulls = new boolean[rowCount];
+    Map<String, Integer> textRanks = columnTypes[column] == ColumnType.TEXT
+        ? rankText(column) : null;
+    long min = Long.MAX_VALUE;
+    long max = Long.MIN_VALUE;
+
+    int row = 0;
+    for (ColumnarPage page : pages) {
+      int[] codeRanks = null;
+      if (textRanks != null) {
+        codeRanks = new int[page.getDictionarySize(column)];
+        for (int code = 0; code < codeRanks.length; code++) {
+          codeRanks[code] = textRanks.get(page.getDictionaryValue(column, code));
+        }
+      }
+      for (int inPage = 0; inPage < page.getRowCount(); inPage++, row++) {
+        if (page.isNull(column, inPage)) {
+          nulls[row] = true;
+          continue;
+        }
+        long key;
+        switch (columnTypes[column]) {
+          case DOUBLE:
+          case REAL:
+            // flips the bits of negative doubles so they compare like longs, see Double's docs
+            long bits = Double.doubleToLongBits(page.getDouble(column, inPage));
+            key = bits ^ ((bits >> 63) & Long.MAX_VALUE);
+            break;
+          case TEXT:
+            key = codeRanks[page.getTextCode(column, inPage)];
+            break;
+          default:
+            key = page.getLong(column, inPage); // INT, LONG, DATE, unscaled DECIMAL
+        }
+        keys[row] = key;
+        min = Math.min(min, key);
+        max = Math.max(max, key);
+      }
+    }
+
+    int[] rank;
+    if (max >= min && max - min >= 0 && max - min < Integer.MAX_VALUE - 1) {
+      // the values are close enough together to be their own rank, no sorting needed
+      rank = new int[rowCount];
+      for (row = 0; row < rowCount; row++) {
+        rank[row] = (int) (keys[row] - min);
+      }
+    } else {
+      rank = denseRank(keys); // spread out values, doubles for example
+    }
+    // nulls get rank 0, everything else moves up one
+    for (row = 0; row < rowCount; row++) {
+      rank[row] = nulls[row] ? 0 : rank[row] + 1;
+    }
+    return rank;
+  }// end of rankColumn method
+
+  /**
+   * Puts every distinct text of the column in order, case insensitive first.
+   */
+  private Map<String, Integer> rankText(int column) {
+    Set<String> distinct = new HashSet<>();
+    for (ColumnarPage page : pages) {
+      for (int code = 0; code < page.getDictionarySize(column); code++) {
+        distinct.add(page.getDictionaryValue(column, code));
+      }
+    }
+    String[] values = distinct.toArray(new String[0]);
+    if (values.length >= PARALLEL_THRESHOLD) {
+      Arrays.parallelSort(values, TEXT_ORDER);
+    } else {
+      Arrays.sort(values, TEXT_ORDER);
+    }
+    Map<String, Integer> ranks = new HashMap<>(values.length * 2);
+    for (int i = 0; i < values.length; i++) {
+      ranks.put(values[i], i);
+    }
+    return ranks;
+  }
+
+  /**
+   * @return the position of each key among the distinct keys, smallest first.
+   */
+  private static int[] denseRank(long[] keys) {
+    long[] distinct = keys.clone();
+    sort(distinct);
+    int count = 0;
+    for (int i = 0; i < distinct.length; i++) {
+      if (i == 0 || distinct[i] != distinct[count - 1]) {
+        distinct[count++] = distinct[i];
+      }
+    }
+    int distinctCount = count;
+    IntStream rows = IntStream.range(0, keys.length);
+    if (keys.length >= PARALLEL_THRESHOLD) {
+      rows = rows.parallel();
+    }
+    int[] rank = new int[keys.length];
+    rows.forEach(row -> rank[row] = Arrays.binarySearch(distinct, 0, distinctCount, keys[row]));
+    return rank;
+  }
+
+  private static void sort(long[] values) {
+    if (values.length >= PARALLEL_THRESHOLD) {
+      Arrays.parallelSort(values);
+    } else {
+      Arrays.sort(values);
+    }
+  }
+
+  /**
+   * @param candidates the row numbers to look at, in order, or null for every row
+   * @param needle the lower case text to look for
+   * @return the candidates that have a cell containing the needle, in the same order. Any thread.
+   */
+  int[] filterRows(int[] candidates, String needle) {
+    boolean nullMatches = NULL_TEXT.contains(needle);
+    // a number or date can only contain text made of digits and the like
+    boolean numbersCanMatch = needle.chars().allMatch(c -> Character.isDigit(c) || c == '.'
+        || c == '-' || c == 'e' || c == 'E');
+
+    // which dictionary codes of each page's TEXT columns match, worked out once per page
+    boolean[][][] matchingCodes = new boolean[pages.length][columnTypes.length][];
+    for (int pageIndex = 0; pageIndex < pages.length; pageIndex++) {
+      ColumnarPage page = pages[pageIndex];
+      for (int column = 0; column < columnTypes.length; column++) {
+        if (columnTypes[column] == ColumnType.TEXT) {
+          boolean[] matches = new boolean[page.getDictionarySize(column)];
+          for (int code = 0; code < matches.length; code++) {
+            matches[code] = page.getDictionaryValue(column, code).toLowerCase(Locale.ROOT)
+                .contains(needle);
+          }
+          matchingCodes[pageIndex][column] = matches;
+        }
+      }
+    }
+
+    IntPredicate rowMatches = row -> {
+      int pageIndex = row / pageSize;
+      ColumnarPage page = pages[pageIndex];
+      int inPage = row % pageSize;
+      for (int column = 0; column < columnTypes.length; column++) {
+        if (page.isNull(column, inPage)) {
+          if (nullMatches) {
+            return true;
+          }
+        } else if (columnTypes[column] == ColumnType.TEXT) {
+          if (matchingCodes[pageIndex][column][page.getTextCode(column, inPage)]) {
+            return true;
+          }
+        } else if (numbersCanMatch
+            && page.format(column, inPage).toLowerCase(Locale.ROOT).contains(needle)) {
+          return true;
+        }
+      }
+      return false;
+    };
+
+    IntStream rows = candidates == null ? IntStream.range(0, rowCount)
+        : Arrays.stream(candidates);
+    int count = candidates == null ? rowCount : candidates.length;
+    if (count >= PARALLEL_THRESHOLD) {
+      rows = rows.parallel(); // toArray keeps the order even in parallel
+    }
+    return rows.filter(rowMatches).toArray();
+  }// end of filterRows method
+}// end of ResultView class
@@ -0,0 +1,309 @@
+package DatabaseGUI;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * What changed between two runs of the same query: which rows were inserted, deleted or updated.
+ * Used by auto-refresh, so a refresh only touches the rows of the table that actually changed.
+ *
+ * Every row gets a key and a hash of its whole content. The key is made from the primary key
+ * columns when the result has them, otherwise it is the content hash, so an edited row without a
+ * primary key shows up as one row deleted and another inserted. Keys and hashes are 64 bit, which
+ * keeps a snapshot at 16 bytes per row.
+ *
+ * Rows with the same key in both runs are matched up. The longest run of matched rows that are
+ * still in the same order stays where it is, and everything between two of them is removed and
+ * inserted again, so rows that moved (because the ORDER BY column changed) are handled too. The
+ * result is a list of Hunks, in order, that turn the old rows into the new ones.
+ *
+ * Nothing here touches JavaFX, see LiveResultList for applying a diff to a table.
+ */
+public class RowDiff {
+
+  /**
+   * The key and content hash of every row of one run, in the order the query returned them.
+   */
+  public static final class Snapshot {
+
+    private final long[] keys;
+    private final long[] hashes;
+
+    Snapshot(long[] keys, long[] hashes) {
+      this.keys = keys;
+      this.hashes = hashes;
+    }
+
+    public int size() {
+      return keys.length;
+    }
+  }// end of Snapshot class
+
+  /**
+   * One step of turning the old rows into the new ones. Working from the first hunk to the last,
+   * removeCount rows are removed at newIndex and the new rows from newIndex to newIndex +
+   * insertCount are put in their place. A hunk that only updates a row that stayed has
+   * updated set and both counts at 1.
+   */
+  public static final class Hunk {
+
+    private final int newIndex;
+    private final int removeCount;
+    private final int insertCount;
+    private final boolean updated;
+
+    Hunk(int newIndex, int removeCount, int insertCount, boolean updated) {
+      this.newIndex = newIndex;
+      this.removeCount = removeCount;
+      this.insertCount = insertCount;
+      this.updated = updated;
+    }
+
+    /**
+     * @return where the hunk starts, both in the list as it is by then and in the new rows.
+     */
+    public int getNewIndex() {
+      return newIndex;
+    }
+
+    public int getRemoveCount() {
+      return removeCount;
+    }
+
+    public int getInsertCount() {
+      return insertCount;
+    }
+
+    /**
+     * @return true if the row at newIndex is the same row as before, with other values.
+     */
+    public boolean isUpdated() {
+      return updated;
+    }
+  }// end of Hunk class
+
+  private final List<Hunk> hunks;
+  private final int inserted;
+  private final int deleted;
+  private final int updated;
+
+  private RowDiff(List<Hunk> hunks, int inserted, int deleted, int updated) {
+    this.hunks = Collections.unmodifiableList(hunks);
+    this.inserted = inserted;
+    this.deleted = deleted;
+    this.updated = updated;
+  }
+
+  /**
+   * Works out the key and content hash of every row.
+   *
+   * @param keyColumns the primary key columns of the result, or an empty array to key rows by
+   *     their content
+   */
+  public static Snapshot snapshot(List<ColumnarPage> pages, int[] keyColumns) {
+    int rows = 0;
+    for (ColumnarPage page : pages) {
+      rows += page.getRowCount();
+    }
+    long[] keys = new long[rows];
+    long[] hashes = new long[rows];
+    int index = 0;
+    for (ColumnarPage page : pages) {
+      int columns = page.getColumnCount();
+      long[][] textHashes = new long[columns][];
+      int[] allColumns = new int[columns];
+      for (int column = 0; column < columns; column++) {
+        allColumns[column] = column;
+        if (page.getType(column) == ColumnType.TEXT) {
+          // each distinct text of the page is hashed once, rows look theirs up by code
+          textHashes[column] = new long[page.getDictionarySize(column)];
+          for (int code = 0; code < textHashes[column].length; code++) {
+            textHashes[column][code] = hashText(page.getDictionaryValue(column, code));
+          }
+        }
+      }
+      for (int row = 0; row < page.getRowCount(); row++) {
+        hashes[index] = hashRow(page, row, allColumns, textHashes);
+        keys[index] = keyColumns.length == 0 ? hashes[index]
+            : hashRow(page, row, keyColumns, textHashes);
+        index++;
+      }
+    }
+    return new Snapshot(keys, hashes);
+  }// end of snapshot method
+
+  /**
+   * @return the changes that turn the rows of before into the rows of after.
+   */
+  public static RowDiff compute(Snapshot before, Snapshot after) {
+    // the old rows of every key, first one first. Rows keyed by content can repeat.
+    Map<Long, Integer> firstOld = new HashMap<>(before.size() * 2);
+    int[] nextOld = new int[before.size()];
+    for (int old = before.size() - 1; old >= 0; old--) {
+      Integer next = firstOld.put(before.keys[old], old);
+      nextOld[old] = next == null ? -1 : next;
+    }
+    int[] matchOf = new int[after.size()]; // the old row each new row is, or -1
+    for (int row = 0; row < after.size(); row++) {
+      Integer old = firstOld.get(after.keys[row]);
+      matchOf[row] = old == null ? -1 : old;
+      if (old != null) {
+        if (nextOld[old] >= 0) {
+          firstOld.put(after.keys[row], nextOld[old]);
+        } else {
+          firstOld.remove(after.keys[row]);
+        }
+      }
+    }
+
+    // the matched rows that keep their place: the longest run increasing in the old order
+    boolean[] stays = longestIncreasing(matchOf);
+
+    List<Hunk> hunks = new ArrayList<>();
+    int inserted = 0;
+    int deleted = 0;
+    int updated = 0;
+    int oldFrom = 0;
+    int newFrom = 0;
+    for (int row = 0; row <= after.size(); row++) {
+      if (row < after.size() && !stays[row]) {
+        continue;
+      }
+      int oldTo = row < after.size() ? matchOf[row] : before.size();
+      int removeCount = oldTo - oldFrom;
+      int insertCount = row - newFrom;
+      if (removeCount > 0 || insertCount > 0) {
+        hunks.add(new Hunk(newFrom, removeCount, insertCount, false));
+        deleted += removeCount;
+        inserted += insertCount;
+      }
+      if (row < after.size() && before.hashes[oldTo] != after.hashes[row]) {
+        hunks.add(new Hunk(row, 1, 1, true));
+        updated++;
+      }
+      oldFrom = oldTo + 1;
+      newFrom = row + 1;
+    }
+    // a row that moved counts as neither deleted nor inserted
+    int moved = 0;
+    for (int row = 0; row < after.size(); row++) {
+      if (matchOf[row] >= 0 && !stays[row]) {
+        moved++;
+      }
+    }
+    return new RowDiff(hunks, inserted - moved, deleted - moved, updated);
+  }// end of compute method
+
+  public List<Hunk> getHunks() {
+    return hunks;
+  }
+
+  /**
+   * @return true if the rows are the same as before, in the same order.
+   */
+  public boolean isEmpty() {
+    return hunks.isEmpty();
+  }
+
+  public int getInserted() {
+    return inserted;
+  }
+
+  public int getDeleted() {
+    return deleted;
+  }
+
+  public int getUpdated() {
+    return updated;
+  }
+
+  /**
+   * @return e.g. "2 inserted, 1 updated, 0 deleted", or "no changes"
+   */
+  @Override
+  public String toString() {
+    if (isEmpty()) {
+      return "no changes";
+    }
+    return inserted + " inserted, " + updated + " updated, " + deleted + " deleted";
+  }
+
+  /**
+   * Marks the longest run of matched rows whose old positions only go up (patience sorting, so
+   * n log n). Unmatched rows (-1) are never part of it.
+   */
+  private static boolean[] longestIncreasing(int[] values) {
+    int[] tails = new int[values.length]; // index of the smallest tail of each run length
+    int[] previous = new int[values.length];
+    int length = 0;
+    for (int i = 0; i < values.length; i++) {
+      if (values[i] < 0) {
+        continue;
+      }
+      int low = 0;
+      int high = length;
+      while (low < high) {
+        int middle = (low + high) >>> 1;
+        if (values[tails[middle]] < values[i]) {
+          low = middle + 1;
+        } else {
+          high = middle;
+        }
+      }
+      previous[i] = low > 0 ? tails[low - 1] : -1;
+      tails[low] = i;
+      if (low == length) {
+        length++;
+      }
+    }
+    boolean[] stays = new boolean[values.length];
+    for (int i = length > 0 ? tails[length - 1] : -1; i >= 0; i = previous[i]) {
+      stays[i] = true;
+    }
+    return stays;
+  }// end of longestIncreasing method
+
+  private static long hashRow(ColumnarPage page, int row, int[] columns, long[][] textHashes) {
+    long hash = 0x9E3779B97F4A7C15L;
+    for (int column : columns) {
+      long value;
+      if (page.isNull(column, row)) {
+        value = 0x5DEECE66DL; // anything, as long as it's always the same
+      } else if (textHashes[column] != null) {
+        value = textHashes[column][page.getTextCode(column, row)];
+      } else if (page.getType(column).isFloating()) {
+        value = Double.doubleToLongBits(page.getDouble(column, row));
+      } else {
+        value = page.getLong(column, row);
+      }
+      hash = mix(hash * 31 + value);
+    }
+    return hash;
+  }
+
+  /**
+   * FNV-1a over the characters, 64 bits so a million distinct values don't collide.
+   */
+  private static long hashText(String text) {
+    long hash = 0xCBF29CE484222325L;
+    for (int i = 0; i < text.length(); i++) {
+      hash ^= text.charAt(i);
+      hash *= 0x100000001B3L;
+    }
+    return hash;
+  }
+
+  /**
+   * Spreads the bits of a value over the whole long (the finalizer of MurmurHash3).
+   */
+  private static long mix(long value) {
+    value ^= value >>> 33;
+    value *= 0xFF51AFD7ED558CCDL;
+    value ^= value >>> 33;
+    value *= 0xC4CEB93FE1A85EC3L;
+    return value ^ (value >>> 33);
+  }
+}// end of RowDiff class
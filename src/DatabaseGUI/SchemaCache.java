@@ -0,0 +1,395 @@
+package DatabaseGUI;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * The tables and columns of the user's schema, read from DatabaseMetaData once in the background
+ * and kept in memory. The schema tree and the query box's autocomplete read from here, so neither
+ * waits on the database nor runs a catalog query each time it's used.
+ *
+ * After a statement that changes the schema (CREATE, ALTER, DROP or RENAME) only the tables it
+ * names are read again. A statement whose tables can't be told, such as CREATE SCHEMA, reloads
+ * everything.
+ *
+ * The tables are held in an immutable map that is swapped whole after every change, so readers
+ * on any thread never need a lock. Loading happens on one "schema-loader" thread, and listeners
+ * are called on that thread after every change.
+ */
+public class SchemaCache {
+
+  /**
+   * One column of a table.
+   */
+  public static final class Column {
+
+    private final String table;
+    private final String name;
+    private final String typeName;
+    private final int size;
+    private final int scale;
+    private final boolean nullable;
+
+    Column(String table, String name, String typeName, int size, int scale, boolean nullable) {
+      this.table = table;
+      this.name = name;
+      this.typeName = typeName;
+      this.size = size;
+      this.scale = scale;
+      this.nullable = nullable;
+    }
+
+    public String getTable() {
+      return table;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    /**
+     * @return the type the way it would be written in CREATE TABLE, e.g. "VARCHAR(30)" or
+     *     "DECIMAL(10, 2)".
+     */
+    public String getType() {
+      switch (typeName) {
+        case "CHAR":
+        case "VARCHAR":
+          return typeName + "(" + size + ")";
+        case "DECIMAL":
+        case "NUMERIC":
+          return typeName + "(" + size + ", " + scale + ")";
+        default:
+          return typeName;
+      }
+    }
+
+    public boolean isNullable() {
+      return nullable;
+    }
+
+    /**
+     * @return e.g. "FIRSTNAME  VARCHAR(30)", as the schema tree shows it.
+     */
+    @Override
+    public String toString() {
+      return name + "  " + getType() + (nullable ? "" : " NOT NULL");
+    }
+  }// end of Column class
+
+  /**
+   * A table or view, with its columns in table order.
+   */
+  public static final class Table {
+
+    private final String name;
+    private final boolean view;
+    private final List<Column> columns;
+
+    Table(String name, boolean view, List<Column> columns) {
+      this.name = name;
+      this.view = view;
+      this.columns = Collections.unmodifiableList(columns);
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public boolean isView() {
+      return view;
+    }
+
+    public List<Column> getColumns() {
+      return columns;
+    }
+
+    /**
+     * @return e.g. "CUSTOMERS (7 columns)", as the schema tree shows it.
+     */
+    @Override
+    public String toString() {
+      return name + (view ? " (view, " : " (") + columns.size() + " columns)";
+    }
+  }// end of Table class
+
+  /**
+   * What autocomplete offers at a caret position: the names that fit, and where the word they
+   * replace starts.
+   */
+  public static final class Completion {
+
+    private final int start;
+    private final String prefix;
+    private final List<String> candidates;
+
+    Completion(int start, String prefix, List<String> candidates) {
+      this.start = start;
+      this.prefix = prefix;
+      this.candidates = Collections.unmodifiableList(candidates);
+    }
+
+    /**
+     * @return where the word being completed starts in the text. It ends at the caret.
+     */
+    public int getStart() {
+      return start;
+    }
+
+    /**
+     * @return the part of the word typed so far, without any "alias." in front of it.
+     */
+    public String getPrefix() {
+      return prefix;
+    }
+
+    public List<String> getCandidates() {
+      return candidates;
+    }
+  }// end of Completion class
+
+  // most suggestions autocomplete offers at once
+  public static final int MAX_CANDIDATES = 40;
+
+  private volatile Map<String, Table> tables = Collections.emptyMap();
+  private volatile boolean loaded = false;
+  private volatile long loadNanos = 0;
+  private final List<Runnable> listeners = new CopyOnWriteArrayList<>();
+  private final ExecutorService loader = Executors.newSingleThreadExecutor(
+      QueryExecutor.workerThreads("schema-loader"));
+
+  /**
+   * Reads every table and column of the schema on the loader thread. The cache is empty until
+   * then, and autocomplete simply has nothing to offer.
+   */
+  public void loadInBackground() {
+    submit(this::loadAll);
+  }
+
+  /**
+   * Reads the tables a statement changed again, if it was a CREATE, ALTER, DROP or RENAME. Other
+   * statements don't change the schema and are ignored. Call it after the statement succeeded.
+   */
+  public void statementExecuted(String sql) {
+    String keyword = SqlText.firstKeyword(sql);
+    if (!"CREATE".equals(keyword) && !"ALTER".equals(keyword) && !"DROP".equals(keyword)
+        && !"RENAME".equals(keyword)) {
+      return;
+    }
+    Set<String> changed = SqlText.writtenTables(sql);
+    if (changed == null || changed.isEmpty()) {
+      submit(this::loadAll);
+    } else {
+      submit(() -> reload(changed));
+    }
+  }
+
+  /**
+   * @param listener called on the loader thread whenever the tables have changed.
+   */
+  public void addListener(Runnable listener) {
+    listeners.add(listener);
+  }
+
+  /**
+   * @return every table and view, by name.
+   */
+  public Collection<Table> getTables() {
+    return tables.values();
+  }
+
+  /**
+   * @return the table with that name, exactly as the catalog has it or in any case for a name
+   *     stored in upper case, or null if there isn't one.
+   */
+  public Table getTable(String name) {
+    Table table = tables.get(name); // a quoted name like Orders, as the catalog has it
+    return table != null ? table : tables.get(name.toUpperCase(Locale.ROOT));
+  }
+
+  public boolean isLoaded() {
+    return loaded;
+  }
+
+  /**
+   * @return how long the last full load took, in nanoseconds.
+   */
+  public long getLoadNanos() {
+    return loadNanos;
+  }
+
+  /**
+   * Works out what could go at the caret. After "alias." or "table." that is the columns of the
+   * table, anywhere else the tables, plus the columns of the tables the statement already reads.
+   * Only names starting with what has been typed of the word are offered, ignoring case. A word
+   * typed in lower case gets its completions in lower case too.
+   */
+  public Completion complete(String text, int caret) {
+    caret = Math.max(0, Math.min(caret, text.length()));
+    int start = caret;
+    while (start > 0 && isNameChar(text.charAt(start - 1))) {
+      start--;
+    }
+    String word = text.substring(start, caret);
+    int dot = word.lastIndexOf('.');
+    String prefix = word.substring(dot + 1);
+    int replaceFrom = start + dot + 1;
+
+    Set<String> names = new TreeSet<>();
+    Map<String, Table> current = tables;
+    if (dot >= 0) {
+      String qualifier = word.substring(0, dot).toUpperCase(Locale.ROOT);
+      qualifier = qualifier.substring(qualifier.lastIndexOf('.') + 1);
+      String tableName = SqlText.tableAliases(text).get(qualifier);
+      Table table = current.get(tableName != null ? tableName : qualifier);
+      if (table != null) {
+        addColumns(table, prefix, names);
+      }
+    } else {
+      for (Table table : current.values()) {
+        if (startsWith(table.name, prefix)) {
+          names.add(table.name);
+        }
+      }
+      for (String tableName : SqlText.referencedTables(text)) {
+        Table table = current.get(tableName);
+        if (table != null) {
+          addColumns(table, prefix, names);
+        }
+      }
+    }
+
+    boolean lowerCase = !prefix.isEmpty() && prefix.equals(prefix.toLowerCase(Locale.ROOT));
+    List<String> candidates = new ArrayList<>();
+    for (String name : names) {
+      if (candidates.size() == MAX_CANDIDATES) {
+        break;
+      }
+      candidates.add(lowerCase ? name.toLowerCase(Locale.ROOT) : name);
+    }
+    return new Completion(replaceFrom, prefix, candidates);
+  }// end of complete method
+
+  /**
+   * Stops the loader thread. Called when the window closes.
+   */
+  public void shutdown() {
+    loader.shutdownNow();
+  }
+
+  /**
+   * Reads every table and view of the user's schema, and then every column of the schema in one
+   * more catalog query. Loader thread.
+   */
+  private void loadAll() {
+    long start = System.nanoTime();
+    try (Connection connection = DatabaseConnect.connect()) {
+      DatabaseMetaData metaData = connection.getMetaData();
+      String schema = metaData.getUserName().toUpperCase(Locale.ROOT);
+      tables = Collections.unmodifiableMap(readTables(metaData, schema, "%"));
+      loaded = true;
+      loadNanos = System.nanoTime() - start;
+    } catch (SQLException sqlEx) {
+      System.out.println("Unable to read the schema: " + sqlEx.getMessage());
+      return;
+    }
+    changed();
+  }
+
+  /**
+   * Reads the named tables again, dropping the ones that are gone. Loader thread.
+   */
+  private void reload(Set<String> names) {
+    try (Connection connection = DatabaseConnect.connect()) {
+      DatabaseMetaData metaData = connection.getMetaData();
+      String schema = metaData.getUserName().toUpperCase(Locale.ROOT);
+      Map<String, Table> updated = new TreeMap<>(tables);
+      for (String name : names) {
+        updated.remove(name);
+        updated.putAll(readTables(metaData, schema, name));
+      }
+      tables = Collections.unmodifiableMap(updated);
+    } catch (SQLException sqlEx) {
+      System.out.println("Unable to read the schema: " + sqlEx.getMessage());
+      return;
+    }
+    changed();
+  }
+
+  /**
+   * Reads the tables matching the pattern and their columns, with two catalog queries.
+   */
+  private static Map<String, Table> readTables(DatabaseMetaData metaData, String schema,
+      String tablePattern) throws SQLException {
+    Map<String, Boolean> views = new TreeMap<>();
+    try (ResultSet rs = metaData.getTables(null, schema, tablePattern,
+        new String[] {"TABLE", "VIEW"})) {
+      while (rs.next()) {
+        views.put(rs.getString("TABLE_NAME"), "VIEW".equals(rs.getString("TABLE_TYPE")));
+      }
+    }
+    Map<String, List<Column>> columns = new TreeMap<>();
+    try (ResultSet rs = metaData.getColumns(null, schema, tablePattern, "%")) {
+      while (rs.next()) {
+        String table = rs.getString("TABLE_NAME");
+        if (views.containsKey(table)) {
+          columns.computeIfAbsent(table, name -> new ArrayList<>()).add(new Column(table,
+              rs.getString("COLUMN_NAME"), rs.getString("TYPE_NAME"), rs.getInt("COLUMN_SIZE"),
+              rs.getInt("DECIMAL_DIGITS"),
+              rs.getInt("NULLABLE") != DatabaseMetaData.columnNoNulls));
+        }
+      }
+    }
+    Map<String, Table> tables = new TreeMap<>();
+    for (Map.Entry<String, Boolean> table : views.entrySet()) {
+      tables.put(table.getKey(), new Table(table.getKey(), table.getValue(),
+          columns.getOrDefault(table.getKey(), Collections.<Column>emptyList())));
+    }
+    return tables;
+  }// end of readTables method
+
+  private void changed() {
+    for (Runnable listener : listeners) {
+      listener.run();
+    }
+  }
+
+  private void submit(Runnable task) {
+    try {
+      loader.submit(task);
+    } catch (RejectedExecutionException shutDown) {
+      // the window is closing
+    }
+  }
+
+  private static void addColumns(Table table, String prefix, Set<String> names) {
+    for (Column column : table.columns) {
+      if (startsWith(column.name, prefix)) {
+        names.add(column.name);
+      }
+    }
+  }
+
+  private static boolean startsWith(String name, String prefix) {
+    return name.regionMatches(true, 0, prefix, 0, prefix.length());
+  }
+
+  private static boolean isNameChar(char c) {
+    return Character.isLetterOrDigit(c) || c == '_' || c == '$' || c == '.';
+  }
+}// end of SchemaCache class
@@ -0,0 +1,118 @@
+package DatabaseGUI;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import javafx.scene.control.Button;
+import javafx.scene.control.Label;
+import javafx.scene.control.SelectionMode;
+import javafx.scene.control.TextArea;
+import javafx.scene.control.TreeItem;
+import javafx.scene.control.TreeView;
+import javafx.scene.input.MouseButton;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.Priority;
+import javafx.scene.layout.VBox;
+
+/**
+ * The Schema tab: every table with its columns and their types. Double-clicking a name puts it
+ * in the query box at the caret. "Write SELECT" writes a query for the columns picked (or all
+ * columns of a table picked), so there's no need for SELECT * just to see what's there.
+ */
+public class SchemaPanel extends VBox {
+
+  private final SchemaCache schemaCache;
+  private final TextArea queryBox;
+  private final Label statusLabel;
+  private final TreeView<Object> schemaTree = new TreeView<>(new TreeItem<>());
+  private final Label schemaLabel = new Label("Reading the schema...");
+
+  public SchemaPanel(SchemaCache schemaCache, TextArea queryBox, Label statusLabel) {
+    super(5);
+    this.schemaCache = schemaCache;
+    this.queryBox = queryBox;
+    this.statusLabel = statusLabel;
+
+    schemaTree.setShowRoot(false);
+    schemaTree.getSelectionModel().setSelectionMode(SelectionMode.MULTIPLE);
+    schemaTree.setOnMouseClicked(e -> {
+      TreeItem<Object> picked = schemaTree.getSelectionModel().getSelectedItem();
+      if (e.getButton() == MouseButton.PRIMARY && e.getClickCount() == 2 && picked != null) {
+        Object value = picked.getValue();
+        queryBox.insertText(queryBox.getCaretPosition(), value instanceof SchemaCache.Table
+            ? ((SchemaCache.Table) value).getName() : ((SchemaCache.Column) value).getName());
+        queryBox.requestFocus();
+      }
+    });
+    Button writeSelect = new Button("Write SELECT");
+    writeSelect.setOnAction(e -> writeSelect());
+    Button refresh = new Button("Refresh");
+    refresh.setOnAction(e -> {
+      schemaLabel.setText("Reading the schema...");
+      schemaCache.loadInBackground();
+    });
+    HBox schemaButtons = new HBox(10, writeSelect, refresh, schemaLabel);
+    VBox.setVgrow(schemaTree, Priority.ALWAYS);
+    getChildren().addAll(schemaTree, schemaButtons);
+    refresh();
+  }
+
+  /**
+   * Rebuilds the schema tree from the cache, keeping the tables that were open open.
+   */
+  public void refresh() {
+    if (!schemaCache.isLoaded()) {
+      return; // filled in once the cache has been read
+    }
+    List<String> expanded = new ArrayList<>();
+    for (TreeItem<Object> item : schemaTree.getRoot().getChildren()) {
+      if (item.isExpanded()) {
+        expanded.add(((SchemaCache.Table) item.getValue()).getName());
+      }
+    }
+    List<TreeItem<Object>> items = new ArrayList<>();
+    for (SchemaCache.Table table : schemaCache.getTables()) {
+      TreeItem<Object> tableItem = new TreeItem<>(table);
+      for (SchemaCache.Column column : table.getColumns()) {
+        tableItem.getChildren().add(new TreeItem<>(column));
+      }
+      tableItem.setExpanded(expanded.contains(table.getName()));
+      items.add(tableItem);
+    }
+    schemaTree.getRoot().getChildren().setAll(items);
+    schemaLabel.setText(String.format("%d tables, read in %.1f ms", items.size(),
+        schemaCache.getLoadNanos() / 1e6));
+  }
+
+  /**
+   * Puts a SELECT of the picked columns in the query box. Columns of another table than the
+   * first one picked are left out.
+   */
+  private void writeSelect() {
+    SchemaCache.Table table = null;
+    List<String> columns = new ArrayList<>();
+    for (TreeItem<Object> item : schemaTree.getSelectionModel().getSelectedItems()) {
+      Object value = item == null ? null : item.getValue();
+      SchemaCache.Table owner = value instanceof SchemaCache.Table ? (SchemaCache.Table) value
+          : value instanceof SchemaCache.Column
+              ? schemaCache.getTable(((SchemaCache.Column) value).getTable()) : null;
+      if (owner == null || (table != null && owner != table)) {
+        continue;
+      }
+      table = owner;
+      if (value instanceof SchemaCache.Table) {
+        for (SchemaCache.Column column : owner.getColumns()) {
+          columns.add(column.getName());
+        }
+      } else {
+        columns.add(((SchemaCache.Column) value).getName());
+      }
+    }
+    if (table == null) {
+      statusLabel.setText("Pick a table, or some of its columns, in the Schema tab first");
+      return;
+    }
+    List<String> distinct = new ArrayList<>(new LinkedHashSet<>(columns));
+    queryBox.setText("SELECT " + String.join(", ", distinct) + "\nFROM " + table.getName());
+  }// end of writeSelect method
+}// end of SchemaPanel class
@@ -0,0 +1,381 @@
+package DatabaseGUI;
+
+import java.sql.BatchUpdateException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Runs a script of statements separated by ; as one unit: all of it on one pooled connection, in
+ * one transaction that is committed at the end or rolled back as soon as a statement fails.
+ *
+ * Consecutive INSERT, UPDATE and DELETE statements are sent to Derby together with addBatch and
+ * executeBatch, so a long maintenance script costs a handful of calls instead of one per line.
+ * Statements with ? or :name parameters are run on their own, as PreparedStatements, since a
+ * plain Statement batch can't bind them.
+ *
+ * Queries are read in full (up to MAX_RESULT_ROWS rows) while the script runs, because the
+ * connection moves on to the next statement afterwards. Every statement gets a StatementResult
+ * with its timing split into parse (prepare), execute and fetch.
+ *
+ * This class doesn't touch JavaFX, the caller decides which thread it runs on. One runner runs
+ * one script at a time. Cancel may be called from any thread.
+ */
+public class ScriptRunner {
+
+  public static final int MAX_RESULT_ROWS = Integer.getInteger("databasegui.script.maxRows", 10000);
+
+  /**
+   * Told after each statement (or batch of statements) has run, on the script's thread.
+   */
+  public interface ProgressListener {
+
+    void statementsRun(int done, int total);
+  }
+
+  /**
+   * What happened to one statement of the script.
+   */
+  public static final class StatementResult {
+
+    private final int index;
+    private final String sql;
+    private final int batchSize;
+    private long parseNanos;
+    private long executeNanos;
+    private long fetchNanos;
+    private long updateCount = -1;
+    private List<String> columnNames;
+    private ColumnType[] columnTypes;
+    private List<ColumnarPage> pages;
+    private long rows;
+    private boolean truncated;
+    private String error;
+
+    StatementResult(int index, String sql, int batchSize) {
+      this.index = index;
+      this.sql = sql;
+      this.batchSize = batchSize;
+    }
+
+    /**
+     * @return the statement's position in the script, starting at 1.
+     */
+    public int getIndex() {
+      return index;
+    }
+
+    public String getSql() {
+      return sql;
+    }
+
+    /**
+     * @return how many statements were sent in the same executeBatch as this one, 1 if it ran on
+     *     its own. The parse and execute times of a batch are shared out evenly between its
+     *     statements, Derby doesn't time them one by one.
+     */
+    public int getBatchSize() {
+      return batchSize;
+    }
+
+    public long getParseNanos() {
+      return parseNanos;
+    }
+
+    public long getExecuteNanos() {
+      return executeNanos;
+    }
+
+    public long getFetchNanos() {
+      return fetchNanos;
+    }
+
+    public long getTotalNanos() {
+      return parseNanos + executeNanos + fetchNanos;
+    }
+
+    /**
+     * @return the rows changed by a statement that isn't a query, -1 if that doesn't apply.
+     */
+    public long getUpdateCount() {
+      return updateCount;
+    }
+
+    public boolean isQuery() {
+      return pages != null;
+    }
+
+    public List<String> getColumnNames() {
+      return columnNames;
+    }
+
+    public ColumnType[] getColumnTypes() {
+      return columnTypes;
+    }
+
+    /**
+     * @return the query's rows, each page holding up to the page size passed to the runner.
+     */
+    public List<ColumnarPage> getPages() {
+      return pages;
+    }
+
+    /**
+     * @return how many rows the query returned (or the first MAX_RESULT_ROWS of them).
+     */
+    public long getRows() {
+      return rows;
+    }
+
+    /**
+     * @return true if the query had more rows than were kept.
+     */
+    public boolean isTruncated() {
+      return truncated;
+    }
+
+    /**
+     * @return why the statement failed, or null if it didn't.
+     */
+    public String getError() {
+      return error;
+    }
+  }// end of StatementResult class
+
+  private final int pageSize;
+  private int queryTimeout = QueryExecutor.DEFAULT_QUERY_TIMEOUT;
+  private final AtomicBoolean cancelled = new AtomicBoolean(false);
+
+  /**
+   * @param pageSize how many rows go in each page of a query's result. Also the fetch size.
+   */
+  public ScriptRunner(int pageSize) {
+    this.pageSize = Math.max(1, pageSize);
+  }
+
+  /**
+   * @param seconds how long Derby may spend on each statement. 0 means no limit.
+   */
+  public ScriptRunner setQueryTimeout(int seconds) {
+    this.queryTimeout = Math.max(0, seconds);
+    return this;
+  }
+
+  /**
+   * Stops the script after the statement (or row) it's on. Everything it did is rolled back.
+   */
+  public void cancel() {
+    cancelled.set(true);
+  }
+
+  public boolean isCancelled() {
+    return cancelled.get();
+  }
+
+  /**
+   * Runs every statement of the script. If one fails the script stops there and its last
+   * StatementResult carries the error. Nothing is committed in that case.
+   *
+   * @param parameterValues the text typed for each ? or :name parameter, by name. Positions count
+   *     from the start of each statement, the same as when the statement is run on its own.
+   * @param progress told after each statement, may be null
+   * @return one result per statement that was run
+   * @throws SQLException if no connection could be had, or the commit failed
+   */
+  public List<StatementResult> run(String script, Map<String, String> parameterValues,
+      ProgressListener progress) throws SQLException {
+    cancelled.set(false);
+    long startMillis = System.currentTimeMillis();
+    List<String> statements = SqlText.splitStatements(script);
+    List<StatementResult> results = new ArrayList<>(statements.size());
+
+    try (Connection connection = DatabaseConnect.connect()) {
+      boolean autoCommit = connection.getAutoCommit();
+      connection.setAutoCommit(false);
+      boolean committed = false;
+      try {
+        int next = 0;
+        while (next < statements.size() && !failed(results)) {
+          if (cancelled.get()) {
+            StatementResult stopped = new StatementResult(next + 1, statements.get(next), 1);
+            stopped.error = "Script cancelled";
+            results.add(stopped);
+            break;
+          }
+          int end = next + 1;
+          while (end < statements.size() && isBatchable(statements.get(next))
+              && isBatchable(statements.get(end))) {
+            end++;
+          }
+          if (end - next > 1) {
+            runBatch(connection, statements, next, end, results);
+          } else {
+            results.add(runStatement(connection, next + 1, statements.get(next),
+                parameterValues));
+          }
+          next = end;
+          if (progress != null) {
+            progress.statementsRun(next, statements.size());
+          }
+        }// end of while loop
+        if (!failed(results)) {
+          connection.commit();
+          committed = true;
+        }
+      } finally {
+        if (!committed) {
+          connection.rollback();
+        }
+        connection.setAutoCommit(autoCommit);
+      }
+    }
+    if (WorkloadRecorder.isRecording()) {
+      long started = startMillis;
+      for (StatementResult result : results) {
+        long nanos = result.parseNanos + result.executeNanos + result.fetchNanos;
+        if (nanos == 0) {
+          continue; // never got to Derby, e.g. cancelled
+        }
+        WorkloadRecorder.record(WorkloadRecorder.SCRIPT, result.sql, parameterValues, started,
+            nanos, result.updateCount >= 0 ? result.updateCount : result.rows, result.error);
+        started += nanos / 1000000;
+      }
+    }
+    return results;
+  }// end of run method
+
+  /**
+   * @return true if the last statement run failed.
+   */
+  public static boolean failed(List<StatementResult> results) {
+    return !results.isEmpty() && results.get(results.size() - 1).error != null;
+  }
+
+  /**
+   * Plain INSERT, UPDATE and DELETE statements can go in a Statement batch. Anything with
+   * parameters needs a PreparedStatement, and queries and DDL are run one at a time.
+   */
+  private static boolean isBatchable(String sql) {
+    String keyword = SqlText.firstKeyword(sql);
+    return ("INSERT".equals(keyword) || "UPDATE".equals(keyword) || "DELETE".equals(keyword))
+        && SqlText.parameters(sql).isEmpty();
+  }
+
+  /**
+   * Sends statements [from, end) to Derby in one executeBatch.
+   */
+  private void runBatch(Connection connection, List<String> statements, int from, int end,
+      List<StatementResult> results) {
+    int size = end - from;
+    long start = System.nanoTime();
+    int[] counts;
+    String error = null;
+    try (Statement statement = connection.createStatement()) {
+      statement.setQueryTimeout(queryTimeout);
+      for (int i = from; i < end; i++) {
+        statement.addBatch(statements.get(i));
+      }
+      long executeStart = System.nanoTime();
+      try {
+        counts = statement.executeBatch();
+      } catch (BatchUpdateException batchEx) {
+        // Derby stops at the statement that failed, the counts are for the ones before it
+        counts = batchEx.getUpdateCounts();
+        error = batchEx.getMessage();
+      }
+      long parseShare = (executeStart - start) / size;
+      long executeShare = (System.nanoTime() - executeStart) / size;
+      int ran = error == null ? size : Math.min(size, counts.length + 1);
+      for (int i = 0; i < ran; i++) {
+        StatementResult result = new StatementResult(from + i + 1, statements.get(from + i), size);
+        result.parseNanos = parseShare;
+        result.executeNanos = executeShare;
+        if (error != null && i == ran - 1) {
+          result.error = error;
+        } else {
+          result.updateCount = counts[i];
+        }
+        results.add(result);
+      }
+    } catch (SQLException sqlEx) {
+      StatementResult result = new StatementResult(from + 1, statements.get(from), size);
+      result.error = sqlEx.getMessage();
+      results.add(result);
+    }
+  }// end of runBatch method
+
+  /**
+   * Runs one statement as a PreparedStatement, reading a query's rows into pages.
+   */
+  private StatementResult runStatement(Connection connection, int index, String sql,
+      Map<String, String> parameterValues) {
+    StatementResult result = new StatementResult(index, sql, 1);
+    SqlText.Parameters parameters = SqlText.parameters(sql);
+    long start = System.nanoTime();
+    try (PreparedStatement statement = connection.prepareStatement(parameters.getSql(),
+        ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+      long executeStart = System.nanoTime();
+      result.parseNanos = executeStart - start;
+      statement.setQueryTimeout(queryTimeout);
+      statement.setFetchSize(pageSize);
+      ParameterBinder.bind(statement, parameters.getNames(),
+          ParameterBinder.valuesOf(parameters, parameterValues));
+      boolean query = statement.execute();
+      long fetchStart = System.nanoTime();
+      result.executeNanos = fetchStart - executeStart;
+      if (!query) {
+        result.updateCount = statement.getUpdateCount();
+        return result;
+      }
+      try (ResultSet rs = statement.getResultSet()) {
+        readRows(rs, result);
+      }
+      result.fetchNanos = System.nanoTime() - fetchStart;
+      if (cancelled.get()) {
+        result.error = "Script cancelled";
+      }
+    } catch (SQLException sqlEx) {
+      result.error = sqlEx.getMessage();
+    }
+    return result;
+  }// end of runStatement method
+
+  /**
+   * Reads up to MAX_RESULT_ROWS rows, one page at a time.
+   */
+  private void readRows(ResultSet rs, StatementResult result) throws SQLException {
+    ResultSetMetaData rsmd = rs.getMetaData();
+    ColumnType[] types = ColumnarPage.typesOf(rs);
+    int[] scales = ColumnarPage.scalesOf(rs);
+    List<String> names = new ArrayList<>(types.length);
+    for (int column = 1; column <= types.length; column++) {
+      names.add(rsmd.getColumnName(column));
+    }
+    List<ColumnarPage> pages = new ArrayList<>();
+    long rows = 0;
+    while (rows < MAX_RESULT_ROWS && !cancelled.get()) {
+      int wanted = (int) Math.min(pageSize, MAX_RESULT_ROWS - rows);
+      ColumnarPage page = ColumnarPage.read(rs, types, scales, wanted, cancelled::get);
+      if (page.getRowCount() > 0) {
+        pages.add(page);
+        rows += page.getRowCount();
+      }
+      if (page.getRowCount() < wanted) {
+        break; // the ResultSet ran out
+      }
+    }
+    result.columnNames = Collections.unmodifiableList(names);
+    result.columnTypes = types;
+    result.pages = pages;
+    result.rows = rows;
+    result.truncated = rows == MAX_RESULT_ROWS && rs.next();
+  }// end of readRows method
+}// end of ScriptRunner class
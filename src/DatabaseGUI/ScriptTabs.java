@@ -0,0 +1,180 @@
+package DatabaseGUI;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javafx.application.Platform;
+import javafx.collections.FXCollections;
+import javafx.scene.control.Label;
+import javafx.scene.control.Tab;
+import javafx.scene.control.TabPane;
+import javafx.scene.control.TableView;
+
+/**
+ * A query box holding more than one statement is run as a script, see ScriptRunner. Each query
+ * of the script gets its own tab next to the query tabs, plus one tab with the timings. The tabs
+ * of a script are replaced by those of the next one.
+ *
+ * Everything here is done on the FX thread, the script itself on a worker.
+ */
+public class ScriptTabs {
+
+  private final ScriptRunner scriptRunner = new ScriptRunner(PagedResultList.DEFAULT_PAGE_SIZE);
+  private final List<Tab> scriptTabs = new ArrayList<>();
+  private final TabPane resultTabs;
+  private final Label statusLabel;
+  private final QueryCache queryCache;
+  private final SchemaCache schemaCache;
+  private final LocalViews localViews;
+  private final Runnable runningChanged;
+  private Thread scriptThread;
+
+  /**
+   * @param runningChanged called when a script starts running and when it is done
+   */
+  public ScriptTabs(TabPane resultTabs, Label statusLabel, QueryCache queryCache,
+      SchemaCache schemaCache, LocalViews localViews, Runnable runningChanged) {
+    this.resultTabs = resultTabs;
+    this.statusLabel = statusLabel;
+    this.queryCache = queryCache;
+    this.schemaCache = schemaCache;
+    this.localViews = localViews;
+    this.runningChanged = runningChanged;
+  }
+
+  public boolean isRunning() {
+    return scriptThread != null;
+  }
+
+  /**
+   * Stops the script running, if any. Nothing it did is kept.
+   */
+  public void cancel() {
+    scriptRunner.cancel();
+  }
+
+  /**
+   * Runs every statement of the script as one script on a background thread. When it's done
+   * each query gets a tab of its own, and the Timing tab lists how long every statement took. If
+   * a statement fails nothing the script did is kept, and the Timing tab shows which statement it
+   * was.
+   *
+   * @param queryTimeout seconds Derby may spend on each statement, 0 for no limit
+   */
+  public void run(String script, Map<String, String> values, int queryTimeout) {
+    if (scriptThread != null) {
+      statusLabel.setText("A script is already running");
+      return;
+    }
+    resultTabs.getTabs().removeAll(scriptTabs); // the tabs of the last script
+    scriptTabs.clear();
+    scriptRunner.setQueryTimeout(queryTimeout);
+    AtomicBoolean updateScheduled = new AtomicBoolean(false);
+    long start = System.nanoTime();
+
+    statusLabel.setText("Running script...");
+    scriptThread = new Thread(() -> {
+      List<ScriptRunner.StatementResult> results = new ArrayList<>();
+      String failure = null;
+      try {
+        results = scriptRunner.run(script, values, (done, total) -> {
+          if (updateScheduled.compareAndSet(false, true)) {
+            Platform.runLater(() -> {
+              updateScheduled.set(false);
+              statusLabel.setText("Running script... " + done + " of " + total + " statements");
+            });
+          }
+        });
+      } catch (SQLException sqlEx) {
+        System.out.println("Issue running the script");
+        failure = sqlEx.getMessage();
+      }
+      long nanos = System.nanoTime() - start;
+      List<ScriptRunner.StatementResult> finished = results;
+      String connectFailure = failure;
+      Platform.runLater(() -> {
+        scriptThread = null;
+        runningChanged.run();
+        showResults(finished, nanos, connectFailure);
+      });
+    }, "script-worker");
+    scriptThread.setDaemon(true);
+    scriptThread.start();
+    runningChanged.run();
+  }// end of run method
+
+  /**
+   * Adds a tab for every query of the script and one with every statement's timing. Cached
+   * results read from tables the script changed are dropped, if the script was committed.
+   */
+  private void showResults(List<ScriptRunner.StatementResult> results, long nanos,
+      String connectFailure) {
+    boolean failed = connectFailure != null || ScriptRunner.failed(results);
+    int queries = 0;
+    Tab firstQueryTab = null;
+    for (ScriptRunner.StatementResult result : results) {
+      if (!failed) {
+        queryCache.statementExecuted(result.getSql());
+        schemaCache.statementExecuted(result.getSql());
+      }
+      if (!result.isQuery()) {
+        continue;
+      }
+      queries++;
+      TableView<ResultRow> queryTable = new TableView<>();
+      PagedResultList rows = PagedResultList.ofPages(result.getColumnNames(),
+          result.getColumnTypes(), PagedResultList.DEFAULT_PAGE_SIZE, result.getPages());
+      ResultTables.addColumns(queryTable, rows);
+      queryTable.setItems(rows);
+      localViews.enableSort(queryTable);
+      Tab tab = new Tab("Query " + result.getIndex() + (result.isTruncated() ? " (first "
+          + result.getRows() + " rows)" : ""), queryTable);
+      scriptTabs.add(tab);
+      resultTabs.getTabs().add(tab);
+      if (firstQueryTab == null) {
+        firstQueryTab = tab;
+      }
+    }
+
+    TableView<ScriptRunner.StatementResult> timingTable = new TableView<>();
+    timingTable.getColumns().add(ResultTables.textColumn("#",
+        result -> Integer.toString(result.getIndex())));
+    timingTable.getColumns().add(ResultTables.textColumn("Statement",
+        result -> result.getSql().replaceAll("\\s+", " ")));
+    timingTable.getColumns().add(ResultTables.textColumn("Parse ms",
+        result -> millis(result.getParseNanos())));
+    timingTable.getColumns().add(ResultTables.textColumn("Execute ms",
+        result -> millis(result.getExecuteNanos())));
+    timingTable.getColumns().add(ResultTables.textColumn("Fetch ms",
+        result -> millis(result.getFetchNanos())));
+    timingTable.getColumns().add(ResultTables.textColumn("Result",
+        result -> result.getError() != null ? result.getError()
+            : result.isQuery() ? result.getRows() + " rows"
+            : result.getUpdateCount() < 0 ? "done" : result.getUpdateCount() + " rows changed"
+                + (result.getBatchSize() > 1 ? " (batch of " + result.getBatchSize() + ")" : "")));
+    timingTable.setItems(FXCollections.observableArrayList(results));
+    Tab timingTab = new Tab("Timing", timingTable);
+    scriptTabs.add(timingTab);
+    resultTabs.getTabs().add(timingTab);
+
+    String summary = String.format("%d statements, %d queries in %.1f ms", results.size(), queries,
+        nanos / 1e6);
+    if (connectFailure != null) {
+      statusLabel.setText("Script failed: " + connectFailure);
+    } else if (failed) {
+      ScriptRunner.StatementResult last = results.get(results.size() - 1);
+      statusLabel.setText("Statement " + last.getIndex() + " failed, nothing was changed: "
+          + last.getError());
+      resultTabs.getSelectionModel().select(timingTab);
+    } else {
+      statusLabel.setText(summary + "  |  " + StatementCache.getStatus());
+      resultTabs.getSelectionModel().select(firstQueryTab != null ? firstQueryTab : timingTab);
+    }
+  }// end of showResults method
+
+  private static String millis(long nanos) {
+    return String.format("%.2f", nanos / 1e6);
+  }
+}// end of ScriptTabs class
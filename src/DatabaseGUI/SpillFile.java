@@ -0,0 +1,146 @@
+package DatabaseGUI;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A temporary file that pages of a result are written to when they are dropped from memory, so
+ * they can be read back when the user scrolls to them again instead of running the query again.
+ * Used by PagedResultList once the pages it holds go over its heap budget.
+ *
+ * The file only ever grows: a page is written once, after the pages before it, and never changes
+ * (a ColumnarPage can't). It is mapped into memory a chunk at a time, so writing and reading a page
+ * is a copy to and from the operating system's file cache rather than a read or write call, and
+ * pages that haven't been looked at in a while can go to disk without taking any of the heap. The
+ * offset of every page is kept in an index by page number.
+ *
+ * The file is deleted when the spill file is closed, or when the program ends. This class must
+ * only be used from one thread at a time (the JavaFX application thread).
+ */
+public class SpillFile {
+
+  // how much of the file is mapped at a time. A page bigger than that gets a chunk of its own.
+  public static final int CHUNK_BYTES =
+      Integer.getInteger("databasegui.spill.chunkMB", 64) * 1024 * 1024;
+
+  // the folder the spill files go in
+  private static final String DIRECTORY =
+      System.getProperty("databasegui.spill.dir", System.getProperty("java.io.tmpdir"));
+
+  private final Path path;
+  private final FileChannel channel;
+  private final List<MappedByteBuffer> chunks = new ArrayList<>();
+  private long fileSize = 0; // where the next chunk starts
+  private int chunkUsed = 0; // how much of the last chunk has been written
+
+  // by page number: the chunk, where the page starts in it, and how long it is. -1 if not written.
+  private int[] chunkOf = new int[0];
+  private int[] offsetOf = new int[0];
+  private int[] lengthOf = new int[0];
+  private long bytesWritten = 0;
+  private int pagesWritten = 0;
+
+  /**
+   * Makes a new, empty spill file.
+   */
+  public SpillFile() throws IOException {
+    path = Files.createTempFile(Paths.get(DIRECTORY), "databasegui-", ".spill");
+    path.toFile().deleteOnExit();
+    channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+  }
+
+  /**
+   * @return true if the page has been written and can be read back.
+   */
+  public boolean contains(int pageIndex) {
+    return pageIndex < chunkOf.length && chunkOf[pageIndex] >= 0;
+  }
+
+  /**
+   * Writes a page at the end of the file. A page that is already in the file isn't written again.
+   */
+  public void write(int pageIndex, ColumnarPage page) throws IOException {
+    if (contains(pageIndex)) {
+      return;
+    }
+    int length = page.serializedSize();
+    if (chunks.isEmpty() || chunkUsed + length > chunks.get(chunks.size() - 1).capacity()) {
+      // what is left of the last chunk stays empty
+      int capacity = Math.max(CHUNK_BYTES, length);
+      chunks.add(channel.map(FileChannel.MapMode.READ_WRITE, fileSize, capacity));
+      fileSize += capacity;
+      chunkUsed = 0;
+    }
+    ByteBuffer out = chunks.get(chunks.size() - 1).duplicate();
+    out.position(chunkUsed);
+    page.writeTo(out);
+
+    if (pageIndex >= chunkOf.length) {
+      int size = Math.max(pageIndex + 1, chunkOf.length * 2);
+      chunkOf = grow(chunkOf, size);
+      offsetOf = grow(offsetOf, size);
+      lengthOf = grow(lengthOf, size);
+    }
+    chunkOf[pageIndex] = chunks.size() - 1;
+    offsetOf[pageIndex] = chunkUsed;
+    lengthOf[pageIndex] = length;
+    chunkUsed += length;
+    bytesWritten += length;
+    pagesWritten++;
+  }// end of write method
+
+  /**
+   * @return the page as it was written, or null if it hasn't been.
+   */
+  public ColumnarPage read(int pageIndex) {
+    if (!contains(pageIndex)) {
+      return null;
+    }
+    ByteBuffer in = chunks.get(chunkOf[pageIndex]).duplicate();
+    in.position(offsetOf[pageIndex]);
+    in.limit(offsetOf[pageIndex] + lengthOf[pageIndex]);
+    return ColumnarPage.readFrom(in.slice());
+  }
+
+  /**
+   * @return the bytes of every page written so far.
+   */
+  public long getBytesWritten() {
+    return bytesWritten;
+  }
+
+  public int getPagesWritten() {
+    return pagesWritten;
+  }
+
+  /**
+   * Lets go of the mappings and deletes the file. The pages can't be read afterwards.
+   */
+  public void close() {
+    chunks.clear(); // a mapping only goes once it's garbage, which is also when Windows lets go
+    chunkOf = new int[0];
+    try {
+      channel.close();
+      Files.deleteIfExists(path);
+    } catch (IOException ioEx) {
+      // a mapping that's still open on Windows. deleteOnExit gets it later.
+      System.out.println("Spill file " + path + " not deleted: " + ioEx.getMessage());
+    }
+  }
+
+  private static int[] grow(int[] array, int size) {
+    int oldLength = array.length;
+    int[] grown = Arrays.copyOf(array, size);
+    Arrays.fill(grown, oldLength, size, -1);
+    return grown;
+  }
+}// end of SpillFile class
@@ -0,0 +1,555 @@
+package DatabaseGUI;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Small helpers for looking at the text of a SQL statement without a real parser: normalizing it
+ * so the same query typed two different ways looks the same, finding which tables it reads or
+ * writes, and finding its ? and :name parameters. Quoted strings, quoted identifiers and comments
+ * are always skipped over correctly, but the table finding only knows the common statement
+ * shapes.
+ */
+public final class SqlText {
+
+  // statements whose first word is one of these can change the data or the schema
+  private static final Set<String> WRITE_KEYWORDS = new HashSet<>(Arrays.asList("INSERT",
+      "UPDATE", "DELETE", "MERGE", "CREATE", "ALTER", "DROP", "TRUNCATE", "RENAME", "CALL",
+      "GRANT", "REVOKE", "LOCK"));
+
+  // words whose value can be different every time the same query runs
+  private static final Set<String> VOLATILE_WORDS = new HashSet<>(Arrays.asList("CURRENT",
+      "CURRENT_DATE", "CURRENT_TIME", "CURRENT_TIMESTAMP", "CURRENT_USER", "CURRENT_ROLE",
+      "SESSION_USER", "USER", "RANDOM", "RAND", "NEXT"));
+
+  /**
+   * The parameters of a statement. JDBC only understands ?, so every :name is swapped for a ? and
+   * the names are kept in the order the ?s appear.
+   */
+  public static final class Parameters {
+
+    private final String sql;
+    private final List<String> names;
+
+    Parameters(String sql, List<String> names) {
+      this.sql = sql;
+      this.names = Collections.unmodifiableList(names);
+    }
+
+    /**
+     * @return the statement with only ? placeholders, ready for prepareStatement.
+     */
+    public String getSql() {
+      return sql;
+    }
+
+    /**
+     * @return the name of each ? in order. A plain ? is named by its position ("1", "2"...), a
+     *     :name by its name. The same :name used twice appears twice.
+     */
+    public List<String> getNames() {
+      return names;
+    }
+
+    /**
+     * @return each name once, in the order they first appear. This is what the user fills in.
+     */
+    public List<String> getDistinctNames() {
+      return new ArrayList<>(new LinkedHashSet<>(names));
+    }
+
+    public boolean isEmpty() {
+      return names.isEmpty();
+    }
+  }
+
+  private SqlText() {
+  }
+
+  /**
+   * Splits a script into its statements at every semicolon that isn't inside quotes or a comment.
+   * The statements are trimmed, and empty ones (";;" or a trailing comment) are left out.
+   */
+  public static List<String> splitStatements(String script) {
+    List<String> statements = new ArrayList<>();
+    int length = script.length();
+    int start = 0;
+    int i = 0;
+    while (i <= length) {
+      if (i == length || script.charAt(i) == ';') {
+        String statement = script.substring(start, i).trim();
+        if (!tokenize(statement).isEmpty()) {
+          statements.add(statement);
+        }
+        start = i + 1;
+        i++;
+      } else {
+        i = skipQuotedOrComment(script, i);
+      }
+    }
+    return statements;
+  }
+
+  /**
+   * Finds the ? and :name placeholders of a statement, skipping anything inside quotes or
+   * comments. "WHERE age > :minAge AND zipCode = ?" has the parameters "minAge" and "1".
+   */
+  public static Parameters parameters(String sql) {
+    StringBuilder jdbcSql = new StringBuilder(sql.length());
+    List<String> names = new ArrayList<>();
+    int positional = 0;
+    int length = sql.length();
+    int i = 0;
+    while (i < length) {
+      char c = sql.charAt(i);
+      int end = skipQuotedOrComment(sql, i); // quoted strings and comments are copied as they are
+      if (c == '?') {
+        names.add(String.valueOf(++positional));
+        jdbcSql.append('?');
+        i = end;
+        continue;
+      } else if (c == ':' && i + 1 < length
+          && (Character.isLetter(sql.charAt(i + 1)) || sql.charAt(i + 1) == '_')) {
+        while (end < length
+            && (Character.isLetterOrDigit(sql.charAt(end)) || sql.charAt(end) == '_')) {
+          end++;
+        }
+        names.add(sql.substring(i + 1, end));
+        jdbcSql.append('?');
+        i = end;
+        continue;
+      }
+      jdbcSql.append(sql, i, end);
+      i = end;
+    }
+    return new Parameters(jdbcSql.toString(), names);
+  }// end of parameters method
+
+  /**
+   * Uppercases everything outside of quotes, turns every run of whitespace (and comments) into a
+   * single space and drops a trailing semicolon. "select *\n  from Customers;" and
+   * "SELECT * FROM customers" come out the same.
+   */
+  public static String normalize(String sql) {
+    StringBuilder normal = new StringBuilder(sql.length());
+    for (String token : tokenize(sql)) {
+      if (normal.length() > 0 && needsSpace(normal.charAt(normal.length() - 1), token.charAt(0))) {
+        normal.append(' ');
+      }
+      normal.append(token);
+    }
+    int end = normal.length();
+    while (end > 0 && normal.charAt(end - 1) == ';') {
+      end--;
+    }
+    return normal.substring(0, end);
+  }
+
+  /**
+   * @return the first word of the statement in upper case, e.g. "SELECT", or "" if there is none.
+   */
+  public static String firstKeyword(String sql) {
+    for (String token : tokenize(sql)) {
+      if (isWord(token)) {
+        return token;
+      }
+      if (!"(".equals(token)) {
+        return "";
+      }
+    }
+    return "";
+  }
+
+  /**
+   * @return true for statements that only read: SELECT, VALUES and WITH.
+   */
+  public static boolean isQuery(String sql) {
+    String keyword = firstKeyword(sql);
+    return "SELECT".equals(keyword) || "VALUES".equals(keyword) || "WITH".equals(keyword);
+  }
+
+  /**
+   * @return true for statements that may change data or schema (INSERT, UPDATE, DDL, CALL...).
+   */
+  public static boolean isWrite(String sql) {
+    return WRITE_KEYWORDS.contains(firstKeyword(sql));
+  }
+
+  /**
+   * @return true if the statement uses a value that can change between two runs even though no
+   *     table did: CURRENT_TIMESTAMP, CURRENT DATE, RANDOM(), NEXT VALUE FOR a sequence...
+   */
+  public static boolean isVolatile(String sql) {
+    for (String token : tokenize(sql)) {
+      if (VOLATILE_WORDS.contains(token)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Finds the tables named after FROM and JOIN, including comma separated lists like
+   * "FROM customers c, orders o". Schema names are dropped, so TWITTWER.CUSTOMERS is CUSTOMERS.
+   */
+  public static Set<String> referencedTables(String sql) {
+    List<String> tokens = tokenize(sql);
+    Set<String> tables = new LinkedHashSet<>();
+    for (int i = 0; i < tokens.size(); i++) {
+      String token = tokens.get(i);
+      if ("FROM".equals(token) || "JOIN".equals(token)) {
+        int next = readTable(tokens, i + 1, tables);
+        // FROM a x, b y, c: keep going while the table is followed by a comma
+        while ("FROM".equals(token) && next >= 0 && next < tokens.size()) {
+          next = skipAlias(tokens, next);
+          if (next >= tokens.size() || !",".equals(tokens.get(next))) {
+            break;
+          }
+          next = readTable(tokens, next + 1, tables);
+        }
+      }
+    }
+    return tables;
+  }
+
+  /**
+   * Maps every name a table can be referred to by in the query to the table: its alias if it has
+   * one ("FROM customers cust" gives CUST -> CUSTOMERS) and its own name.
+   */
+  public static Map<String, String> tableAliases(String sql) {
+    List<String> tokens = tokenize(sql);
+    Map<String, String> aliases = new LinkedHashMap<>();
+    for (int i = 0; i < tokens.size(); i++) {
+      String token = tokens.get(i);
+      if ("FROM".equals(token) || "JOIN".equals(token)) {
+        int next = readAlias(tokens, i + 1, aliases);
+        // FROM a x, b y, c: keep going while the table is followed by a comma
+        while ("FROM".equals(token) && next >= 0 && next < tokens.size()
+            && ",".equals(tokens.get(next))) {
+          next = readAlias(tokens, next + 1, aliases);
+        }
+      }
+    }
+    return aliases;
+  }
+
+  /**
+   * Reads a table name and its alias, if it has one, at position start.
+   *
+   * @return the position after them, or -1 if there was no table name there.
+   */
+  private static int readAlias(List<String> tokens, int start, Map<String, String> aliases) {
+    Set<String> table = new LinkedHashSet<>();
+    int next = readTable(tokens, start, table);
+    if (next < 0) {
+      return -1;
+    }
+    String name = table.iterator().next();
+    aliases.put(name, name);
+    int afterAlias = skipAlias(tokens, next);
+    if (afterAlias > next && !"AS".equals(tokens.get(afterAlias - 1))) {
+      aliases.put(tokens.get(afterAlias - 1), name);
+    }
+    return afterAlias;
+  }
+
+  /**
+   * Finds the columns the query compares with something in its ON and WHERE clauses, such as
+   * CUST.CUSTOMERID in "ON cust.customerID = ord.customerID" or AGE in "WHERE age > 20". These
+   * are the columns an index could help with. Columns keep the qualifier they were written with.
+   * This only looks at the words next to =, <, >, LIKE, IN and BETWEEN, it doesn't parse the
+   * expressions, so a column inside a function call isn't found.
+   */
+  public static Set<String> predicateColumns(String sql) {
+    List<String> tokens = tokenize(sql);
+    Set<String> columns = new LinkedHashSet<>();
+    boolean inPredicate = false;
+    for (int i = 0; i < tokens.size(); i++) {
+      String token = tokens.get(i);
+      if ("ON".equals(token) || "WHERE".equals(token) || "HAVING".equals(token)) {
+        inPredicate = true;
+      } else if (isClauseKeyword(token) || "SELECT".equals(token)) {
+        inPredicate = false;
+      } else if (inPredicate && isComparison(token)) {
+        addColumn(tokens, i - 1, columns);
+        int right = i + 1;
+        while (right < tokens.size() && (isComparison(tokens.get(right))
+            || "NOT".equals(tokens.get(right)))) {
+          right++; // the = of <=, or NOT LIKE
+        }
+        addColumn(tokens, right, columns);
+      }
+    }
+    return columns;
+  }
+
+  private static boolean isComparison(String token) {
+    switch (token) {
+      case "=":
+      case "<":
+      case ">":
+      case "!":
+      case "LIKE":
+      case "IN":
+      case "BETWEEN":
+        return true;
+      default:
+        return false;
+    }
+  }
+
+  /**
+   * Adds the token at position to the columns if it looks like a column name: a word that isn't
+   * a keyword, a number or the name of a function.
+   */
+  private static void addColumn(List<String> tokens, int position, Set<String> columns) {
+    while (position >= 0 && position < tokens.size() && ("NOT".equals(tokens.get(position))
+        || isComparison(tokens.get(position)))) {
+      position--; // the < of <=, or the NOT of NOT LIKE
+    }
+    if (position < 0 || position >= tokens.size()) {
+      return;
+    }
+    String token = tokens.get(position);
+    if (!isWord(token) || (position + 1 < tokens.size() && "(".equals(tokens.get(position + 1)))) {
+      return;
+    }
+    switch (token) {
+      case "AND":
+      case "OR":
+      case "NOT":
+      case "NULL":
+      case "TRUE":
+      case "FALSE":
+      case "IS":
+      case "CURRENT_DATE":
+      case "CURRENT_TIME":
+      case "CURRENT_TIMESTAMP":
+        return;
+      default:
+        if (!isClauseKeyword(token)) {
+          columns.add(token);
+        }
+    }
+  }
+
+  /**
+   * Finds the table a write statement changes. Returns null when it can't tell, e.g. for CALL,
+   * which could change anything.
+   */
+  public static Set<String> writtenTables(String sql) {
+    List<String> tokens = tokenize(sql);
+    Set<String> tables = new LinkedHashSet<>();
+    String keyword = tokens.isEmpty() ? "" : tokens.get(0);
+    int start = -1;
+
+    switch (keyword) {
+      case "INSERT":
+      case "MERGE":
+        start = indexOf(tokens, "INTO", 1) + 1;
+        break;
+      case "UPDATE":
+        start = 1;
+        break;
+      case "DELETE":
+        start = indexOf(tokens, "FROM", 1) + 1;
+        break;
+      case "CREATE":
+      case "ALTER":
+      case "DROP":
+      case "TRUNCATE":
+      case "RENAME":
+        // CREATE INDEX name ON table changes the table it's on, the others name it after TABLE
+        int on = indexOf(tokens, "ON", 1);
+        start = "INDEX".equals(tokens.size() > 1 ? tokens.get(1) : "") && on > 0 ? on + 1
+            : indexOf(tokens, "TABLE", 1) + 1;
+        if ("RENAME".equals(keyword) && start > 0) {
+          int to = indexOf(tokens, "TO", start);
+          if (to > 0) {
+            readTable(tokens, to + 1, tables);
+          }
+        }
+        break;
+      default:
+        return null;
+    }
+
+    if (start <= 0 || readTable(tokens, start, tables) < 0) {
+      return null;
+    }
+    return tables;
+  }
+
+  /**
+   * Splits SQL into upper case words, quoted strings (left exactly as typed) and single
+   * punctuation characters. Whitespace and comments are dropped.
+   */
+  static List<String> tokenize(String sql) {
+    List<String> tokens = new ArrayList<>();
+    int length = sql.length();
+    int i = 0;
+    while (i < length) {
+      char c = sql.charAt(i);
+      if (Character.isWhitespace(c)) {
+        i++;
+      } else if (c == '-' && i + 1 < length && sql.charAt(i + 1) == '-') {
+        while (i < length && sql.charAt(i) != '\n') {
+          i++; // -- comment to the end of the line
+        }
+      } else if (c == '/' && i + 1 < length && sql.charAt(i + 1) == '*') {
+        int end = sql.indexOf("*/", i + 2);
+        i = end < 0 ? length : end + 2;
+      } else if (c == '\'' || c == '"') {
+        int end = i + 1;
+        while (end < length) {
+          if (sql.charAt(end) == c) {
+            if (end + 1 < length && sql.charAt(end + 1) == c) {
+              end += 2; // '' inside a string is an escaped quote
+              continue;
+            }
+            break;
+          }
+          end++;
+        }
+        end = Math.min(end + 1, length);
+        tokens.add(sql.substring(i, end));
+        i = end;
+      } else if (Character.isLetterOrDigit(c) || c == '_' || c == '$' || c == '.') {
+        int end = i;
+        while (end < length && (Character.isLetterOrDigit(sql.charAt(end))
+            || sql.charAt(end) == '_' || sql.charAt(end) == '$' || sql.charAt(end) == '.')) {
+          end++;
+        }
+        tokens.add(sql.substring(i, end).toUpperCase(Locale.ROOT));
+        i = end;
+      } else {
+        tokens.add(String.valueOf(c));
+        i++;
+      }
+    }
+    return tokens;
+  }
+
+  /**
+   * @return the position just after the quoted string or comment starting at position start, or
+   *     start + 1 if there isn't one there.
+   */
+  private static int skipQuotedOrComment(String sql, int start) {
+    int length = sql.length();
+    char c = sql.charAt(start);
+    if (c == '-' && start + 1 < length && sql.charAt(start + 1) == '-') {
+      int end = sql.indexOf('\n', start);
+      return end < 0 ? length : end;
+    }
+    if (c == '/' && start + 1 < length && sql.charAt(start + 1) == '*') {
+      int end = sql.indexOf("*/", start + 2);
+      return end < 0 ? length : end + 2;
+    }
+    if (c == '\'' || c == '"') {
+      int end = sql.indexOf(c, start + 1);
+      while (end >= 0 && end + 1 < length && sql.charAt(end + 1) == c) {
+        end = sql.indexOf(c, end + 2); // '' inside a string is an escaped quote
+      }
+      return end < 0 ? length : end + 1;
+    }
+    return start + 1;
+  }
+
+  static boolean isWord(String token) {
+    char first = token.charAt(0);
+    return Character.isLetter(first) || first == '_';
+  }
+
+  /**
+   * Reads a table name at (or just after some opening parentheses at) position start.
+   *
+   * @return the position after the name, or -1 if there was no name there.
+   */
+  private static int readTable(List<String> tokens, int start, Set<String> tables) {
+    int i = start;
+    while (i < tokens.size() && "(".equals(tokens.get(i))) {
+      i++;
+    }
+    if (i >= tokens.size()) {
+      return -1;
+    }
+    String name = tokens.get(i);
+    if (name.startsWith("\"")) {
+      // a quoted name is stored as typed, "Orders" is a different table from ORDERS
+      tables.add(name.substring(1, Math.max(1, name.length() - 1)).replace("\"\"", "\""));
+    } else if (isWord(name) && !"SELECT".equals(name) && !"VALUES".equals(name)) {
+      tables.add(name.substring(name.lastIndexOf('.') + 1));
+    } else {
+      return -1; // a subquery, its own FROM is found separately
+    }
+    return i + 1;
+  }
+
+  /**
+   * Steps over "AS alias" or "alias" after a table name.
+   */
+  private static int skipAlias(List<String> tokens, int position) {
+    int i = position;
+    if (i < tokens.size() && "AS".equals(tokens.get(i))) {
+      i++;
+    }
+    if (i < tokens.size() && isWord(tokens.get(i)) && !isClauseKeyword(tokens.get(i))) {
+      i++;
+    }
+    return i;
+  }
+
+  private static boolean isClauseKeyword(String word) {
+    switch (word) {
+      case "WHERE":
+      case "GROUP":
+      case "ORDER":
+      case "HAVING":
+      case "INNER":
+      case "LEFT":
+      case "RIGHT":
+      case "FULL":
+      case "CROSS":
+      case "JOIN":
+      case "ON":
+      case "UNION":
+      case "EXCEPT":
+      case "INTERSECT":
+      case "FETCH":
+      case "OFFSET":
+      case "FOR":
+        return true;
+      default:
+        return false;
+    }
+  }
+
+  private static int indexOf(List<String> tokens, String token, int from) {
+    for (int i = Math.max(0, from); i < tokens.size(); i++) {
+      if (token.equals(tokens.get(i))) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Two tokens only need a space between them when both are words (or numbers).
+   */
+  private static boolean needsSpace(char before, char after) {
+    return isWordChar(before) && isWordChar(after);
+  }
+
+  private static boolean isWordChar(char c) {
+    return Character.isLetterOrDigit(c) || c == '_' || c == '$' || c == '.' || c == '\''
+        || c == '"';
+  }
+}
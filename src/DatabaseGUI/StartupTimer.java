@@ -0,0 +1,151 @@
+package DatabaseGUI;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.RuntimeMXBean;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Marks the moments of a cold start, from the JVM starting to the first rows of a query being on
+ * screen, so the time to the first query can be tracked from one version to the next.
+ *
+ * Marks are kept as System.nanoTime from when this class was loaded (early in main), and only
+ * turned into "ms since the JVM started" when the report is made. That way the management classes
+ * needed to find out when the JVM started aren't loaded during startup itself.
+ *
+ * Set databasegui.startup.report=true and the report is printed once the first rows are shown.
+ *
+ * Set databasegui.startup.train=true for a training run: the window runs the default query, waits
+ * for the schema, builds every panel and closes again. Run with -XX:ArchiveClassesAtExit (JDK 13
+ * and later) and the classes a start needs end up in a class data sharing archive, which later
+ * starts can map in with -XX:SharedArchiveFile instead of loading and verifying them again. See
+ * the README.
+ */
+public final class StartupTimer {
+
+  public static final String MAIN = "main";
+  public static final String WINDOW_BUILT = "window built";
+  public static final String WINDOW_SHOWN = "window shown";
+  public static final String DATABASE_BOOTED = "database booted";
+  public static final String POOL_WARM = "connections opened";
+  public static final String SCHEMA_READ = "schema read";
+  public static final String FIRST_ROWS = "first rows shown";
+
+  public static final boolean REPORT = Boolean.getBoolean("databasegui.startup.report");
+  public static final boolean TRAINING = Boolean.getBoolean("databasegui.startup.train");
+
+  private static final long ORIGIN_NANOS = System.nanoTime();
+  private static final long ORIGIN_MILLIS = System.currentTimeMillis();
+
+  // the first time each mark was reached, in the order they were reached. Guarded by MARKS.
+  private static final Map<String, Long> MARKS = new LinkedHashMap<>();
+
+  private StartupTimer() {
+  }
+
+  /**
+   * Notes that a moment has been reached. Only the first time counts. Safe on any thread.
+   *
+   * @return true if this was the first time
+   */
+  public static boolean mark(String name) {
+    long now = System.nanoTime();
+    synchronized (MARKS) {
+      if (MARKS.containsKey(name)) {
+        return false;
+      }
+      MARKS.put(name, now);
+      return true;
+    }
+  }
+
+  public static boolean isMarked(String name) {
+    synchronized (MARKS) {
+      return MARKS.containsKey(name);
+    }
+  }
+
+  /**
+   * @return how long after the JVM started the mark was reached, in milliseconds, or -1 if it
+   *     hasn't been yet.
+   */
+  public static long millisSinceJvmStart(String name) {
+    Long nanos;
+    synchronized (MARKS) {
+      nanos = MARKS.get(name);
+    }
+    if (nanos == null) {
+      return -1;
+    }
+    return jvmToOrigin() + (nanos - ORIGIN_NANOS) / 1000000;
+  }
+
+  /**
+   * @return e.g. "window shown 640 ms, first rows 2310 ms after the JVM started", for the Metrics
+   *     tab.
+   */
+  public static String summary() {
+    long shown = millisSinceJvmStart(WINDOW_SHOWN);
+    long firstRows = millisSinceJvmStart(FIRST_ROWS);
+    if (shown < 0) {
+      return "";
+    }
+    return "Start: window shown " + shown + " ms"
+        + (firstRows < 0 ? "" : ", first rows " + firstRows + " ms") + " after the JVM started";
+  }
+
+  /**
+   * @return every mark with its time since the JVM started and since the mark before it, and
+   *     whether a class data sharing archive was used.
+   */
+  public static String report() {
+    StringBuilder text = new StringBuilder("Startup (ms since the JVM started):\n");
+    long origin = jvmToOrigin();
+    text.append(String.format(Locale.ROOT, "%8d  %s%n", 0, "JVM started"));
+    long previous = 0;
+    Map<String, Long> marks;
+    synchronized (MARKS) {
+      marks = new LinkedHashMap<>(MARKS);
+    }
+    for (Map.Entry<String, Long> mark : marks.entrySet()) {
+      long millis = origin + (mark.getValue() - ORIGIN_NANOS) / 1000000;
+      text.append(String.format(Locale.ROOT, "%8d  %-20s (+%d)%n", millis, mark.getKey(),
+          millis - previous));
+      previous = millis;
+    }
+    String archive = sharedArchive();
+    text.append(archive == null ? "No class data sharing archive given"
+        : "Class data sharing archive: " + archive);
+    return text.toString();
+  }// end of report method
+
+  /**
+   * Prints the report if databasegui.startup.report is set.
+   */
+  public static void reportIfRequested() {
+    if (REPORT) {
+      System.out.println(report());
+    }
+  }
+
+  /**
+   * @return the archive given with -XX:SharedArchiveFile, or null.
+   */
+  private static String sharedArchive() {
+    for (String argument : ManagementFactory.getRuntimeMXBean().getInputArguments()) {
+      if (argument.startsWith("-XX:SharedArchiveFile=")) {
+        return argument.substring("-XX:SharedArchiveFile=".length());
+      }
+    }
+    return null;
+  }
+
+  /**
+   * @return how long after the JVM started this class was loaded, in milliseconds.
+   */
+  private static long jvmToOrigin() {
+    RuntimeMXBean runtime = ManagementFactory.getRuntimeMXBean();
+    return Math.max(0, ORIGIN_MILLIS - runtime.getStartTime());
+  }
+}// end of StartupTimer class
@@ -0,0 +1,229 @@
+package DatabaseGUI;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the PreparedStatements of one pooled connection open after they are closed, so the next
+ * prepareStatement with the same SQL gets the already compiled statement back. Derby compiles a
+ * query plan when a statement is prepared, which for a join can easily take longer than running
+ * it, and Statement.execute compiles again every time the text changes (even if only a literal in
+ * the WHERE clause did). With ? parameters the text stays the same and the plan is reused.
+ *
+ * Each pooled connection has its own cache, and a connection is only used by one thread at a time,
+ * so the cache itself needs no locking. The statistics are shared by every connection.
+ */
+class StatementCache {
+
+  static final int DEFAULT_SIZE = Integer.getInteger("databasegui.statementCache", 32);
+
+  private static final AtomicLong hits = new AtomicLong();
+  private static final AtomicLong misses = new AtomicLong();
+  private static final AtomicLong prepareNanos = new AtomicLong();
+
+  private final Connection physical;
+  private final int maxSize;
+  // idle statements, least recently used first
+  private final LinkedHashMap<Key, PreparedStatement> idle = new LinkedHashMap<>(16, 0.75f, true);
+  private final Set<PreparedStatement> inUse =
+      Collections.newSetFromMap(new IdentityHashMap<PreparedStatement, Boolean>());
+
+  StatementCache(Connection physical, int maxSize) {
+    this.physical = physical;
+    this.maxSize = Math.max(0, maxSize);
+  }
+
+  /**
+   * Hands out a prepared statement for the SQL, reusing a cached one if there is one. Closing the
+   * returned statement puts it back in the cache instead of closing it.
+   *
+   * @param owner what the statement's getConnection gives, the borrowed connection rather than
+   *     the real one
+   */
+  PreparedStatement prepare(Connection owner, String sql, int resultSetType, int concurrency)
+      throws SQLException {
+    Key key = new Key(sql, resultSetType, concurrency);
+    PreparedStatement statement = idle.remove(key);
+    if (statement != null && !statement.isClosed()) {
+      hits.incrementAndGet();
+    } else {
+      long start = System.nanoTime();
+      statement = physical.prepareStatement(sql, resultSetType, concurrency);
+      prepareNanos.addAndGet(System.nanoTime() - start);
+      misses.incrementAndGet();
+    }
+    inUse.add(statement);
+    return (PreparedStatement) Proxy.newProxyInstance(StatementCache.class.getClassLoader(),
+        new Class<?>[]{PreparedStatement.class}, new Handle(owner, key, statement));
+  }
+
+  /**
+   * Puts back any statement the last borrower of the connection forgot to close. Called when the
+   * connection goes back to the pool.
+   */
+  void releaseAll() {
+    for (PreparedStatement statement : inUse.toArray(new PreparedStatement[0])) {
+      closeQuietly(statement); // no Key to file it under, and it may be half way through a result
+    }
+    inUse.clear();
+  }
+
+  /**
+   * Closes every statement. Called before the connection itself is closed.
+   */
+  void closeAll() {
+    releaseAll();
+    for (PreparedStatement statement : idle.values()) {
+      closeQuietly(statement);
+    }
+    idle.clear();
+  }
+
+  /**
+   * @return how the cache has done so far, across all connections.
+   */
+  static String getStatus() {
+    long reused = hits.get();
+    long compiled = misses.get();
+    double averageMs = compiled == 0 ? 0 : prepareNanos.get() / (double) compiled / 1e6;
+    return String.format("Statements: %d reused, %d compiled, ~%.1f ms compile time saved",
+        reused, compiled, reused * averageMs);
+  }
+
+  /**
+   * A statement was closed by whoever borrowed it. Reset it and keep it for next time.
+   */
+  private void giveBack(Key key, PreparedStatement statement) {
+    if (!inUse.remove(statement)) {
+      return; // releaseAll already took care of it
+    }
+    try {
+      ResultSet open = statement.getResultSet();
+      if (open != null) {
+        open.close(); // closing a Statement closes its ResultSet, so this has to as well
+      }
+      statement.clearParameters();
+      statement.clearBatch(); // rows added by a borrower that failed before executeBatch
+      statement.clearWarnings();
+      // settings made by one borrower mustn't carry over to the next one
+      statement.setMaxRows(0);
+      statement.setQueryTimeout(0);
+      statement.setFetchSize(0);
+    } catch (SQLException sqlEx) {
+      closeQuietly(statement);
+      return;
+    }
+
+    PreparedStatement replaced = idle.put(key, statement);
+    if (replaced != null && replaced != statement) {
+      closeQuietly(replaced); // the same SQL was prepared twice at once, one copy is plenty
+    }
+    Iterator<PreparedStatement> eldestFirst = idle.values().iterator();
+    while (idle.size() > maxSize && eldestFirst.hasNext()) {
+      closeQuietly(eldestFirst.next());
+      eldestFirst.remove();
+    }
+  }
+
+  private static void closeQuietly(PreparedStatement statement) {
+    try {
+      statement.close();
+    } catch (SQLException sqlEx) {
+      // it's being thrown away either way
+    }
+  }
+
+  /**
+   * What a statement is cached under: its SQL and the kind of ResultSet it makes.
+   */
+  private static class Key {
+
+    private final String sql;
+    private final int resultSetType;
+    private final int concurrency;
+
+    Key(String sql, int resultSetType, int concurrency) {
+      this.sql = sql;
+      this.resultSetType = resultSetType;
+      this.concurrency = concurrency;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      if (!(other instanceof Key)) {
+        return false;
+      }
+      Key key = (Key) other;
+      return sql.equals(key.sql) && resultSetType == key.resultSetType
+          && concurrency == key.concurrency;
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(sql, resultSetType, concurrency);
+    }
+  }
+
+  /**
+   * Passes every call through to the real statement, except close (which gives it back to the
+   * cache), getConnection and anything called after close.
+   */
+  private class Handle implements InvocationHandler {
+
+    private final Connection owner;
+    private final Key key;
+    private PreparedStatement statement;
+
+    Handle(Connection owner, Key key, PreparedStatement statement) {
+      this.owner = owner;
+      this.key = key;
+      this.statement = statement;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+      String name = method.getName();
+      if ("equals".equals(name)) {
+        return proxy == args[0];
+      }
+      if ("hashCode".equals(name)) {
+        return System.identityHashCode(proxy);
+      }
+      if ("close".equals(name)) {
+        if (statement != null) {
+          PreparedStatement returning = statement;
+          statement = null;
+          giveBack(key, returning);
+        }
+        return null;
+      }
+      if ("isClosed".equals(name)) {
+        return statement == null || statement.isClosed();
+      }
+      if (statement == null) {
+        throw new SQLException("Statement has already been closed");
+      }
+      if ("getConnection".equals(name)) {
+        return owner;
+      }
+      try {
+        return method.invoke(statement, args);
+      } catch (InvocationTargetException ex) {
+        throw ex.getCause();
+      }
+    }
+  }// end of Handle class
+}
@@ -0,0 +1,192 @@
+package DatabaseGUI;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import javafx.application.Platform;
+import javafx.scene.control.Button;
+import javafx.scene.control.Label;
+import javafx.scene.control.TextArea;
+import javafx.scene.control.TextInputDialog;
+import javafx.scene.layout.HBox;
+import javafx.stage.FileChooser;
+
+/**
+ * The Export and Import buttons, getting data out of, and into, the database. Exports run the
+ * query again on their own thread and stream the rows straight to a file, so they don't touch the
+ * table or the query worker (see ResultExporter). Imports load a CSV file into a table on their
+ * own thread, see BulkImporter. Only one of each runs at a time, and while it runs its button
+ * cancels it.
+ */
+public class TransferPanel extends HBox {
+
+  private final ResultExporter exporter = new ResultExporter();
+  private final BulkImporter importer = new BulkImporter();
+  private final Button exportButton = new Button("Export...");
+  private final Button importButton = new Button("Import CSV...");
+  private final TextArea queryBox;
+  private final Map<String, String> parameterValues;
+  private final Label statusLabel;
+  private final QueryCache queryCache;
+  private Thread exportThread;
+  private Thread importThread;
+
+  /**
+   * @param queryBox the query an export runs
+   * @param parameterValues the values of the query's parameters, as they are typed in
+   * @param queryCache dropped of the results of a table once something is imported into it
+   */
+  public TransferPanel(TextArea queryBox, Map<String, String> parameterValues, Label statusLabel,
+      QueryCache queryCache) {
+    super(10);
+    this.queryBox = queryBox;
+    this.parameterValues = parameterValues;
+    this.statusLabel = statusLabel;
+    this.queryCache = queryCache;
+    exportButton.setOnAction(e -> exportPressed());
+    importButton.setOnAction(e -> importPressed());
+    getChildren().addAll(exportButton, importButton);
+  }
+
+  /**
+   * Stops the export and import running, if any.
+   */
+  public void cancel() {
+    exporter.cancel();
+    importer.cancel();
+  }
+
+  /**
+   * "Export..." asks for the file the query's rows are written to.
+   */
+  private void exportPressed() {
+    if (exportThread != null) {
+      exporter.cancel();
+      statusLabel.setText("Cancelling export...");
+      return;
+    }
+    FileChooser chooser = new FileChooser();
+    chooser.setTitle("Export query result");
+    chooser.getExtensionFilters().addAll(
+        new FileChooser.ExtensionFilter("CSV file (*.csv)", "*.csv"),
+        new FileChooser.ExtensionFilter("Columnar file (*.dbgc)", "*.dbgc"));
+    File file = chooser.showSaveDialog(exportButton.getScene().getWindow());
+    if (file != null) {
+      startExport(file.toPath());
+    }
+  }
+
+  /**
+   * "Import CSV..." asks for the file and the table it goes into.
+   */
+  private void importPressed() {
+    if (importThread != null) {
+      importer.cancel();
+      statusLabel.setText("Cancelling import...");
+      return;
+    }
+    FileChooser chooser = new FileChooser();
+    chooser.setTitle("Import CSV file");
+    chooser.getExtensionFilters().add(
+        new FileChooser.ExtensionFilter("CSV file (*.csv)", "*.csv", "*.txt"));
+    File file = chooser.showOpenDialog(importButton.getScene().getWindow());
+    if (file == null) {
+      return;
+    }
+    // the file name is a good guess for the table, customers.csv goes into CUSTOMERS
+    String guess = file.getName().replaceFirst("\\.[^.]*$", "");
+    TextInputDialog tableDialog = new TextInputDialog(guess);
+    tableDialog.setTitle("Import CSV file");
+    tableDialog.setHeaderText("Import " + file.getName() + " into which table?");
+    tableDialog.showAndWait().ifPresent(table -> startImport(file.toPath(), table.trim()));
+  }
+
+  /**
+   * Runs the query in the query box on a background thread and streams its result to the file,
+   * as CSV or the columnar format depending on the file's extension. Progress is shown in the
+   * status bar, at most once per frame.
+   */
+  private void startExport(Path file) {
+    String sqlQuery = queryBox.getText();
+    Map<String, String> values = new HashMap<>(parameterValues);
+    ResultExporter.Format format = ResultExporter.Format.forFile(file);
+    AtomicLong exported = new AtomicLong();
+    AtomicBoolean updateScheduled = new AtomicBoolean(false);
+    long start = System.nanoTime();
+
+    exportButton.setText("Cancel Export");
+    statusLabel.setText("Exporting...");
+    exportThread = new Thread(() -> {
+      String result;
+      try {
+        long rows = exporter.export(sqlQuery, values, file, format, rowsSoFar -> {
+          exported.set(rowsSoFar);
+          if (updateScheduled.compareAndSet(false, true)) {
+            Platform.runLater(() -> {
+              updateScheduled.set(false);
+              statusLabel.setText("Exporting... " + exported.get() + " rows");
+            });
+          }
+        });
+        double seconds = (System.nanoTime() - start) / 1e9;
+        result = exporter.isCancelled() ? "Export cancelled"
+            : String.format("Exported %d rows to %s in %.1f s (%.0f rows/s)", rows,
+                file.getFileName(), seconds, rows / Math.max(seconds, 1e-9));
+      } catch (SQLException | IOException ex) {
+        System.out.println("Issue exporting the query result");
+        result = "Export failed: " + ex.getMessage();
+      }
+      String message = result;
+      Platform.runLater(() -> {
+        exportThread = null;
+        exportButton.setText("Export...");
+        statusLabel.setText(message);
+      });
+    }, "export-worker");
+    exportThread.setDaemon(true);
+    exportThread.start();
+  }// end of startExport method
+
+  /**
+   * Imports the CSV file into the table on a background thread, showing the rows per second in the
+   * status bar after every commit. Cached results that read the table are dropped afterwards,
+   * even if the import failed part way, since some rows may have been committed.
+   */
+  private void startImport(Path file, String table) {
+    importButton.setText("Cancel Import");
+    statusLabel.setText("Importing " + file.getFileName() + " into " + table + "...");
+    long start = System.nanoTime();
+    importThread = new Thread(() -> {
+      String result;
+      try {
+        long rows = importer.importCsv(table, file, (rowsSoFar, nanos) -> {
+          String progress = "Importing... " + BulkImporter.describe(rowsSoFar, nanos);
+          Platform.runLater(() -> statusLabel.setText(progress));
+        });
+        result = (importer.isCancelled() ? "Import cancelled after " : "Imported ")
+            + BulkImporter.describe(rows, System.nanoTime() - start) + " into " + table;
+      } catch (SQLException | IOException ex) {
+        System.out.println("Issue importing " + file);
+        result = "Import failed: " + ex.getMessage();
+      }
+      String message = result;
+      String imported = importer.getTableName(); // null if nothing could have been written
+      Platform.runLater(() -> {
+        if (imported != null) {
+          queryCache.invalidateTables(Collections.singleton(imported));
+        }
+        importThread = null;
+        importButton.setText("Import CSV...");
+        statusLabel.setText(message);
+      });
+    }, "import-worker");
+    importThread.setDaemon(true);
+    importThread.start();
+  }// end of startImport method
+}// end of TransferPanel class
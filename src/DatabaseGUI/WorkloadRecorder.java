@@ -0,0 +1,171 @@
+package DatabaseGUI;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes down every statement that is run against salesDB, with when it started, how long it took
+ * and how many rows it returned or changed, so a slow spell can be replayed later (see
+ * WorkloadReplay). Set databasegui.workload.file and every statement run by the window, a script,
+ * auto-refresh or BatchRunner is appended to that file. Without it nothing is recorded.
+ *
+ * The log is plain text, one line per record, fields separated by tabs. Tabs, line breaks and
+ * backslashes in a field are written as \t, \n, \r and \\. The text of a statement is only
+ * written the first time it is run, after that the statement is referred to by number:
+ *
+ * W   startMillis                        a program started recording. Numbers start again.
+ * S   number   sql                       the text of statement number
+ * E   offsetMillis   number   micros   rows   source   valueCount   values...   [error]
+ *
+ * offsetMillis is when the statement started, from the W line (less than 0 for a statement that
+ * was recorded once it had finished, e.g. those of a script). rows is -1 when it failed, and the
+ * error message follows the parameter values. source is gui, script, refresh, profile or batch.
+ * For a query of the window the time and rows are those of the first page, which is what the user
+ * waits for.
+ */
+public final class WorkloadRecorder {
+
+  public static final String FILE = System.getProperty("databasegui.workload.file");
+
+  public static final String GUI = "gui";
+  public static final String SCRIPT = "script";
+  public static final String REFRESH = "refresh";
+  public static final String PROFILE = "profile";
+  public static final String BATCH = "batch";
+
+  // guarded by WorkloadRecorder.class
+  private static Writer out;
+  private static boolean failed = false;
+  private static long startMillis;
+  private static final Map<String, Integer> numbers = new HashMap<>();
+
+  private WorkloadRecorder() {
+  }
+
+  /**
+   * @return true if statements are being recorded, so callers can skip working out what to record.
+   */
+  public static boolean isRecording() {
+    return FILE != null && !FILE.isEmpty() && !failed;
+  }
+
+  /**
+   * Records one statement. Safe on any thread, and does nothing unless recording.
+   *
+   * @param values the text bound to each parameter, in order. May be null if there are none.
+   * @param nanos how long the statement took
+   * @param rows rows returned or changed
+   * @param error why the statement failed, or null if it didn't
+   */
+  public static void record(String source, String sql, List<String> values, long nanos,
+      long rows, String error) {
+    record(source, sql, values, System.currentTimeMillis() - nanos / 1000000, nanos, rows, error);
+  }
+
+  /**
+   * Records a statement that started at a known time, for statements recorded after the fact.
+   *
+   * @param started System.currentTimeMillis when the statement started
+   */
+  public static void record(String source, String sql, List<String> values, long started,
+      long nanos, long rows, String error) {
+    if (!isRecording()) {
+      return;
+    }
+    synchronized (WorkloadRecorder.class) {
+      try {
+        if (out == null) {
+          open();
+        }
+        Integer number = numbers.get(sql);
+        if (number == null) {
+          number = numbers.size() + 1;
+          numbers.put(sql, number);
+          out.write("S\t" + number + "\t" + escape(sql) + "\n");
+        }
+        StringBuilder line = new StringBuilder(64);
+        line.append("E\t").append(started - startMillis).append('\t').append(number)
+            .append('\t').append(nanos / 1000).append('\t').append(error == null ? rows : -1)
+            .append('\t').append(source);
+        List<String> bound = values == null ? new ArrayList<>() : values;
+        line.append('\t').append(bound.size());
+        for (String value : bound) {
+          line.append('\t').append(escape(value == null ? "" : value));
+        }
+        if (error != null) {
+          line.append('\t').append(escape(error));
+        }
+        out.write(line.append('\n').toString());
+        out.flush(); // a statement that hangs the program is the one worth having
+      } catch (IOException ioEx) {
+        failed = true;
+        System.out.println("Unable to record the workload to " + FILE + ": " + ioEx.getMessage());
+      }
+    }
+  }// end of record method
+
+  /**
+   * Records a statement that ran with these parameter values, by name.
+   */
+  public static void record(String source, String sql, Map<String, String> parameterValues,
+      long started, long nanos, long rows, String error) {
+    if (isRecording()) {
+      SqlText.Parameters parameters = SqlText.parameters(sql);
+      record(source, sql, ParameterBinder.valuesOf(parameters, parameterValues), started, nanos,
+          rows, error);
+    }
+  }
+
+  private static void open() throws IOException {
+    out = new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(Paths.get(FILE),
+        StandardOpenOption.CREATE, StandardOpenOption.APPEND), StandardCharsets.UTF_8));
+    startMillis = System.currentTimeMillis();
+    out.write("W\t" + startMillis + "\n");
+  }
+
+  static String escape(String text) {
+    StringBuilder escaped = null;
+    for (int i = 0; i < text.length(); i++) {
+      char c = text.charAt(i);
+      String replacement = c == '\t' ? "\\t" : c == '\n' ? "\\n" : c == '\r' ? "\\r"
+          : c == '\\' ? "\\\\" : null;
+      if (replacement != null && escaped == null) {
+        escaped = new StringBuilder(text.length() + 8).append(text, 0, i);
+      }
+      if (escaped != null) {
+        if (replacement != null) {
+          escaped.append(replacement);
+        } else {
+          escaped.append(c);
+        }
+      }
+    }
+    return escaped == null ? text : escaped.toString();
+  }
+
+  static String unescape(String field) {
+    if (field.indexOf('\\') < 0) {
+      return field;
+    }
+    StringBuilder text = new StringBuilder(field.length());
+    for (int i = 0; i < field.length(); i++) {
+      char c = field.charAt(i);
+      if (c == '\\' && i + 1 < field.length()) {
+        char next = field.charAt(++i);
+        c = next == 't' ? '\t' : next == 'n' ? '\n' : next == 'r' ? '\r' : next;
+      }
+      text.append(c);
+    }
+    return text.toString();
+  }
+}// end of WorkloadRecorder class
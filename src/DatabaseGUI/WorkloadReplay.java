@@ -0,0 +1,526 @@
+package DatabaseGUI;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs the statements of a workload log (see WorkloadRecorder) against a copy of salesDB, several
+ * at once, to reproduce a slow spell and to see whether a change made it better or worse.
+ *
+ * java -cp out:lib/derby.jar DatabaseGUI.WorkloadReplay --db copy/salesDB [options] workload.log
+ *
+ * Statements are started at the pace they were recorded at (or faster, or as fast as they can
+ * go), on a fixed number of threads with a connection each. Every statement gets a latency
+ * histogram, and the report lists the throughput and the p50/p95/p99 of the whole run and of the
+ * statements that took the most time. A run can be saved as a baseline, and a later run compared
+ * with it: a statement whose p95 got more than --threshold percent slower is a regression, and
+ * makes the exit code 1, so it can be used in CI.
+ *
+ * Queries read as many rows as were recorded (the first page for the window's queries), so the
+ * replay does the same work the recording did. Run with --help for the options.
+ */
+public class WorkloadReplay {
+
+  private static final int FETCH_SIZE = Integer.getInteger("databasegui.pageSize", 500);
+  private static final int MIN_SAMPLES = 5; // fewer runs than this aren't compared
+  private static final long NOISE_NANOS = 1000000; // slower by less than this doesn't count
+
+  private static final String USAGE = String.join(System.lineSeparator(),
+      "Usage: WorkloadReplay --db PATH [options] workload.log",
+      "Runs the statements of a workload log against a copy of salesDB and reports the latency.",
+      "  --db PATH             the copy of salesDB to run against (its changes aren't undone)",
+      "  --threads N           statements run at once (default 4)",
+      "  --speed X             1 keeps the recorded pace, 2 goes twice as fast, 0 runs every",
+      "                        statement as soon as a thread is free (default 1)",
+      "  --source NAME         only statements from gui, script, refresh, profile or batch",
+      "  --queries-only        skip statements that change the database",
+      "  --repeat N            replay the log N times (default 1)",
+      "  --top N               how many statements to list (default 15)",
+      "  --save-baseline FILE  save the latency of every statement to FILE",
+      "  --baseline FILE       compare with a saved run. Exit code 1 if anything got slower",
+      "  --threshold PERCENT   how much slower a p95 may get before it counts (default 20)",
+      "  --help                show this message");
+
+  private int threads = 4;
+  private double speed = 1;
+  private String source = null;
+  private boolean queriesOnly = false;
+  private int repeat = 1;
+  private int top = 15;
+  private String saveBaseline = null;
+  private String baseline = null;
+  private double threshold = 20;
+
+  /**
+   * One distinct statement of the log, and how it did when replayed.
+   */
+  private static final class Statement {
+
+    private final String sql;
+    private final SqlText.Parameters parameters;
+    private final QueryMetrics.Histogram latency = new QueryMetrics.Histogram();
+    private final QueryMetrics.Histogram recorded = new QueryMetrics.Histogram();
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong totalNanos = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+
+    Statement(String sql) {
+      this.sql = sql;
+      this.parameters = SqlText.parameters(sql);
+    }
+
+    void add(long nanos) {
+      latency.add(nanos);
+      count.incrementAndGet();
+      totalNanos.addAndGet(nanos);
+      maxNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    /**
+     * @return the percentile in nanoseconds. A bucket's middle can be past the slowest run.
+     */
+    long percentile(double fraction) {
+      return Math.min(latency.percentile(fraction), maxNanos.get());
+    }
+  }// end of Statement class
+
+  /**
+   * One run of a statement, as recorded.
+   */
+  private static final class Event {
+
+    private final long offsetMillis;
+    private final Statement statement;
+    private final List<String> values;
+    private final long rows;
+
+    Event(long offsetMillis, Statement statement, List<String> values, long rows) {
+      this.offsetMillis = offsetMillis;
+      this.statement = statement;
+      this.values = values;
+      this.rows = rows;
+    }
+  }
+
+  /**
+   * @param args see USAGE
+   */
+  public static void main(String[] args) {
+    int exitCode;
+    try {
+      exitCode = run(args);
+    } catch (IllegalArgumentException badOption) {
+      System.err.println(badOption.getMessage());
+      System.err.println(USAGE);
+      exitCode = 2;
+    } finally {
+      DatabaseConnect.shutdown();
+    }
+    System.exit(exitCode);
+  }
+
+  private static int run(String[] args) {
+    WorkloadReplay replay = new WorkloadReplay();
+    String database = null;
+    String logFile = null;
+    for (int i = 0; i < args.length; i++) {
+      String arg = args[i];
+      switch (arg) {
+        case "--db":
+          database = value(args, ++i, arg);
+          break;
+        case "--threads":
+          replay.threads = Math.max(1, (int) number(value(args, ++i, arg), arg));
+          break;
+        case "--speed":
+          replay.speed = Math.max(0, number(value(args, ++i, arg), arg));
+          break;
+        case "--source":
+          replay.source = value(args, ++i, arg);
+          break;
+        case "--queries-only":
+          replay.queriesOnly = true;
+          break;
+        case "--repeat":
+          replay.repeat = Math.max(1, (int) number(value(args, ++i, arg), arg));
+          break;
+        case "--top":
+          replay.top = Math.max(0, (int) number(value(args, ++i, arg), arg));
+          break;
+        case "--save-baseline":
+          replay.saveBaseline = value(args, ++i, arg);
+          break;
+        case "--baseline":
+          replay.baseline = value(args, ++i, arg);
+          break;
+        case "--threshold":
+          replay.threshold = Math.max(0, number(value(args, ++i, arg), arg));
+          break;
+        case "--help":
+          System.out.println(USAGE);
+          return 0;
+        default:
+          if (arg.startsWith("-") || logFile != null) {
+            throw new IllegalArgumentException("Unexpected argument: " + arg);
+          }
+          logFile = arg;
+      }
+    }// end of for loop
+    if (database == null || logFile == null) {
+      throw new IllegalArgumentException("Both --db and a workload log are needed");
+    }
+
+    // DatabaseConnect reads these when it is first used, which is after this
+    System.setProperty("databasegui.url", "jdbc:derby:" + database);
+    if (System.getProperty("databasegui.pool.max") == null) {
+      System.setProperty("databasegui.pool.max", String.valueOf(replay.threads + 1));
+    }
+    try {
+      Map<String, Statement> statements = new LinkedHashMap<>();
+      List<Event> events = replay.readLog(logFile, statements);
+      if (events.isEmpty()) {
+        System.err.println("No statements to replay in " + logFile);
+        return 1;
+      }
+      return replay.replay(events, statements.values());
+    } catch (IOException ioEx) {
+      System.err.println("Issue reading or writing a file: " + ioEx.getMessage());
+      return 1;
+    }
+  }// end of run method
+
+  /**
+   * Reads the log. The programs that recorded it are played one after the other, each starting
+   * where the one before ended, rather than with the time between them.
+   */
+  private List<Event> readLog(String logFile, Map<String, Statement> statements)
+      throws IOException {
+    List<Event> events = new ArrayList<>();
+    Map<String, Statement> byNumber = new HashMap<>();
+    List<Event> session = new ArrayList<>();
+    long end = 0;
+    try (BufferedReader in = Files.newBufferedReader(Paths.get(logFile), StandardCharsets.UTF_8)) {
+      String line;
+      int lineNumber = 0;
+      while ((line = in.readLine()) != null) {
+        lineNumber++;
+        String[] fields = line.split("\t", -1);
+        try {
+          switch (fields[0]) {
+            case "W":
+              end = addSession(session, events, end);
+              byNumber.clear();
+              break;
+            case "S":
+              String sql = WorkloadRecorder.unescape(fields[2]);
+              byNumber.put(fields[1], statements.computeIfAbsent(sql, Statement::new));
+              break;
+            case "E":
+              Statement statement = byNumber.get(fields[2]);
+              long rows = Long.parseLong(fields[4]);
+              if (statement == null || !wanted(statement, fields[5])) {
+                break;
+              }
+              int valueCount = Integer.parseInt(fields[6]);
+              List<String> values = new ArrayList<>(valueCount);
+              for (int value = 0; value < valueCount; value++) {
+                values.add(WorkloadRecorder.unescape(fields[7 + value]));
+              }
+              statement.recorded.add(Long.parseLong(fields[3]) * 1000);
+              session.add(new Event(Long.parseLong(fields[1]), statement, values, rows));
+              break;
+            default:
+              // blank, or written by a newer version
+          }
+        } catch (RuntimeException badLine) {
+          System.err.println("Skipped line " + lineNumber + " of " + logFile + ": " + badLine);
+        }
+      }// end of while loop
+    }
+    addSession(session, events, end);
+
+    List<Event> once = new ArrayList<>(events);
+    long span = events.isEmpty() ? 0 : events.get(events.size() - 1).offsetMillis + 1;
+    for (int round = 1; round < repeat; round++) {
+      for (Event event : once) {
+        events.add(new Event(event.offsetMillis + span * round, event.statement, event.values,
+            event.rows));
+      }
+    }
+    return events;
+  }// end of readLog method
+
+  /**
+   * Moves the events of one program's recording to start at end, adds them and empties session.
+   *
+   * @return where the next session starts
+   */
+  private static long addSession(List<Event> session, List<Event> events, long end) {
+    if (session.isEmpty()) {
+      return end;
+    }
+    session.sort(Comparator.comparingLong(event -> event.offsetMillis));
+    long first = session.get(0).offsetMillis;
+    for (Event event : session) {
+      events.add(new Event(end + event.offsetMillis - first, event.statement, event.values,
+          event.rows));
+    }
+    long next = events.get(events.size() - 1).offsetMillis + 1;
+    session.clear();
+    return next;
+  }
+
+  private boolean wanted(Statement statement, String recordedSource) {
+    if (source != null && !source.equalsIgnoreCase(recordedSource)) {
+      return false;
+    }
+    return !queriesOnly || isQuery(statement.sql);
+  }
+
+  private static boolean isQuery(String sql) {
+    String keyword = SqlText.firstKeyword(sql);
+    return "SELECT".equals(keyword) || "VALUES".equals(keyword) || "WITH".equals(keyword);
+  }
+
+  /**
+   * Runs the events and prints the report.
+   *
+   * @return the exit code
+   */
+  private int replay(List<Event> events, Iterable<Statement> statements) throws IOException {
+    AtomicInteger threadCount = new AtomicInteger();
+    ExecutorService pool = Executors.newFixedThreadPool(threads, runnable -> {
+      Thread thread = new Thread(runnable, "replay-" + threadCount.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+    try {
+      DatabaseConnect.warmUp(); // booting Derby isn't part of the first statement
+    } catch (SQLException sqlEx) {
+      System.err.println("Unable to connect to the database: " + sqlEx.getMessage());
+      return 1;
+    }
+
+    QueryMetrics.Histogram lateness = new QueryMetrics.Histogram();
+    Statement all = new Statement("(all)");
+    Map<String, String> errors = new LinkedHashMap<>();
+    long start = System.nanoTime();
+    for (Event event : events) {
+      long due = speed == 0 ? start : start + (long) (event.offsetMillis * 1e6 / speed);
+      long wait = due - System.nanoTime();
+      if (wait > 0) {
+        try {
+          TimeUnit.NANOSECONDS.sleep(wait);
+        } catch (InterruptedException interrupted) {
+          break;
+        }
+      }
+      pool.execute(() -> {
+        long started = System.nanoTime();
+        lateness.add(Math.max(1, started - due)); // waiting for a free thread
+        try {
+          runEvent(event);
+          long nanos = System.nanoTime() - started;
+          event.statement.add(nanos);
+          all.add(nanos);
+        } catch (SQLException sqlEx) {
+          event.statement.failures.incrementAndGet();
+          all.failures.incrementAndGet();
+          synchronized (errors) {
+            errors.putIfAbsent(event.statement.sql, sqlEx.getMessage());
+          }
+        }
+      });
+    }// end of for loop
+    pool.shutdown();
+    try {
+      pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+    } catch (InterruptedException interrupted) {
+      Thread.currentThread().interrupt();
+    }
+    long nanos = System.nanoTime() - start;
+
+    List<Statement> ran = new ArrayList<>();
+    for (Statement statement : statements) {
+      if (statement.count.get() + statement.failures.get() > 0) {
+        ran.add(statement);
+      }
+    }
+    double perSecond = all.count.get() * 1e9 / Math.max(1, nanos);
+    printReport(events.size(), ran, all, nanos, perSecond, lateness, errors);
+    if (saveBaseline != null) {
+      saveBaseline(ran, all, perSecond);
+      System.out.println("Saved the baseline to " + saveBaseline);
+    }
+    return baseline == null ? 0 : compare(ran, all, perSecond);
+  }// end of replay method
+
+  /**
+   * Runs one statement on a pooled connection. A query reads as many rows as were recorded.
+   */
+  private static void runEvent(Event event) throws SQLException {
+    try (Connection connection = DatabaseConnect.connect();
+        PreparedStatement statement = connection.prepareStatement(
+            event.statement.parameters.getSql(), ResultSet.TYPE_FORWARD_ONLY,
+            ResultSet.CONCUR_READ_ONLY)) {
+      statement.setFetchSize(FETCH_SIZE);
+      ParameterBinder.bind(statement, event.statement.parameters.getNames(), event.values);
+      if (statement.execute()) {
+        long wanted = event.rows > 0 ? event.rows : Long.MAX_VALUE; // unknown: read them all
+        try (ResultSet rs = statement.getResultSet()) {
+          for (long rows = 0; rows < wanted && rs.next(); rows++) {
+            // only the reading counts
+          }
+        }
+      }
+    }
+  }
+
+  private void printReport(int eventCount, List<Statement> ran, Statement all, long nanos,
+      double perSecond, QueryMetrics.Histogram lateness, Map<String, String> errors) {
+    System.out.println(String.format("Replayed %d statements (%d distinct) in %.1f s: "
+        + "%.1f statements/s, %d failed", eventCount, ran.size(), nanos / 1e9, perSecond,
+        all.failures.get()));
+    System.out.println(String.format("%d threads, speed %s. Statements waited for a thread "
+        + "p50 %.1f ms, p95 %.1f ms", threads, speed == 0 ? "as fast as possible" : speed + "x",
+        lateness.percentile(0.50) / 1e6, lateness.percentile(0.95) / 1e6));
+    System.out.println();
+    System.out.println(String.format("%-50s %7s %9s %9s %9s %9s %13s", "statement", "count",
+        "p50 ms", "p95 ms", "p99 ms", "max ms", "recorded p50"));
+    System.out.println(line(all));
+    ran.sort(Comparator.comparingLong((Statement statement) -> statement.totalNanos.get())
+        .reversed());
+    for (Statement statement : ran.subList(0, Math.min(top, ran.size()))) {
+      System.out.println(line(statement));
+    }
+    if (!errors.isEmpty()) {
+      System.out.println();
+      System.out.println("Failed:");
+      for (Map.Entry<String, String> error : errors.entrySet()) {
+        System.out.println("  " + oneLine(error.getKey()) + ": " + error.getValue());
+      }
+    }
+  }// end of printReport method
+
+  private static String line(Statement statement) {
+    long recorded = statement.recorded.percentile(0.50);
+    return String.format("%-50s %7d %9.1f %9.1f %9.1f %9.1f %13s", oneLine(statement.sql),
+        statement.count.get(), statement.percentile(0.50) / 1e6, statement.percentile(0.95) / 1e6,
+        statement.percentile(0.99) / 1e6, statement.maxNanos.get() / 1e6,
+        recorded == 0 ? "" : String.format("%.1f", recorded / 1e6));
+  }
+
+  /**
+   * Writes one line per statement: count, p50, p95 and p99 in nanoseconds, then the SQL. The
+   * first line is the throughput.
+   */
+  private void saveBaseline(List<Statement> ran, Statement all, double perSecond)
+      throws IOException {
+    List<String> lines = new ArrayList<>();
+    lines.add("statements/s\t" + perSecond + "\t" + speed);
+    for (Statement statement : prepend(all, ran)) {
+      lines.add(statement.count.get() + "\t" + statement.percentile(0.50) + "\t"
+          + statement.percentile(0.95) + "\t" + statement.percentile(0.99) + "\t"
+          + WorkloadRecorder.escape(statement.sql));
+    }
+    Files.write(Paths.get(saveBaseline), lines, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Prints what got slower or faster since the baseline.
+   *
+   * @return 1 if anything got slower by more than the threshold, 0 otherwise
+   */
+  private int compare(List<Statement> ran, Statement all, double perSecond) throws IOException {
+    List<String> lines = Files.readAllLines(Paths.get(baseline), StandardCharsets.UTF_8);
+    Map<String, long[]> saved = new HashMap<>();
+    double savedPerSecond = 0;
+    double savedSpeed = -1;
+    for (String line : lines) {
+      String[] fields = line.split("\t", -1);
+      if (fields[0].equals("statements/s")) {
+        savedPerSecond = Double.parseDouble(fields[1]);
+        savedSpeed = Double.parseDouble(fields[2]);
+      } else if (fields.length == 5) {
+        saved.put(WorkloadRecorder.unescape(fields[4]), new long[] {Long.parseLong(fields[0]),
+            Long.parseLong(fields[1]), Long.parseLong(fields[2]), Long.parseLong(fields[3])});
+      }
+    }
+
+    System.out.println();
+    System.out.println("Compared with " + baseline + " (p95, " + threshold + "% allowed):");
+    int regressions = 0;
+    double allowed = 1 + threshold / 100;
+    if (speed == 0 && savedSpeed == 0 && perSecond * allowed < savedPerSecond) {
+      // only a run at full speed says anything about throughput
+      System.out.println(String.format("  slower   %.1f -> %.1f statements/s", savedPerSecond,
+          perSecond));
+      regressions++;
+    }
+    for (Statement statement : prepend(all, ran)) {
+      long[] before = saved.get(statement.sql);
+      if (before == null || before[0] < MIN_SAMPLES || statement.count.get() < MIN_SAMPLES) {
+        continue;
+      }
+      long was = before[2];
+      long now = statement.percentile(0.95);
+      String change = String.format("%9.1f -> %9.1f ms  %+5.0f%%  %s", was / 1e6, now / 1e6,
+          (now - was) * 100.0 / Math.max(1, was), oneLine(statement.sql));
+      if (now > was * allowed && now - was > NOISE_NANOS) {
+        System.out.println("  slower " + change);
+        regressions++;
+      } else if (was > now * allowed && was - now > NOISE_NANOS) {
+        System.out.println("  faster " + change);
+      }
+    }
+    System.out.println(regressions == 0 ? "  no regressions" : "  " + regressions
+        + " regression" + (regressions == 1 ? "" : "s"));
+    return regressions == 0 ? 0 : 1;
+  }// end of compare method
+
+  private static List<Statement> prepend(Statement all, List<Statement> ran) {
+    List<Statement> list = new ArrayList<>(ran.size() + 1);
+    list.add(all);
+    list.addAll(ran);
+    return list;
+  }
+
+  private static String oneLine(String sql) {
+    String line = sql.replaceAll("\\s+", " ").trim();
+    return line.length() > 50 ? line.substring(0, 47) + "..." : line;
+  }
+
+  private static String value(String[] args, int index, String option) {
+    if (index >= args.length) {
+      throw new IllegalArgumentException(option + " needs a value");
+    }
+    return args[index];
+  }
+
+  private static double number(String value, String option) {
+    try {
+      return Double.parseDouble(value.trim());
+    } catch (NumberFormatException notNumber) {
+      throw new IllegalArgumentException(option + " needs a number, got: " + value);
+    }
+  }
+}// end of WorkloadReplay class